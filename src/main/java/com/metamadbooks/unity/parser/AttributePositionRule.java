@@ -0,0 +1,15 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Built-in rule: an attributes object may only appear at index 1, directly after the
+ * element name.
+ */
+public final class AttributePositionRule implements UnityRule {
+
+    @Override
+    public void attributes(int index, UnityRuleContext context) {
+        if (index > 1) {
+            context.report("Attributes object must be at index 1 (found at index " + index + ")");
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-recursive parser for Unity documents.
+ * <p>
+ * The generated {@link UnityParser} is a recursive-descent parser, so every level of
+ * element nesting costs several Java stack frames. This parser recognizes the same
+ * grammar with an explicit, heap-allocated stack and builds the same
+ * {@link UnityParser.UnityContext} tree, so it can handle documents nested millions of
+ * levels deep on a default thread stack. Walk the result with
+ * {@link IterativeParseTreeWalker} for the same reason.
+ * <p>
+ * Unlike {@link UnityParser}, this parser does not attempt error recovery: it reports
+ * the first syntax error to its listeners and stops. The returned tree is then
+ * incomplete.
+ */
+public class DeepUnityParser {
+
+    private static final int LBRACKET = UnityParser.T__0;
+    private static final int COMMA = UnityParser.T__1;
+    private static final int RBRACKET = UnityParser.T__2;
+    private static final int LBRACE = UnityParser.T__3;
+    private static final int RBRACE = UnityParser.T__4;
+    private static final int COLON = UnityParser.T__5;
+    private static final int TRUE = UnityParser.T__6;
+    private static final int FALSE = UnityParser.T__7;
+    private static final int NULL = UnityParser.T__8;
+
+    private final TokenSource tokenSource;
+    private final List<ANTLRErrorListener> errorListeners = new ArrayList<>();
+    private Token current;
+    private Token previous;
+    private int tokenIndex = 0;
+    private boolean failed = false;
+
+    /**
+     * Creates a parser that reads tokens from the given source, typically a {@link UnityLexer}.
+     *
+     * @param tokenSource the token source to parse
+     */
+    public DeepUnityParser(TokenSource tokenSource) {
+        this.tokenSource = tokenSource;
+    }
+
+    /**
+     * Adds a listener to be notified of syntax errors.
+     *
+     * @param listener the error listener
+     */
+    public void addErrorListener(ANTLRErrorListener listener) {
+        errorListeners.add(listener);
+    }
+
+    /**
+     * Parses a complete document, equivalent to {@link UnityParser#unity()}.
+     *
+     * @return the root of the parse tree
+     */
+    public UnityParser.UnityContext unity() {
+        current = nextToken();
+        UnityParser.UnityContext root = new UnityParser.UnityContext(null, -1);
+        root.start = current;
+
+        // Stack of open elements and the content context each one was invoked from
+        UnityParser.UnityElementContext[] elements = new UnityParser.UnityElementContext[64];
+        int top = -1;
+
+        if (current.getType() != LBRACKET) {
+            mismatch(LBRACKET);
+            return root;
+        }
+        elements[++top] = openElement(root, UnityParserStates.UNITY_ELEMENT);
+
+        while (top >= 0 && !failed) {
+            UnityParser.UnityElementContext element = elements[top];
+            int type = current.getType();
+
+            if (type == COMMA) {
+                consume(element);
+                UnityParser.ElementContentContext content =
+                        new UnityParser.ElementContentContext(element, UnityParserStates.ELEMENT_CONTENT);
+                content.start = current;
+                element.addChild(content);
+
+                switch (current.getType()) {
+                    case LBRACE:
+                        attributesObject(content);
+                        content.stop = previous;
+                        break;
+                    case LBRACKET:
+                        if (++top == elements.length) {
+                            elements = Arrays.copyOf(elements, elements.length * 2);
+                        }
+                        elements[top] = openElement(content, UnityParserStates.NESTED_ELEMENT);
+                        break;
+                    case TRUE:
+                    case FALSE:
+                    case NULL:
+                    case UnityParser.STRING:
+                    case UnityParser.NUMBER:
+                        UnityParser.PrimitiveValueContext value =
+                                new UnityParser.PrimitiveValueContext(content, UnityParserStates.PRIMITIVE_VALUE);
+                        value.start = current;
+                        content.addChild(value);
+                        consume(value);
+                        value.stop = previous;
+                        content.stop = previous;
+                        break;
+                    default:
+                        mismatch(LBRACE, LBRACKET, TRUE, FALSE, NULL, UnityParser.STRING, UnityParser.NUMBER);
+                }
+            } else if (type == RBRACKET) {
+                consume(element);
+                element.stop = previous;
+                if (element.getParent() instanceof UnityParser.ElementContentContext) {
+                    element.getParent().stop = previous;
+                }
+                elements[top--] = null;
+            } else {
+                mismatch(COMMA, RBRACKET);
+            }
+        }
+
+        if (!failed) {
+            if (current.getType() == Token.EOF) {
+                consume(root);
+            } else {
+                mismatch(Token.EOF);
+            }
+        }
+        root.stop = previous;
+        return root;
+    }
+
+    /**
+     * Consumes '[' and the element name, returning the new element context.
+     */
+    private UnityParser.UnityElementContext openElement(ParserRuleContext parent, int invokingState) {
+        UnityParser.UnityElementContext element = new UnityParser.UnityElementContext(parent, invokingState);
+        element.start = current;
+        parent.addChild(element);
+        consume(element);
+
+        UnityParser.ElementNameContext name =
+                new UnityParser.ElementNameContext(element, UnityParserStates.ELEMENT_NAME);
+        name.start = current;
+        element.addChild(name);
+        if (current.getType() == UnityParser.STRING) {
+            consume(name);
+        } else {
+            mismatch(UnityParser.STRING);
+        }
+        name.stop = previous;
+        return element;
+    }
+
+    /**
+     * Parses a flat attributes object; attributes cannot nest, so no stack is needed.
+     */
+    private void attributesObject(UnityParser.ElementContentContext content) {
+        UnityParser.AttributesObjectContext attributes =
+                new UnityParser.AttributesObjectContext(content, UnityParserStates.ATTRIBUTES_OBJECT);
+        attributes.start = current;
+        content.addChild(attributes);
+        consume(attributes);
+
+        if (current.getType() == RBRACE) {
+            consume(attributes);
+            attributes.stop = previous;
+            return;
+        }
+
+        int invokingState = UnityParserStates.FIRST_ATTRIBUTE_PAIR;
+        while (!failed) {
+            attributePair(attributes, invokingState);
+            if (failed) {
+                break;
+            }
+            if (current.getType() == COMMA) {
+                consume(attributes);
+                invokingState = UnityParserStates.NEXT_ATTRIBUTE_PAIR;
+            } else if (current.getType() == RBRACE) {
+                consume(attributes);
+                break;
+            } else {
+                mismatch(COMMA, RBRACE);
+            }
+        }
+        attributes.stop = previous;
+    }
+
+    private void attributePair(UnityParser.AttributesObjectContext attributes, int invokingState) {
+        UnityParser.AttributePairContext pair = new UnityParser.AttributePairContext(attributes, invokingState);
+        pair.start = current;
+        attributes.addChild(pair);
+
+        if (!expect(pair, UnityParser.STRING) || !expect(pair, COLON)) {
+            pair.stop = previous;
+            return;
+        }
+
+        UnityParser.AttributeValueContext value =
+                new UnityParser.AttributeValueContext(pair, UnityParserStates.ATTRIBUTE_VALUE);
+        value.start = current;
+        pair.addChild(value);
+        switch (current.getType()) {
+            case TRUE:
+            case FALSE:
+            case NULL:
+            case UnityParser.STRING:
+            case UnityParser.NUMBER:
+                consume(value);
+                break;
+            default:
+                mismatch(TRUE, FALSE, NULL, UnityParser.STRING, UnityParser.NUMBER);
+        }
+        value.stop = previous;
+        pair.stop = previous;
+    }
+
+    private boolean expect(ParserRuleContext ctx, int type) {
+        if (current.getType() != type) {
+            mismatch(type);
+            return false;
+        }
+        consume(ctx);
+        return true;
+    }
+
+    /**
+     * Adds the current token to the given context and advances to the next token.
+     */
+    private void consume(ParserRuleContext ctx) {
+        ctx.addChild(new TerminalNodeImpl(current));
+        previous = current;
+        if (current.getType() != Token.EOF) {
+            current = nextToken();
+        }
+    }
+
+    private Token nextToken() {
+        Token token = tokenSource.nextToken();
+        if (token instanceof WritableToken) {
+            ((WritableToken) token).setTokenIndex(tokenIndex++);
+        }
+        return token;
+    }
+
+    /**
+     * Reports a syntax error at the current token, in the same wording as the generated parser.
+     */
+    private void mismatch(int... expected) {
+        failed = true;
+        String msg = mismatchMessage(current, expected);
+        for (ANTLRErrorListener listener : errorListeners) {
+            listener.syntaxError(null, current, current.getLine(), current.getCharPositionInLine(), msg, null);
+        }
+    }
+
+    /**
+     * Formats a mismatched-token message the way the generated parser does.
+     */
+    static String mismatchMessage(Token current, int... expected) {
+        expected = expected.clone();
+        Arrays.sort(expected);
+        StringBuilder msg = new StringBuilder("mismatched input ");
+        msg.append(tokenDisplay(current)).append(" expecting ");
+        if (expected.length > 1) {
+            msg.append("{");
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (i > 0) {
+                msg.append(", ");
+            }
+            msg.append(UnityParser.VOCABULARY.getDisplayName(expected[i]));
+        }
+        if (expected.length > 1) {
+            msg.append("}");
+        }
+        return msg.toString();
+    }
+
+    private static String tokenDisplay(Token token) {
+        if (token.getType() == Token.EOF) {
+            return "'<EOF>'";
+        }
+        String text = token.getText()
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+        return "'" + text + "'";
+    }
+}
@@ -0,0 +1,653 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Parses a Unity document that is edited in place, as in an editor, reparsing only the
+ * part of the document that each edit affects.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * IncrementalUnityParser parser = new IncrementalUnityParser(text);
+ * Unity.ParseResult result = parser.getResult();
+ * ...
+ * result = parser.edit(offset, removedLength, insertedText);
+ * }</pre>
+ * The parser keeps the extent of every element and the validation errors of the last
+ * result, by char offset. An edit is reparsed in the smallest element that encloses it
+ * between its brackets: only the content between the child elements on either side of
+ * the edit is lexed, parsed and validated again, and it must end exactly where the next
+ * child, or the element, ended before. If it does not, or the edit touches the
+ * element's name, on which the paths of everything inside depend, the element is
+ * reparsed whole with the content around it in its parent, and so on up to the whole
+ * document. Elements outside the reparsed content keep their validation errors, which
+ * move with the text.
+ * <p>
+ * Beyond reparsing, an edit only touches the path from the reparsed element to the root.
+ * The text is a {@link UnityRope}, of which an edit copies a few chunks, and only the
+ * reparsed content is taken out of it as a String to be lexed. Each element holds its
+ * offset and content index relative to the previous child element of its parent, in a
+ * balanced tree of the parent's children that sums them, so the elements after an edit
+ * move without being visited. Errors are kept by char offset and moved with the text,
+ * which costs no more than listing them in the result; their lines and columns are
+ * looked up in the rope when a result is made.
+ * <p>
+ * Results have the errors of {@link Unity#parse(String)} for the edited text, with the
+ * default rules. A document with syntax errors is reparsed whole until an edit makes it
+ * well-formed again, so that error recovery and messages are exactly those of
+ * {@link Unity#parse(String)}. The parse tree of a result made by an incremental reparse
+ * is built, by parsing the whole text, when it is first asked for.
+ * <p>
+ * A parser is not thread-safe; its results may be shared.
+ */
+public final class IncrementalUnityParser {
+
+    private UnityRope text;
+    // Null while the document has syntax errors
+    private Node root;
+    // Validation errors in the order Unity.parse reports them
+    private final List<ErrorEntry> errors = new ArrayList<>();
+    private Unity.ParseResult result;
+    // Chars lexed by the last parse
+    private int reparsedLength;
+
+    /**
+     * Parses a document to be edited.
+     *
+     * @param input the Unity document
+     */
+    public IncrementalUnityParser(String input) {
+        text = UnityRope.of(input);
+        parseFully();
+    }
+
+    /**
+     * Returns the text of the document, with all edits applied. The String is built on
+     * the first call after an edit.
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns the result for the current text.
+     */
+    public Unity.ParseResult getResult() {
+        return result;
+    }
+
+    /**
+     * Replaces a range of the text and reparses what the change affects.
+     *
+     * @param offset        char offset of the first char replaced
+     * @param removedLength number of chars removed
+     * @param insertedText  text inserted in their place
+     * @return the result for the edited text, equal to that of {@link Unity#parse(String)}
+     * @throws IndexOutOfBoundsException if the range is not within the text
+     */
+    public Unity.ParseResult edit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset > text.length() - removedLength) {
+            throw new IndexOutOfBoundsException("Edit of " + removedLength + " chars at " + offset
+                    + " is outside the text of length " + text.length());
+        }
+        text = text.replace(offset, removedLength, insertedText);
+
+        if (root != null && reparse(offset, offset + removedLength, insertedText.length() - removedLength)) {
+            UnityRope parsed = text;
+            result = new Unity.ParseResult(() -> Unity.parse(parsed.toString()).getParseTree(), resolveErrors(), null);
+        } else {
+            parseFully();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of chars lexed by the last parse, the whole text after a full
+     * parse.
+     */
+    int getReparsedLength() {
+        return reparsedLength;
+    }
+
+    // =========================================================================
+    // Reparsing
+    // =========================================================================
+
+    /**
+     * Reparses after an edit of [start, end) of the old text that changed its length by
+     * {@code delta}, or returns false if only a full parse will do.
+     */
+    private boolean reparse(int start, int end, int delta) {
+        int rootStart = root.gap;
+        if (start <= rootStart || end > rootStart + root.length - 1) {
+            return false;
+        }
+        // The elements enclosing the edit, outermost first, with their offsets and the
+        // positions of all but the innermost among their parents' children
+        List<Node> path = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Node node = root;
+        int nodeStart = rootStart;
+        while (true) {
+            path.add(node);
+            offsets.add(nodeStart);
+            int i = firstChildFrom(node, start - nodeStart) - 1;
+            if (i < 0) {
+                break;
+            }
+            Child child = child(node, i);
+            int childStart = nodeStart + child.start();
+            if (end > childStart + child.node().length - 1) {
+                break;
+            }
+            positions.add(i);
+            node = child.node();
+            nodeStart = childStart;
+        }
+
+        for (int level = path.size() - 1; level >= 0; level--) {
+            Node parent = path.get(level);
+            int parentStart = offsets.get(level);
+            int from;
+            int to;
+            if (level == path.size() - 1) {
+                if (start < parentStart + parent.nameEnd) {
+                    continue;
+                }
+                // Children that the edit touches are reparsed with the content between them
+                from = firstChildFrom(parent, start - parentStart);
+                if (from > 0 && parentStart + child(parent, from - 1).end() > start) {
+                    from--;
+                }
+                to = firstChildFrom(parent, end - parentStart);
+            } else {
+                from = positions.get(level);
+                to = from + 1;
+            }
+            if (reparseContent(path, offsets, positions, level, from, to, delta)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reparses the content of an element from the end of child {@code from - 1}, or its
+     * name, to the start of child {@code to}, or its closing bracket. Returns false,
+     * changing nothing, if the new content does not end there.
+     */
+    private boolean reparseContent(List<Node> path, List<Integer> offsets, List<Integer> positions,
+                                   int level, int from, int to, int delta) {
+        Node parent = path.get(level);
+        int parentStart = offsets.get(level);
+        Child previous = from > 0 ? child(parent, from - 1) : null;
+        Child next = to < Node.size(parent.children) ? child(parent, to) : null;
+        int start = parentStart + (previous != null ? previous.end() : parent.nameEnd);
+        int oldEnd = parentStart + (next != null ? next.start() : parent.length - 1);
+        int newEnd = oldEnd + delta;
+        int firstIndex = previous != null ? previous.index() + 1 : 1;
+        int oldItems = (next != null ? next.index() : parent.itemCount + 1) - firstIndex;
+
+        // Lex only the new content and the '[' or ']' after it. Lines and columns are
+        // counted from the start of the content, and turned into offsets in it.
+        String content = text.substring(start, newEnd + 1);
+        int contentEnd = newEnd - start;
+        UnityLexer lexer = UnityTokenFactory.lexer(content);
+        ParallelUnityParser.SyntaxErrorFlag syntaxErrors = new ParallelUnityParser.SyntaxErrorFlag();
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrors);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        UnityParser parser = new UnityParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrors);
+
+        List<UnityParser.ElementContentContext> items = new ArrayList<>();
+        while (true) {
+            Token token = tokens.LT(1);
+            if (token.getStartIndex() >= contentEnd) {
+                if (next != null || token.getStartIndex() > contentEnd || token.getType() != UnityParser.T__2) {
+                    return false;
+                }
+                break;
+            }
+            if (token.getType() != UnityParser.T__1) {
+                return false;
+            }
+            tokens.consume();
+            if (next != null && tokens.LT(1).getStartIndex() == contentEnd) {
+                // The comma before the next child
+                break;
+            }
+            items.add(parser.elementContent());
+            if (syntaxErrors.failed) {
+                return false;
+            }
+        }
+        if (syntaxErrors.failed) {
+            return false;
+        }
+
+        // Errors of the replaced content are contiguous, as content is validated in order
+        int removeFrom = 0;
+        while (removeFrom < errors.size() && errors.get(removeFrom).offset < start) {
+            removeFrom++;
+        }
+        int removeTo = removeFrom;
+        while (removeTo < errors.size() && errors.get(removeTo).offset < oldEnd) {
+            removeTo++;
+        }
+        int shift = items.size() - oldItems;
+        if (shift != 0) {
+            // Errors of the element's own content may name content indexes, which change
+            for (int i = removeTo; i < errors.size(); i++) {
+                if (errors.get(i).owner == parent) {
+                    return false;
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<>(level + 1);
+        for (int i = 0; i <= level; i++) {
+            names.add(nameOf(offsets.get(i)));
+        }
+        UnityValidationListener validation = new UnityValidationListener(names, firstIndex);
+        for (UnityParser.ElementContentContext item : items) {
+            IterativeParseTreeWalker.DEFAULT.walk(validation, item);
+        }
+
+        // Splice the new child elements in; those after them keep their offsets and
+        // indexes relative to the previous child, which is only changed for the first
+        Node[] before = Node.split(parent.children, from);
+        Node after = Node.split(before[1], to - from)[1];
+        parent.children = before[0];
+        for (int i = 0; i < items.size(); i++) {
+            UnityParser.UnityElementContext element = items.get(i).unityElement();
+            if (element != null) {
+                build(element, parent, parentStart, firstIndex + i, index -> start + index);
+            }
+        }
+        if (after != null) {
+            Node.setFirst(after, next.start() + delta - Node.span(parent.children),
+                    next.index() + shift - Node.indexSpan(parent.children));
+        }
+        parent.children = Node.merge(parent.children, after);
+        parent.itemCount += shift;
+        for (int i = level; i >= 0; i--) {
+            path.get(i).length += delta;
+            if (i > 0) {
+                Node.refresh(path.get(i - 1).children, positions.get(i - 1));
+            }
+        }
+
+        errors.subList(removeFrom, removeTo).clear();
+        for (int i = removeFrom; i < errors.size(); i++) {
+            errors.get(i).offset += delta;
+        }
+        List<ErrorEntry> found = new ArrayList<>();
+        for (ValidationError error : validation.getErrors()) {
+            int offset = start + offsetIn(content, error.getLine(), error.getColumn());
+            found.add(entry(offset, error, parent, parentStart));
+        }
+        errors.addAll(removeFrom, found);
+        reparsedLength = content.length();
+        return true;
+    }
+
+    /**
+     * Parses the whole text, as {@link Unity#parse(String)} does.
+     */
+    private void parseFully() {
+        String input = text.toString();
+        UnityLexer lexer = new UnityLexer(CharStreams.fromString(input));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        UnityParser parser = new UnityParser(tokens);
+        UnityValidationListener validation = new UnityValidationListener();
+        parser.addParseListener(validation);
+        Unity.SyntaxErrorListener syntaxErrors = new Unity.SyntaxErrorListener(validation);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrors);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrors);
+
+        UnityParser.UnityContext tree = parser.unity();
+        reparsedLength = input.length();
+        errors.clear();
+        if (!syntaxErrors.getErrors().isEmpty()) {
+            root = null;
+            result = new Unity.ParseResult(tree, new ArrayList<>(syntaxErrors.getErrors()), input);
+            return;
+        }
+
+        // Token indexes count code points
+        IntUnaryOperator chars = IntUnaryOperator.identity();
+        if (input.codePointCount(0, input.length()) != input.length()) {
+            int[] offsets = input.codePoints().map(Character::charCount).toArray();
+            for (int i = 0, offset = 0; i < offsets.length; i++) {
+                int count = offsets[i];
+                offsets[i] = offset;
+                offset += count;
+            }
+            chars = codePoint -> offsets[codePoint];
+        }
+        root = build(tree.unityElement(), null, 0, 0, chars);
+        for (ValidationError error : validation.getErrors()) {
+            int offset = input.offsetByCodePoints(text.lineStart(error.getLine() - 1), error.getColumn());
+            errors.add(entry(offset, error, root, root.gap));
+        }
+        result = new Unity.ParseResult(tree, new ArrayList<>(validation.getErrors()), input);
+    }
+
+    // =========================================================================
+    // Elements
+    // =========================================================================
+
+    /**
+     * The extent of an element and its child elements, by char offset.
+     * <p>
+     * The children of an element are a treap, ordered by position and balanced by random
+     * priorities, in which each child holds its offset and content index relative to the
+     * previous child and each subtree sums them. The offset and index of a child are
+     * found by descending the treap, and an edit changes only the child after it and the
+     * sums on the path to that child.
+     */
+    private static final class Node {
+        // Offset of '[' from the end of the previous child, or from the parent's '[' for
+        // the first child; the offset in the text for the root
+        int gap;
+        // From '[' to ']' inclusive
+        int length;
+        // Offset of the end of the name from '['
+        int nameEnd;
+        // Content index less that of the previous child, or the index for the first child
+        int indexGap;
+        int itemCount;
+        // The root of the treap of child elements
+        Node children;
+
+        // Within the parent's treap
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node left;
+        Node right;
+        // Of the subtree: number of children, offset of the end of the last from the
+        // start of the subtree, and index of the last
+        int size;
+        int span;
+        int indexSpan;
+
+        static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        static int span(Node node) {
+            return node == null ? 0 : node.span;
+        }
+
+        static int indexSpan(Node node) {
+            return node == null ? 0 : node.indexSpan;
+        }
+
+        /**
+         * Recomputes the sums of a subtree from those of its subtrees.
+         */
+        static void update(Node node) {
+            node.size = size(node.left) + 1 + size(node.right);
+            node.span = span(node.left) + node.gap + node.length + span(node.right);
+            node.indexSpan = indexSpan(node.left) + node.indexGap + indexSpan(node.right);
+        }
+
+        static Node merge(Node a, Node b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            if (a.priority > b.priority) {
+                a.right = merge(a.right, b);
+                update(a);
+                return a;
+            }
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+
+        /**
+         * Splits a treap into its first {@code count} children and the rest.
+         */
+        static Node[] split(Node node, int count) {
+            if (node == null) {
+                return new Node[2];
+            }
+            if (count <= size(node.left)) {
+                Node[] parts = split(node.left, count);
+                node.left = parts[1];
+                update(node);
+                parts[1] = node;
+                return parts;
+            }
+            Node[] parts = split(node.right, count - size(node.left) - 1);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            return parts;
+        }
+
+        /**
+         * Sets the relative offset and index of the first child of a treap.
+         */
+        static void setFirst(Node node, int gap, int indexGap) {
+            if (node.left != null) {
+                setFirst(node.left, gap, indexGap);
+            } else {
+                node.gap = gap;
+                node.indexGap = indexGap;
+            }
+            update(node);
+        }
+
+        /**
+         * Recomputes the sums on the path to a child whose length has changed.
+         */
+        static void refresh(Node node, int position) {
+            int left = size(node.left);
+            if (position < left) {
+                refresh(node.left, position);
+            } else if (position > left) {
+                refresh(node.right, position - left - 1);
+            }
+            update(node);
+        }
+    }
+
+    /**
+     * A child element with its offset from its parent's '[' and its content index.
+     */
+    private record Child(Node node, int start, int index) {
+
+        /**
+         * Returns the offset just past ']' from the parent's '['.
+         */
+        int end() {
+            return start + node.length;
+        }
+    }
+
+    /**
+     * Returns the child element at a position among an element's children.
+     */
+    private static Child child(Node parent, int position) {
+        Node node = parent.children;
+        int start = 0;
+        int index = 0;
+        while (true) {
+            int left = Node.size(node.left);
+            if (position < left) {
+                node = node.left;
+                continue;
+            }
+            start += Node.span(node.left) + node.gap;
+            index += Node.indexSpan(node.left) + node.indexGap;
+            if (position == left) {
+                return new Child(node, start, index);
+            }
+            start += node.length;
+            position -= left + 1;
+            node = node.right;
+        }
+    }
+
+    /**
+     * Returns the position of the first child starting at or after an offset from an
+     * element's '['.
+     */
+    private static int firstChildFrom(Node parent, int offset) {
+        Node node = parent.children;
+        int base = 0;
+        int position = 0;
+        while (node != null) {
+            int start = base + Node.span(node.left) + node.gap;
+            if (start < offset) {
+                position += Node.size(node.left) + 1;
+                base = start + node.length;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Builds the nodes of an element and the elements within it, adding the element after
+     * the last child of its parent.
+     *
+     * @param parent      the parent, or null for the root
+     * @param parentStart char offset of the parent's '[', or 0 for the root
+     * @param chars       converts token indexes to char offsets
+     * @return the element's node
+     */
+    private static Node build(UnityParser.UnityElementContext element, Node parent, int parentStart, int index,
+                              IntUnaryOperator chars) {
+        Node top = null;
+        List<Object[]> pending = new ArrayList<>();
+        pending.add(new Object[]{element, parent, parentStart, index});
+        while (!pending.isEmpty()) {
+            Object[] next = pending.remove(pending.size() - 1);
+            UnityParser.UnityElementContext context = (UnityParser.UnityElementContext) next[0];
+            Node owner = (Node) next[1];
+            int start = chars.applyAsInt(context.getStart().getStartIndex());
+            Node node = new Node();
+            node.length = chars.applyAsInt(context.getStop().getStopIndex()) + 1 - start;
+            node.nameEnd = chars.applyAsInt(context.elementName().getStop().getStopIndex()) + 1 - start;
+            List<UnityParser.ElementContentContext> content = context.elementContent();
+            node.itemCount = content.size();
+            if (owner == null) {
+                node.gap = start;
+            } else {
+                node.gap = start - (int) next[2] - Node.span(owner.children);
+                node.indexGap = (int) next[3] - Node.indexSpan(owner.children);
+            }
+            Node.update(node);
+            if (top == null) {
+                top = node;
+            }
+            if (owner != null) {
+                owner.children = Node.merge(owner.children, node);
+            }
+            // Pushed last first, so that children are added in order
+            for (int i = content.size() - 1; i >= 0; i--) {
+                UnityParser.UnityElementContext child = content.get(i).unityElement();
+                if (child != null) {
+                    pending.add(new Object[]{child, node, start, i + 1});
+                }
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns the unquoted name of the element whose '[' is at an offset.
+     */
+    private String nameOf(int start) {
+        int from = start + 1;
+        while (text.charAt(from) != '"') {
+            from++;
+        }
+        int to = from + 1;
+        while (text.charAt(to) != '"') {
+            to += text.charAt(to) == '\\' ? 2 : 1;
+        }
+        return UnityStrings.unquote(text.subSequence(from, to + 1));
+    }
+
+    // =========================================================================
+    // Errors and positions
+    // =========================================================================
+
+    /**
+     * A validation error of the current text, by char offset and innermost element.
+     */
+    private static final class ErrorEntry {
+        int offset;
+        final Node owner;
+        final String message;
+        final String path;
+
+        ErrorEntry(int offset, Node owner, String message, String path) {
+            this.offset = offset;
+            this.owner = owner;
+            this.message = message;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Records an error at an offset within an element, by the innermost element there.
+     */
+    private static ErrorEntry entry(int offset, ValidationError error, Node within, int withinStart) {
+        Node owner = within;
+        int ownerStart = withinStart;
+        while (true) {
+            int i = firstChildFrom(owner, offset - ownerStart + 1) - 1;
+            if (i < 0) {
+                break;
+            }
+            Child child = child(owner, i);
+            if (ownerStart + child.end() <= offset) {
+                break;
+            }
+            ownerStart += child.start();
+            owner = child.node();
+        }
+        return new ErrorEntry(offset, owner, error.getMessage(), error.getPath());
+    }
+
+    /**
+     * Returns the char offset in a text of a 1-based line and a column in code points.
+     */
+    private static int offsetIn(String text, int line, int column) {
+        int lineStart = 0;
+        for (int i = 1; i < line; i++) {
+            lineStart = text.indexOf('\n', lineStart) + 1;
+        }
+        return text.offsetByCodePoints(lineStart, column);
+    }
+
+    private List<ValidationError> resolveErrors() {
+        List<ValidationError> resolved = new ArrayList<>(errors.size());
+        for (ErrorEntry error : errors) {
+            resolved.add(new ValidationError(text.lineOf(error.offset) + 1, text.columnOf(error.offset),
+                    error.message, error.path));
+        }
+        return resolved;
+    }
+}
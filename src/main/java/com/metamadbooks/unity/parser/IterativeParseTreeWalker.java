@@ -0,0 +1,74 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.Arrays;
+
+/**
+ * Parse tree walker that uses an explicit, heap-allocated stack instead of recursion.
+ * <p>
+ * {@link ParseTreeWalker} uses one Java stack frame per tree level, so walking a
+ * document nested a few thousand elements deep overflows default thread stacks.
+ * This walker fires exactly the same listener events in the same order, but its
+ * nesting is bounded only by available heap.
+ */
+public class IterativeParseTreeWalker extends ParseTreeWalker {
+
+    /**
+     * Shared instance; the walker itself is stateless.
+     */
+    public static final IterativeParseTreeWalker DEFAULT = new IterativeParseTreeWalker();
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    @Override
+    public void walk(ParseTreeListener listener, ParseTree t) {
+        if (t instanceof ErrorNode) {
+            listener.visitErrorNode((ErrorNode) t);
+            return;
+        } else if (t instanceof TerminalNode) {
+            listener.visitTerminal((TerminalNode) t);
+            return;
+        }
+
+        RuleNode[] nodes = new RuleNode[INITIAL_STACK_SIZE];
+        int[] nextChild = new int[INITIAL_STACK_SIZE];
+        int top = 0;
+        nodes[0] = (RuleNode) t;
+        enterRule(listener, nodes[0]);
+
+        while (top >= 0) {
+            RuleNode node = nodes[top];
+            int index = nextChild[top];
+
+            if (index < node.getChildCount()) {
+                nextChild[top] = index + 1;
+                ParseTree child = node.getChild(index);
+
+                if (child instanceof ErrorNode) {
+                    listener.visitErrorNode((ErrorNode) child);
+                } else if (child instanceof TerminalNode) {
+                    listener.visitTerminal((TerminalNode) child);
+                } else {
+                    enterRule(listener, (RuleNode) child);
+                    top++;
+                    if (top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                        nextChild = Arrays.copyOf(nextChild, nextChild.length * 2);
+                    }
+                    nodes[top] = (RuleNode) child;
+                    nextChild[top] = 0;
+                }
+            } else {
+                exitRule(listener, node);
+                nodes[top] = null;
+                top--;
+            }
+        }
+    }
+}
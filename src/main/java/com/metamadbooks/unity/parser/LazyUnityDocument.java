@@ -0,0 +1,358 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Unity document whose elements are parsed only when they are used.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * LazyUnityDocument document = LazyUnityDocument.parse(text);
+ * for (LazyUnityDocument.Element item : document.getRoot().getChildren()) {
+ *     if (item.getName().equals("item")) {
+ *         UnityParser.UnityElementContext tree = item.getTree();
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ * Parsing the document only builds its {@link StructuralIndex}, which pairs up brackets
+ * without a lexer. Elements are found from it as they are asked for: the range and
+ * direct children of an element, and its name, cost a look at the index and the text
+ * around them. An element's subtree is lexed, parsed and validated when its tree or
+ * errors are first asked for, starting from its true line and column so that tokens and
+ * {@link ValidationError}s carry their positions and paths in the document; the tree and
+ * errors are kept until {@link Element#release()}.
+ * <p>
+ * {@link #getErrors()} validates the whole document and reports exactly the errors of
+ * {@link Unity#parse(String)}. If the document has a syntax error, it is then parsed
+ * whole, so that error recovery and messages are those of {@link Unity#parse(String)}.
+ * <p>
+ * A document and its elements can be used from several threads. Each element parses
+ * under its own lock, taking only the locks of its ancestors while it does; the document
+ * takes no lock, and what it computes on first use depends only on the text, so threads
+ * that race to compute it get the same result.
+ */
+public final class LazyUnityDocument {
+
+    private final String text;
+    private final StructuralIndex index;
+    private final Element root;
+    // Char offsets of line starts, built on the first parse
+    private volatile int[] lineStarts;
+    private volatile List<ValidationError> errors;
+
+    private LazyUnityDocument(String text) {
+        this.text = text;
+        this.index = StructuralIndex.build(text);
+        this.root = findRoot();
+    }
+
+    /**
+     * Indexes a document for lazy parsing.
+     *
+     * @param input the Unity document as a string
+     * @return the document
+     */
+    public static LazyUnityDocument parse(String input) {
+        return new LazyUnityDocument(input);
+    }
+
+    /**
+     * Returns the document text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the root element, or null if the document is not one balanced element,
+     * surrounded by nothing but whitespace.
+     */
+    public Element getRoot() {
+        return root;
+    }
+
+    /**
+     * Validates the whole document, parsing any elements not yet parsed.
+     *
+     * @return the errors that {@link Unity#parse(String)} reports for the document
+     */
+    public List<ValidationError> getErrors() {
+        List<ValidationError> found = errors;
+        if (found == null) {
+            Parsed parsed = root != null ? root.materialize() : null;
+            if (parsed != null && parsed.wellFormed) {
+                found = parsed.errors;
+            } else {
+                found = Collections.unmodifiableList(Unity.parse(text).getErrors());
+            }
+            errors = found;
+        }
+        return found;
+    }
+
+    /**
+     * Returns true if the document is valid; see {@link #getErrors()}.
+     */
+    public boolean isValid() {
+        return getErrors().isEmpty();
+    }
+
+    /**
+     * Releases the parse trees and errors of all elements.
+     */
+    public void release() {
+        errors = null;
+        if (root != null) {
+            root.release();
+        }
+    }
+
+    private Element findRoot() {
+        int last = index.size() - 1;
+        if (last < 1 || index.charAt(0) != '[' || !index.isBalanced() || index.matchingClose(0) != last) {
+            return null;
+        }
+        // Non-ASCII chars are not structural, so check the text outside the root itself
+        int start = index.offset(0);
+        int end = index.offset(last) + 1;
+        if (!isWhitespace(0, start) || !isWhitespace(end, text.length())) {
+            return null;
+        }
+        return new Element(null, 0, 0);
+    }
+
+    private boolean isWhitespace(int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] lineStarts() {
+        int[] built = lineStarts;
+        if (built == null) {
+            int[] starts = new int[64];
+            int count = 1;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+            built = Arrays.copyOf(starts, count);
+            lineStarts = built;
+        }
+        return built;
+    }
+
+    /**
+     * Parsed subtree of an element, with its errors.
+     */
+    private static final class Parsed {
+        final UnityParser.UnityElementContext tree;
+        final List<ValidationError> errors;
+        // No syntax errors, and the parse ended at the element's closing bracket
+        final boolean wellFormed;
+
+        Parsed(UnityParser.UnityElementContext tree, List<ValidationError> errors, boolean wellFormed) {
+            this.tree = tree;
+            this.errors = Collections.unmodifiableList(errors);
+            this.wellFormed = wellFormed;
+        }
+    }
+
+    /**
+     * An element of a {@link LazyUnityDocument}.
+     */
+    public final class Element {
+        private final Element parent;
+        // Structural positions of '[' and the matching ']'
+        private final int open;
+        private final int close;
+        private final int contentIndex;
+        private String name;
+        private List<Element> children;
+        private Parsed parsed;
+
+        private Element(Element parent, int open, int contentIndex) {
+            this.parent = parent;
+            this.open = open;
+            this.close = index.matchingClose(open);
+            this.contentIndex = contentIndex;
+        }
+
+        /**
+         * Returns the enclosing element, or null for the root.
+         */
+        public Element getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the index of the element within its parent's content (1-based, as the
+         * element name is at index 0), or 0 for the root.
+         */
+        public int getContentIndex() {
+            return contentIndex;
+        }
+
+        /**
+         * Returns the char offset of the element's '['.
+         */
+        public int getStart() {
+            return index.offset(open);
+        }
+
+        /**
+         * Returns the char offset just past the element's ']'.
+         */
+        public int getEnd() {
+            return index.offset(close) + 1;
+        }
+
+        /**
+         * Returns the text of the element.
+         */
+        public String getText() {
+            return text.substring(getStart(), getEnd());
+        }
+
+        /**
+         * Returns the decoded element name, or null if the element does not start with
+         * a string.
+         */
+        public synchronized String getName() {
+            if (name == null && open + 1 < close && index.charAt(open + 1) == '"') {
+                int from = index.offset(open + 1);
+                int to = from + 1;
+                while (to < text.length() && text.charAt(to) != '"') {
+                    to += text.charAt(to) == '\\' ? 2 : 1;
+                }
+                name = UnityStrings.unquote(text.subSequence(from, Math.min(to + 1, text.length())));
+            }
+            return name;
+        }
+
+        /**
+         * Returns the child elements, in document order, without parsing anything.
+         */
+        public synchronized List<Element> getChildren() {
+            if (children == null) {
+                List<Element> found = new ArrayList<>();
+                // Content items follow the name, each after a comma
+                int item = 1;
+                int i = open + 1 < close ? index.skipValue(open + 1) : close;
+                while (i > 0 && i < close && index.charAt(i) == ',' && i + 1 < close) {
+                    if (index.charAt(i + 1) == '[') {
+                        found.add(new Element(this, i + 1, item));
+                    }
+                    i = index.skipValue(i + 1);
+                    item++;
+                }
+                children = Collections.unmodifiableList(found);
+            }
+            return children;
+        }
+
+        /**
+         * Returns the element's parse tree, parsing the element's subtree if it has not
+         * been parsed. Tokens carry their positions in the document.
+         */
+        public UnityParser.UnityElementContext getTree() {
+            return materialize().tree;
+        }
+
+        /**
+         * Returns the errors within the element's subtree, parsing and validating it if
+         * it has not been. For an element without syntax errors, these are the errors
+         * that {@link Unity#parse(String)} reports within it, with the same positions and
+         * paths. Syntax errors are those of parsing the element on its own.
+         */
+        public List<ValidationError> getErrors() {
+            return materialize().errors;
+        }
+
+        /**
+         * Returns true if the element's subtree is parsed and kept.
+         */
+        public synchronized boolean isMaterialized() {
+            return parsed != null;
+        }
+
+        /**
+         * Releases the parse trees and errors of the element and the elements within it,
+         * and the child elements found so far.
+         */
+        public void release() {
+            List<Element> pending = new ArrayList<>();
+            pending.add(this);
+            while (!pending.isEmpty()) {
+                Element element = pending.remove(pending.size() - 1);
+                synchronized (element) {
+                    element.parsed = null;
+                    if (element.children != null) {
+                        pending.addAll(element.children);
+                        element.children = null;
+                    }
+                }
+            }
+        }
+
+        private synchronized Parsed materialize() {
+            if (parsed == null) {
+                parsed = parse();
+            }
+            return parsed;
+        }
+
+        private Parsed parse() {
+            int start = getStart();
+            int[] lines = lineStarts();
+            int line = Arrays.binarySearch(lines, start);
+            line = line >= 0 ? line : -line - 2;
+
+            // Lex from the true position, so that tokens carry their lines and columns
+            UnityCharSequenceStream stream = new UnityCharSequenceStream(text);
+            stream.seek(start);
+            UnityLexer lexer = new UnityLexer(stream);
+            lexer.setTokenFactory(UnityTokenFactory.INSTANCE);
+            lexer.setLine(line + 1);
+            lexer.setCharPositionInLine(start - lines[line]);
+            Unity.SyntaxErrorListener syntaxErrors = new Unity.SyntaxErrorListener();
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(syntaxErrors);
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            UnityParser parser = new UnityParser(tokens);
+            parser.removeErrorListeners();
+            parser.addErrorListener(syntaxErrors);
+
+            UnityParser.UnityElementContext tree = parser.unityElement();
+            if (!syntaxErrors.getErrors().isEmpty()) {
+                return new Parsed(tree, new ArrayList<>(syntaxErrors.getErrors()), false);
+            }
+            boolean ended = tree.getStop() != null && tree.getStop().getStopIndex() == getEnd() - 1;
+
+            List<String> path = new ArrayList<>();
+            for (Element ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                path.add(0, ancestor.getName());
+            }
+            UnityValidationListener validation = new UnityValidationListener(path, contentIndex);
+            IterativeParseTreeWalker.DEFAULT.walk(validation, tree);
+            return new Parsed(tree, new ArrayList<>(validation.getErrors()), ended);
+        }
+
+        @Override
+        public String toString() {
+            return "element " + getName() + " at " + getStart() + ".." + getEnd();
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a single large Unity document using several cores.
+ * <p>
+ * A {@link StructuralIndex} pre-scan finds the boundaries of the root element's children,
+ * skipping each child subtree in constant time. Batches of
+ * children are then lexed, parsed and validated concurrently on a {@link ForkJoinPool},
+ * each batch reading from a shared code point buffer positioned at its first child, and
+ * the subtrees are attached to a single root element in document order. Because every
+ * lexer starts at the true offset, line and column, tokens and {@link ValidationError}s
+ * carry the same positions and element paths as a sequential {@link Unity#parse(String)}.
+ * <p>
+ * Token indexes are only consistent within each batch. Inputs below the size threshold,
+ * and inputs containing any syntax error, are parsed sequentially so that error recovery
+ * and messages are exactly those of {@link Unity#parse(String)}.
+ * <p>
+ * The built-in rules check each name and attributes object on its own, so each batch
+ * runs them on its children. Other rule sets may keep state across the whole document,
+ * such as a {@link UnitySchema}'s content model of the root element, so they run in one
+ * walk over the assembled tree once all batches are parsed.
+ */
+public class ParallelUnityParser {
+
+    /**
+     * Default minimum input length, in chars, for which parallel parsing is attempted.
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final UnityRuleSet rules;
+
+    /**
+     * Creates a parser that runs on the common pool with the default threshold.
+     */
+    public ParallelUnityParser() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a parser that runs on the given pool.
+     *
+     * @param pool      the pool to run batches on
+     * @param threshold minimum input length, in chars, for which parallel parsing is attempted
+     */
+    public ParallelUnityParser(ForkJoinPool pool, int threshold) {
+        this(pool, threshold, UnityRuleSet.defaults());
+    }
+
+    /**
+     * Creates a parser that runs on the given pool and validates with the given rules.
+     *
+     * @param pool      the pool to run batches on
+     * @param threshold minimum input length, in chars, for which parallel parsing is attempted
+     * @param rules     the validation rules
+     */
+    public ParallelUnityParser(ForkJoinPool pool, int threshold, UnityRuleSet rules) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.rules = rules;
+    }
+
+    /**
+     * Parses and validates a Unity document.
+     *
+     * @param input the Unity document as a string
+     * @return the parse result, equivalent to that of {@link Unity#parse(String, UnityRuleSet)}
+     */
+    public Unity.ParseResult parse(String input) {
+        if (input.length() < threshold) {
+            return Unity.parse(input, rules);
+        }
+        Layout layout = Layout.scan(input);
+        if (layout == null || layout.childCount == 0) {
+            return Unity.parse(input, rules);
+        }
+
+        CodePointBuffer.Builder builder = CodePointBuffer.builder(input.length());
+        // CharBuffer.wrap(String) is read-only and has no array, which the builder requires
+        builder.append(CharBuffer.wrap(input.toCharArray()));
+        CodePointBuffer buffer = builder.build();
+
+        Unity.ParseResult result = parseLayout(buffer, layout);
+        return result != null ? result : Unity.parse(input, rules);
+    }
+
+    /**
+     * Parses the pre-scanned document, or returns null if any syntax error was found.
+     */
+    private Unity.ParseResult parseLayout(CodePointBuffer buffer, Layout layout) {
+        // Root header: '[' and the element name, lexed from the start of the input
+        SyntaxErrorFlag headerErrors = new SyntaxErrorFlag();
+        UnityLexer headerLexer = newLexer(CodePointCharStream.fromBuffer(buffer), 0, 1, 0, headerErrors);
+        Token open = headerLexer.nextToken();
+        Token nameToken = headerLexer.nextToken();
+        if (open.getType() != UnityParser.T__0 || nameToken.getType() != UnityParser.STRING
+                || headerErrors.failed) {
+            return null;
+        }
+
+        UnityParser.UnityContext root = new UnityParser.UnityContext(null, -1);
+        UnityParser.UnityElementContext element =
+                new UnityParser.UnityElementContext(root, UnityParserStates.UNITY_ELEMENT);
+        root.addChild(element);
+        root.start = open;
+        element.start = open;
+        element.addChild(new TerminalNodeImpl(open));
+
+        UnityParser.ElementNameContext name =
+                new UnityParser.ElementNameContext(element, UnityParserStates.ELEMENT_NAME);
+        name.start = nameToken;
+        name.stop = nameToken;
+        name.addChild(new TerminalNodeImpl(nameToken));
+        element.addChild(name);
+
+        // Root name validation comes first in a sequential walk
+        boolean perBatch = rules == UnityRuleSet.defaults();
+        List<ValidationError> errors = new ArrayList<>();
+        if (perBatch) {
+            UnityValidationListener headerListener = new UnityValidationListener();
+            IterativeParseTreeWalker.DEFAULT.walk(headerListener, name);
+            errors.addAll(headerListener.getErrors());
+        }
+        List<String> rootPath = perBatch ? List.of(UnityStrings.unquote(nameToken.getText())) : null;
+
+        // Children, in batches of roughly equal size
+        int[] batchStarts = layout.batches(pool.getParallelism() * BATCHES_PER_THREAD);
+        List<ForkJoinTask<Batch>> tasks = new ArrayList<>(batchStarts.length - 1);
+        for (int b = 0; b + 1 < batchStarts.length; b++) {
+            int from = batchStarts[b];
+            int to = batchStarts[b + 1];
+            tasks.add(pool.submit(() -> parseBatch(buffer, layout, from, to, rootPath)));
+        }
+
+        for (ForkJoinTask<Batch> task : tasks) {
+            Batch batch;
+            try {
+                batch = task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Parallel parse failed", e.getCause());
+            }
+            if (batch == null) {
+                return null;
+            }
+            for (int i = 0; i < batch.contents.length; i++) {
+                element.addChild(new TerminalNodeImpl(batch.commas[i]));
+                batch.contents[i].setParent(element);
+                element.addChild(batch.contents[i]);
+            }
+            errors.addAll(batch.errors);
+        }
+
+        // Root trailer: ']' and EOF
+        SyntaxErrorFlag trailerErrors = new SyntaxErrorFlag();
+        UnityLexer trailerLexer = newLexer(CodePointCharStream.fromBuffer(buffer),
+                layout.closeCodePoint, layout.closeLine, layout.closeColumn, trailerErrors);
+        Token close = trailerLexer.nextToken();
+        Token eof = trailerLexer.nextToken();
+        if (close.getType() != UnityParser.T__2 || eof.getType() != Token.EOF || trailerErrors.failed) {
+            return null;
+        }
+        element.addChild(new TerminalNodeImpl(close));
+        element.stop = close;
+        root.addChild(new TerminalNodeImpl(eof));
+        root.stop = eof;
+
+        if (!perBatch) {
+            UnityValidationListener listener = new UnityValidationListener(rules);
+            IterativeParseTreeWalker.DEFAULT.walk(listener, root);
+            errors.addAll(listener.getErrors());
+        }
+        return new Unity.ParseResult(root, errors);
+    }
+
+    /**
+     * Parses and validates children [from, to) of the root element, or returns null on a
+     * syntax error or if the parse does not line up with the pre-scanned boundaries. The
+     * children are not validated if the root path is null.
+     */
+    private static Batch parseBatch(CodePointBuffer buffer, Layout layout, int from, int to,
+                                    List<String> rootPath) {
+        SyntaxErrorFlag syntaxErrors = new SyntaxErrorFlag();
+        UnityLexer lexer = newLexer(CodePointCharStream.fromBuffer(buffer), layout.commaCodePoints[from],
+                layout.commaLines[from], layout.commaColumns[from], syntaxErrors);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        UnityParser parser = new UnityParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrors);
+
+        Batch batch = new Batch(to - from);
+        for (int i = from; i < to; i++) {
+            Token comma = tokens.LT(1);
+            if (comma.getType() != UnityParser.T__1 || comma.getStartIndex() != layout.commaCodePoints[i]) {
+                return null;
+            }
+            tokens.consume();
+
+            UnityParser.ElementContentContext content = parser.elementContent();
+            if (syntaxErrors.failed) {
+                return null;
+            }
+            content.invokingState = UnityParserStates.ELEMENT_CONTENT;
+            batch.commas[i - from] = comma;
+            batch.contents[i - from] = content;
+
+            if (rootPath != null) {
+                UnityValidationListener listener = new UnityValidationListener(rootPath, i + 1);
+                IterativeParseTreeWalker.DEFAULT.walk(listener, content);
+                batch.errors.addAll(listener.getErrors());
+            }
+        }
+
+        // The next token must be the following child's comma or the root's closing bracket
+        int expectedNext = to < layout.childCount ? layout.commaCodePoints[to] : layout.closeCodePoint;
+        if (tokens.LT(1).getStartIndex() != expectedNext || syntaxErrors.failed) {
+            return null;
+        }
+        return batch;
+    }
+
+    private static UnityLexer newLexer(CharStream stream, int codePoint, int line, int column,
+                                       SyntaxErrorFlag errors) {
+        stream.seek(codePoint);
+        UnityLexer lexer = new UnityLexer(stream);
+        lexer.setLine(line);
+        lexer.setCharPositionInLine(column);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
+        return lexer;
+    }
+
+    /**
+     * Parsed children of one batch and their validation errors.
+     */
+    private static final class Batch {
+        private final Token[] commas;
+        private final UnityParser.ElementContentContext[] contents;
+        private final List<ValidationError> errors = new ArrayList<>();
+
+        Batch(int size) {
+            this.commas = new Token[size];
+            this.contents = new UnityParser.ElementContentContext[size];
+        }
+    }
+
+    /**
+     * Records whether any syntax error was reported.
+     */
+    static final class SyntaxErrorFlag extends BaseErrorListener {
+        volatile boolean failed = false;
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                int line, int charPositionInLine, String msg,
+                                RecognitionException e) {
+            failed = true;
+        }
+    }
+
+    /**
+     * Positions of the root element's children found by the structural pre-scan.
+     * <p>
+     * Offsets are code point indexes, matching {@link CharStream#index()}; lines are 1-based
+     * and columns 0-based, counted the way the lexer counts them.
+     */
+    static final class Layout {
+        int childCount = 0;
+        int[] commaChars = new int[16];
+        int[] commaCodePoints;
+        int[] commaLines;
+        int[] commaColumns;
+        int closeChar;
+        int closeCodePoint;
+        int closeLine;
+        int closeColumn;
+
+        /**
+         * Scans the root element's structure, or returns null if the input is not shaped
+         * like a single Unity element; such inputs are left to the sequential parser.
+         */
+        static Layout scan(String input) {
+            StructuralIndex index = StructuralIndex.build(input);
+            if (index.size() < 2 || index.charAt(0) != '[' || index.charAt(1) != '"' || !index.isBalanced()) {
+                return null;
+            }
+            // The root must close at the last structural position
+            int close = index.matchingClose(0);
+            if (close != index.size() - 1) {
+                return null;
+            }
+
+            Layout layout = new Layout();
+            int i = 2;
+            while (i < close) {
+                if (index.charAt(i) != ',') {
+                    return null;
+                }
+                layout.addChild(index.offset(i));
+                i = index.skipValue(i + 1);
+                if (i < 0 || i > close) {
+                    return null;
+                }
+            }
+            layout.closeChar = index.offset(close);
+            layout.computePositions(input);
+            return layout;
+        }
+
+        /**
+         * Splits the children into at most {@code count} batches of similar char length.
+         *
+         * @return batch start indexes followed by {@code childCount}
+         */
+        int[] batches(int count) {
+            int first = commaChars[0];
+            long span = Math.max(1, closeChar - first);
+            int[] starts = new int[Math.min(count, childCount) + 1];
+            int batches = 0;
+            for (int child = 0; child < childCount; child++) {
+                long position = (long) (commaChars[child] - first) * (starts.length - 1) / span;
+                if (child == 0 || position >= batches) {
+                    starts[batches++] = child;
+                }
+            }
+            starts[batches] = childCount;
+            return Arrays.copyOf(starts, batches + 1);
+        }
+
+        private void addChild(int comma) {
+            if (childCount == commaChars.length) {
+                commaChars = Arrays.copyOf(commaChars, childCount * 2);
+            }
+            commaChars[childCount++] = comma;
+        }
+
+        /**
+         * Converts char offsets of the commas and the closing bracket into code point
+         * indexes, lines and columns in one pass over the input.
+         */
+        private void computePositions(String input) {
+            commaCodePoints = new int[childCount];
+            commaLines = new int[childCount];
+            commaColumns = new int[childCount];
+
+            int codePoint = 0;
+            int line = 1;
+            int column = 0;
+            int i = 0;
+            for (int target = 0; target <= childCount; target++) {
+                int offset = target < childCount ? commaChars[target] : closeChar;
+                while (i < offset) {
+                    char c = input.charAt(i++);
+                    if (Character.isHighSurrogate(c) && i < offset && Character.isLowSurrogate(input.charAt(i))) {
+                        i++;
+                    }
+                    codePoint++;
+                    if (c == '\n') {
+                        line++;
+                        column = 0;
+                    } else {
+                        column++;
+                    }
+                }
+                if (target < childCount) {
+                    commaCodePoints[target] = codePoint;
+                    commaLines[target] = line;
+                    commaColumns[target] = column;
+                } else {
+                    closeCodePoint = codePoint;
+                    closeLine = line;
+                    closeColumn = column;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} that pulls items from a blocking source only as subscribers
+ * request them.
+ * <p>
+ * Every subscription opens its own source. Items are produced on the given executor,
+ * never more than the outstanding demand, so nothing is read ahead of the subscriber.
+ * Signals to one subscriber are serialized: at most one drain task per subscription runs
+ * at a time.
+ */
+final class PullPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * A blocking source of items; {@link #next()} returns null when exhausted.
+     */
+    interface Source<T> extends AutoCloseable {
+        T next() throws Exception;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private final Callable<? extends Source<T>> opener;
+    private final Executor executor;
+
+    PullPublisher(Callable<? extends Source<T>> opener, Executor executor) {
+        this.opener = Objects.requireNonNull(opener, "opener");
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new PullSubscription<>(subscriber, opener, executor));
+    }
+
+    private static final class PullSubscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Callable<? extends Source<T>> opener;
+        private final Executor executor;
+
+        private final AtomicLong demand = new AtomicLong();
+        // Number of signals since the drain task last looked; non-zero while a drain is scheduled
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable badRequest;
+
+        // Only touched by the drain task
+        private Source<T> source;
+        private boolean done = false;
+
+        PullSubscription(Flow.Subscriber<? super T> subscriber, Callable<? extends Source<T>> opener,
+                         Executor executor) {
+            this.subscriber = subscriber;
+            this.opener = opener;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            // Release the source on the executor, where it is owned
+            schedule();
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    work.set(0);
+                    if (!cancelled) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    drain();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (cancelled) {
+                terminate();
+                return;
+            }
+            if (badRequest != null) {
+                terminate();
+                subscriber.onError(badRequest);
+                return;
+            }
+            try {
+                if (source == null) {
+                    source = opener.call();
+                }
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted < requested && !cancelled) {
+                    T item = source.next();
+                    if (item == null) {
+                        terminate();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+            } catch (Throwable t) {
+                terminate();
+                subscriber.onError(t);
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (Exception e) {
+                    // Nothing more can be signalled; the subscription is over
+                }
+                source = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.metamadbooks.unity.parser;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Index of the structural characters of a Unity (JSON) document, built without a lexer.
+ * <p>
+ * The input is processed in 64-byte blocks, eight bytes at a time as {@code long} words
+ * (SWAR). For each block, bitmaps of quotes, backslashes, whitespace and the operators
+ * {@code [ ] { } , :} are computed with word-parallel byte comparisons; escaped characters
+ * and in-string regions are then derived with bit arithmetic, carrying state from one block
+ * to the next. The index records, in order, the offset of
+ * <ul>
+ *   <li>every operator outside a string</li>
+ *   <li>the opening quote of every string</li>
+ *   <li>the first character of every other scalar (numbers and literals)</li>
+ * </ul>
+ * which is enough to skip whole subtrees, split a document into chunks, reject unbalanced
+ * documents and drive a tokenizer, all without looking at individual characters again.
+ * <p>
+ * Offsets are byte offsets for {@code byte[]} (UTF-8) input and char offsets for
+ * {@link String} input. Every structural character is ASCII, so a String is projected to one
+ * byte per char, with non-ASCII chars replaced by a non-structural byte.
+ * <p>
+ * The index does not validate tokens; it is a pre-scan, not a parser.
+ */
+public final class StructuralIndex {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long GATHER = 0x0102040810204080L;
+
+    private static final int BLOCK = 64;
+    private static final byte NON_ASCII = (byte) 0x80;
+
+    private final byte[] input;
+    private final int start;
+    private final int length;
+    private final int[] positions;
+    private final int count;
+    private final boolean unterminatedString;
+    private int[] matches;
+    private int balance = 0;
+
+    private StructuralIndex(byte[] input, int start, int length, int[] positions, int count,
+                            boolean unterminatedString) {
+        this.input = input;
+        this.start = start;
+        this.length = length;
+        this.positions = positions;
+        this.count = count;
+        this.unterminatedString = unterminatedString;
+    }
+
+    /**
+     * Indexes a UTF-8 encoded document.
+     *
+     * @param utf8 the document bytes
+     * @return the structural index
+     */
+    public static StructuralIndex build(byte[] utf8) {
+        return build(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Indexes a range of a UTF-8 encoded document. Offsets in the index are relative to
+     * {@code offset}.
+     *
+     * @param utf8   the buffer holding the document
+     * @param offset start of the document in the buffer
+     * @param length length of the document in bytes
+     * @return the structural index
+     */
+    public static StructuralIndex build(byte[] utf8, int offset, int length) {
+        return new Builder(utf8, offset, length).build();
+    }
+
+    /**
+     * Indexes a document held as a String. Offsets in the index are char offsets.
+     *
+     * @param input the document
+     * @return the structural index
+     */
+    public static StructuralIndex build(String input) {
+        // One byte per char, so offsets stay char offsets; surrogates must not be merged
+        byte[] bytes = new byte[input.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = input.charAt(i);
+            bytes[i] = c < 0x80 ? (byte) c : NON_ASCII;
+        }
+        return build(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the number of indexed positions.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the length of the indexed document.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the offset of the i-th structural position.
+     *
+     * @param i index into the structural positions, 0-based
+     * @return the offset in the document
+     */
+    public int offset(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return positions[i];
+    }
+
+    /**
+     * Returns the character at the i-th structural position: an operator, {@code '"'} for a
+     * string, or the first character of another scalar.
+     *
+     * @param i index into the structural positions, 0-based
+     * @return the structural character
+     */
+    public char charAt(int i) {
+        return (char) (input[start + offset(i)] & 0xFF);
+    }
+
+    /**
+     * Returns true if the document ends inside a string.
+     */
+    public boolean hasUnterminatedString() {
+        return unterminatedString;
+    }
+
+    /**
+     * Returns true if every string is terminated and every bracket and brace is closed by
+     * one of the same kind. A document that fails this check cannot be valid Unity.
+     */
+    public boolean isBalanced() {
+        computeMatches();
+        return balance == 0 && !unterminatedString;
+    }
+
+    /**
+     * Returns the index of the position closing the bracket or brace at position i.
+     *
+     * @param i index of an opening '[' or '{'
+     * @return index of the matching ']' or '}', or -1 if it is not closed correctly
+     */
+    public int matchingClose(int i) {
+        char c = charAt(i);
+        if (c != '[' && c != '{') {
+            throw new IllegalArgumentException("Not an opening bracket at position " + i + ": " + c);
+        }
+        computeMatches();
+        return matches[i];
+    }
+
+    /**
+     * Returns the index of the first position after the value starting at position i. For
+     * an array or object this skips the entire subtree in constant time.
+     *
+     * @param i index of the first position of a value
+     * @return index of the next position after the value, or -1 if the value is not closed
+     */
+    public int skipValue(int i) {
+        char c = charAt(i);
+        if (c == '[' || c == '{') {
+            int close = matchingClose(i);
+            return close < 0 ? -1 : close + 1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Pairs up brackets with a stack pass over the positions, once.
+     */
+    private synchronized void computeMatches() {
+        if (matches != null) {
+            return;
+        }
+        int[] result = new int[count];
+        int[] stack = new int[64];
+        int top = 0;
+        int unbalanced = 0;
+        for (int i = 0; i < count; i++) {
+            result[i] = -1;
+            byte c = input[start + positions[i]];
+            if (c == '[' || c == '{') {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = i;
+            } else if (c == ']' || c == '}') {
+                if (top == 0) {
+                    unbalanced++;
+                    continue;
+                }
+                int open = stack[--top];
+                byte o = input[start + positions[open]];
+                if ((o == '[') == (c == ']')) {
+                    result[open] = i;
+                } else {
+                    unbalanced++;
+                }
+            }
+        }
+        balance = unbalanced + top;
+        matches = result;
+    }
+
+    /**
+     * Single-use builder holding the block-to-block carry state.
+     */
+    private static final class Builder {
+        private final byte[] input;
+        private final int start;
+        private final int length;
+        private int[] positions;
+        private int count = 0;
+
+        // Carry state between blocks
+        private boolean escapeNext = false;
+        private long inString = 0;
+        private long scalarCarry = 0;
+
+        Builder(byte[] input, int start, int length) {
+            if (start < 0 || length < 0 || start + length > input.length) {
+                throw new IndexOutOfBoundsException("Range " + start + "+" + length + " outside " + input.length);
+            }
+            this.input = input;
+            this.start = start;
+            this.length = length;
+            // Typical documents have one structural position per 4-8 bytes
+            this.positions = new int[Math.max(16, length / 4)];
+        }
+
+        StructuralIndex build() {
+            int offset = 0;
+            for (; offset + BLOCK <= length; offset += BLOCK) {
+                block(input, start + offset, offset);
+            }
+            if (offset < length) {
+                // Pad the tail with spaces so the last block can be read as whole words
+                byte[] tail = new byte[BLOCK];
+                Arrays.fill(tail, (byte) ' ');
+                System.arraycopy(input, start + offset, tail, 0, length - offset);
+                block(tail, 0, offset);
+            }
+            return new StructuralIndex(input, start, length, positions, count, inString != 0);
+        }
+
+        /**
+         * Indexes the 64 bytes at {@code at}, which are at document offset {@code base}.
+         */
+        private void block(byte[] bytes, int at, int base) {
+            long quote = 0;
+            long backslash = 0;
+            long operator = 0;
+            long whitespace = 0;
+            for (int w = 0; w < 8; w++) {
+                long word = (long) LONGS.get(bytes, at + (w << 3));
+                int shift = w << 3;
+                quote |= gather(equal(word, '"')) << shift;
+                backslash |= gather(equal(word, '\\')) << shift;
+                operator |= gather(equal(word, '[') | equal(word, ']') | equal(word, '{')
+                        | equal(word, '}') | equal(word, ',') | equal(word, ':')) << shift;
+                whitespace |= gather(equal(word, ' ') | equal(word, '\t')
+                        | equal(word, '\n') | equal(word, '\r')) << shift;
+            }
+
+            long escaped = escaped(backslash);
+            long realQuote = quote & ~escaped;
+
+            // Prefix XOR: bits from an opening quote up to (not including) its closing quote
+            long strings = realQuote;
+            strings ^= strings << 1;
+            strings ^= strings << 2;
+            strings ^= strings << 4;
+            strings ^= strings << 8;
+            strings ^= strings << 16;
+            strings ^= strings << 32;
+            strings ^= inString;
+            inString = strings >> 63;
+
+            long outside = ~(strings | realQuote);
+            long scalar = outside & ~operator & ~whitespace;
+            long scalarStarts = scalar & ~((scalar << 1) | scalarCarry);
+            scalarCarry = scalar >>> 63;
+
+            long structural = (operator & outside) | (realQuote & strings) | scalarStarts;
+            if (structural == 0) {
+                return;
+            }
+
+            int limit = length - base;
+            int needed = count + Long.bitCount(structural);
+            if (needed > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(needed, positions.length * 2));
+            }
+            while (structural != 0) {
+                int bit = Long.numberOfTrailingZeros(structural);
+                if (bit >= limit) {
+                    break;
+                }
+                positions[count++] = base + bit;
+                structural &= structural - 1;
+            }
+        }
+
+        /**
+         * Returns the bits of characters preceded by an unescaped backslash. Backslashes are
+         * rare outside escape-heavy text, so runs are resolved one set bit at a time.
+         */
+        private long escaped(long backslash) {
+            long escaped = 0;
+            if (escapeNext) {
+                escaped = 1;
+                backslash &= ~1L;
+            }
+            escapeNext = false;
+            while (backslash != 0) {
+                int bit = Long.numberOfTrailingZeros(backslash);
+                if (bit == 63) {
+                    escapeNext = true;
+                    break;
+                }
+                escaped |= 1L << (bit + 1);
+                // The escaped character cannot start another escape
+                backslash &= ~(3L << bit);
+            }
+            return escaped;
+        }
+
+        /**
+         * Returns a word with the high bit set in exactly the bytes equal to {@code c}.
+         */
+        private static long equal(long word, char c) {
+            long t = word ^ (ONES * c);
+            return ~(((t & LOW7) + LOW7) | t | LOW7);
+        }
+
+        /**
+         * Compresses the high bit of each byte into the low 8 bits, byte i to bit i.
+         */
+        private static long gather(long highBits) {
+            return ((highBits >>> 7) * GATHER) >>> 56;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package com.metamadbooks.unity.parser;
 
+import org.antlr.v4.runtime.ANTLRErrorListener;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Facade class for parsing and validating Unity documents.
@@ -27,6 +34,19 @@ import java.util.List;
  */
 public final class Unity {
 
+    // Covers every token type, attributes, nesting, and syntax and validation errors
+    private static final List<String> WARM_UP_CORPUS = List.of(
+            "[\"root\"]",
+            "[\"root\", {}]",
+            "[\"order\", {\"id\": 17, \"total\": -1.25e+2, \"rush\": true, \"gift\": false, \"note\": null},"
+                    + " [\"item\", {\"sku\": \"A-1\"}, \"caf\\u00e9 \\\"quoted\\\"\\n\", 2, 0.5],"
+                    + " [\"item\", {\"sku\": \"B-2\"}, [\"x:part\", 1E3, true, false, null]], \"tail\"]",
+            "[\"deep\", [\"a\", [\"b\", [\"c\", [\"d\", \"text\"]]]], [\"e\"]]",
+            "[\"1bad\", {\"2x\": 1}, [\"ok\"]]",
+            "[\"a\", {\"x\": 1}, \"t\", {\"y\": 2}]",
+            "[\"a\", tru, 01, \"open",
+            "[\"a\" [\"b\"] ]]");
+
     private Unity() {
     }
 
@@ -37,35 +57,168 @@ public final class Unity {
      * @return the parse result containing validation errors (if any)
      */
     public static ParseResult parse(String input) {
-        List<ValidationError> errors = new ArrayList<>();
+        return parse(input, UnityRuleSet.defaults());
+    }
 
-        // Create lexer and parser
+    /**
+     * Parses a Unity document and validates it with the given rules.
+     * <p>
+     * The rules run while the document is parsed, in the same pass. As with
+     * {@link #parse(String)}, validation errors are only reported for documents without
+     * syntax errors; rules stop being called at the first syntax error.
+     *
+     * @param input the Unity document as a string
+     * @param rules the validation rules, e.g. {@link UnityRuleSet#defaults()} with more rules
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parse(String input, UnityRuleSet rules) {
         UnityLexer lexer = new UnityLexer(CharStreams.fromString(input));
+        lexer.removeErrorListeners();
+        return parse(lexer, lexer::addErrorListener, rules, input);
+    }
+
+    /**
+     * Parses and validates a UTF-8 encoded Unity document.
+     * <p>
+     * The bytes are lexed directly, without decoding them to a String first; see
+     * {@link #parse(ByteBuffer, UnityRuleSet)}.
+     *
+     * @param input the Unity document as UTF-8 bytes
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parse(byte[] input) {
+        return parse(ByteBuffer.wrap(input), UnityRuleSet.defaults());
+    }
+
+    /**
+     * Parses and validates a UTF-8 encoded Unity document held in a buffer.
+     *
+     * @param input the Unity document as UTF-8 bytes, from the buffer's position to its limit
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parse(ByteBuffer input) {
+        return parse(input, UnityRuleSet.defaults());
+    }
+
+    /**
+     * Parses a UTF-8 encoded Unity document and validates it with the given rules.
+     * <p>
+     * Gives the same results as {@link #parse(String, UnityRuleSet)} for the decoded text,
+     * with ill-formed UTF-8 reported as a syntax error. The bytes are lexed directly:
+     * token text is decoded only when it is read, and lines and columns are computed
+     * only for tokens that ask for them. Token start and stop indexes are byte offsets
+     * from the buffer's position. The buffer's position is not changed, and its content
+     * must not change while the parse tree is in use.
+     *
+     * @param input the Unity document as UTF-8 bytes, from the buffer's position to its limit
+     * @param rules the validation rules
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parse(ByteBuffer input, UnityRuleSet rules) {
+        UnityByteLexer lexer = new UnityByteLexer(input);
+        return parse(lexer, lexer::addErrorListener, rules, null);
+    }
+
+    private static ParseResult parse(TokenSource lexer, Consumer<ANTLRErrorListener> lexerListeners,
+                                     UnityRuleSet rules, String input) {
+        List<ValidationError> errors = new ArrayList<>();
+
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         UnityParser parser = new UnityParser(tokens);
 
+        // Validate during the parse rather than in a second walk
+        UnityValidationListener validationListener = new UnityValidationListener(rules);
+        parser.addParseListener(validationListener);
+
         // Add error listener to capture syntax errors
-        SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(syntaxErrorListener);
+        SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener(validationListener);
+        lexerListeners.accept(syntaxErrorListener);
         parser.removeErrorListeners();
         parser.addErrorListener(syntaxErrorListener);
 
         // Parse the document
         UnityParser.UnityContext tree = parser.unity();
 
-        // Add syntax errors
+        // Add syntax errors, or the validation errors if there are none
+        errors.addAll(syntaxErrorListener.getErrors());
+        if (syntaxErrorListener.getErrors().isEmpty()) {
+            errors.addAll(validationListener.getErrors());
+        }
+
+        return new ParseResult(tree, errors, input);
+    }
+
+    /**
+     * Parses and validates a Unity document in deep-document mode.
+     * <p>
+     * Produces the same parse tree and validation errors as {@link #parse(String)} for
+     * valid documents, but neither parsing nor validation uses recursion, so nesting depth
+     * is bounded by heap rather than by the thread stack size. Parsing stops at the first
+     * syntax error instead of attempting recovery.
+     *
+     * @param input the Unity document as a string
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parseDeep(String input) {
+        return parseDeep(input, UnityRuleSet.defaults());
+    }
+
+    /**
+     * Parses a Unity document in deep-document mode and validates it with the given rules.
+     *
+     * @param input the Unity document as a string
+     * @param rules the validation rules
+     * @return the parse result containing validation errors (if any)
+     * @see #parseDeep(String)
+     */
+    public static ParseResult parseDeep(String input, UnityRuleSet rules) {
+        List<ValidationError> errors = new ArrayList<>();
+
+        UnityLexer lexer = new UnityLexer(CharStreams.fromString(input));
+        DeepUnityParser parser = new DeepUnityParser(lexer);
+
+        SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrorListener);
+        parser.addErrorListener(syntaxErrorListener);
+
+        UnityParser.UnityContext tree = parser.unity();
         errors.addAll(syntaxErrorListener.getErrors());
 
-        // If no syntax errors, perform semantic validation
         if (syntaxErrorListener.getErrors().isEmpty()) {
-            UnityValidationListener validationListener = new UnityValidationListener();
-            ParseTreeWalker walker = new ParseTreeWalker();
-            walker.walk(validationListener, tree);
+            UnityValidationListener validationListener = new UnityValidationListener(rules);
+            IterativeParseTreeWalker.DEFAULT.walk(validationListener, tree);
             errors.addAll(validationListener.getErrors());
         }
 
-        return new ParseResult(tree, errors);
+        return new ParseResult(tree, errors, input);
+    }
+
+    /**
+     * Parses and validates a large Unity document using all cores of the common pool.
+     * <p>
+     * Produces the same parse tree and validation errors as {@link #parse(String)};
+     * small documents are parsed sequentially. See {@link ParallelUnityParser}.
+     *
+     * @param input the Unity document as a string
+     * @return the parse result containing validation errors (if any)
+     */
+    public static ParseResult parseParallel(String input) {
+        return new ParallelUnityParser().parse(input);
+    }
+
+    /**
+     * Parses a large Unity document using all cores of the common pool and validates it
+     * with the given rules.
+     *
+     * @param input the Unity document as a string
+     * @param rules the validation rules
+     * @return the parse result containing validation errors (if any)
+     * @see #parseParallel(String)
+     */
+    public static ParseResult parseParallel(String input, UnityRuleSet rules) {
+        return new ParallelUnityParser(ForkJoinPool.commonPool(), ParallelUnityParser.DEFAULT_THRESHOLD, rules)
+                .parse(input);
     }
 
     /**
@@ -75,7 +228,55 @@ public final class Unity {
      * @return true if the document is valid, false otherwise
      */
     public static boolean isValid(String input) {
-        return parse(input).isValid();
+        // No tree is returned, so lean tokens that read the input in place will do
+        UnityLexer lexer = UnityTokenFactory.lexer(input);
+        lexer.removeErrorListeners();
+        return parse(lexer, lexer::addErrorListener, UnityRuleSet.defaults(), null).isValid();
+    }
+
+    /**
+     * Primes the shared lexer and parser caches with a small built-in corpus.
+     *
+     * @see #warmUp(Iterable)
+     */
+    public static void warmUp() {
+        warmUp(WARM_UP_CORPUS);
+    }
+
+    /**
+     * Primes the shared lexer and parser caches with a representative corpus.
+     * <p>
+     * {@link UnityLexer} and {@link UnityParser} deserialize their ATNs when first loaded
+     * and build the DFAs that drive prediction lazily, in caches shared by all instances,
+     * so the first documents of a process are parsed several times slower than later ones.
+     * Warming up does that work ahead of time, for example before a server accepts
+     * requests or while a class data sharing archive is recorded. Each document is parsed
+     * once from a String, from UTF-8 bytes and through {@link UnityEventReader}, so that
+     * the classes of these paths are loaded too. Invalid documents warm up error
+     * reporting and recovery. The caches only grow: warming up never changes results.
+     *
+     * @param corpus documents like those the process will parse
+     */
+    public static void warmUp(Iterable<String> corpus) {
+        for (String document : corpus) {
+            parse(document);
+            parse(document.getBytes(StandardCharsets.UTF_8));
+            isValid(document);
+            new UnityEventReader(document).accept(new UnityEventHandler() {
+            });
+        }
+    }
+
+    /**
+     * Selects elements of a parsed document with a path expression.
+     *
+     * @param result the parse result from {@link #parse(String)}
+     * @param path   the path expression, see {@link UnityQuery}
+     * @return the matching elements in document order
+     * @throws IllegalArgumentException if the path expression is not valid
+     */
+    public static List<UnityParser.UnityElementContext> select(ParseResult result, String path) {
+        return UnityQuery.compile(path).select(result);
     }
 
     /**
@@ -87,8 +288,7 @@ public final class Unity {
      */
     public static String print(ParseResult result, PrintFormat format) {
         UnityTreePrinter printer = new UnityTreePrinter(format);
-        ParseTreeWalker walker = new ParseTreeWalker();
-        walker.walk(printer, result.getParseTree());
+        IterativeParseTreeWalker.DEFAULT.walk(printer, result.getParseTree());
         return printer.getOutput();
     }
 
@@ -106,12 +306,32 @@ public final class Unity {
      * Result of parsing a Unity document.
      */
     public static class ParseResult {
-        private final UnityParser.UnityContext parseTree;
+        private volatile UnityParser.UnityContext parseTree;
+        // Builds the parse tree on first use, for results made without one
+        private Supplier<UnityParser.UnityContext> deferredTree;
         private final List<ValidationError> errors;
+        private volatile UnityIndex index;
+        // The parsed text when known, for reading tokens without creating Strings
+        private final String input;
+        // Whether token indexes, which count code points, are also char indexes
+        private volatile Boolean charIndexed;
 
         ParseResult(UnityParser.UnityContext parseTree, List<ValidationError> errors) {
+            this(parseTree, errors, null);
+        }
+
+        ParseResult(UnityParser.UnityContext parseTree, List<ValidationError> errors, String input) {
             this.parseTree = parseTree;
             this.errors = errors;
+            this.input = input;
+        }
+
+        /**
+         * Creates a result whose parse tree is only built if it is asked for.
+         */
+        ParseResult(Supplier<UnityParser.UnityContext> deferredTree, List<ValidationError> errors, String input) {
+            this((UnityParser.UnityContext) null, errors, input);
+            this.deferredTree = deferredTree;
         }
 
         /**
@@ -132,21 +352,98 @@ public final class Unity {
          * Returns the parse tree (may be incomplete if there were syntax errors).
          */
         public UnityParser.UnityContext getParseTree() {
-            return parseTree;
+            UnityParser.UnityContext tree = parseTree;
+            if (tree == null) {
+                synchronized (this) {
+                    tree = parseTree;
+                    if (tree == null) {
+                        tree = deferredTree.get();
+                        parseTree = tree;
+                        deferredTree = null;
+                    }
+                }
+            }
+            return tree;
+        }
+
+        /**
+         * Returns the element and attribute indexes used by {@link UnityQuery}, building
+         * them on first use.
+         */
+        public UnityIndex getIndex() {
+            UnityIndex built = index;
+            if (built == null) {
+                synchronized (this) {
+                    built = index;
+                    if (built == null) {
+                        built = UnityIndex.build(getParseTree());
+                        index = built;
+                    }
+                }
+            }
+            return built;
+        }
+
+        /**
+         * Returns the value of a NUMBER token of the parse tree in typed form, e.g. from
+         * {@code primitiveValue.NUMBER().getSymbol()}. The number is parsed from the
+         * document text without creating a String for it.
+         *
+         * @param token a NUMBER token
+         * @return the number
+         * @throws IllegalArgumentException if the token is not a NUMBER
+         */
+        public UnityNumber getNumber(Token token) {
+            if (token.getType() != UnityParser.NUMBER) {
+                throw new IllegalArgumentException("Not a NUMBER token: " + token.getText());
+            }
+            if (token instanceof UnityToken) {
+                return UnityNumber.parse(((UnityToken) token).getTextSequence());
+            }
+            if (input != null && isCharIndexed()) {
+                return UnityNumber.parse(input, token.getStartIndex(), token.getStopIndex() + 1);
+            }
+            return UnityNumber.parse(token.getText());
+        }
+
+        private boolean isCharIndexed() {
+            Boolean indexed = charIndexed;
+            if (indexed == null) {
+                indexed = input.codePointCount(0, input.length()) == input.length();
+                charIndexed = indexed;
+            }
+            return indexed;
         }
     }
 
     /**
      * Error listener that collects syntax errors during parsing.
      */
-    private static class SyntaxErrorListener extends BaseErrorListener {
+    static class SyntaxErrorListener extends BaseErrorListener {
         private final List<ValidationError> errors = new ArrayList<>();
+        private final UnityValidationListener validation;
+
+        SyntaxErrorListener() {
+            this(null);
+        }
+
+        /**
+         * Creates a listener that halts a validation running during the parse at the
+         * first syntax error.
+         */
+        SyntaxErrorListener(UnityValidationListener validation) {
+            this.validation = validation;
+        }
 
         @Override
         public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
                                 int line, int charPositionInLine, String msg,
                                 RecognitionException e) {
-            errors.add(new ValidationError(line, charPositionInLine, "Syntax error: " + msg));
+            errors.add(new ValidationError(line, UnityCharSequenceStream.errorColumn(recognizer, charPositionInLine),
+                    "Syntax error: " + msg));
+            if (validation != null) {
+                validation.halt();
+            }
         }
 
         public List<ValidationError> getErrors() {
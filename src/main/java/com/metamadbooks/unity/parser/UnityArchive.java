@@ -0,0 +1,577 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only file of Unity documents with random access by ordinal or key.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (UnityArchive archive = UnityArchive.open(Path.of("feed.uar"))) {
+ *     int ordinal = archive.append("order-17", text, UnityArchive.Format.BINARY);
+ *     ...
+ *     Unity.ParseResult result = archive.parse(archive.ordinalOf("order-17"));
+ * }
+ * }</pre>
+ * An archive is two files: the data file holding the records and, next to it with an
+ * {@code .idx} suffix, an index of fixed-size entries. Documents are validated with
+ * {@link Unity#parse(String)} before they are appended and stored either as text or in
+ * the {@link UnityBinaryWriter binary format}. Records are read through memory-mapped
+ * slices of the data file, so lookups cost no file reads and no copying; binary records
+ * are decoded directly from the mapping.
+ * <p>
+ * Ordinals are assigned in append order. Appending a key that is already present deletes
+ * the earlier entry. Deleted entries keep their ordinal until {@link #compact()} rewrites
+ * the archive without them and renumbers the remaining entries.
+ * <p>
+ * All operations are serialized; an archive can be shared by threads. Slices returned
+ * by {@link #slice(int)} stay valid after later appends.
+ */
+public final class UnityArchive implements AutoCloseable {
+
+    /**
+     * How a document is stored.
+     */
+    public enum Format {
+        /** UTF-8 text, as appended. */
+        TEXT,
+        /** The compact binary format of {@link UnityBinaryWriter}. */
+        BINARY
+    }
+
+    private static final byte[] DATA_MAGIC = {'U', 'A', 'R', 1, 0, 0, 0, 0};
+    private static final byte[] INDEX_MAGIC = {'U', 'A', 'X', 1, 0, 0, 0, 0};
+    private static final int HEADER_SIZE = 8;
+
+    // Record: u8 format|deleted, u16 keyLength, u32 payloadLength, key, payload
+    private static final int RECORD_HEADER_SIZE = 7;
+    // Index entry: u64 recordOffset, u32 payloadLength, u8 format, u8 deleted, u16 keyLength
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int DELETED = 0x80;
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final Path dataPath;
+    private final Path indexPath;
+
+    private FileChannel data;
+    private FileChannel index;
+    private long dataEnd;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[1];
+
+    private int count = 0;
+    private int liveCount = 0;
+    private long[] recordOffsets = new long[64];
+    private int[] payloadLengths = new int[64];
+    private byte[] formats = new byte[64];
+    private boolean[] deleted = new boolean[64];
+    private String[] keys = new String[64];
+    private final Map<String, Integer> ordinalsByKey = new HashMap<>();
+
+    private UnityArchive(Path dataPath) {
+        this.dataPath = dataPath;
+        this.indexPath = dataPath.resolveSibling(dataPath.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens an archive, creating it if it does not exist. If the index is missing it is
+     * rebuilt from the data file; records written after the last complete index entry,
+     * for example by an interrupted append, are discarded.
+     *
+     * @param file the data file
+     * @return the open archive
+     * @throws IOException if the files cannot be opened or are not archive files
+     */
+    public static UnityArchive open(Path file) throws IOException {
+        UnityArchive archive = new UnityArchive(file);
+        try {
+            archive.load();
+        } catch (IOException | RuntimeException e) {
+            archive.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    /**
+     * Validates and appends a document as text, without a key.
+     *
+     * @param text the Unity document
+     * @return the ordinal of the new entry
+     * @throws IllegalArgumentException if the document is not valid
+     * @throws IOException              if writing fails
+     */
+    public int append(String text) throws IOException {
+        return append(null, text, Format.TEXT);
+    }
+
+    /**
+     * Validates and appends a document.
+     *
+     * @param key    the key to find the document by, or null
+     * @param text   the Unity document
+     * @param format how to store the document
+     * @return the ordinal of the new entry
+     * @throws IllegalArgumentException if the document is not valid
+     * @throws IOException              if writing fails
+     */
+    public int append(String key, String text, Format format) throws IOException {
+        byte[] payload;
+        if (format == Format.BINARY) {
+            // Encoding validates the document
+            payload = UnityBinaryWriter.encode(text);
+        } else {
+            Unity.ParseResult result = Unity.parse(text);
+            if (!result.isValid()) {
+                throw new IllegalArgumentException("Invalid Unity document: " + result.getErrors().get(0));
+            }
+            payload = text.getBytes(StandardCharsets.UTF_8);
+        }
+        synchronized (this) {
+            return appendRecord(key, format, ByteBuffer.wrap(payload));
+        }
+    }
+
+    /**
+     * Returns the number of entries, including deleted ones.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of entries that are not deleted.
+     */
+    public synchronized int liveSize() {
+        return liveCount;
+    }
+
+    /**
+     * Returns the ordinal of the live entry with the given key, or -1.
+     *
+     * @param key the key
+     * @return the ordinal, or -1 if no live entry has the key
+     */
+    public synchronized int ordinalOf(String key) {
+        Integer ordinal = ordinalsByKey.get(key);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Returns the key of an entry, or null if it was appended without one.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the key, or null
+     */
+    public synchronized String getKey(int ordinal) {
+        checkOrdinal(ordinal);
+        return keys[ordinal];
+    }
+
+    /**
+     * Returns how an entry is stored.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the storage format
+     */
+    public synchronized Format getFormat(int ordinal) {
+        checkOrdinal(ordinal);
+        return Format.values()[formats[ordinal]];
+    }
+
+    /**
+     * Returns true if an entry has been deleted.
+     *
+     * @param ordinal the entry's ordinal
+     * @return true if deleted
+     */
+    public synchronized boolean isDeleted(int ordinal) {
+        checkOrdinal(ordinal);
+        return deleted[ordinal];
+    }
+
+    /**
+     * Returns the stored bytes of an entry as a read-only slice of the mapped data file.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the payload: UTF-8 text or a binary document, depending on the format
+     * @throws IllegalArgumentException if the entry is deleted
+     * @throws IOException              if the file cannot be mapped
+     */
+    public synchronized ByteBuffer slice(int ordinal) throws IOException {
+        checkLive(ordinal);
+        long payloadOffset = recordOffsets[ordinal] + RECORD_HEADER_SIZE
+                + utf8Length(keys[ordinal]);
+        return map(payloadOffset, payloadLengths[ordinal]);
+    }
+
+    /**
+     * Returns a binary reader over an entry stored as {@link Format#BINARY}, reading
+     * directly from the mapped file.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the reader
+     * @throws IllegalArgumentException if the entry is deleted or stored as text
+     * @throws IOException              if the file cannot be mapped
+     */
+    public UnityBinaryReader binary(int ordinal) throws IOException {
+        if (getFormat(ordinal) != Format.BINARY) {
+            throw new IllegalArgumentException("Entry " + ordinal + " is stored as text");
+        }
+        return new UnityBinaryReader(slice(ordinal));
+    }
+
+    /**
+     * Returns the document text of an entry. Binary entries are decoded to compact text.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the document text
+     * @throws IOException if the file cannot be mapped
+     */
+    public String getText(int ordinal) throws IOException {
+        ByteBuffer payload = slice(ordinal);
+        if (getFormat(ordinal) == Format.BINARY) {
+            return new UnityBinaryReader(payload).toText();
+        }
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    /**
+     * Parses an entry.
+     *
+     * @param ordinal the entry's ordinal
+     * @return the parse result
+     * @throws IOException if the file cannot be mapped
+     */
+    public Unity.ParseResult parse(int ordinal) throws IOException {
+        if (getFormat(ordinal) == Format.TEXT) {
+            // Lexed straight from the mapping, which stays valid as long as the tree
+            return Unity.parse(slice(ordinal));
+        }
+        return Unity.parse(getText(ordinal));
+    }
+
+    /**
+     * Marks an entry as deleted. Its space is reclaimed by {@link #compact()}.
+     *
+     * @param ordinal the entry's ordinal
+     * @return true if the entry was live
+     * @throws IOException if writing fails
+     */
+    public synchronized boolean delete(int ordinal) throws IOException {
+        checkOrdinal(ordinal);
+        if (deleted[ordinal]) {
+            return false;
+        }
+        data.write(ByteBuffer.wrap(new byte[]{(byte) (formats[ordinal] | DELETED)}), recordOffsets[ordinal]);
+        index.write(ByteBuffer.wrap(new byte[]{1}), HEADER_SIZE + (long) ordinal * INDEX_ENTRY_SIZE + 13);
+        markDeleted(ordinal);
+        return true;
+    }
+
+    /**
+     * Deletes the entry with the given key.
+     *
+     * @param key the key
+     * @return true if a live entry had the key
+     * @throws IOException if writing fails
+     */
+    public synchronized boolean delete(String key) throws IOException {
+        int ordinal = ordinalOf(key);
+        return ordinal >= 0 && delete(ordinal);
+    }
+
+    /**
+     * Rewrites the archive without deleted entries. Live entries keep their order and
+     * keys but get new, dense ordinals.
+     *
+     * @throws IOException if rewriting fails; the archive is then left unchanged
+     */
+    public synchronized void compact() throws IOException {
+        Path compactData = dataPath.resolveSibling(dataPath.getFileName() + ".compact");
+        Path compactIndex = compactData.resolveSibling(compactData.getFileName() + ".idx");
+        Files.deleteIfExists(compactData);
+        Files.deleteIfExists(compactIndex);
+
+        try (UnityArchive target = UnityArchive.open(compactData)) {
+            for (int i = 0; i < count; i++) {
+                if (!deleted[i]) {
+                    target.appendRecord(keys[i], Format.values()[formats[i]], slice(i));
+                }
+            }
+            target.flush();
+        }
+
+        closeChannels();
+        Files.move(compactData, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(compactIndex, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        load();
+    }
+
+    /**
+     * Forces appended entries and deletions to disk.
+     *
+     * @throws IOException if syncing fails
+     */
+    public synchronized void flush() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeChannels();
+    }
+
+    // =========================================================================
+    // Internals
+    // =========================================================================
+
+    private void load() throws IOException {
+        boolean rebuild = !Files.exists(indexPath);
+        chunks = new MappedByteBuffer[1];
+        count = 0;
+        liveCount = 0;
+        ordinalsByKey.clear();
+
+        data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataEnd = initHeader(data, DATA_MAGIC, "data");
+        index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long indexSize = initHeader(index, INDEX_MAGIC, "index");
+
+        if (rebuild) {
+            rebuildIndex();
+        } else {
+            readIndex(indexSize);
+        }
+    }
+
+    /**
+     * Writes the header of a new file or checks the header of an existing one, returning
+     * the file size.
+     */
+    private static long initHeader(FileChannel channel, byte[] magic, String kind) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            channel.write(ByteBuffer.wrap(magic), 0);
+            return HEADER_SIZE;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size < HEADER_SIZE || channel.read(header, 0) < HEADER_SIZE
+                || !Arrays.equals(Arrays.copyOf(header.array(), 4), Arrays.copyOf(magic, 4))) {
+            throw new IOException("Not a Unity archive " + kind + " file");
+        }
+        return size;
+    }
+
+    private void readIndex(long indexSize) throws IOException {
+        int entries = (int) ((indexSize - HEADER_SIZE) / INDEX_ENTRY_SIZE);
+        long fileSize = dataEnd;
+        long end = HEADER_SIZE;
+        if (entries > 0) {
+            ByteBuffer buffer = index.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) entries * INDEX_ENTRY_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < entries; i++) {
+                int at = i * INDEX_ENTRY_SIZE;
+                long recordOffset = buffer.getLong(at);
+                int payloadLength = buffer.getInt(at + 8);
+                byte format = buffer.get(at + 12);
+                boolean isDeleted = buffer.get(at + 13) != 0;
+                int keyLength = buffer.getShort(at + 14) & 0xFFFF;
+                long recordEnd = recordOffset + RECORD_HEADER_SIZE + keyLength + payloadLength;
+                if (recordEnd > fileSize) {
+                    // Entry written before its record reached the disk
+                    break;
+                }
+                dataEnd = recordEnd;
+                end = recordEnd;
+                String key = keyLength == 0 ? null : readKey(recordOffset, keyLength);
+                addEntry(recordOffset, payloadLength, format, key, isDeleted);
+            }
+        }
+        truncate(end);
+    }
+
+    private void rebuildIndex() throws IOException {
+        long fileSize = dataEnd;
+        long offset = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            header.clear();
+            data.read(header, offset);
+            int flags = header.get(0) & 0xFF;
+            int keyLength = header.getShort(1) & 0xFFFF;
+            int payloadLength = header.getInt(3);
+            long recordEnd = offset + RECORD_HEADER_SIZE + keyLength + payloadLength;
+            if (payloadLength < 0 || recordEnd > fileSize) {
+                break;
+            }
+            dataEnd = recordEnd;
+            String key = keyLength == 0 ? null : readKey(offset, keyLength);
+            writeIndexEntry(count, offset, payloadLength, (byte) (flags & ~DELETED), (flags & DELETED) != 0, keyLength);
+            addEntry(offset, payloadLength, (byte) (flags & ~DELETED), key, (flags & DELETED) != 0);
+            offset = recordEnd;
+        }
+        truncate(offset);
+    }
+
+    private void truncate(long end) throws IOException {
+        dataEnd = end;
+        if (data.size() > end) {
+            data.truncate(end);
+        }
+        long indexEnd = HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE;
+        if (index.size() > indexEnd) {
+            index.truncate(indexEnd);
+        }
+    }
+
+    private String readKey(long recordOffset, int keyLength) throws IOException {
+        ByteBuffer key = map(recordOffset + RECORD_HEADER_SIZE, keyLength);
+        return StandardCharsets.UTF_8.decode(key).toString();
+    }
+
+    private int appendRecord(String key, Format format, ByteBuffer payload) throws IOException {
+        byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        if (key != null && (keyBytes.length == 0 || keyBytes.length > 0xFFFF)) {
+            throw new IllegalArgumentException("Key must be 1 to 65535 UTF-8 bytes");
+        }
+        int payloadLength = payload.remaining();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) format.ordinal()).putShort((short) keyBytes.length).putInt(payloadLength).put(keyBytes);
+        header.flip();
+
+        // Record first, then its index entry: an interrupted append leaves no dangling entry
+        long offset = dataEnd;
+        long position = offset;
+        while (header.hasRemaining()) {
+            position += data.write(header, position);
+        }
+        payload = payload.duplicate();
+        while (payload.hasRemaining()) {
+            position += data.write(payload, position);
+        }
+        dataEnd = position;
+        writeIndexEntry(count, offset, payloadLength, (byte) format.ordinal(), false, keyBytes.length);
+
+        if (key != null) {
+            Integer previous = ordinalsByKey.get(key);
+            if (previous != null) {
+                delete(previous);
+            }
+        }
+        int ordinal = count;
+        addEntry(offset, payloadLength, (byte) format.ordinal(), key, false);
+        return ordinal;
+    }
+
+    private void writeIndexEntry(int ordinal, long recordOffset, int payloadLength, byte format,
+                                 boolean isDeleted, int keyLength) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putLong(recordOffset).putInt(payloadLength).put(format).put((byte) (isDeleted ? 1 : 0))
+                .putShort((short) keyLength);
+        entry.flip();
+        long position = HEADER_SIZE + (long) ordinal * INDEX_ENTRY_SIZE;
+        while (entry.hasRemaining()) {
+            position += index.write(entry, position);
+        }
+    }
+
+    private void addEntry(long recordOffset, int payloadLength, byte format, String key, boolean isDeleted) {
+        if (count == recordOffsets.length) {
+            int capacity = count * 2;
+            recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+            payloadLengths = Arrays.copyOf(payloadLengths, capacity);
+            formats = Arrays.copyOf(formats, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        recordOffsets[count] = recordOffset;
+        payloadLengths[count] = payloadLength;
+        formats[count] = format;
+        deleted[count] = isDeleted;
+        keys[count] = key;
+        if (!isDeleted) {
+            liveCount++;
+            if (key != null) {
+                ordinalsByKey.put(key, count);
+            }
+        }
+        count++;
+    }
+
+    private void markDeleted(int ordinal) {
+        deleted[ordinal] = true;
+        liveCount--;
+        if (keys[ordinal] != null) {
+            ordinalsByKey.remove(keys[ordinal], ordinal);
+        }
+    }
+
+    /**
+     * Returns a read-only mapped slice of the data file. The file is mapped in chunks of
+     * 1 GiB; a region crossing a chunk boundary is mapped on its own.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        int chunk = (int) (offset >>> CHUNK_BITS);
+        long chunkStart = (long) chunk << CHUNK_BITS;
+        long end = offset + length;
+        if (end > chunkStart + CHUNK_SIZE) {
+            return data.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        if (chunk >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+        }
+        MappedByteBuffer mapped = chunks[chunk];
+        if (mapped == null || chunkStart + mapped.capacity() < end) {
+            // Map up to the current end of the file so that later reads reuse the mapping
+            long size = Math.min(CHUNK_SIZE, dataEnd - chunkStart);
+            mapped = data.map(FileChannel.MapMode.READ_ONLY, chunkStart, size);
+            chunks[chunk] = mapped;
+        }
+        return mapped.slice((int) (offset - chunkStart), length);
+    }
+
+    private void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IndexOutOfBoundsException("No entry " + ordinal + " in archive of " + count);
+        }
+    }
+
+    private void checkLive(int ordinal) {
+        checkOrdinal(ordinal);
+        if (deleted[ordinal]) {
+            throw new IllegalArgumentException("Entry " + ordinal + " is deleted");
+        }
+    }
+
+    private static int utf8Length(String key) {
+        return key == null ? 0 : key.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void closeChannels() throws IOException {
+        chunks = new MappedByteBuffer[1];
+        try {
+            if (data != null) {
+                data.close();
+            }
+        } finally {
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+}
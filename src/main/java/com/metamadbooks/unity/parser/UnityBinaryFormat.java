@@ -0,0 +1,89 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Constants of the compact binary Unity format shared by {@link UnityBinaryWriter} and
+ * {@link UnityBinaryReader}.
+ * <p>
+ * Layout:
+ * <pre>
+ * document   := MAGIC dictionary element
+ * dictionary := varint(count) (varint(byteLength) utf8Bytes)*
+ * element    := ELEMENT varint(nameIndex) u32(length) item* END
+ * item       := element | attributes | value
+ * attributes := ATTRIBUTES (varint(nameIndex + 1) value)* 0
+ * value      := NULL | FALSE | TRUE
+ *             | INT zigzagVarint
+ *             | DOUBLE f64
+ *             | NUMBER varint(byteLength) asciiBytes
+ *             | STRING varint(stringIndex)
+ * </pre>
+ * Element names, attribute names and string values share one dictionary per document.
+ * The {@code u32} element length counts the bytes after it up to and including END, so a
+ * whole element can be skipped in constant time. Fixed-width values are little-endian.
+ * <p>
+ * Numbers keep their exact text: a number is stored as INT only if it is written as a
+ * canonical {@code long}, as DOUBLE only if {@link Double#toString(double)} reproduces it,
+ * and as NUMBER text otherwise.
+ */
+final class UnityBinaryFormat {
+
+    static final byte[] MAGIC = {'U', 'B', 'N', 1};
+
+    static final byte END = 0x00;
+    static final byte ELEMENT = 0x01;
+    static final byte ATTRIBUTES = 0x02;
+    static final byte NULL = 0x03;
+    static final byte FALSE = 0x04;
+    static final byte TRUE = 0x05;
+    static final byte INT = 0x06;
+    static final byte DOUBLE = 0x07;
+    static final byte NUMBER = 0x08;
+    static final byte STRING = 0x09;
+
+    private UnityBinaryFormat() {
+    }
+
+    /**
+     * Returns the tag that stores a JSON number without changing its text.
+     */
+    static byte numberTag(String text) {
+        if (isCanonicalLong(text)) {
+            return INT;
+        }
+        try {
+            if (Double.toString(Double.parseDouble(text)).equals(text)) {
+                return DOUBLE;
+            }
+        } catch (NumberFormatException e) {
+            // Not produced by the lexer; keep the text
+        }
+        return NUMBER;
+    }
+
+    /**
+     * Returns true if the text is a {@code long} as written by {@link Long#toString(long)}.
+     */
+    static boolean isCanonicalLong(String text) {
+        int length = text.length();
+        int start = text.startsWith("-") ? 1 : 0;
+        if (length == start || length - start > 19) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (text.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+            // Leading zeros and "-0" do not survive Long.toString
+            return false;
+        }
+        try {
+            Long.parseLong(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.metamadbooks.unity.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads Unity documents written by {@link UnityBinaryWriter}.
+ * <p>
+ * Three ways to read:
+ * <ul>
+ *   <li>push: {@link #accept(UnityEventHandler)} calls a handler for the whole document,
+ *       or for one element with {@link #accept(int, UnityEventHandler)}</li>
+ *   <li>pull: a {@link Cursor} steps through events and can skip whole elements</li>
+ *   <li>random access: element offsets reported by a cursor can be kept and read again
+ *       later with {@link #cursor(int)}, without reading anything before them</li>
+ * </ul>
+ * The reader works directly on the given buffer, which may be a memory-mapped file;
+ * only the dictionary is decoded up front. Offsets are relative to the start of the
+ * document. A reader can be shared by threads as long as the buffer content does not
+ * change; cursors cannot.
+ */
+public class UnityBinaryReader {
+
+    private final ByteBuffer data;
+    private final String[] dictionary;
+    private final int rootOffset;
+
+    /**
+     * Creates a reader over an encoded document.
+     *
+     * @param data the binary encoding
+     * @throws IllegalArgumentException if the data is not a binary Unity document
+     */
+    public UnityBinaryReader(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a reader over the remaining bytes of a buffer, without copying them. The
+     * buffer's position and limit are not changed.
+     *
+     * @param data the binary encoding
+     * @throws IllegalArgumentException if the data is not a binary Unity document
+     */
+    public UnityBinaryReader(ByteBuffer data) {
+        this.data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int position = 0;
+        for (byte b : UnityBinaryFormat.MAGIC) {
+            if (this.data.limit() <= position || this.data.get(position++) != b) {
+                throw new IllegalArgumentException("Not a binary Unity document");
+            }
+        }
+        long[] cursor = {position};
+        int count = (int) readVarint(this.data, cursor);
+        dictionary = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = (int) readVarint(this.data, cursor);
+            byte[] utf8 = new byte[length];
+            this.data.get((int) cursor[0], utf8);
+            cursor[0] += length;
+            dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        rootOffset = (int) cursor[0];
+        if (rootOffset >= this.data.limit() || this.data.get(rootOffset) != UnityBinaryFormat.ELEMENT) {
+            throw new IllegalArgumentException("Binary Unity document has no root element");
+        }
+    }
+
+    /**
+     * Returns true if the data starts with the binary format's magic bytes.
+     *
+     * @param data the data to check
+     * @return true if the data looks like a binary Unity document
+     */
+    public static boolean isBinary(byte[] data) {
+        if (data.length < UnityBinaryFormat.MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < UnityBinaryFormat.MAGIC.length; i++) {
+            if (data[i] != UnityBinaryFormat.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the root element.
+     */
+    public int getRootOffset() {
+        return rootOffset;
+    }
+
+    /**
+     * Returns the name of the element at an offset.
+     *
+     * @param offset offset of an element
+     * @return the element name
+     */
+    public String getElementName(int offset) {
+        checkElement(offset);
+        long[] cursor = {offset + 1};
+        return dictionary[(int) readVarint(data, cursor)];
+    }
+
+    /**
+     * Returns the offset just past the element at an offset, where its next sibling
+     * starts if it has one.
+     *
+     * @param offset offset of an element
+     * @return the end offset of the element
+     */
+    public int getElementEnd(int offset) {
+        checkElement(offset);
+        long[] cursor = {offset + 1};
+        readVarint(data, cursor);
+        int lengthField = (int) cursor[0];
+        return lengthField + 4 + data.getInt(lengthField);
+    }
+
+    /**
+     * Returns a cursor over the whole document.
+     */
+    public Cursor cursor() {
+        return new Cursor(rootOffset);
+    }
+
+    /**
+     * Returns a cursor over the element at an offset; it ends after that element.
+     *
+     * @param offset offset of an element, as reported by {@link Cursor#getOffset()}
+     * @return a cursor positioned before the element's START_ELEMENT
+     */
+    public Cursor cursor(int offset) {
+        checkElement(offset);
+        return new Cursor(offset);
+    }
+
+    /**
+     * Pushes the whole document to a handler.
+     *
+     * @param handler the handler to call
+     */
+    public void accept(UnityEventHandler handler) {
+        accept(rootOffset, handler);
+    }
+
+    /**
+     * Pushes the element at an offset to a handler.
+     *
+     * @param offset  offset of an element
+     * @param handler the handler to call
+     */
+    public void accept(int offset, UnityEventHandler handler) {
+        Cursor cursor = cursor(offset);
+        for (UnityEventType type = cursor.next(); type != null; type = cursor.next()) {
+            switch (type) {
+                case START_ELEMENT:
+                    handler.startElement(cursor.getName());
+                    break;
+                case END_ELEMENT:
+                    handler.endElement();
+                    break;
+                case ATTRIBUTE:
+                    handler.attribute(cursor.getName(), cursor.getValueType(), cursor.getValue());
+                    break;
+                case VALUE:
+                    handler.value(cursor.getValueType(), cursor.getValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Decodes the document to compact Unity text.
+     */
+    public String toText() {
+        UnityTextWriter writer = new UnityTextWriter();
+        accept(writer);
+        return writer.toString();
+    }
+
+    private void checkElement(int offset) {
+        if (offset < rootOffset || offset >= data.limit() || data.get(offset) != UnityBinaryFormat.ELEMENT) {
+            throw new IllegalArgumentException("No element at offset " + offset);
+        }
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint at {@code cursor[0]}, advancing it.
+     */
+    private static long readVarint(ByteBuffer data, long[] cursor) {
+        int position = (int) cursor[0];
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        cursor[0] = position;
+        return value;
+    }
+
+    /**
+     * Pull cursor over one element and its content.
+     * <p>
+     * {@link #next()} returns the type of the next event and makes its properties
+     * available through the getters until the next call.
+     */
+    public class Cursor {
+        private int position;
+        private int depth = 0;
+        private boolean inAttributes = false;
+        private int offset;
+        private String name;
+        private UnityValueType valueType;
+        private byte numberTag;
+        private long bits;
+        private String text;
+
+        private Cursor(int position) {
+            this.position = position;
+            this.offset = position;
+        }
+
+        /**
+         * Moves to the next event.
+         *
+         * @return the event type, or null after the element's END_ELEMENT
+         */
+        public UnityEventType next() {
+            if (depth == 0 && position != offset) {
+                return null;
+            }
+            if (inAttributes) {
+                int nameIndex = readVarint();
+                if (nameIndex != 0) {
+                    name = dictionary[nameIndex - 1];
+                    readValue(data.get(position++));
+                    return UnityEventType.ATTRIBUTE;
+                }
+                inAttributes = false;
+            }
+
+            byte tag = data.get(position++);
+            switch (tag) {
+                case UnityBinaryFormat.ELEMENT:
+                    offset = position - 1;
+                    name = dictionary[readVarint()];
+                    position += 4;
+                    depth++;
+                    valueType = null;
+                    return UnityEventType.START_ELEMENT;
+                case UnityBinaryFormat.END:
+                    depth--;
+                    return UnityEventType.END_ELEMENT;
+                case UnityBinaryFormat.ATTRIBUTES:
+                    inAttributes = true;
+                    return next();
+                default:
+                    name = null;
+                    readValue(tag);
+                    return UnityEventType.VALUE;
+            }
+        }
+
+        /**
+         * Skips the rest of the element just started, including its END_ELEMENT. Must be
+         * called directly after {@link #next()} returned START_ELEMENT.
+         */
+        public void skipElement() {
+            if (data.get(offset) != UnityBinaryFormat.ELEMENT || position != lengthFieldEnd()) {
+                throw new IllegalStateException("skipElement() must follow START_ELEMENT");
+            }
+            position = getElementEnd(offset);
+            depth--;
+            if (depth == 0) {
+                // Make the next call return null
+                offset = -1;
+            }
+        }
+
+        /**
+         * Returns the offset of the element most recently started.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the nesting depth, 1 inside the element the cursor started at.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the element or attribute name, or null for a value.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the type of the attribute or content value.
+         */
+        public UnityValueType getValueType() {
+            return valueType;
+        }
+
+        /**
+         * Returns the value as in {@link UnityEvent#getValue()}.
+         */
+        public String getValue() {
+            if (valueType != UnityValueType.NUMBER) {
+                return text;
+            }
+            if (numberTag == UnityBinaryFormat.INT) {
+                return Long.toString(bits);
+            }
+            if (numberTag == UnityBinaryFormat.DOUBLE) {
+                return Double.toString(Double.longBitsToDouble(bits));
+            }
+            return text;
+        }
+
+        /**
+         * Returns true if the current number value is an integer that fits in a long.
+         */
+        public boolean isLong() {
+            return valueType == UnityValueType.NUMBER && numberTag == UnityBinaryFormat.INT;
+        }
+
+        /**
+         * Returns the current number value as a long, without parsing text when it was
+         * stored as an integer.
+         */
+        public long getLongValue() {
+            if (isLong()) {
+                return bits;
+            }
+            return (long) getDoubleValue();
+        }
+
+        /**
+         * Returns the current number value as a double.
+         */
+        public double getDoubleValue() {
+            if (valueType != UnityValueType.NUMBER) {
+                throw new IllegalStateException("Not a number: " + valueType);
+            }
+            if (numberTag == UnityBinaryFormat.INT) {
+                return bits;
+            }
+            if (numberTag == UnityBinaryFormat.DOUBLE) {
+                return Double.longBitsToDouble(bits);
+            }
+            return Double.parseDouble(text);
+        }
+
+        /**
+         * Returns the current number value in typed form; integers and doubles are taken
+         * from the stored bits without parsing.
+         */
+        public UnityNumber getNumber() {
+            if (valueType != UnityValueType.NUMBER) {
+                throw new IllegalStateException("Not a number: " + valueType);
+            }
+            if (numberTag == UnityBinaryFormat.INT) {
+                return UnityNumber.valueOf(bits);
+            }
+            if (numberTag == UnityBinaryFormat.DOUBLE) {
+                return UnityNumber.valueOf(Double.longBitsToDouble(bits));
+            }
+            return UnityNumber.parse(text);
+        }
+
+        private int lengthFieldEnd() {
+            int p = offset + 1;
+            while (data.get(p) < 0) {
+                p++;
+            }
+            return p + 1 + 4;
+        }
+
+        private void readValue(byte tag) {
+            text = null;
+            switch (tag) {
+                case UnityBinaryFormat.NULL:
+                    valueType = UnityValueType.NULL;
+                    break;
+                case UnityBinaryFormat.FALSE:
+                    valueType = UnityValueType.BOOLEAN;
+                    text = "false";
+                    break;
+                case UnityBinaryFormat.TRUE:
+                    valueType = UnityValueType.BOOLEAN;
+                    text = "true";
+                    break;
+                case UnityBinaryFormat.STRING:
+                    valueType = UnityValueType.STRING;
+                    text = dictionary[readVarint()];
+                    break;
+                case UnityBinaryFormat.INT:
+                    valueType = UnityValueType.NUMBER;
+                    numberTag = tag;
+                    long zigzag = readVarintLong();
+                    bits = (zigzag >>> 1) ^ -(zigzag & 1);
+                    break;
+                case UnityBinaryFormat.DOUBLE:
+                    valueType = UnityValueType.NUMBER;
+                    numberTag = tag;
+                    bits = data.getLong(position);
+                    position += 8;
+                    break;
+                case UnityBinaryFormat.NUMBER:
+                    valueType = UnityValueType.NUMBER;
+                    numberTag = tag;
+                    int length = readVarint();
+                    byte[] ascii = new byte[length];
+                    data.get(position, ascii);
+                    position += length;
+                    text = new String(ascii, StandardCharsets.US_ASCII);
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupt binary Unity document: tag " + tag
+                            + " at offset " + (position - 1));
+            }
+        }
+
+        private int readVarint() {
+            return (int) readVarintLong();
+        }
+
+        private long readVarintLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a Unity document in the compact binary format read by {@link UnityBinaryReader}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * byte[] binary = UnityBinaryWriter.encode(text);
+ * }</pre>
+ * or, to encode from any event source:
+ * <pre>{@code
+ * UnityBinaryWriter writer = new UnityBinaryWriter();
+ * new UnityEventReader(reader).accept(writer);
+ * writer.writeTo(out);
+ * }</pre>
+ * The writer collects one document; element lengths are filled in as elements close and
+ * the dictionary is written ahead of the structure once the document is complete. An
+ * empty attributes object carries no information and is not encoded. See
+ * {@link UnityBinaryFormat} for the layout.
+ */
+public class UnityBinaryWriter implements UnityEventHandler {
+
+    private final Map<String, Integer> dictionaryIndexes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private byte[] body = new byte[256];
+    private int length = 0;
+
+    // Positions of the length fields of open elements
+    private int[] openLengths = new int[16];
+    private int depth = 0;
+    private boolean inAttributes = false;
+    private boolean complete = false;
+    private ValidationError firstError;
+
+    /**
+     * Encodes a Unity document.
+     *
+     * @param input the Unity document as a string
+     * @return the binary encoding
+     * @throws IllegalArgumentException if the document is not valid
+     */
+    public static byte[] encode(String input) {
+        UnityBinaryWriter writer = new UnityBinaryWriter();
+        new UnityEventReader(input).accept(writer);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void startElement(String name) {
+        if (complete) {
+            throw new IllegalStateException("Document already complete");
+        }
+        closeAttributes();
+        write(UnityBinaryFormat.ELEMENT);
+        writeVarint(indexOf(name));
+        if (depth == openLengths.length) {
+            openLengths = Arrays.copyOf(openLengths, depth * 2);
+        }
+        openLengths[depth++] = length;
+        ensure(4);
+        length += 4;
+    }
+
+    @Override
+    public void endElement() {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+        closeAttributes();
+        write(UnityBinaryFormat.END);
+        int lengthField = openLengths[--depth];
+        int elementLength = length - lengthField - 4;
+        body[lengthField] = (byte) elementLength;
+        body[lengthField + 1] = (byte) (elementLength >>> 8);
+        body[lengthField + 2] = (byte) (elementLength >>> 16);
+        body[lengthField + 3] = (byte) (elementLength >>> 24);
+        if (depth == 0) {
+            complete = true;
+        }
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, String value) {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+        if (!inAttributes) {
+            write(UnityBinaryFormat.ATTRIBUTES);
+            inAttributes = true;
+        }
+        writeVarint(indexOf(name) + 1);
+        writeValue(type, value);
+    }
+
+    @Override
+    public void value(UnityValueType type, String value) {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+        closeAttributes();
+        writeValue(type, value);
+    }
+
+    @Override
+    public void error(ValidationError error) {
+        if (firstError == null) {
+            firstError = error;
+        }
+    }
+
+    /**
+     * Returns the encoded document.
+     *
+     * @return the binary encoding
+     * @throws IllegalArgumentException if an error was reported for the source document
+     * @throws IllegalStateException    if the document is not complete
+     */
+    public byte[] toByteArray() {
+        checkComplete();
+        ByteSink sink = new ByteSink(length + 16 * dictionary.size() + 8);
+        writeHeader(sink);
+        sink.write(body, 0, length);
+        return sink.toByteArray();
+    }
+
+    /**
+     * Writes the encoded document to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        checkComplete();
+        ByteSink header = new ByteSink(16 * dictionary.size() + 8);
+        writeHeader(header);
+        out.write(header.bytes, 0, header.length);
+        out.write(body, 0, length);
+    }
+
+    private void checkComplete() {
+        if (firstError != null) {
+            throw new IllegalArgumentException("Invalid Unity document: " + firstError);
+        }
+        if (!complete) {
+            throw new IllegalStateException("Document is not complete");
+        }
+    }
+
+    private void writeHeader(ByteSink sink) {
+        sink.write(UnityBinaryFormat.MAGIC, 0, UnityBinaryFormat.MAGIC.length);
+        sink.writeVarint(dictionary.size());
+        for (String entry : dictionary) {
+            byte[] utf8 = entry.getBytes(StandardCharsets.UTF_8);
+            sink.writeVarint(utf8.length);
+            sink.write(utf8, 0, utf8.length);
+        }
+    }
+
+    private void closeAttributes() {
+        if (inAttributes) {
+            write(UnityBinaryFormat.END);
+            inAttributes = false;
+        }
+    }
+
+    private void writeValue(UnityValueType type, String value) {
+        switch (type) {
+            case NULL:
+                write(UnityBinaryFormat.NULL);
+                break;
+            case BOOLEAN:
+                write("true".equals(value) ? UnityBinaryFormat.TRUE : UnityBinaryFormat.FALSE);
+                break;
+            case STRING:
+                write(UnityBinaryFormat.STRING);
+                writeVarint(indexOf(value));
+                break;
+            case NUMBER:
+                byte tag = UnityBinaryFormat.numberTag(value);
+                write(tag);
+                if (tag == UnityBinaryFormat.INT) {
+                    long n = Long.parseLong(value);
+                    writeVarint((n << 1) ^ (n >> 63));
+                } else if (tag == UnityBinaryFormat.DOUBLE) {
+                    long bits = Double.doubleToRawLongBits(Double.parseDouble(value));
+                    ensure(8);
+                    for (int i = 0; i < 8; i++) {
+                        body[length++] = (byte) (bits >>> (i * 8));
+                    }
+                } else {
+                    writeVarint(value.length());
+                    ensure(value.length());
+                    for (int i = 0; i < value.length(); i++) {
+                        body[length++] = (byte) value.charAt(i);
+                    }
+                }
+                break;
+        }
+    }
+
+    private int indexOf(String s) {
+        Integer index = dictionaryIndexes.get(s);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.add(s);
+            dictionaryIndexes.put(s, index);
+        }
+        return index;
+    }
+
+    private void write(byte b) {
+        ensure(1);
+        body[length++] = b;
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            body[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        body[length++] = (byte) value;
+    }
+
+    private void ensure(int n) {
+        if (length + n > body.length) {
+            body = Arrays.copyOf(body, Math.max(length + n, body.length * 2));
+        }
+    }
+
+    /**
+     * Growable buffer for the header.
+     */
+    private static final class ByteSink {
+        private byte[] bytes;
+        private int length = 0;
+
+        ByteSink(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void write(byte[] b, int offset, int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + n, bytes.length * 2));
+            }
+            System.arraycopy(b, offset, bytes, length, n);
+            length += n;
+        }
+
+        void writeVarint(long value) {
+            byte[] buffer = new byte[10];
+            int n = 0;
+            while ((value & ~0x7FL) != 0) {
+                buffer[n++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[n++] = (byte) value;
+            write(buffer, 0, n);
+        }
+
+        byte[] toByteArray() {
+            return bytes.length == length ? bytes : Arrays.copyOf(bytes, length);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Token source equivalent to {@link UnityLexer} that reads UTF-8 bytes directly.
+ * <p>
+ * All structural tokens, literals and numbers are ASCII, so the input is never decoded
+ * into characters: bytes are matched as they are, and the bytes of strings are only
+ * checked to be well-formed UTF-8. Tokens hold byte offsets, and decode their text on
+ * first use. Lines and columns are worked out only when asked for, normally when an
+ * error is reported, from an index of line starts built on the first such request.
+ * Columns count code points, as with {@link org.antlr.v4.runtime.CodePointCharStream};
+ * the same pass counts continuation bytes per block, so a column costs at most one
+ * block of bytes however long the line.
+ * <p>
+ * Token start and stop indexes are byte offsets from the start of the input, and the
+ * tokens read their text from the input buffer, which must not change while they are
+ * in use.
+ */
+final class UnityByteLexer implements TokenSource {
+
+    private static final int LBRACKET = UnityParser.T__0;
+    private static final int COMMA = UnityParser.T__1;
+    private static final int RBRACKET = UnityParser.T__2;
+    private static final int LBRACE = UnityParser.T__3;
+    private static final int RBRACE = UnityParser.T__4;
+    private static final int COLON = UnityParser.T__5;
+    private static final int TRUE = UnityParser.T__6;
+    private static final int FALSE = UnityParser.T__7;
+    private static final int NULL = UnityParser.T__8;
+
+    private static final int BLOCK = 256;
+
+    private static final byte[] TRUE_BYTES = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE_BYTES = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
+
+    private final ByteBuffer input;
+    private final int base;
+    private final int limit;
+    private int position;
+    private final List<ANTLRErrorListener> listeners = new ArrayList<>(1);
+    private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+    // Offsets of the first byte of each line, built on first use
+    private volatile int[] lineStarts;
+    private int lineCount;
+    // UTF-8 continuation bytes before each block of the input, built with the line starts
+    private int[] continuationsBefore;
+    private int tokenCount = 0;
+
+    /**
+     * Creates a lexer over the bytes from the buffer's position to its limit. The
+     * buffer's position is not changed.
+     *
+     * @param input UTF-8 encoded Unity text
+     */
+    UnityByteLexer(ByteBuffer input) {
+        this.input = input;
+        this.base = input.position();
+        this.limit = input.limit();
+        this.position = base;
+    }
+
+    /**
+     * Adds a listener for lexical errors, called with the same arguments as by
+     * {@link UnityLexer} except that there is no recognizer.
+     */
+    void addErrorListener(ANTLRErrorListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Token nextToken() {
+        while (true) {
+            // Whitespace
+            while (position < limit) {
+                byte b = input.get(position);
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    break;
+                }
+                position++;
+            }
+            if (position == limit) {
+                return new ByteToken(this, Token.EOF, position, position - 1);
+            }
+
+            int start = position;
+            byte b = input.get(position);
+            switch (b) {
+                case '[':
+                    return single(LBRACKET);
+                case ',':
+                    return single(COMMA);
+                case ']':
+                    return single(RBRACKET);
+                case '{':
+                    return single(LBRACE);
+                case '}':
+                    return single(RBRACE);
+                case ':':
+                    return single(COLON);
+                case '"':
+                    if (string()) {
+                        return new ByteToken(this, UnityParser.STRING, start, position - 1);
+                    }
+                    break;
+                case 't':
+                    if (literal(TRUE_BYTES)) {
+                        return new ByteToken(this, TRUE, start, position - 1);
+                    }
+                    break;
+                case 'f':
+                    if (literal(FALSE_BYTES)) {
+                        return new ByteToken(this, FALSE, start, position - 1);
+                    }
+                    break;
+                case 'n':
+                    if (literal(NULL_BYTES)) {
+                        return new ByteToken(this, NULL, start, position - 1);
+                    }
+                    break;
+                default:
+                    if (b == '-' || (b >= '0' && b <= '9')) {
+                        if (number()) {
+                            return new ByteToken(this, UnityParser.NUMBER, start, position - 1);
+                        }
+                    } else {
+                        position = Math.min(limit, position + sequenceLength(position));
+                    }
+            }
+            // Report the bytes up to and including the one that failed, and go on after it
+            recognitionError(start);
+        }
+    }
+
+    private Token single(int type) {
+        position++;
+        return new ByteToken(this, type, position - 1, position - 1);
+    }
+
+    /**
+     * Matches a STRING. On failure, position is just past the offending byte sequence.
+     */
+    private boolean string() {
+        position++;
+        while (position < limit) {
+            int b = input.get(position) & 0xFF;
+            if (b == '"') {
+                position++;
+                return true;
+            }
+            if (b == '\\') {
+                if (!escape()) {
+                    return false;
+                }
+            } else if (b < 0x20) {
+                position++;
+                return false;
+            } else if (b < 0x80) {
+                position++;
+            } else {
+                int length = validSequenceLength(position);
+                if (length < 0) {
+                    position = Math.min(limit, position - length);
+                    return false;
+                }
+                position += length;
+            }
+        }
+        return false;
+    }
+
+    private boolean escape() {
+        position++;
+        if (position == limit) {
+            return false;
+        }
+        byte b = input.get(position++);
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+                return true;
+            case 'u':
+                for (int i = 0; i < 4; i++) {
+                    if (position == limit || !isHex(input.get(position++))) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the length of the well-formed UTF-8 sequence at an offset, or minus the
+     * number of bytes up to and including the first ill-formed one.
+     */
+    private int validSequenceLength(int at) {
+        int lead = input.get(at) & 0xFF;
+        int length;
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            length = 2;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            length = 3;
+            if (lead == 0xE0) {
+                min = 0xA0;
+            } else if (lead == 0xED) {
+                // No surrogates
+                max = 0x9F;
+            }
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            length = 4;
+            if (lead == 0xF0) {
+                min = 0x90;
+            } else if (lead == 0xF4) {
+                max = 0x8F;
+            }
+        } else {
+            return -1;
+        }
+        for (int i = 1; i < length; i++) {
+            if (at + i >= limit) {
+                return -i;
+            }
+            int b = input.get(at + i) & 0xFF;
+            if (i == 1 ? b < min || b > max : (b & 0xC0) != 0x80) {
+                return -(i + 1);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes of the character starting at an offset, valid or not.
+     */
+    private int sequenceLength(int at) {
+        int length = validSequenceLength(at);
+        return length > 0 ? length : Math.max(1, -length - 1);
+    }
+
+    private boolean literal(byte[] expected) {
+        for (byte e : expected) {
+            if (position == limit || input.get(position) != e) {
+                position = Math.min(limit, position + 1);
+                return false;
+            }
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * Matches the longest NUMBER, backing off to the last complete one as ANTLR does.
+     */
+    private boolean number() {
+        if (input.get(position) == '-') {
+            position++;
+        }
+        if (position == limit || !isDigit(input.get(position))) {
+            position = Math.min(limit, position + 1);
+            return false;
+        }
+        if (input.get(position++) != '0') {
+            skipDigits();
+        }
+        int accepted = position;
+        if (position < limit && input.get(position) == '.') {
+            position++;
+            if (position < limit && isDigit(input.get(position))) {
+                skipDigits();
+                accepted = position;
+            } else {
+                position = accepted;
+                return true;
+            }
+        }
+        if (position < limit && (input.get(position) == 'e' || input.get(position) == 'E')) {
+            position++;
+            if (position < limit && (input.get(position) == '+' || input.get(position) == '-')) {
+                position++;
+            }
+            if (position < limit && isDigit(input.get(position))) {
+                skipDigits();
+                accepted = position;
+            }
+        }
+        position = accepted;
+        return true;
+    }
+
+    private void skipDigits() {
+        while (position < limit && isDigit(input.get(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isHex(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+    }
+
+    private void recognitionError(int start) {
+        String text = escapeForMessage(decode(start, position - 1));
+        int line = lineOf(start);
+        int column = columnOf(start, line);
+        for (ANTLRErrorListener listener : listeners) {
+            listener.syntaxError(null, null, line, column, "token recognition error at: '" + text + "'", null);
+        }
+    }
+
+    private static String escapeForMessage(String text) {
+        return text.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+
+    // =========================================================================
+    // Positions and Text
+    // =========================================================================
+
+    /**
+     * Returns the text of a byte range, with ill-formed bytes replaced.
+     */
+    String decode(int start, int stop) {
+        int length = stop - start + 1;
+        if (length <= 0) {
+            return "";
+        }
+        if (input.hasArray()) {
+            return new String(input.array(), input.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        input.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the 1-based line of a byte offset.
+     */
+    int lineOf(int offset) {
+        if (lineStarts == null) {
+            indexLines();
+        }
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Returns the 0-based column, in code points, of a byte offset on a line.
+     */
+    int columnOf(int offset, int line) {
+        int start = lineStarts[line - 1];
+        return offset - start - (continuationsBefore(offset) - continuationsBefore(start));
+    }
+
+    private int continuationsBefore(int offset) {
+        int block = (offset - base) / BLOCK;
+        int count = continuationsBefore[block];
+        int from = base + block * BLOCK;
+        if (block + 1 < continuationsBefore.length && continuationsBefore[block + 1] == count) {
+            return count;
+        }
+        for (int i = from; i < offset; i++) {
+            if ((input.get(i) & 0xC0) == 0x80) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void indexLines() {
+        if (lineStarts != null) {
+            return;
+        }
+        int[] starts = new int[64];
+        int count = 0;
+        starts[count++] = base;
+        int[] continuations = new int[(limit - base) / BLOCK + 1];
+        int continuation = 0;
+        for (int i = base; i < limit; i++) {
+            if ((i - base) % BLOCK == 0) {
+                continuations[(i - base) / BLOCK] = continuation;
+            }
+            byte b = input.get(i);
+            if (b == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            } else if ((b & 0xC0) == 0x80) {
+                continuation++;
+            }
+        }
+        if ((limit - base) % BLOCK == 0) {
+            continuations[(limit - base) / BLOCK] = continuation;
+        }
+        lineCount = count;
+        continuationsBefore = continuations;
+        lineStarts = starts;
+    }
+
+    @Override
+    public int getLine() {
+        return lineOf(position);
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return columnOf(position, lineOf(position));
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return null;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "<bytes>";
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return factory;
+    }
+
+    /**
+     * A token that holds only its type, byte range and index. Tokens are numbered as they
+     * are created, which is the order token streams fetch them in.
+     */
+    static final class ByteToken implements Token {
+        private final UnityByteLexer source;
+        private final int type;
+        private final int start;
+        private final int stop;
+        private final int index;
+        private String text;
+
+        ByteToken(UnityByteLexer source, int type, int start, int stop) {
+            this.source = source;
+            this.type = type;
+            this.start = start;
+            this.stop = stop;
+            this.index = source.tokenCount++;
+        }
+
+        @Override
+        public String getText() {
+            if (text == null) {
+                text = type == EOF ? "<EOF>" : source.decode(start, stop);
+            }
+            return text;
+        }
+
+        @Override
+        public int getType() {
+            return type;
+        }
+
+        @Override
+        public int getLine() {
+            return source.lineOf(start);
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return source.columnOf(start, source.lineOf(start));
+        }
+
+        @Override
+        public int getChannel() {
+            return DEFAULT_CHANNEL;
+        }
+
+        @Override
+        public int getTokenIndex() {
+            return index;
+        }
+
+        @Override
+        public int getStartIndex() {
+            return start - source.base;
+        }
+
+        @Override
+        public int getStopIndex() {
+            return stop - source.base;
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return source;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "[@" + index + "," + getStartIndex() + ":" + getStopIndex() + "='" + getText() + "',<" + type
+                    + ">]";
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of parse and validation results, keyed on the document text.
+ * <p>
+ * Sits in front of {@link Unity#parse(String)} and {@link Unity#isValid(String)} for
+ * workloads that see the same documents repeatedly. Two kinds of entries are kept:
+ * <ul>
+ *   <li>verdict entries, holding only the validation errors, used by {@link #isValid(String)}
+ *       and {@link #validate(String)}</li>
+ *   <li>result entries, holding the complete {@link Unity.ParseResult}, used by
+ *       {@link #parse(String)}</li>
+ * </ul>
+ * The cache is bounded both by entry count and by an estimate of retained bytes. It is
+ * split into independently locked stripes, each evicting in least-recently-used order.
+ * The entry bound is shared out between the stripes, and a stripe holds at least
+ * {@value #MIN_STRIPE_ENTRIES} entries, so small caches use fewer stripes rather than ones
+ * too small for an uneven share of the documents. The byte budget is not shared out: any
+ * document whose estimate fits the whole budget is cached, and a stripe that takes the
+ * cache over budget evicts its own entries first, then those of the other stripes.
+ * When a stripe is full, a new entry is only admitted if it has been requested at least as
+ * often as the entry it would evict (TinyLFU admission), so one-off documents cannot flush a
+ * working set of frequently validated ones.
+ * <p>
+ * Entries are found by a 128-bit hash of the text and keep the text, which is compared on
+ * every hit, so a hash collision costs a miss and never a wrong result. Cached
+ * {@link Unity.ParseResult} instances are shared between callers and must be treated as
+ * read-only. Instances are thread-safe.
+ */
+public class UnityCache {
+
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int MIN_STRIPE_ENTRIES = 64;
+
+    // Rough retained-size estimates used for the byte budget
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final long ERROR_OVERHEAD_BYTES = 96;
+    private static final long RESULT_BYTES_PER_CHAR = 32;
+    private static final long TEXT_BYTES_PER_CHAR = 2;
+
+    private final Segment[] segments;
+    private final long maxEntries;
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    // Estimated bytes of all stripes, changed under the lock of the stripe concerned
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    /**
+     * Creates a cache with the given bounds and a default number of stripes.
+     *
+     * @param maxEntries maximum number of cached entries
+     * @param maxBytes   maximum estimated bytes retained by cached entries
+     */
+    public UnityCache(long maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a cache with the given bounds.
+     *
+     * @param maxEntries maximum number of cached entries
+     * @param maxBytes   maximum estimated bytes retained by cached entries
+     * @param stripes    number of independently locked stripes, rounded up to a power of two
+     *                   and then halved until each stripe holds at least
+     *                   {@value #MIN_STRIPE_ENTRIES} entries, or down to one stripe
+     */
+    public UnityCache(long maxEntries, long maxBytes, int stripes) {
+        if (maxEntries <= 0 || maxBytes <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("Cache bounds and stripe count must be positive");
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        while (count > 1 && maxEntries / count < MIN_STRIPE_ENTRIES) {
+            count >>= 1;
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Share out the remainder, so that the stripes add up to the bound
+            segments[i] = new Segment(Math.max(1, maxEntries / count + (i < maxEntries % count ? 1 : 0)));
+        }
+    }
+
+    /**
+     * Parses and validates a document, returning a cached result when the same text was
+     * parsed before.
+     *
+     * @param input the Unity document as a string
+     * @return the (possibly shared) parse result
+     */
+    public Unity.ParseResult parse(String input) {
+        Key key = Key.of(input, true);
+        Segment segment = segmentFor(key);
+
+        Entry entry = segment.get(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.result;
+        }
+        misses.increment();
+
+        Unity.ParseResult parsed = Unity.parse(input);
+        Unity.ParseResult result = new Unity.ParseResult(parsed.getParseTree(),
+                Collections.unmodifiableList(parsed.getErrors()), input);
+        long bytes = ENTRY_OVERHEAD_BYTES
+                + input.length() * (RESULT_BYTES_PER_CHAR + TEXT_BYTES_PER_CHAR)
+                + errorBytes(result.getErrors());
+        put(segment, key, new Entry(result, result.getErrors(), bytes));
+        return result;
+    }
+
+    /**
+     * Validates a document, returning cached errors when the same text was validated before.
+     *
+     * @param input the Unity document as a string
+     * @return the (unmodifiable) list of validation errors, empty if the document is valid
+     */
+    public List<ValidationError> validate(String input) {
+        Key key = Key.of(input, false);
+        Segment segment = segmentFor(key);
+
+        Entry entry = segment.get(key);
+        if (entry == null) {
+            // A full result for the same text answers a verdict query too
+            Key resultKey = key.withResult();
+            entry = segmentFor(resultKey).peek(resultKey);
+        }
+        if (entry != null) {
+            hits.increment();
+            return entry.errors;
+        }
+        misses.increment();
+
+        List<ValidationError> errors = List.copyOf(Unity.parse(input).getErrors());
+        put(segment, key, new Entry(null, errors,
+                ENTRY_OVERHEAD_BYTES + input.length() * TEXT_BYTES_PER_CHAR + errorBytes(errors)));
+        return errors;
+    }
+
+    /**
+     * Returns true if the document is valid, using a cached verdict when available.
+     *
+     * @param input the Unity document as a string
+     * @return true if the document is valid, false otherwise
+     */
+    public boolean isValid(String input) {
+        return validate(input).isEmpty();
+    }
+
+    /**
+     * Removes all entries. Counters are not reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache counters and occupancy.
+     *
+     * @return the current statistics
+     */
+    public Stats getStats() {
+        long entries = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                entries += segment.map.size();
+                bytes += segment.bytes;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(),
+                entries, bytes, maxEntries, maxBytes);
+    }
+
+    /**
+     * Adds an entry to its stripe, then evicts from the other stripes while the cache is
+     * over its byte budget. Only one stripe lock is held at a time.
+     */
+    private void put(Segment segment, Key key, Entry entry) {
+        if (entry.bytes > maxBytes) {
+            rejections.increment();
+            return;
+        }
+        if (!segment.put(key, entry) || totalBytes.get() <= maxBytes) {
+            return;
+        }
+        for (Segment other : segments) {
+            if (other != segment && other.evictOverBudget()) {
+                return;
+            }
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[(int) (key.high >>> 32) & (segments.length - 1)];
+    }
+
+    private static long errorBytes(List<ValidationError> errors) {
+        long bytes = 0;
+        for (ValidationError error : errors) {
+            bytes += ERROR_OVERHEAD_BYTES + 2L * error.getMessage().length();
+            if (error.getPath() != null) {
+                bytes += 2L * error.getPath().length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * One independently locked LRU stripe with its own frequency sketch.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private final long maxEntries;
+        // Estimated bytes of this stripe's entries
+        private long bytes = 0;
+
+        Segment(long maxEntries) {
+            this.maxEntries = maxEntries;
+            this.sketch = new FrequencySketch(maxEntries);
+        }
+
+        Entry get(Key key) {
+            lock.lock();
+            try {
+                sketch.increment(key.hash());
+                return map.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Entry peek(Key key) {
+            lock.lock();
+            try {
+                return map.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Adds an entry, evicting from this stripe to make room.
+         *
+         * @return false if the entry was not admitted
+         */
+        boolean put(Key key, Entry entry) {
+            lock.lock();
+            try {
+                Entry previous = map.put(key, entry);
+                add(entry.bytes - (previous != null ? previous.bytes : 0));
+
+                if (map.size() > maxEntries || totalBytes.get() > maxBytes) {
+                    Map.Entry<Key, Entry> eldest = map.entrySet().iterator().next();
+                    if (!eldest.getKey().equals(key)
+                            && sketch.frequency(key.hash()) < sketch.frequency(eldest.getKey().hash())) {
+                        // The newcomer is less popular than what it would displace
+                        map.remove(key);
+                        add(-entry.bytes);
+                        rejections.increment();
+                        return false;
+                    }
+                }
+
+                Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+                while ((map.size() > maxEntries || totalBytes.get() > maxBytes) && it.hasNext()) {
+                    Map.Entry<Key, Entry> victim = it.next();
+                    if (victim.getKey().equals(key)) {
+                        continue;
+                    }
+                    it.remove();
+                    add(-victim.getValue().bytes);
+                    evictions.increment();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Evicts least recently used entries while the cache is over its byte budget.
+         *
+         * @return true if the cache is within its budget
+         */
+        boolean evictOverBudget() {
+            lock.lock();
+            try {
+                Iterator<Entry> it = map.values().iterator();
+                while (totalBytes.get() > maxBytes && it.hasNext()) {
+                    Entry victim = it.next();
+                    it.remove();
+                    add(-victim.bytes);
+                    evictions.increment();
+                }
+                return totalBytes.get() <= maxBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                add(-bytes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void add(long delta) {
+            bytes += delta;
+            totalBytes.addAndGet(delta);
+        }
+    }
+
+    /**
+     * Cached value: a full result, or only the validation errors.
+     */
+    private static final class Entry {
+        private final Unity.ParseResult result;
+        private final List<ValidationError> errors;
+        private final long bytes;
+
+        Entry(Unity.ParseResult result, List<ValidationError> errors, long bytes) {
+            this.result = result;
+            this.errors = errors;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A document's text with its 128-bit hash, and the kind of entry it addresses. Keys
+     * with equal hashes are only equal if their texts are.
+     */
+    private static final class Key {
+        private static final long PRIME_1 = 0x9E3779B97F4A7C15L;
+        private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+        private final long high;
+        private final long low;
+        private final String text;
+        private final boolean result;
+
+        private Key(long high, long low, String text, boolean result) {
+            this.high = high;
+            this.low = low;
+            this.text = text;
+            this.result = result;
+        }
+
+        static Key of(String input, boolean result) {
+            long h1 = PRIME_1;
+            long h2 = PRIME_2;
+            int length = input.length();
+            int i = 0;
+            // Fold four UTF-16 code units into each 64-bit lane step
+            for (; i + 4 <= length; i += 4) {
+                long block = input.charAt(i)
+                        | (long) input.charAt(i + 1) << 16
+                        | (long) input.charAt(i + 2) << 32
+                        | (long) input.charAt(i + 3) << 48;
+                h1 = Long.rotateLeft(h1 ^ block * PRIME_2, 31) * PRIME_1;
+                h2 = Long.rotateLeft(h2 + block * PRIME_1, 27) * PRIME_2 + h1;
+            }
+            for (; i < length; i++) {
+                h1 = Long.rotateLeft(h1 ^ input.charAt(i) * PRIME_2, 31) * PRIME_1;
+                h2 = (h2 + h1) * PRIME_2;
+            }
+            return new Key(mix(h1 ^ length), mix(h2 + h1), input, result);
+        }
+
+        Key withResult() {
+            return new Key(high, low, text, true);
+        }
+
+        long hash() {
+            return high ^ low;
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return high == other.high && low == other.low && result == other.result && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (low ^ (low >>> 32)) ^ (result ? 1 : 0);
+        }
+    }
+
+    /**
+     * Count-min sketch of request frequencies with 4-bit saturating counters.
+     * Counters are halved periodically so that stale popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(long maxEntries) {
+            int size = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(64, maxEntries)) - 1) << 1;
+            this.table = new long[size];
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE / 2, 10L * Math.max(64, maxEntries));
+        }
+
+        int frequency(long hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counter(hash, i));
+            }
+            return frequency;
+        }
+
+        void increment(long hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                int shift = offset(hash, i);
+                if (((table[index] >>> shift) & 0xF) != 0xF) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int counter(long hash, int i) {
+            return (int) ((table[index(hash, i)] >>> offset(hash, i)) & 0xF);
+        }
+
+        private int index(long hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return (int) (h >>> 40) & (table.length - 1);
+        }
+
+        private int offset(long hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return ((int) (h >>> 20) & 0xF) << 2;
+        }
+    }
+
+    /**
+     * Point-in-time cache statistics.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long rejectionCount;
+        private final long entryCount;
+        private final long estimatedBytes;
+        private final long maxEntries;
+        private final long maxBytes;
+
+        Stats(long hitCount, long missCount, long evictionCount, long rejectionCount,
+              long entryCount, long estimatedBytes, long maxEntries, long maxBytes) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.rejectionCount = rejectionCount;
+            this.entryCount = entryCount;
+            this.estimatedBytes = estimatedBytes;
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the number of entries removed to make room for new ones.
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the number of new entries that were not admitted, either because they were
+         * less frequently requested than the eviction candidate or larger than a stripe.
+         */
+        public long getRejectionCount() {
+            return rejectionCount;
+        }
+
+        public long getEntryCount() {
+            return entryCount;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * Returns the fraction of lookups that were hits, or 0 if there were no lookups.
+         */
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount
+                    + " rejections=" + rejectionCount + " entries=" + entryCount + "/" + maxEntries
+                    + " bytes=" + estimatedBytes + "/" + maxBytes;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the canonical form and content digest of a Unity document in one pass over
+ * its events.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityCanonicalizer canonicalizer = new UnityCanonicalizer();
+ * new UnityEventReader(reader).accept(canonicalizer);
+ * byte[] digest = canonicalizer.getDigest();
+ * }</pre>
+ * Documents with the same canonical form are the same document, whatever their
+ * whitespace, attribute order or escape spelling. The canonical form is compact Unity
+ * text, in UTF-8:
+ * <ul>
+ *   <li>No whitespace outside strings.</li>
+ *   <li>Attributes sorted by name, comparing UTF-16 code units; an empty attribute
+ *       object is left out.</li>
+ *   <li>Strings escape only {@code "} and {@code \}, as {@code \"} and {@code \\}, and
+ *       control characters, as {@code \b \f \n \r \t} or else {@code \}{@code u00xx};
+ *       unpaired surrogates are also written as {@code \}{@code uxxxx}, in lowercase hex.
+ *       Every other character is written as itself.</li>
+ *   <li>Numbers with the same decimal value are written the same way: without trailing
+ *       fraction zeros, {@code 0} for zero, as an integer or decimal fraction if the
+ *       exponent of the first significant digit is from -7 to 20, and otherwise as one
+ *       digit, the other significant digits after a point, {@code e} and the exponent,
+ *       as in {@code 1.5e21} or {@code -2e-8}. So {@code 1.50}, {@code 15E-1} and
+ *       {@code 1.5} are all {@code 1.5}, and {@code 1E3} is {@code 1000}. Numbers with
+ *       an exponent beyond the range of {@code int} are kept as written.</li>
+ * </ul>
+ * The digest of an element is the SHA-256 of its canonical text in which each child
+ * element is replaced by a zero byte, which canonical text never contains, and the
+ * child's own digest. The document digest is the root element's. Digests are thus
+ * computed as the events arrive, without holding the canonical text, and every subtree
+ * has a digest of its own that does not depend on where it appears, reported to a
+ * {@link SubtreeListener}.
+ * <p>
+ * The canonical text can also be written to a stream as it is produced. A canonicalizer
+ * handles one document.
+ */
+public final class UnityCanonicalizer implements UnityEventHandler {
+
+    /**
+     * Receives the digest of every element, children before their parent.
+     */
+    @FunctionalInterface
+    public interface SubtreeListener {
+
+        /**
+         * Called when an element is complete.
+         *
+         * @param path   the element's path, as a {@link UnityQuery} expression with a
+         *               position for each step below the root, e.g. {@code /order/item[2]}
+         * @param digest the digest of the element and its content
+         */
+        void subtree(String path, byte[] digest);
+    }
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final byte CHILD = 0;
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private static final Comparator<String[]> BY_NAME = Comparator.comparing(attribute -> attribute[0]);
+
+    private final OutputStream out;
+    private final SubtreeListener listener;
+
+    // Canonical text not yet passed to the innermost element's digest
+    private final StringBuilder text = new StringBuilder();
+    private MessageDigest[] digests = new MessageDigest[16];
+    private int depth = 0;
+
+    // Attributes of the innermost element, as name and canonical value
+    private final List<String[]> attributes = new ArrayList<>();
+    private boolean inAttributes = false;
+
+    // Paths of the open elements and counts of their children by name, for the listener
+    private String[] paths;
+    private List<Map<String, Integer>> childCounts;
+
+    private byte[] digest;
+    private ValidationError firstError;
+
+    /**
+     * Creates a canonicalizer that only computes digests.
+     */
+    public UnityCanonicalizer() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a canonicalizer.
+     *
+     * @param out      where to write the canonical text, or null
+     * @param listener the listener for the digest of each element, or null
+     */
+    public UnityCanonicalizer(OutputStream out, SubtreeListener listener) {
+        this(out, listener, true);
+    }
+
+    /**
+     * Creates a canonicalizer whose listener may be called without paths, as null.
+     */
+    UnityCanonicalizer(OutputStream out, SubtreeListener listener, boolean withPaths) {
+        this.out = out;
+        this.listener = listener;
+        if (listener != null && withPaths) {
+            paths = new String[16];
+            childCounts = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Returns the canonical form of a Unity document.
+     *
+     * @param input the Unity document as a string
+     * @return the canonical text
+     * @throws IllegalArgumentException if the document is not valid
+     */
+    public static String canonicalize(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length());
+        UnityCanonicalizer canonicalizer = new UnityCanonicalizer(out, null);
+        new UnityEventReader(input).accept(canonicalizer);
+        canonicalizer.getDigest();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the digest of a Unity document.
+     *
+     * @param input the Unity document as a string
+     * @return the SHA-256 digest of the document, see {@link UnityCanonicalizer}
+     * @throws IllegalArgumentException if the document is not valid
+     */
+    public static byte[] digest(String input) {
+        UnityCanonicalizer canonicalizer = new UnityCanonicalizer();
+        new UnityEventReader(input).accept(canonicalizer);
+        return canonicalizer.getDigest();
+    }
+
+    @Override
+    public void startElement(String name) {
+        if (digest != null) {
+            throw new IllegalStateException("Document already complete");
+        }
+        if (depth > 0) {
+            closeAttributes();
+            text.append(',');
+            flush();
+        }
+        if (depth == digests.length) {
+            digests = Arrays.copyOf(digests, depth * 2);
+        }
+        if (digests[depth] == null) {
+            digests[depth] = newDigest();
+        }
+        if (paths != null) {
+            enterPath(name);
+        }
+        depth++;
+        text.append('[');
+        appendString(text, name);
+        inAttributes = true;
+    }
+
+    @Override
+    public void endElement() {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+        closeAttributes();
+        text.append(']');
+        flush();
+        byte[] elementDigest = digests[--depth].digest();
+        if (paths != null) {
+            listener.subtree(paths[depth], elementDigest.clone());
+            childCounts.get(depth).clear();
+        } else if (listener != null) {
+            listener.subtree(null, elementDigest);
+        }
+        if (depth > 0) {
+            digests[depth - 1].update(CHILD);
+            digests[depth - 1].update(elementDigest);
+        } else {
+            digest = elementDigest;
+        }
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, String value) {
+        if (!inAttributes) {
+            throw new IllegalStateException("Attributes must come before content");
+        }
+        attributes.add(new String[]{name, canonicalValue(type, value)});
+    }
+
+    @Override
+    public void value(UnityValueType type, String value) {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element");
+        }
+        closeAttributes();
+        text.append(',');
+        appendValue(text, type, value);
+        if (text.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    @Override
+    public void error(ValidationError error) {
+        if (firstError == null) {
+            firstError = error;
+        }
+    }
+
+    /**
+     * Returns the digest of the document.
+     *
+     * @return the SHA-256 digest of the root element
+     * @throws IllegalArgumentException if an error was reported for the source document
+     * @throws IllegalStateException    if the document is not complete
+     */
+    public byte[] getDigest() {
+        if (firstError != null) {
+            throw new IllegalArgumentException("Invalid Unity document: " + firstError);
+        }
+        if (digest == null) {
+            throw new IllegalStateException("Document is not complete");
+        }
+        return digest.clone();
+    }
+
+    private void closeAttributes() {
+        if (!inAttributes) {
+            return;
+        }
+        inAttributes = false;
+        if (attributes.isEmpty()) {
+            return;
+        }
+        attributes.sort(BY_NAME);
+        text.append(",{");
+        for (int i = 0; i < attributes.size(); i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            appendString(text, attributes.get(i)[0]);
+            text.append(':').append(attributes.get(i)[1]);
+        }
+        text.append('}');
+        attributes.clear();
+    }
+
+    /**
+     * Passes the pending canonical text to the innermost element's digest and the output.
+     */
+    private void flush() {
+        if (text.length() == 0) {
+            return;
+        }
+        byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.setLength(0);
+        digests[depth - 1].update(utf8);
+        if (out != null) {
+            try {
+                out.write(utf8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void enterPath(String name) {
+        if (depth == paths.length) {
+            paths = Arrays.copyOf(paths, depth * 2);
+        }
+        if (depth == childCounts.size()) {
+            childCounts.add(new HashMap<>());
+        }
+        if (depth == 0) {
+            paths[0] = "/" + name;
+        } else {
+            int position = childCounts.get(depth - 1).merge(name, 1, Integer::sum);
+            paths[depth] = paths[depth - 1] + "/" + name + "[" + position + "]";
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * Returns a primitive value in canonical form.
+     */
+    static String canonicalValue(UnityValueType type, String value) {
+        StringBuilder sb = new StringBuilder();
+        appendValue(sb, type, value);
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder sb, UnityValueType type, String value) {
+        switch (type) {
+            case STRING:
+                appendString(sb, value);
+                break;
+            case NUMBER:
+                appendNumber(sb, value);
+                break;
+            case NULL:
+                sb.append("null");
+                break;
+            default:
+                sb.append(value);
+        }
+    }
+
+    /**
+     * Appends a string in canonical form.
+     */
+    static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendEscape(sb, c);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        sb.append(c).append(s.charAt(++i));
+                    } else if (Character.isSurrogate(c)) {
+                        appendEscape(sb, c);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendEscape(StringBuilder sb, char c) {
+        sb.append("\\u");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            sb.append(Character.forDigit((c >> shift) & 0xF, 16));
+        }
+    }
+
+    /**
+     * Appends a number in canonical form.
+     */
+    static void appendNumber(StringBuilder sb, String number) {
+        if (UnityBinaryFormat.isCanonicalLong(number)) {
+            sb.append(number);
+            return;
+        }
+        BigDecimal value;
+        try {
+            value = new BigDecimal(number).stripTrailingZeros();
+        } catch (NumberFormatException | ArithmeticException e) {
+            // Exponent beyond the range of int
+            sb.append(number);
+            return;
+        }
+        if (value.signum() == 0) {
+            sb.append('0');
+            return;
+        }
+        long exponent = (long) value.precision() - value.scale() - 1;
+        if (exponent >= -7 && exponent <= 20) {
+            sb.append(value.toPlainString());
+            return;
+        }
+        String digits = value.unscaledValue().abs().toString();
+        if (value.signum() < 0) {
+            sb.append('-');
+        }
+        sb.append(digits.charAt(0));
+        if (digits.length() > 1) {
+            sb.append('.').append(digits, 1, digits.length());
+        }
+        sb.append('e').append(exponent);
+    }
+}
@@ -0,0 +1,271 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.Arrays;
+
+/**
+ * A {@link CharStream} over a {@link CharSequence} that is read in place, for the lean
+ * tokens of {@link UnityTokenFactory}.
+ * <p>
+ * Unlike {@link org.antlr.v4.runtime.CodePointCharStream}, the input is neither copied
+ * nor decoded: the lexer sees UTF-16 code units, which the Unity grammar matches the
+ * same way since strings accept any character outside the ASCII controls, quote and
+ * backslash. Indexes are therefore char indexes into the sequence. The stream also
+ * keeps the start of every line that holds a token, so that tokens can work out their
+ * line and column, in code points, when asked. Columns subtract the surrogate pairs
+ * before a token, counted per block of chars as they are first needed, so a lookup
+ * costs at most one block however long the line. The lexer itself counts columns in
+ * chars, so the columns of its errors are converted the same way, by
+ * {@link #errorColumn}.
+ */
+final class UnityCharSequenceStream implements CharStream {
+
+    private static final int BLOCK = 256;
+
+    private final CharSequence data;
+    private final String name;
+    private int p = 0;
+
+    // Lines holding tokens: line number and char index of the line's first char
+    private int[] lineNumbers = new int[16];
+    private int[] lineStarts = new int[16];
+    private int lineCount = 0;
+    // Last line found, as tokens are mostly looked up in order
+    private int lastFound = 0;
+    private TokenSource tokenSource;
+    private int tokenCount = 0;
+
+    // Low surrogates of pairs before each block of chars, from the first line's start
+    private int[] pairsBefore;
+    private int blocks = 0;
+
+    UnityCharSequenceStream(CharSequence data) {
+        this(data, IntStream.UNKNOWN_SOURCE_NAME);
+    }
+
+    UnityCharSequenceStream(CharSequence data, String name) {
+        this.data = data;
+        this.name = name;
+    }
+
+    /**
+     * Returns the characters of the stream.
+     */
+    CharSequence getData() {
+        return data;
+    }
+
+    TokenSource getTokenSource() {
+        return tokenSource;
+    }
+
+    /**
+     * Returns the index of the next token created over the stream.
+     */
+    int nextTokenIndex() {
+        return tokenCount++;
+    }
+
+    /**
+     * Records where a token's line starts, when it is the first token seen on its line.
+     */
+    void recordLine(TokenSource source, int line, int lineStart) {
+        if (tokenSource == null) {
+            tokenSource = source;
+        }
+        if (lineCount > 0 && lineNumbers[lineCount - 1] >= line) {
+            return;
+        }
+        if (lineCount == lineNumbers.length) {
+            lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineNumbers[lineCount] = line;
+        lineStarts[lineCount] = lineStart;
+        lineCount++;
+    }
+
+    /**
+     * Returns the line of a token starting at an index.
+     */
+    int lineOf(int index) {
+        return lineNumbers[find(index)];
+    }
+
+    /**
+     * Returns the column, in code points, of a token starting at an index.
+     */
+    int columnOf(int index) {
+        int start = lineStarts[find(index)];
+        int end = Math.min(index, data.length());
+        return end - start - (pairsBefore(end) - pairsBefore(start));
+    }
+
+    /**
+     * Returns the column, in code points, of an error that a lexer over a stream of this
+     * kind reports with its column in chars. The columns of other lexers, which count code
+     * points already, and of parsers, which take them from tokens, are returned as they are.
+     *
+     * @param recognizer         the lexer or parser reporting the error
+     * @param charPositionInLine the column it reports
+     */
+    static int errorColumn(Recognizer<?, ?> recognizer, int charPositionInLine) {
+        if (recognizer instanceof Lexer lexer && lexer.getInputStream() instanceof UnityCharSequenceStream stream) {
+            int index = Math.min(lexer._tokenStartCharIndex, stream.data.length());
+            return charPositionInLine - stream.pairsBetween(index - charPositionInLine, index);
+        }
+        return charPositionInLine;
+    }
+
+    /**
+     * Returns the number of surrogate pairs whose low surrogate is in [start, end).
+     */
+    private int pairsBetween(int start, int end) {
+        int origin = lineCount > 0 ? Math.max(start, lineStarts[0]) : end;
+        int pairs = 0;
+        // Before the first token's line, where no blocks are counted
+        for (int i = Math.max(start, 0); i < Math.min(origin, end); i++) {
+            if (isLowOfPair(i)) {
+                pairs++;
+            }
+        }
+        if (end > origin) {
+            pairs += pairsBefore(end) - pairsBefore(origin);
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns the number of surrogate pairs between the first line's start and an index.
+     */
+    private int pairsBefore(int index) {
+        int origin = lineStarts[0];
+        int block = (index - origin) / BLOCK;
+        int from = origin + block * BLOCK;
+        boolean whole = from + BLOCK <= data.length();
+        countBlocks(whole ? block + 1 : block);
+        int pairs = pairsBefore[block];
+        if (whole && pairsBefore[block + 1] == pairs) {
+            return pairs;
+        }
+        for (int i = from; i < index; i++) {
+            if (isLowOfPair(i)) {
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Counts pairs up to the start of a block, if not done yet.
+     */
+    private void countBlocks(int block) {
+        if (pairsBefore == null) {
+            pairsBefore = new int[16];
+            blocks = 1;
+        }
+        if (block < blocks) {
+            return;
+        }
+        if (block >= pairsBefore.length) {
+            pairsBefore = Arrays.copyOf(pairsBefore, Math.max(block + 1, pairsBefore.length * 2));
+        }
+        int origin = lineStarts[0];
+        for (; blocks <= block; blocks++) {
+            int pairs = pairsBefore[blocks - 1];
+            int from = origin + (blocks - 1) * BLOCK;
+            for (int i = from; i < from + BLOCK; i++) {
+                if (isLowOfPair(i)) {
+                    pairs++;
+                }
+            }
+            pairsBefore[blocks] = pairs;
+        }
+    }
+
+    private boolean isLowOfPair(int i) {
+        return Character.isLowSurrogate(data.charAt(i)) && i > 0 && Character.isHighSurrogate(data.charAt(i - 1));
+    }
+
+    private int find(int index) {
+        int last = lastFound;
+        if (last < lineCount && lineStarts[last] <= index
+                && (last + 1 == lineCount || lineStarts[last + 1] > index)) {
+            return last;
+        }
+        int found = Arrays.binarySearch(lineStarts, 0, lineCount, index);
+        if (found < 0) {
+            found = -found - 2;
+        }
+        found = Math.max(found, 0);
+        lastFound = found;
+        return found;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.max(interval.a, 0);
+        int stop = Math.min(interval.b, data.length() - 1);
+        return start > stop ? "" : data.subSequence(start, stop + 1).toString();
+    }
+
+    @Override
+    public void consume() {
+        if (p >= data.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        p++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int index = i > 0 ? p + i - 1 : p + i;
+        if (index < 0 || index >= data.length()) {
+            return IntStream.EOF;
+        }
+        return data.charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        p = Math.min(index, data.length());
+    }
+
+    @Override
+    public int size() {
+        return data.length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return data.toString();
+    }
+}
@@ -0,0 +1,616 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Command-line tool that validates, prints or converts files of Unity documents.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp unity-antlr.jar:antlr4-runtime.jar com.metamadbooks.unity.parser.UnityCli \
+ *     validate|print|convert [options] path...
+ * </pre>
+ * Each path is a file, a directory searched recursively for files matching
+ * {@code --include}, or a glob such as {@code 'data/**&#47;*.unity'}. Files are processed
+ * in parallel by a pool of worker threads; results are reported in input order. Files of
+ * at least {@code --mmap-threshold} bytes are memory-mapped and lexed in place.
+ * <p>
+ * Commands:
+ * <ul>
+ *   <li>{@code validate} reports the errors of every file.</li>
+ *   <li>{@code print} writes the parse tree of every valid file to standard output in a
+ *       {@link PrintFormat}, and reports errors on standard error.</li>
+ *   <li>{@code convert} writes every valid file in the other format: text to the binary
+ *       format of {@link UnityBinaryWriter} ({@code .unityb}), binary to compact text
+ *       ({@code .unity}). Output files go next to their inputs, or under {@code --out}
+ *       with the same relative paths. Text is converted in one pass of
+ *       {@link UnityEventReader}, which reports every validation error but stops at the
+ *       first syntax error.</li>
+ * </ul>
+ * Options:
+ * <pre>
+ * -j, --threads N        worker threads (default: available processors)
+ * --include GLOB         file names searched for in directories (default: *.unity)
+ * --format LOG|TREE|LISP print format (default: LOG)
+ * --to text|binary       convert output format (default: the other format)
+ * -o, --out DIR          convert output directory
+ * --errors text|json     error report format (default: text)
+ * --mmap-threshold N     map files of at least N bytes (default: 1048576)
+ * --warm-up              prime the parser with {@link Unity#warmUp()} before the first file
+ * -q, --quiet            no summary
+ * </pre>
+ * Errors are reported one per line, as {@code file:line:column: message} or as a JSON
+ * object with the fields of {@link ValidationError}. Files that cannot be read, and files
+ * whose processing failed, for example by overflowing the stack, are reported as errors at
+ * line 0 and the run goes on with the other files. A summary with files/s, MB/s and the
+ * p50 and p99 per-file latency is written to standard error at the end. The exit status
+ * is 0 if every file is valid, 1 if any file has errors and 2 for usage errors.
+ * <p>
+ * Runs over a few small files are dominated by JVM startup and class loading. The
+ * {@code appcds} Maven profile packages the tool as an executable jar, with its
+ * dependencies in {@code target/lib}, and records an application class data sharing
+ * archive of the classes loaded by a training run:
+ * <pre>
+ * mvn -Pappcds package
+ * java -XX:SharedArchiveFile=target/unity-cli.jsa -XX:TieredStopAtLevel=1 \
+ *     -jar target/unity-antlr-1.0.0-SNAPSHOT.jar validate file.unity
+ * </pre>
+ * Stopping at the C1 compiler also helps such short runs. The startup benchmark in the
+ * tests measures the time to the first validated document with and without the archive.
+ */
+public final class UnityCli {
+
+    static final String USAGE = "Usage: UnityCli validate|print|convert [-j N] [--include GLOB]"
+            + " [--format LOG|TREE|LISP] [--to text|binary] [-o DIR] [--errors text|json]"
+            + " [--mmap-threshold N] [--warm-up] [-q] path...";
+
+    static final String TEXT_EXTENSION = ".unity";
+    static final String BINARY_EXTENSION = ".unityb";
+
+    private enum Command { VALIDATE, PRINT, CONVERT }
+
+    private enum Format { TEXT, BINARY }
+
+    private final Options options;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final PrintStream reports;
+
+    private UnityCli(Options options, PrintStream out, PrintStream err) {
+        this.options = options;
+        this.out = out;
+        this.err = err;
+        // Standard output carries the printed trees when printing
+        this.reports = options.command == Command.PRINT ? err : out;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the tool.
+     *
+     * @param args the command-line arguments
+     * @param out  the standard output
+     * @param err  the standard error
+     * @return the exit status
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Options options;
+        List<Source> sources;
+        try {
+            options = Options.parse(args);
+            sources = options.sources();
+        } catch (IllegalArgumentException e) {
+            err.println("unity: " + e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException | UncheckedIOException e) {
+            err.println("unity: " + e);
+            return 2;
+        }
+        return new UnityCli(options, out, err).process(sources);
+    }
+
+    private int process(List<Source> sources) {
+        ExecutorService workers = Executors.newFixedThreadPool(options.threads, runnable -> {
+            Thread thread = new Thread(runnable, "unity-cli");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bounds the outcomes held for in-order reporting
+        int window = options.threads * 4;
+        ArrayDeque<Task> pending = new ArrayDeque<>();
+        Summary summary = new Summary(sources.size());
+        if (options.warmUp) {
+            Unity.warmUp();
+        }
+        long start = System.nanoTime();
+        try {
+            for (Source source : sources) {
+                if (pending.size() >= window) {
+                    report(pending.poll(), summary);
+                }
+                pending.add(new Task(source, workers.submit(() -> process(source))));
+            }
+            while (!pending.isEmpty()) {
+                report(pending.poll(), summary);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        out.flush();
+        if (!options.quiet) {
+            err.println(options.json ? summary.toJson(elapsed, options.threads)
+                    : summary.toText(elapsed, options.threads));
+        }
+        return summary.invalid == 0 ? 0 : 1;
+    }
+
+    private void report(Task task, Summary summary) {
+        Outcome outcome;
+        try {
+            outcome = task.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            // One file's failure, such as a StackOverflowError on deep nesting, is its own
+            outcome = new Outcome(task.source, 0, 0,
+                    List.of(new ValidationError(0, 0, "Failed to process file: " + e.getCause())), null);
+        }
+        summary.add(outcome);
+        if (outcome.output != null) {
+            if (summary.total > 1) {
+                out.println("==> " + outcome.source.file + " <==");
+            }
+            out.print(outcome.output);
+        }
+        for (ValidationError error : outcome.errors) {
+            reports.println(options.json ? toJson(outcome.source.file, error)
+                    : toText(outcome.source.file, error));
+        }
+    }
+
+    private Outcome process(Source source) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        String output = null;
+        List<ValidationError> errors;
+        try {
+            ByteBuffer input = read(source.file, options.mmapThreshold);
+            bytes = input.remaining();
+            switch (options.command) {
+                case VALIDATE:
+                    errors = Unity.parse(input).getErrors();
+                    break;
+                case PRINT:
+                    Unity.ParseResult result = Unity.parse(input);
+                    errors = result.getErrors();
+                    if (errors.isEmpty()) {
+                        output = Unity.print(result, options.printFormat);
+                    }
+                    break;
+                default:
+                    errors = convert(source, input);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            errors = List.of(new ValidationError(0, 0, "Cannot read file: " + e.getMessage()));
+        }
+        return new Outcome(source, bytes, System.nanoTime() - start, errors, output);
+    }
+
+    private List<ValidationError> convert(Source source, ByteBuffer input) throws IOException {
+        Format from = isBinary(input) ? Format.BINARY : Format.TEXT;
+        Format to = options.to != null ? options.to : from == Format.TEXT ? Format.BINARY : Format.TEXT;
+        Path target = source.target(options.out, to == Format.TEXT ? TEXT_EXTENSION : BINARY_EXTENSION);
+        if (target.toAbsolutePath().normalize().equals(source.file.toAbsolutePath().normalize())) {
+            return List.of(new ValidationError(0, 0, "Output file would overwrite the input: " + target));
+        }
+
+        UnityTextWriter text = to == Format.TEXT ? new UnityTextWriter() : null;
+        UnityBinaryWriter binary = to == Format.BINARY ? new UnityBinaryWriter() : null;
+        UnityEventHandler writer = text != null ? text : binary;
+        if (from == Format.BINARY) {
+            try {
+                new UnityBinaryReader(input).accept(writer);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                return List.of(new ValidationError(0, 0, "Invalid binary document: " + e.getMessage()));
+            }
+        } else {
+            // One pass over the bytes in place: events go to the writer, errors are kept
+            List<ValidationError> errors = new ArrayList<>();
+            new UnityEventReader(input).accept(new UnityEventHandler() {
+                @Override
+                public void startElement(String name) {
+                    writer.startElement(name);
+                }
+
+                @Override
+                public void endElement() {
+                    writer.endElement();
+                }
+
+                @Override
+                public void attribute(String name, UnityValueType type, String value) {
+                    writer.attribute(name, type, value);
+                }
+
+                @Override
+                public void value(UnityValueType type, String value) {
+                    writer.value(type, value);
+                }
+
+                @Override
+                public void error(ValidationError error) {
+                    errors.add(error);
+                }
+            });
+            if (!errors.isEmpty()) {
+                return errors;
+            }
+        }
+
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (OutputStream stream = Files.newOutputStream(target)) {
+            if (text != null) {
+                stream.write(text.toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                binary.writeTo(stream);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Reads a file into a heap buffer, or maps it if it has at least {@code mmapThreshold}
+     * bytes.
+     */
+    static ByteBuffer read(Path file, long mmapThreshold) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is larger than 2 GB");
+            }
+            if (size >= mmapThreshold) {
+                // The mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until full or at end of file
+            }
+            return buffer.flip();
+        }
+    }
+
+    private static boolean isBinary(ByteBuffer input) {
+        if (input.remaining() < UnityBinaryFormat.MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < UnityBinaryFormat.MAGIC.length; i++) {
+            if (input.get(input.position() + i) != UnityBinaryFormat.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String toText(Path file, ValidationError error) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(file).append(':').append(error.getLine()).append(':').append(error.getColumn())
+                .append(": ").append(error.getMessage());
+        if (error.getPath() != null && !error.getPath().isEmpty()) {
+            sb.append(" (at ").append(error.getPath()).append(')');
+        }
+        return sb.toString();
+    }
+
+    static String toJson(Path file, ValidationError error) {
+        StringBuilder sb = new StringBuilder("{\"file\":");
+        UnityStrings.appendQuoted(sb, file.toString());
+        sb.append(',');
+        error.appendJsonFields(sb);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * A file to process and the directory its output path is relative to.
+     */
+    private static final class Source {
+        final Path file;
+        final Path root;
+
+        Source(Path file, Path root) {
+            this.file = file;
+            this.root = root;
+        }
+
+        Path target(Path outDirectory, String extension) {
+            Path relative = root != null ? root.relativize(file) : file.getFileName();
+            String name = relative.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            name = (dot > 0 ? name.substring(0, dot) : name) + extension;
+            if (outDirectory == null) {
+                return file.resolveSibling(name);
+            }
+            return outDirectory.resolve(relative).resolveSibling(name);
+        }
+    }
+
+    /**
+     * A file submitted to the workers.
+     */
+    private static final class Task {
+        final Source source;
+        final Future<Outcome> future;
+
+        Task(Source source, Future<Outcome> future) {
+            this.source = source;
+            this.future = future;
+        }
+    }
+
+    private static final class Outcome {
+        final Source source;
+        final long bytes;
+        final long nanos;
+        final List<ValidationError> errors;
+        final String output;
+
+        Outcome(Source source, long bytes, long nanos, List<ValidationError> errors, String output) {
+            this.source = source;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.errors = errors;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Counts and per-file latencies of the processed files.
+     */
+    static final class Summary {
+        final int total;
+        final long[] latencies;
+        int files;
+        int invalid;
+        long bytes;
+
+        Summary(int total) {
+            this.total = total;
+            this.latencies = new long[total];
+        }
+
+        void add(Outcome outcome) {
+            latencies[files++] = outcome.nanos;
+            bytes += outcome.bytes;
+            if (!outcome.errors.isEmpty()) {
+                invalid++;
+            }
+        }
+
+        /**
+         * Returns the latency at a percentile, by the nearest-rank method.
+         */
+        long percentile(double percent) {
+            if (files == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, files);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100 * files);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        String toText(long elapsedNanos, int threads) {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT,
+                    "%d files (%d valid, %d with errors), %.1f MB in %.3f s with %d threads:"
+                            + " %.1f files/s, %.1f MB/s, latency p50 %.3f ms, p99 %.3f ms",
+                    files, files - invalid, invalid, megabytes(), seconds, threads,
+                    files / seconds, megabytes() / seconds,
+                    percentile(50) / 1e6, percentile(99) / 1e6);
+        }
+
+        String toJson(long elapsedNanos, int threads) {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT,
+                    "{\"files\":%d,\"valid\":%d,\"invalid\":%d,\"bytes\":%d,\"seconds\":%.6f,"
+                            + "\"threads\":%d,\"filesPerSecond\":%.3f,\"megabytesPerSecond\":%.3f,"
+                            + "\"p50Millis\":%.3f,\"p99Millis\":%.3f}",
+                    files, files - invalid, invalid, bytes, seconds, threads,
+                    files / seconds, megabytes() / seconds,
+                    percentile(50) / 1e6, percentile(99) / 1e6);
+        }
+
+        private double megabytes() {
+            return bytes / (1024.0 * 1024.0);
+        }
+    }
+
+    /**
+     * Parsed command-line arguments.
+     */
+    private static final class Options {
+        Command command;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String include = "*" + TEXT_EXTENSION;
+        PrintFormat printFormat = PrintFormat.LOG;
+        Format to;
+        Path out;
+        boolean json;
+        long mmapThreshold = 1 << 20;
+        boolean warmUp;
+        boolean quiet;
+        final List<String> paths = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            if (args.length == 0) {
+                throw new IllegalArgumentException("No command");
+            }
+            options.command = choice(Command.class, args[0], "command");
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-j":
+                    case "--threads":
+                        options.threads = (int) number(args, ++i, arg, 1);
+                        break;
+                    case "--include":
+                        options.include = argument(args, ++i, arg);
+                        break;
+                    case "--format":
+                        options.printFormat = choice(PrintFormat.class, argument(args, ++i, arg), arg);
+                        break;
+                    case "--to":
+                        options.to = choice(Format.class, argument(args, ++i, arg), arg);
+                        break;
+                    case "-o":
+                    case "--out":
+                        options.out = Path.of(argument(args, ++i, arg));
+                        break;
+                    case "--errors":
+                        options.json = choice(Map.of("text", false, "json", true), argument(args, ++i, arg), arg);
+                        break;
+                    case "--mmap-threshold":
+                        options.mmapThreshold = number(args, ++i, arg, 0);
+                        break;
+                    case "--warm-up":
+                        options.warmUp = true;
+                        break;
+                    case "-q":
+                    case "--quiet":
+                        options.quiet = true;
+                        break;
+                    default:
+                        if (arg.startsWith("-") && arg.length() > 1) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        options.paths.add(arg);
+                }
+            }
+            if (options.paths.isEmpty()) {
+                throw new IllegalArgumentException("No input paths");
+            }
+            if (options.command != Command.CONVERT && (options.to != null || options.out != null)) {
+                throw new IllegalArgumentException("--to and --out only apply to convert");
+            }
+            return options;
+        }
+
+        private static String argument(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[i];
+        }
+
+        private static long number(String[] args, int i, String option, long min) {
+            String value = argument(args, i, option);
+            try {
+                long number = Long.parseLong(value);
+                if (number >= min && number <= Integer.MAX_VALUE) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+
+        private static <E extends Enum<E>> E choice(Class<E> type, String value, String option) {
+            try {
+                return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + option + ": " + value);
+            }
+        }
+
+        private static <T> T choice(Map<String, T> choices, String value, String option) {
+            T choice = choices.get(value.toLowerCase(Locale.ROOT));
+            if (choice == null) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+            return choice;
+        }
+
+        /**
+         * Expands the paths to the files to process, in argument order, each directory and
+         * glob sorted by path. A file found more than once is processed once.
+         */
+        List<Source> sources() throws IOException {
+            Map<Path, Source> sources = new LinkedHashMap<>();
+            PathMatcher includes = FileSystems.getDefault().getPathMatcher("glob:" + include);
+            for (String arg : paths) {
+                int meta = firstGlobChar(arg);
+                if (meta >= 0) {
+                    int slash = Math.max(arg.lastIndexOf('/', meta), arg.lastIndexOf(File.separatorChar, meta));
+                    Path base = Path.of(slash < 0 ? "." : arg.substring(0, slash + 1));
+                    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + arg);
+                    walk(base, path -> matcher.matches(slash < 0 ? base.relativize(path) : path), sources);
+                } else {
+                    Path path = Path.of(arg);
+                    if (Files.isDirectory(path)) {
+                        walk(path, file -> includes.matches(file.getFileName()), sources);
+                    } else if (Files.exists(path)) {
+                        sources.putIfAbsent(path.toAbsolutePath().normalize(), new Source(path, null));
+                    } else {
+                        throw new NoSuchFileException(arg);
+                    }
+                }
+            }
+            return new ArrayList<>(sources.values());
+        }
+
+        private static void walk(Path root, Predicate<Path> filter, Map<Path, Source> sources) throws IOException {
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile).filter(filter).sorted().forEach(file ->
+                        sources.putIfAbsent(file.toAbsolutePath().normalize(), new Source(file, root)));
+            }
+        }
+
+        private static int firstGlobChar(String arg) {
+            for (int i = 0; i < arg.length(); i++) {
+                if ("*?[{".indexOf(arg.charAt(i)) >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
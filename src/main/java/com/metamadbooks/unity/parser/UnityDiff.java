@@ -0,0 +1,774 @@
+package com.metamadbooks.unity.parser;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural diff and patch of Unity documents.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * List<UnityDiff.Edit> edits = UnityDiff.diff(oldDocument, newDocument);
+ * String script = UnityDiff.toScript(edits);
+ * ...
+ * String patched = UnityDiff.apply(oldDocument, UnityDiff.parseScript(script));
+ * }</pre>
+ * Documents are compared by their {@link UnityCanonicalizer canonical form}: whitespace,
+ * attribute order and the spelling of escapes and numbers are not changes. Both
+ * documents are read once into trees whose elements carry their subtree digests, so that
+ * the diff skips identical subtrees in constant time and only descends into elements
+ * whose digests differ. For such an element, the content common at the start and end is
+ * skipped, the rest is matched first by digest, which finds children that moved, and
+ * then by element name in order, and children matched by name are compared in turn.
+ * Moves are kept to the children outside a longest run already in order. The work done
+ * beyond reading the documents is thus proportional to the changed elements and their
+ * content.
+ * <p>
+ * The edit script is a list of {@link Edit}s, applied in order. An edit addresses an
+ * element by a path of content indexes, counting elements and values, from a virtual
+ * node holding the root: {@code /0} is the root element, {@code /0/2} the third item of
+ * its content, and the empty path is the virtual node itself, whose item 0 is replaced
+ * when the root changes name. Indexes refer to the document as changed by the edits
+ * before. As text, the script is itself a canonical Unity document:
+ * <pre>
+ * ["patch",
+ *   ["set",{"name":"status","path":"/0"},"closed"],
+ *   ["remove",{"index":3,"path":"/0"}],
+ *   ["move",{"from":4,"path":"/0","to":1}],
+ *   ["insert",{"index":2,"path":"/0"},["item",{"sku":"C-3"},1]],
+ *   ["replace",{"index":1,"path":"/0/2"},"new text"],
+ *   ["unset",{"name":"rush","path":"/0/2"}]]
+ * </pre>
+ */
+public final class UnityDiff {
+
+    /**
+     * Kinds of edit.
+     */
+    public enum EditType {
+        /**
+         * Inserts an item at an index of an element's content.
+         */
+        INSERT,
+
+        /**
+         * Removes the item at an index of an element's content.
+         */
+        REMOVE,
+
+        /**
+         * Moves an item of an element's content from one index to another, as if removed
+         * and then inserted.
+         */
+        MOVE,
+
+        /**
+         * Replaces the item at an index of an element's content.
+         */
+        REPLACE,
+
+        /**
+         * Adds an attribute or changes its value.
+         */
+        SET,
+
+        /**
+         * Removes an attribute.
+         */
+        UNSET
+    }
+
+    private static final String SCRIPT_ROOT = "patch";
+
+    private UnityDiff() {
+    }
+
+    /**
+     * Computes the edits that turn one document into another.
+     *
+     * @param from the original Unity document
+     * @param to   the changed Unity document
+     * @return the edit script, empty if the documents have the same canonical form
+     * @throws IllegalArgumentException if either document is not valid
+     */
+    public static List<Edit> diff(String from, String to) {
+        return diff(Node.read(from, true), Node.read(to, true));
+    }
+
+    /**
+     * Applies an edit script to a document.
+     *
+     * @param document the Unity document
+     * @param edits    the edits, as from {@link #diff(String, String)}
+     * @return the canonical text of the changed document
+     * @throws IllegalArgumentException if the document is not valid or an edit does not
+     *                                  apply to it
+     */
+    public static String apply(String document, List<Edit> edits) {
+        Node holder = new Node(null);
+        holder.content.add(Node.read(document, false));
+        for (Edit edit : edits) {
+            edit.applyTo(holder);
+        }
+        if (holder.content.size() != 1 || !(holder.content.get(0) instanceof Node)) {
+            throw new IllegalArgumentException("Edits do not leave a root element");
+        }
+        return toText(holder.content.get(0));
+    }
+
+    /**
+     * Writes an edit script as a Unity document.
+     *
+     * @param edits the edits
+     * @return the script, in canonical form
+     */
+    public static String toScript(List<Edit> edits) {
+        Node script = new Node(SCRIPT_ROOT);
+        for (Edit edit : edits) {
+            script.content.add(edit.toNode());
+        }
+        return toText(script);
+    }
+
+    /**
+     * Reads an edit script written by {@link #toScript(List)}.
+     *
+     * @param script the script
+     * @return the edits
+     * @throws IllegalArgumentException if the script is not valid
+     */
+    public static List<Edit> parseScript(String script) {
+        Node root = Node.read(script, false);
+        if (!SCRIPT_ROOT.equals(root.name)) {
+            throw new IllegalArgumentException("Edit script must have a '" + SCRIPT_ROOT + "' root element");
+        }
+        List<Edit> edits = new ArrayList<>(root.content.size());
+        for (Object item : root.content) {
+            if (!(item instanceof Node)) {
+                throw new IllegalArgumentException("Edit script must contain only edits");
+            }
+            edits.add(Edit.of((Node) item));
+        }
+        return edits;
+    }
+
+    // =========================================================================
+    // Diff
+    // =========================================================================
+
+    /**
+     * A pair of elements with different digests, at a path in the changed document.
+     */
+    private static final class Task {
+        final Node from;
+        final Node to;
+        final int[] path;
+
+        Task(Node from, Node to, int[] path) {
+            this.from = from;
+            this.to = to;
+            this.path = path;
+        }
+    }
+
+    private static List<Edit> diff(Node from, Node to) {
+        List<Edit> edits = new ArrayList<>();
+        if (same(from, to)) {
+            return edits;
+        }
+        if (!from.name.equals(to.name)) {
+            edits.add(new Edit(EditType.REPLACE, new int[0], 0, -1, null, to));
+            return edits;
+        }
+        // Depth first, in document order, without recursion
+        ArrayDeque<Task> tasks = new ArrayDeque<>();
+        tasks.push(new Task(from, to, new int[]{0}));
+        while (!tasks.isEmpty()) {
+            Task task = tasks.pop();
+            diffAttributes(task, edits);
+            List<Task> children = diffContent(task, edits);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                tasks.push(children.get(i));
+            }
+        }
+        return edits;
+    }
+
+    private static void diffAttributes(Task task, List<Edit> edits) {
+        List<String[]> a = task.from.attributes;
+        List<String[]> b = task.to.attributes;
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            int order = i == a.size() ? 1 : j == b.size() ? -1 : a.get(i)[0].compareTo(b.get(j)[0]);
+            if (order < 0) {
+                edits.add(new Edit(EditType.UNSET, task.path, -1, -1, a.get(i++)[0], null));
+            } else if (order > 0) {
+                edits.add(new Edit(EditType.SET, task.path, -1, -1, b.get(j)[0], b.get(j++)[1]));
+            } else {
+                if (!a.get(i)[1].equals(b.get(j)[1])) {
+                    edits.add(new Edit(EditType.SET, task.path, -1, -1, b.get(j)[0], b.get(j)[1]));
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Adds the edits that give an element the content of the other, except within
+     * children matched by name, which are returned in order.
+     */
+    private static List<Task> diffContent(Task task, List<Edit> edits) {
+        List<Object> a = task.from.content;
+        List<Object> b = task.to.content;
+        int start = 0;
+        while (start < a.size() && start < b.size() && same(a.get(start), b.get(start))) {
+            start++;
+        }
+        int endA = a.size();
+        int endB = b.size();
+        while (endA > start && endB > start && same(a.get(endA - 1), b.get(endB - 1))) {
+            endA--;
+            endB--;
+        }
+        if (start == endA && start == endB) {
+            return Collections.emptyList();
+        }
+
+        // Match the rest of the content: identical items first, then elements by name
+        // and values with values, in order
+        int[] match = new int[endA - start];
+        boolean[] similar = new boolean[endA - start];
+        boolean[] matchedB = new boolean[endB - start];
+        Arrays.fill(match, -1);
+        Map<Object, ArrayDeque<Integer>> byKey = new HashMap<>();
+        for (int j = start; j < endB; j++) {
+            byKey.computeIfAbsent(key(b.get(j)), k -> new ArrayDeque<>()).add(j);
+        }
+        for (int i = start; i < endA; i++) {
+            ArrayDeque<Integer> candidates = byKey.get(key(a.get(i)));
+            if (candidates != null && !candidates.isEmpty()) {
+                match[i - start] = candidates.poll();
+                matchedB[match[i - start] - start] = true;
+            }
+        }
+        // Items left over pair up only within the same gap between identical items, so
+        // that an element removed in one place is not rewritten into one added elsewhere
+        Map<List<Object>, ArrayDeque<Integer>> byKind = new HashMap<>();
+        int gap = start - 1;
+        for (int j = start; j < endB; j++) {
+            if (matchedB[j - start]) {
+                gap = j;
+            } else {
+                byKind.computeIfAbsent(List.of(kind(b.get(j)), gap), k -> new ArrayDeque<>()).add(j);
+            }
+        }
+        gap = start - 1;
+        for (int i = start; i < endA; i++) {
+            if (match[i - start] >= 0) {
+                gap = match[i - start];
+                continue;
+            }
+            ArrayDeque<Integer> candidates = byKind.get(List.of(kind(a.get(i)), gap));
+            if (candidates != null && !candidates.isEmpty()) {
+                match[i - start] = candidates.poll();
+                matchedB[match[i - start] - start] = true;
+                similar[i - start] = true;
+            }
+        }
+
+        // Remove the unmatched items, last first so that indexes stay valid
+        for (int i = endA - 1; i >= start; i--) {
+            if (match[i - start] < 0) {
+                edits.add(new Edit(EditType.REMOVE, task.path, i, -1, null, null));
+            }
+        }
+
+        // Move the matched items into the order of the changed document
+        List<Integer> current = new ArrayList<>();
+        for (int i = start; i < endA; i++) {
+            if (match[i - start] >= 0) {
+                current.add(match[i - start]);
+            }
+        }
+        // Items outside a longest run already in order move once each, in order of their
+        // final index, to just after the item that precedes them there
+        boolean[] inOrder = longestIncreasing(current, start, endB);
+        int[] targets = current.stream().mapToInt(Integer::intValue).sorted().toArray();
+        for (int k = 0; k < targets.length; k++) {
+            if (inOrder[targets[k] - start]) {
+                continue;
+            }
+            int p = current.indexOf(targets[k]);
+            int q = k == 0 ? -1 : current.indexOf(targets[k - 1]);
+            int to = p < q ? q : q + 1;
+            if (p != to) {
+                edits.add(new Edit(EditType.MOVE, task.path, start + p, start + to, null, null));
+                current.add(to, current.remove(p));
+            }
+        }
+
+        // Insert the new items, first first so that each lands at its final index
+        for (int j = start; j < endB; j++) {
+            if (!matchedB[j - start]) {
+                edits.add(new Edit(EditType.INSERT, task.path, j, -1, null, b.get(j)));
+            }
+        }
+
+        // Replace changed values and compare changed children, in document order
+        int[] similarFrom = new int[endB - start];
+        Arrays.fill(similarFrom, -1);
+        for (int i = start; i < endA; i++) {
+            if (similar[i - start]) {
+                similarFrom[match[i - start] - start] = i;
+            }
+        }
+        List<Task> children = new ArrayList<>();
+        for (int j = start; j < endB; j++) {
+            int i = similarFrom[j - start];
+            if (i < 0) {
+                continue;
+            }
+            if (b.get(j) instanceof Node) {
+                int[] path = Arrays.copyOf(task.path, task.path.length + 1);
+                path[task.path.length] = j;
+                children.add(new Task((Node) a.get(i), (Node) b.get(j), path));
+            } else {
+                edits.add(new Edit(EditType.REPLACE, task.path, j, -1, null, b.get(j)));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Marks the items of a longest increasing run of a sequence, by value.
+     */
+    private static boolean[] longestIncreasing(List<Integer> sequence, int start, int end) {
+        int n = sequence.size();
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int value = sequence.get(i);
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sequence.get(tails[mid]) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] marked = new boolean[end - start];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            marked[sequence.get(i) - start] = true;
+        }
+        return marked;
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a instanceof Node && b instanceof Node) {
+            return MessageDigest.isEqual(((Node) a).digest, ((Node) b).digest);
+        }
+        return a.equals(b);
+    }
+
+    private static Object key(Object item) {
+        return item instanceof Node ? ByteBuffer.wrap(((Node) item).digest) : item;
+    }
+
+    private static String kind(Object item) {
+        // Element names cannot start with a quote
+        return item instanceof Node ? ((Node) item).name : "\"value";
+    }
+
+    // =========================================================================
+    // Document trees
+    // =========================================================================
+
+    /**
+     * An element, with attributes sorted by name and values in canonical form.
+     */
+    private static final class Node {
+        final String name;
+        final List<String[]> attributes = new ArrayList<>();
+        // Nodes, and the canonical text of values
+        final List<Object> content = new ArrayList<>();
+        byte[] digest;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        static Node read(String input, boolean digests) {
+            Builder builder = new Builder(digests);
+            if (!new UnityEventReader(input).accept(builder) || builder.root == null) {
+                throw new IllegalArgumentException("Invalid Unity document: " + builder.firstError);
+            }
+            return builder.root;
+        }
+
+        Node copy() {
+            Node copy = new Node(name);
+            ArrayDeque<Node[]> pending = new ArrayDeque<>();
+            pending.push(new Node[]{this, copy});
+            while (!pending.isEmpty()) {
+                Node[] pair = pending.pop();
+                for (String[] attribute : pair[0].attributes) {
+                    pair[1].attributes.add(attribute.clone());
+                }
+                for (Object item : pair[0].content) {
+                    if (item instanceof Node) {
+                        Node child = new Node(((Node) item).name);
+                        pair[1].content.add(child);
+                        pending.push(new Node[]{(Node) item, child});
+                    } else {
+                        pair[1].content.add(item);
+                    }
+                }
+            }
+            return copy;
+        }
+
+        void setAttribute(String attributeName, String value) {
+            int index = indexOf(attributeName);
+            if (index >= 0) {
+                attributes.get(index)[1] = value;
+            } else {
+                attributes.add(-index - 1, new String[]{attributeName, value});
+            }
+        }
+
+        int indexOf(String attributeName) {
+            int low = 0;
+            int high = attributes.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int order = attributes.get(mid)[0].compareTo(attributeName);
+                if (order < 0) {
+                    low = mid + 1;
+                } else if (order > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+    }
+
+    /**
+     * Builds a tree from events, with digests from a {@link UnityCanonicalizer}.
+     */
+    private static final class Builder implements UnityEventHandler {
+        private final UnityCanonicalizer canonicalizer;
+        private final ArrayDeque<Node> open = new ArrayDeque<>();
+        Node root;
+        ValidationError firstError;
+
+        Builder(boolean digests) {
+            canonicalizer = digests
+                    ? new UnityCanonicalizer(null, (path, digest) -> open.peek().digest = digest, false)
+                    : null;
+        }
+
+        @Override
+        public void startElement(String name) {
+            Node node = new Node(name);
+            if (open.isEmpty()) {
+                root = node;
+            } else {
+                open.peek().content.add(node);
+            }
+            open.push(node);
+            if (canonicalizer != null) {
+                canonicalizer.startElement(name);
+            }
+        }
+
+        @Override
+        public void endElement() {
+            if (canonicalizer != null) {
+                canonicalizer.endElement();
+            }
+            Node node = open.pop();
+            node.attributes.sort((x, y) -> x[0].compareTo(y[0]));
+        }
+
+        @Override
+        public void attribute(String name, UnityValueType type, String value) {
+            open.peek().attributes.add(new String[]{name, UnityCanonicalizer.canonicalValue(type, value)});
+            if (canonicalizer != null) {
+                canonicalizer.attribute(name, type, value);
+            }
+        }
+
+        @Override
+        public void value(UnityValueType type, String value) {
+            open.peek().content.add(UnityCanonicalizer.canonicalValue(type, value));
+            if (canonicalizer != null) {
+                canonicalizer.value(type, value);
+            }
+        }
+
+        @Override
+        public void error(ValidationError error) {
+            if (firstError == null) {
+                firstError = error;
+            }
+        }
+    }
+
+    /**
+     * Returns the canonical text of an element or value.
+     */
+    private static String toText(Object item) {
+        StringBuilder sb = new StringBuilder();
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(item);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String) {
+                // A value, or the text that closes an element
+                sb.append((String) next);
+                continue;
+            }
+            Node node = (Node) next;
+            sb.append('[');
+            UnityCanonicalizer.appendString(sb, node.name);
+            if (!node.attributes.isEmpty()) {
+                sb.append(",{");
+                for (int i = 0; i < node.attributes.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    UnityCanonicalizer.appendString(sb, node.attributes.get(i)[0]);
+                    sb.append(':').append(node.attributes.get(i)[1]);
+                }
+                sb.append('}');
+            }
+            pending.push("]");
+            for (int i = node.content.size() - 1; i >= 0; i--) {
+                pending.push(node.content.get(i));
+                pending.push(",");
+            }
+        }
+        return sb.toString();
+    }
+
+    // =========================================================================
+    // Edits
+    // =========================================================================
+
+    /**
+     * One edit of an edit script.
+     */
+    public static final class Edit {
+        private final EditType type;
+        private final int[] path;
+        private final int index;
+        private final int toIndex;
+        private final String name;
+        // Node or canonical value text, or the attribute value
+        private final Object value;
+
+        private Edit(EditType type, int[] path, int index, int toIndex, String name, Object value) {
+            this.type = type;
+            this.path = path;
+            this.index = index;
+            this.toIndex = toIndex;
+            this.name = name;
+            this.value = value;
+        }
+
+        public EditType getType() {
+            return type;
+        }
+
+        /**
+         * Returns the path of the element edited, such as {@code /0/2}.
+         */
+        public String getPath() {
+            StringBuilder sb = new StringBuilder();
+            for (int step : path) {
+                sb.append('/').append(step);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Returns the content index edited, or the index moved from; -1 for attribute edits.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the index moved to, or -1 if this is not a move.
+         */
+        public int getToIndex() {
+            return toIndex;
+        }
+
+        /**
+         * Returns the attribute name, or null if this is not an attribute edit.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the canonical text of the item inserted or replacing, or of the
+         * attribute value set; null for other edits.
+         */
+        public String getValue() {
+            return value == null ? null : toText(value);
+        }
+
+        @Override
+        public String toString() {
+            return toText(toNode());
+        }
+
+        Node toNode() {
+            Node node = new Node(type.name().toLowerCase());
+            if (type == EditType.MOVE) {
+                node.attributes.add(new String[]{"from", Integer.toString(index)});
+            } else if (index >= 0) {
+                node.attributes.add(new String[]{"index", Integer.toString(index)});
+            }
+            if (name != null) {
+                node.attributes.add(new String[]{"name", UnityStrings.quote(name)});
+            }
+            node.attributes.add(new String[]{"path", UnityStrings.quote(getPath())});
+            if (type == EditType.MOVE) {
+                node.attributes.add(new String[]{"to", Integer.toString(toIndex)});
+            }
+            if (value != null) {
+                node.content.add(value);
+            }
+            return node;
+        }
+
+        static Edit of(Node node) {
+            EditType type;
+            try {
+                type = EditType.valueOf(node.name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown edit: " + node.name);
+            }
+            int[] path = parsePath(stringAttribute(node, "path"));
+            boolean attributeEdit = type == EditType.SET || type == EditType.UNSET;
+            boolean hasValue = type == EditType.INSERT || type == EditType.REPLACE || type == EditType.SET;
+            if (node.content.size() != (hasValue ? 1 : 0)) {
+                throw new IllegalArgumentException("Edit '" + node.name + "' must have "
+                        + (hasValue ? "one item" : "no content"));
+            }
+            Object value = hasValue ? node.content.get(0) : null;
+            if (type == EditType.SET && value instanceof Node) {
+                throw new IllegalArgumentException("Attribute values cannot be elements");
+            }
+            return new Edit(type, path,
+                    attributeEdit ? -1 : intAttribute(node, type == EditType.MOVE ? "from" : "index"),
+                    type == EditType.MOVE ? intAttribute(node, "to") : -1,
+                    attributeEdit ? stringAttribute(node, "name") : null,
+                    value);
+        }
+
+        void applyTo(Node holder) {
+            Node target = holder;
+            for (int step : path) {
+                Object item = step >= 0 && step < target.content.size() ? target.content.get(step) : null;
+                if (!(item instanceof Node)) {
+                    throw new IllegalArgumentException("No element at " + getPath() + " for " + this);
+                }
+                target = (Node) item;
+            }
+            List<Object> content = target.content;
+            int limit = type == EditType.INSERT ? content.size() : content.size() - 1;
+            if (!(type == EditType.SET || type == EditType.UNSET) && (index < 0 || index > limit
+                    || (type == EditType.MOVE && (toIndex < 0 || toIndex > limit)))) {
+                throw new IllegalArgumentException("Index out of range for " + this);
+            }
+            switch (type) {
+                case INSERT:
+                    content.add(index, copyOf(value));
+                    break;
+                case REMOVE:
+                    content.remove(index);
+                    break;
+                case MOVE:
+                    content.add(toIndex, content.remove(index));
+                    break;
+                case REPLACE:
+                    content.set(index, copyOf(value));
+                    break;
+                case SET:
+                    target.setAttribute(name, (String) value);
+                    break;
+                default:
+                    int attribute = target.indexOf(name);
+                    if (attribute < 0) {
+                        throw new IllegalArgumentException("No attribute '" + name + "' for " + this);
+                    }
+                    target.attributes.remove(attribute);
+            }
+        }
+
+        private static Object copyOf(Object item) {
+            return item instanceof Node ? ((Node) item).copy() : item;
+        }
+
+        private static String stringAttribute(Node node, String attributeName) {
+            int index = node.indexOf(attributeName);
+            String value = index >= 0 ? node.attributes.get(index)[1] : null;
+            if (value == null || !value.startsWith("\"")) {
+                throw new IllegalArgumentException("Edit '" + node.name + "' needs a string '" + attributeName + "'");
+            }
+            return UnityStrings.unquote(value);
+        }
+
+        private static int intAttribute(Node node, String attributeName) {
+            int index = node.indexOf(attributeName);
+            try {
+                return Integer.parseInt(index >= 0 ? node.attributes.get(index)[1] : "");
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Edit '" + node.name + "' needs an integer '" + attributeName + "'");
+            }
+        }
+
+        private static int[] parsePath(String path) {
+            if (path.isEmpty()) {
+                return new int[0];
+            }
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("Invalid edit path: " + path);
+            }
+            String[] steps = path.substring(1).split("/", -1);
+            int[] result = new int[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                try {
+                    result[i] = Integer.parseInt(steps[i]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid edit path: " + path);
+                }
+            }
+            return result;
+        }
+    }
+}
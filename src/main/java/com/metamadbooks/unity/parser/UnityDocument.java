@@ -0,0 +1,61 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * One document read from a multi-document input, with its parse result.
+ */
+public class UnityDocument {
+
+    private final long index;
+    private final long byteOffset;
+    private final String text;
+    private final Unity.ParseResult result;
+
+    UnityDocument(long index, long byteOffset, String text, Unity.ParseResult result) {
+        this.index = index;
+        this.byteOffset = byteOffset;
+        this.text = text;
+        this.result = result;
+    }
+
+    /**
+     * Returns the position of the document in the input (0-based).
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the offset of the document's first byte in the input.
+     */
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    /**
+     * Returns the document text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the parse result. Line and column numbers in its errors are relative to
+     * the start of the document.
+     */
+    public Unity.ParseResult getResult() {
+        return result;
+    }
+
+    /**
+     * Returns true if the document is valid (no errors).
+     */
+    public boolean isValid() {
+        return result.isValid();
+    }
+
+    @Override
+    public String toString() {
+        return "document " + index + " at byte " + byteOffset
+                + (result.isValid() ? ": valid" : ": " + result.getErrors());
+    }
+}
@@ -0,0 +1,168 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cuts a UTF-8 byte stream into the texts of individual Unity documents.
+ * <p>
+ * Only the framing is decided here; the documents themselves are not checked. In
+ * {@link UnityDocumentStream.Framing#CONCATENATED} mode a document ends where its outermost
+ * bracket closes, so a malformed document may swallow the ones after it; the parser then
+ * reports it as a single invalid document.
+ */
+final class UnityDocumentSplitter {
+
+    /**
+     * The text of one document and where it was found.
+     */
+    record RawDocument(long index, long byteOffset, String text) {
+    }
+
+    private final InputStream in;
+    private final UnityDocumentStream.Framing framing;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+    private long bufferOffset = 0;
+    private boolean eof = false;
+    private long index = 0;
+
+    private byte[] document = new byte[256];
+    private int documentLength = 0;
+
+    UnityDocumentSplitter(InputStream in, UnityDocumentStream.Framing framing) {
+        this.in = in;
+        this.framing = framing;
+    }
+
+    /**
+     * Returns the next document, or null at the end of the input.
+     */
+    RawDocument next() throws IOException {
+        if (!skipWhitespace()) {
+            return null;
+        }
+        long byteOffset = bufferOffset + position;
+        documentLength = 0;
+        if (framing == UnityDocumentStream.Framing.LINES) {
+            readLine();
+        } else {
+            readValue();
+        }
+        String text = new String(document, 0, documentLength, StandardCharsets.UTF_8);
+        return new RawDocument(index++, byteOffset, text);
+    }
+
+    private boolean skipWhitespace() throws IOException {
+        while (fill()) {
+            if (!isWhitespace(buffer[position])) {
+                return true;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    private void readLine() throws IOException {
+        while (fill()) {
+            byte b = buffer[position++];
+            if (b == '\n') {
+                break;
+            }
+            append(b);
+        }
+        while (documentLength > 0 && isWhitespace(document[documentLength - 1])) {
+            documentLength--;
+        }
+    }
+
+    private void readValue() throws IOException {
+        byte first = buffer[position];
+        if (first == '"') {
+            append(buffer[position++]);
+            readStringRest();
+            return;
+        }
+        if (first != '[' && first != '{') {
+            // Not a document; read the stray token so the parser can report it
+            while (fill()) {
+                byte b = buffer[position];
+                if (isWhitespace(b) || b == '[' || b == '{') {
+                    break;
+                }
+                append(b);
+                position++;
+            }
+            return;
+        }
+        int depth = 0;
+        while (fill()) {
+            byte b = buffer[position++];
+            append(b);
+            if (b == '"') {
+                readStringRest();
+            } else if (b == '[' || b == '{') {
+                depth++;
+            } else if ((b == ']' || b == '}') && --depth == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads up to and including the closing quote of a string whose opening quote has
+     * already been appended.
+     */
+    private void readStringRest() throws IOException {
+        while (fill()) {
+            byte b = buffer[position++];
+            append(b);
+            if (b == '\\') {
+                if (fill()) {
+                    append(buffer[position++]);
+                }
+            } else if (b == '"') {
+                return;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private void append(byte b) {
+        if (documentLength == document.length) {
+            document = Arrays.copyOf(document, documentLength * 2);
+        }
+        document[documentLength++] = b;
+    }
+
+    /**
+     * Ensures at least one unread byte is buffered; returns false at the end of input.
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        bufferOffset += limit;
+        position = 0;
+        limit = 0;
+        int n;
+        do {
+            n = in.read(buffer);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses and validates a stream of Unity documents, such as a file with one document per
+ * line.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (UnityDocumentStream documents = UnityDocumentStream.open(path, Framing.LINES)) {
+ *     for (UnityDocument document : documents) {
+ *         if (!document.isValid()) {
+ *             System.out.println(document);
+ *         }
+ *     }
+ * }
+ * }</pre>
+ * Documents are returned in input order, each with its index and byte offset. The input
+ * must be UTF-8. Lexer and parser are reused across documents.
+ * <p>
+ * A pipelined stream reads on a dedicated thread and parses on a pool of worker threads.
+ * At most {@code capacity} documents are read ahead of the consumer, so a slow consumer
+ * stalls reading instead of filling the heap.
+ */
+public final class UnityDocumentStream implements Iterable<UnityDocument>, AutoCloseable {
+
+    /**
+     * How documents are delimited in the input.
+     */
+    public enum Framing {
+        /** One document per line; blank lines are skipped. */
+        LINES,
+        /** Documents follow one another, separated by optional whitespace. */
+        CONCATENATED
+    }
+
+    private static final Future<UnityDocument> END = CompletableFuture.completedFuture(null);
+
+    private final InputStream in;
+    private final UnityDocumentSplitter splitter;
+
+    // Sequential mode
+    private final UnitySession session;
+
+    // Pipelined mode
+    private final BlockingQueue<Future<UnityDocument>> pending;
+    private final ExecutorService workers;
+    private final Thread reader;
+
+    private boolean finished = false;
+    private boolean iterated = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a stream that reads and parses on the calling thread.
+     *
+     * @param in      UTF-8 encoded input; closed by {@link #close()}
+     * @param framing how documents are delimited
+     */
+    public UnityDocumentStream(InputStream in, Framing framing) {
+        this.in = in;
+        this.splitter = new UnityDocumentSplitter(in, framing);
+        this.session = new UnitySession();
+        this.pending = null;
+        this.workers = null;
+        this.reader = null;
+    }
+
+    /**
+     * Creates a pipelined stream that reads on one background thread and parses on
+     * {@code threads} worker threads.
+     *
+     * @param in       UTF-8 encoded input; closed by {@link #close()}
+     * @param framing  how documents are delimited
+     * @param threads  number of parser threads
+     * @param capacity maximum number of documents read ahead of the consumer
+     */
+    public UnityDocumentStream(InputStream in, Framing framing, int threads, int capacity) {
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("threads and capacity must be positive");
+        }
+        this.in = in;
+        this.splitter = new UnityDocumentSplitter(in, framing);
+        this.session = null;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+
+        ThreadLocal<UnitySession> sessions = ThreadLocal.withInitial(UnitySession::new);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "unity-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reader = new Thread(() -> read(sessions), "unity-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Opens a file for sequential parsing.
+     *
+     * @param path    the file to read
+     * @param framing how documents are delimited
+     * @return the document stream
+     * @throws IOException if the file cannot be opened
+     */
+    public static UnityDocumentStream open(Path path, Framing framing) throws IOException {
+        return new UnityDocumentStream(Files.newInputStream(path), framing);
+    }
+
+    /**
+     * Returns the next document, or null after the last one.
+     *
+     * @return the next document, or null at the end of the input
+     * @throws IOException if reading the input fails
+     */
+    public UnityDocument next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (session != null) {
+            UnityDocumentSplitter.RawDocument raw = splitter.next();
+            if (raw == null) {
+                finished = true;
+                return null;
+            }
+            return parse(raw, session);
+        }
+
+        Future<UnityDocument> future;
+        try {
+            future = pending.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a document");
+        }
+        if (future == END) {
+            finished = true;
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a document");
+        } catch (ExecutionException e) {
+            finished = true;
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Document parsing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns an iterator over the remaining documents. I/O errors are rethrown as
+     * {@link UncheckedIOException}. Can only be called once.
+     */
+    @Override
+    public Iterator<UnityDocument> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("UnityDocumentStream can only be iterated once");
+        }
+        iterated = true;
+        return new Iterator<>() {
+            private UnityDocument next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = UnityDocumentStream.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public UnityDocument next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                UnityDocument document = next;
+                next = null;
+                return document;
+            }
+        };
+    }
+
+    /**
+     * Returns the remaining documents as a sequential {@link Stream}.
+     */
+    public Stream<UnityDocument> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Stops background threads and closes the input.
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        closed = true;
+        if (reader != null) {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+        in.close();
+    }
+
+    /**
+     * Reader thread: splits the input and hands each document to the workers, blocking
+     * while {@code capacity} documents are waiting for the consumer.
+     */
+    private void read(ThreadLocal<UnitySession> sessions) {
+        try {
+            try {
+                UnityDocumentSplitter.RawDocument raw;
+                while (!closed && (raw = splitter.next()) != null) {
+                    UnityDocumentSplitter.RawDocument document = raw;
+                    pending.put(workers.submit(() -> parse(document, sessions.get())));
+                }
+                pending.put(END);
+            } catch (IOException e) {
+                if (!closed) {
+                    pending.put(CompletableFuture.failedFuture(e));
+                }
+            } catch (RejectedExecutionException e) {
+                // Closed by the consumer between reading a document and submitting it
+            } finally {
+                workers.shutdown();
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        }
+    }
+
+    private static UnityDocument parse(UnityDocumentSplitter.RawDocument raw, UnitySession session) {
+        return new UnityDocument(raw.index(), raw.byteOffset(), raw.text(), session.parse(raw.text()));
+    }
+}
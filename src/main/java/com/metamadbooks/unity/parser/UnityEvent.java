@@ -0,0 +1,135 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * One event of a streamed Unity document.
+ * <p>
+ * Which properties are set depends on the {@link UnityEventType}:
+ * <ul>
+ *   <li>START_ELEMENT: name</li>
+ *   <li>ATTRIBUTE: name, value type and value</li>
+ *   <li>VALUE: value type and value</li>
+ *   <li>ERROR: error</li>
+ * </ul>
+ * Line and column are those of the element's '[', the attribute name, the value or the
+ * error; END_ELEMENT carries the position of the ']'.
+ */
+public class UnityEvent {
+
+    private final UnityEventType type;
+    private final String name;
+    private final UnityValueType valueType;
+    private final String rawValue;
+    private final int line;
+    private final int column;
+    private final int depth;
+    private final ValidationError error;
+    private UnityNumber number;
+
+    UnityEvent(UnityEventType type, String name, UnityValueType valueType, String rawValue,
+               int line, int column, int depth, ValidationError error) {
+        this.type = type;
+        this.name = name;
+        this.valueType = valueType;
+        this.rawValue = rawValue;
+        this.line = line;
+        this.column = column;
+        this.depth = depth;
+        this.error = error;
+    }
+
+    static UnityEvent error(ValidationError error, int depth) {
+        return new UnityEvent(UnityEventType.ERROR, null, null, null,
+                error.getLine(), error.getColumn(), depth, error);
+    }
+
+    public UnityEventType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the element or attribute name, unquoted, or null.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type of the attribute or content value, or null.
+     */
+    public UnityValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the value as it appears in the document, e.g. {@code "a\"b"}, {@code 1e3}
+     * or {@code true}, or null for events without a value.
+     */
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    /**
+     * Returns the value with strings unquoted and unescaped; numbers and booleans are
+     * returned as written, and null values as null.
+     */
+    public String getValue() {
+        if (valueType == UnityValueType.STRING) {
+            return UnityStrings.unquote(rawValue);
+        }
+        return valueType == UnityValueType.NULL ? null : rawValue;
+    }
+
+    /**
+     * Returns a number value in typed form, parsed from the raw value on the first call,
+     * or null if the value is not a number.
+     */
+    public UnityNumber getNumber() {
+        if (valueType != UnityValueType.NUMBER) {
+            return null;
+        }
+        UnityNumber parsed = number;
+        if (parsed == null) {
+            parsed = UnityNumber.parse(rawValue);
+            number = parsed;
+        }
+        return parsed;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the nesting depth: 1 for the root element and its attributes and values.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the error of an ERROR event, or null.
+     */
+    public ValidationError getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case START_ELEMENT:
+                return "START_ELEMENT(" + name + ")";
+            case ATTRIBUTE:
+                return "ATTRIBUTE(" + name + "=" + rawValue + ")";
+            case VALUE:
+                return "VALUE(" + rawValue + ")";
+            case ERROR:
+                return "ERROR(" + error + ")";
+            default:
+                return type.name();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Receives the content of a Unity document as a sequence of callbacks.
+ * <p>
+ * This is the push counterpart of {@link UnityEventReader}: producers such as
+ * {@link UnityEventReader#accept(UnityEventHandler)} and {@link UnityBinaryReader} call it
+ * in document order, and consumers such as {@link UnityBinaryWriter} and
+ * {@link UnityTextWriter} implement it. All methods do nothing by default.
+ * <p>
+ * Values are passed as in {@link UnityEvent#getValue()}: strings unquoted and unescaped,
+ * numbers and booleans as written, and null values as null.
+ */
+public interface UnityEventHandler {
+
+    /**
+     * Called when an element is opened.
+     *
+     * @param name the element name
+     */
+    default void startElement(String name) {
+    }
+
+    /**
+     * Called when the most recently opened element is closed.
+     */
+    default void endElement() {
+    }
+
+    /**
+     * Called for each attribute of the current element, before any of its content.
+     *
+     * @param name  the attribute name
+     * @param type  the value type
+     * @param value the value
+     */
+    default void attribute(String name, UnityValueType type, String value) {
+    }
+
+    /**
+     * Called for each primitive content value of the current element.
+     *
+     * @param type  the value type
+     * @param value the value
+     */
+    default void value(UnityValueType type, String value) {
+    }
+
+    /**
+     * Called for a syntax or validation error in the source document.
+     *
+     * @param error the error
+     */
+    default void error(ValidationError error) {
+    }
+}
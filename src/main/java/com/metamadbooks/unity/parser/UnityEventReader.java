@@ -0,0 +1,404 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pull parser that reads a Unity document as a sequence of {@link UnityEvent}s.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (UnityEventReader reader = new UnityEventReader(new FileReader(file))) {
+ *     for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ * No parse tree is built and a {@link Reader} is consumed incrementally, so memory use is
+ * bounded by the nesting depth rather than the document size. The rules of a
+ * {@link UnityRuleSet}, the built-in ones unless others are given, run as the events are
+ * read; their errors are reported as ERROR events at the point where they are detected,
+ * with the same messages and paths as {@link Unity#parse(String, UnityRuleSet)}. The
+ * first syntax error ends the stream; the elements still open at that point get no
+ * END_ELEMENT event.
+ */
+public class UnityEventReader implements AutoCloseable {
+
+    private static final int LBRACKET = UnityParser.T__0;
+    private static final int COMMA = UnityParser.T__1;
+    private static final int RBRACKET = UnityParser.T__2;
+    private static final int LBRACE = UnityParser.T__3;
+    private static final int RBRACE = UnityParser.T__4;
+    private static final int COLON = UnityParser.T__5;
+    private static final int TRUE = UnityParser.T__6;
+    private static final int FALSE = UnityParser.T__7;
+    private static final int NULL = UnityParser.T__8;
+
+    private enum State { START, CONTENT, END_OF_ROOT, DONE }
+
+    private final TokenSource tokenSource;
+    private final Reader input;
+    private final ArrayDeque<UnityEvent> pending = new ArrayDeque<>();
+    // Tracks the open elements and runs the rules
+    private final UnityRuleRunner rules;
+
+    private State state = State.START;
+    private Token current;
+    private ValidationError lexerError;
+    private boolean valid = true;
+
+    /**
+     * Creates a reader over a character stream, which is consumed incrementally and closed
+     * by {@link #close()}.
+     *
+     * @param reader the Unity document
+     */
+    public UnityEventReader(Reader reader) {
+        this(reader, UnityRuleSet.defaults());
+    }
+
+    /**
+     * Creates a reader over a character stream that validates with the given rules.
+     *
+     * @param reader the Unity document
+     * @param rules  the validation rules
+     */
+    public UnityEventReader(Reader reader, UnityRuleSet rules) {
+        this(new UnbufferedCharStream(reader), reader, rules);
+    }
+
+    /**
+     * Creates a reader over a document held in memory. The string is lexed in place into
+     * {@link UnityToken}s, so only names and values are copied out of it.
+     *
+     * @param input the Unity document as a string
+     */
+    public UnityEventReader(String input) {
+        this(input, UnityRuleSet.defaults());
+    }
+
+    /**
+     * Creates a reader over a document held in memory that validates with the given rules.
+     *
+     * @param input the Unity document as a string
+     * @param rules the validation rules
+     */
+    public UnityEventReader(String input, UnityRuleSet rules) {
+        this(new UnityCharSequenceStream(input), null, rules);
+    }
+
+    /**
+     * Creates a reader over UTF-8 bytes, from the buffer's position to its limit, which
+     * are lexed in place by {@link UnityByteLexer}. The buffer's position is not changed.
+     *
+     * @param input the Unity document as UTF-8 bytes
+     */
+    UnityEventReader(ByteBuffer input) {
+        UnityByteLexer lexer = new UnityByteLexer(input);
+        lexer.addErrorListener(lexerErrors());
+        this.tokenSource = lexer;
+        this.input = null;
+        this.rules = new UnityRuleRunner(UnityRuleSet.defaults(), this::error);
+    }
+
+    private UnityEventReader(CharStream charStream, Reader input, UnityRuleSet rules) {
+        UnityLexer lexer = new UnityLexer(charStream);
+        if (charStream instanceof UnityCharSequenceStream) {
+            // Lean tokens that read the string in place
+            lexer.setTokenFactory(UnityTokenFactory.INSTANCE);
+        } else {
+            // Tokens must own their text once an unbuffered stream has moved past them
+            lexer.setTokenFactory(new CommonTokenFactory(true));
+        }
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(lexerErrors());
+        this.tokenSource = lexer;
+        this.input = input;
+        this.rules = new UnityRuleRunner(rules, this::error);
+    }
+
+    /**
+     * Returns a listener that keeps the first lexical error, which ends the stream.
+     */
+    private ANTLRErrorListener lexerErrors() {
+        return new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg,
+                                    RecognitionException e) {
+                if (lexerError == null) {
+                    lexerError = new ValidationError(line,
+                            UnityCharSequenceStream.errorColumn(recognizer, charPositionInLine), "Syntax error: " + msg);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the next event, or null at the end of the document.
+     *
+     * @return the next event, or null
+     * @throws UncheckedIOException if reading the underlying {@link Reader} fails
+     */
+    public UnityEvent next() {
+        while (pending.isEmpty() && state != State.DONE) {
+            step();
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Pushes the remaining events of the document to a handler.
+     *
+     * @param handler the handler to call
+     * @return true if the document had no errors
+     * @throws UncheckedIOException if reading the underlying {@link Reader} fails
+     */
+    public boolean accept(UnityEventHandler handler) {
+        for (UnityEvent event = next(); event != null; event = next()) {
+            switch (event.getType()) {
+                case START_ELEMENT:
+                    handler.startElement(event.getName());
+                    break;
+                case END_ELEMENT:
+                    handler.endElement();
+                    break;
+                case ATTRIBUTE:
+                    handler.attribute(event.getName(), event.getValueType(), event.getValue());
+                    break;
+                case VALUE:
+                    handler.value(event.getValueType(), event.getValue());
+                    break;
+                case ERROR:
+                    handler.error(event.getError());
+                    break;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Returns true if no ERROR event has been produced so far.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Closes the underlying {@link Reader}, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        state = State.DONE;
+        if (input != null) {
+            input.close();
+        }
+    }
+
+    /**
+     * Consumes tokens until at least one event is pending or the document ends.
+     */
+    private void step() {
+        switch (state) {
+            case START:
+                if (!advance()) {
+                    return;
+                }
+                if (current.getType() != LBRACKET) {
+                    mismatch(LBRACKET);
+                    return;
+                }
+                openElement();
+                break;
+            case CONTENT:
+                content();
+                break;
+            case END_OF_ROOT:
+                if (current.getType() == Token.EOF) {
+                    rules.finish();
+                    state = State.DONE;
+                } else {
+                    mismatch(Token.EOF);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void content() {
+        int type = current.getType();
+        if (type == RBRACKET) {
+            pending.add(new UnityEvent(UnityEventType.END_ELEMENT, null, null, null,
+                    current.getLine(), current.getCharPositionInLine(), rules.getDepth(), null));
+            rules.exitElement(current);
+            if (rules.getDepth() == 0) {
+                state = State.END_OF_ROOT;
+            }
+            advance();
+            return;
+        }
+        if (type != COMMA) {
+            mismatch(COMMA, RBRACKET);
+            return;
+        }
+        if (!advance()) {
+            return;
+        }
+        rules.nextContent();
+
+        switch (current.getType()) {
+            case LBRACE:
+                attributesObject();
+                break;
+            case LBRACKET:
+                openElement();
+                break;
+            case TRUE:
+            case FALSE:
+            case NULL:
+            case UnityParser.STRING:
+            case UnityParser.NUMBER:
+                UnityValueType valueType = UnityValueType.of(current.getType());
+                String rawValue = current.getText();
+                pending.add(new UnityEvent(UnityEventType.VALUE, null, valueType, rawValue,
+                        current.getLine(), current.getCharPositionInLine(), rules.getDepth(), null));
+                rules.value(valueType, rawValue, current);
+                advance();
+                break;
+            default:
+                mismatch(LBRACE, LBRACKET, TRUE, FALSE, NULL, UnityParser.STRING, UnityParser.NUMBER);
+        }
+    }
+
+    /**
+     * Consumes '[' and the element name.
+     */
+    private void openElement() {
+        Token bracket = current;
+        if (!advance()) {
+            return;
+        }
+        if (current.getType() != UnityParser.STRING) {
+            mismatch(UnityParser.STRING);
+            return;
+        }
+        String name = UnityStrings.unquote(UnityToken.textOf(current));
+        pending.add(new UnityEvent(UnityEventType.START_ELEMENT, name, null, null,
+                bracket.getLine(), bracket.getCharPositionInLine(), rules.getDepth() + 1, null));
+        rules.openElement(bracket);
+        rules.enterElement(name, current);
+        state = State.CONTENT;
+        advance();
+    }
+
+    /**
+     * Consumes a whole attributes object; attributes cannot nest, so no stack is needed.
+     */
+    private void attributesObject() {
+        Token brace = current;
+        if (!advance()) {
+            return;
+        }
+        if (current.getType() == RBRACE) {
+            rules.attributesObject(brace);
+            advance();
+            return;
+        }
+        while (true) {
+            if (current.getType() != UnityParser.STRING) {
+                mismatch(UnityParser.STRING);
+                return;
+            }
+            Token nameToken = current;
+            if (!advance()) {
+                return;
+            }
+            if (current.getType() != COLON) {
+                mismatch(COLON);
+                return;
+            }
+            if (!advance()) {
+                return;
+            }
+            UnityValueType valueType = UnityValueType.of(current.getType());
+            if (valueType == null) {
+                mismatch(TRUE, FALSE, NULL, UnityParser.STRING, UnityParser.NUMBER);
+                return;
+            }
+            String name = UnityStrings.unquote(UnityToken.textOf(nameToken));
+            String rawValue = current.getText();
+            pending.add(new UnityEvent(UnityEventType.ATTRIBUTE, name, valueType, rawValue,
+                    nameToken.getLine(), nameToken.getCharPositionInLine(), rules.getDepth(), null));
+            rules.attribute(name, valueType, rawValue, nameToken);
+            if (!advance()) {
+                return;
+            }
+            if (current.getType() == RBRACE) {
+                break;
+            }
+            if (current.getType() != COMMA) {
+                mismatch(COMMA, RBRACE);
+                return;
+            }
+            if (!advance()) {
+                return;
+            }
+        }
+        rules.attributesObject(brace);
+        advance();
+    }
+
+    /**
+     * Moves to the next token; returns false if the lexer reported an error, which ends
+     * the stream.
+     */
+    private boolean advance() {
+        try {
+            current = tokenSource.nextToken();
+        } catch (RuntimeException e) {
+            // UnbufferedCharStream wraps read failures
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw e;
+        }
+        if (lexerError != null) {
+            fail(lexerError);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds an error reported by a rule.
+     */
+    private void error(ValidationError error) {
+        valid = false;
+        pending.add(UnityEvent.error(error, rules.getDepth()));
+    }
+
+    private void mismatch(int... expected) {
+        fail(new ValidationError(current.getLine(), current.getCharPositionInLine(),
+                "Syntax error: " + DeepUnityParser.mismatchMessage(current, expected)));
+    }
+
+    private void fail(ValidationError error) {
+        valid = false;
+        pending.add(UnityEvent.error(error, rules.getDepth()));
+        state = State.DONE;
+    }
+}
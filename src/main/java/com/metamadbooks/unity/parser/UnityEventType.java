@@ -0,0 +1,31 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Kinds of {@link UnityEvent} produced while streaming a Unity document.
+ */
+public enum UnityEventType {
+    /**
+     * An element was opened; the event carries its name.
+     */
+    START_ELEMENT,
+
+    /**
+     * The most recently opened element was closed.
+     */
+    END_ELEMENT,
+
+    /**
+     * An attribute of the current element; the event carries its name and value.
+     */
+    ATTRIBUTE,
+
+    /**
+     * A primitive content value of the current element.
+     */
+    VALUE,
+
+    /**
+     * A syntax or validation error; the event carries a {@link ValidationError}.
+     */
+    ERROR
+}
@@ -0,0 +1,324 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reformats Unity text, indented for people or minified for the wire, without parsing it.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (InputStream in = Files.newInputStream(source);
+ *      OutputStream out = Files.newOutputStream(target)) {
+ *     UnityFormatter.indented(2).format(in, out);
+ * }
+ * }</pre>
+ * The formatter scans UTF-8 bytes as {@link UnityDocumentSplitter} does: it drops the
+ * whitespace between tokens and writes its own, and copies strings, numbers and literals
+ * byte for byte, in runs, so their spelling and escapes are kept. It holds fixed buffers
+ * and one byte per open bracket, so any size of input runs in memory bounded by its
+ * nesting depth.
+ * <p>
+ * Minified output has no whitespace outside strings. Indented output starts each child
+ * element on a line of its own, indented by its depth; the element name, attributes and
+ * values stay on the line of the element that holds them, separated by {@code ", "} and
+ * {@code ": "}, and closing brackets follow the last item:
+ * <pre>
+ * ["order", {"id": 17},
+ *   ["item", {"sku": "A-1"}, 2],
+ *   ["note", "text"]]
+ * </pre>
+ * Several documents in one input are written one after the other, separated by a line
+ * break; indented output also ends with one.
+ * <p>
+ * The input is not validated. Tokens are written as they are, so a valid document gives
+ * a valid document, but brackets must balance and strings must end: otherwise an
+ * {@link IllegalArgumentException} is thrown, after part of the output has been written.
+ * A formatter holds no state between calls and can be shared.
+ */
+public final class UnityFormatter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Kinds of open bracket
+    private static final byte ELEMENT = 0;
+    private static final byte ARRAY = 1;
+    private static final byte OBJECT = 2;
+
+    private static final UnityFormatter MINIFIED = new UnityFormatter(-1);
+
+    // Bytes that end a number or literal: whitespace and structural characters
+    private static final boolean[] ENDS_SCALAR = new boolean[256];
+
+    static {
+        for (char c : " \t\n\r\"[]{},:".toCharArray()) {
+            ENDS_SCALAR[c] = true;
+        }
+    }
+
+    // Spaces per level, or -1 to minify
+    private final int indent;
+
+    private UnityFormatter(int indent) {
+        this.indent = indent;
+    }
+
+    /**
+     * Returns a formatter that writes no whitespace outside strings.
+     */
+    public static UnityFormatter minified() {
+        return MINIFIED;
+    }
+
+    /**
+     * Returns a formatter that starts child elements on new lines.
+     *
+     * @param indent the number of spaces per level of nesting
+     * @throws IllegalArgumentException if indent is negative
+     */
+    public static UnityFormatter indented(int indent) {
+        if (indent < 0) {
+            throw new IllegalArgumentException("Negative indent: " + indent);
+        }
+        return new UnityFormatter(indent);
+    }
+
+    /**
+     * Reformats a UTF-8 stream. Neither stream is closed.
+     *
+     * @param in  the Unity text
+     * @param out where to write the reformatted text
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if the brackets do not balance or a string does
+     *         not end
+     */
+    public void format(InputStream in, OutputStream out) throws IOException {
+        new Run(in, out).run();
+    }
+
+    /**
+     * Reformats a string.
+     *
+     * @param text the Unity text
+     * @return the reformatted text
+     * @throws IllegalArgumentException if the brackets do not balance or a string does
+     *         not end
+     */
+    public String format(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length());
+        try {
+            format(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One pass over an input.
+     */
+    private final class Run {
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private int outputLength = 0;
+        // Offset in the input of the buffer's first byte
+        private long base = 0;
+
+        // Kinds of the open brackets
+        private byte[] open = new byte[64];
+        private int depth = 0;
+        // A string or scalar continues into the next buffer
+        private boolean inString = false;
+        private boolean escaped = false;
+        private boolean inScalar = false;
+        private boolean afterComma = false;
+        private boolean anyDocument = false;
+
+        Run(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            int length;
+            while ((length = in.read(input)) >= 0) {
+                scan(length);
+                base += length;
+            }
+            if (inString) {
+                throw new IllegalArgumentException("Unterminated string at end of input");
+            }
+            if (depth > 0) {
+                throw new IllegalArgumentException(depth + " unclosed bracket(s) at end of input");
+            }
+            if (anyDocument && indent >= 0) {
+                write((byte) '\n');
+            }
+            flush();
+        }
+
+        private void scan(int length) throws IOException {
+            int i = 0;
+            if (inString) {
+                i = copyString(0, length);
+            } else if (inScalar) {
+                i = copyScalar(0, length);
+            }
+            while (i < length) {
+                byte b = input[i];
+                switch (b) {
+                    case ' ', '\t', '\n', '\r' -> i++;
+                    case '[' -> {
+                        startValue(true);
+                        push(depth == 0 || open[depth - 1] == ELEMENT ? ELEMENT : ARRAY);
+                        write(b);
+                        i++;
+                    }
+                    case '{' -> {
+                        startValue(false);
+                        push(OBJECT);
+                        write(b);
+                        i++;
+                    }
+                    case ']', '}' -> {
+                        if (depth == 0 || (open[depth - 1] == OBJECT) != (b == '}')) {
+                            throw new IllegalArgumentException("Unbalanced '" + (char) b
+                                    + "' at byte offset " + (base + i));
+                        }
+                        depth--;
+                        afterComma = false;
+                        write(b);
+                        i++;
+                    }
+                    case ',' -> {
+                        write(b);
+                        afterComma = true;
+                        i++;
+                    }
+                    case ':' -> {
+                        write(b);
+                        if (indent >= 0) {
+                            write((byte) ' ');
+                        }
+                        i++;
+                    }
+                    case '"' -> {
+                        startValue(false);
+                        write(b);
+                        inString = true;
+                        i = copyString(i + 1, length);
+                    }
+                    default -> {
+                        startValue(false);
+                        inScalar = true;
+                        i = copyScalar(i, length);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes what goes before a value: a line break between documents, or the
+         * space or new line after a comma.
+         */
+        private void startValue(boolean bracket) throws IOException {
+            if (depth == 0) {
+                if (anyDocument) {
+                    write((byte) '\n');
+                }
+                anyDocument = true;
+            } else if (afterComma && indent >= 0) {
+                if (bracket && open[depth - 1] == ELEMENT) {
+                    write((byte) '\n');
+                    for (int n = depth * indent; n > 0; n--) {
+                        write((byte) ' ');
+                    }
+                } else {
+                    write((byte) ' ');
+                }
+            }
+            afterComma = false;
+        }
+
+        /**
+         * Copies string bytes up to and including the closing quote, or to the end of
+         * the buffer, and returns the index after them.
+         */
+        private int copyString(int from, int length) throws IOException {
+            int i = from;
+            if (escaped) {
+                escaped = false;
+                i++;
+            }
+            while (i < length) {
+                byte b = input[i++];
+                if (b == '"') {
+                    inString = false;
+                    break;
+                }
+                if (b == '\\') {
+                    if (i == length) {
+                        escaped = true;
+                        break;
+                    }
+                    i++;
+                }
+            }
+            i = Math.min(i, length);
+            copy(from, i - from);
+            return i;
+        }
+
+        /**
+         * Copies the bytes of a number, literal or stray token, and returns the index
+         * after them.
+         */
+        private int copyScalar(int from, int length) throws IOException {
+            int i = from;
+            while (i < length) {
+                if (ENDS_SCALAR[input[i] & 0xFF]) {
+                    inScalar = false;
+                    break;
+                }
+                i++;
+            }
+            copy(from, i - from);
+            return i;
+        }
+
+        private void push(byte kind) {
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = kind;
+        }
+
+        private void write(byte b) throws IOException {
+            if (outputLength == output.length) {
+                flush();
+            }
+            output[outputLength++] = b;
+        }
+
+        private void copy(int from, int length) throws IOException {
+            if (length > output.length - outputLength) {
+                flush();
+            }
+            System.arraycopy(input, from, output, outputLength, length);
+            outputLength += length;
+        }
+
+        private void flush() throws IOException {
+            out.write(output, 0, outputLength);
+            outputLength = 0;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element and attribute indexes over a parsed Unity document, used by {@link UnityQuery}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityIndex index = result.getIndex();
+ * List<UnityParser.UnityElementContext> items = index.getElements("item");
+ * }</pre>
+ * Elements are numbered in document order. The element table and the name index are
+ * built in one walk of the tree; the attribute index is built from the element table
+ * the first time it is needed. Element numbers and index lists are sorted in document
+ * order, and the descendants of element {@code i} are exactly the elements
+ * {@code i + 1} to {@code getSubtreeEnd(i) - 1}.
+ * <p>
+ * An index can be shared by threads.
+ */
+public final class UnityIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final UnityParser.UnityElementContext[] elements;
+    private final String[] names;
+    private final int[] parents;
+    private final int[] subtreeEnds;
+    private final Map<String, int[]> elementsByName;
+
+    // Attribute name -> (value -> elements), plus attribute name -> elements having it
+    private volatile Map<String, Map<String, int[]>> elementsByAttributeValue;
+    private volatile Map<String, int[]> elementsByAttribute;
+
+    private UnityIndex(Builder builder) {
+        int count = builder.count;
+        this.elements = Arrays.copyOf(builder.elements, count);
+        this.names = Arrays.copyOf(builder.names, count);
+        this.parents = Arrays.copyOf(builder.parents, count);
+        this.subtreeEnds = Arrays.copyOf(builder.subtreeEnds, count);
+        this.elementsByName = new HashMap<>();
+        for (Map.Entry<String, IntList> entry : builder.elementsByName.entrySet()) {
+            elementsByName.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Builds the index of a parse tree.
+     *
+     * @param tree the parse tree
+     * @return the index
+     */
+    public static UnityIndex build(UnityParser.UnityContext tree) {
+        Builder builder = new Builder();
+        IterativeParseTreeWalker.DEFAULT.walk(builder, tree);
+        return new UnityIndex(builder);
+    }
+
+    /**
+     * Returns the number of elements in the document.
+     */
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * Returns an element by number.
+     *
+     * @param element the element number
+     * @return the element's parse tree node
+     */
+    public UnityParser.UnityElementContext getElement(int element) {
+        return elements[element];
+    }
+
+    /**
+     * Returns the name of an element, or null if it has none because of a syntax error.
+     *
+     * @param element the element number
+     * @return the decoded element name
+     */
+    public String getName(int element) {
+        return names[element];
+    }
+
+    /**
+     * Returns the number of an element's parent, or -1 for the root element.
+     *
+     * @param element the element number
+     * @return the parent's element number
+     */
+    public int getParent(int element) {
+        return parents[element];
+    }
+
+    /**
+     * Returns the number just past an element's last descendant.
+     *
+     * @param element the element number
+     * @return the end of the element's subtree
+     */
+    public int getSubtreeEnd(int element) {
+        return subtreeEnds[element];
+    }
+
+    /**
+     * Returns all elements with a name, in document order.
+     *
+     * @param name the element name
+     * @return the elements, empty if there are none
+     */
+    public List<UnityParser.UnityElementContext> getElements(String name) {
+        return toList(elementsWithName(name));
+    }
+
+    /**
+     * Returns all elements with an attribute of the given value, in document order. The
+     * value is compared with the decoded string for string values and with the literal
+     * text for numbers, booleans and null.
+     *
+     * @param attribute the attribute name
+     * @param value     the attribute value
+     * @return the elements, empty if there are none
+     */
+    public List<UnityParser.UnityElementContext> getElementsWithAttribute(String attribute, String value) {
+        return toList(elementsWithAttribute(attribute, value));
+    }
+
+    /**
+     * Wraps element numbers as a list of parse tree nodes.
+     */
+    List<UnityParser.UnityElementContext> toList(int[] numbers) {
+        if (numbers.length == 0) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<>() {
+            @Override
+            public UnityParser.UnityElementContext get(int i) {
+                return elements[numbers[i]];
+            }
+
+            @Override
+            public int size() {
+                return numbers.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the numbers of all elements, in document order.
+     */
+    int[] allElements() {
+        int[] all = new int[elements.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    int[] elementsWithName(String name) {
+        return elementsByName.getOrDefault(name, NONE);
+    }
+
+    int[] elementsWithAttribute(String attribute) {
+        buildAttributeIndex();
+        return elementsByAttribute.getOrDefault(attribute, NONE);
+    }
+
+    int[] elementsWithAttribute(String attribute, String value) {
+        buildAttributeIndex();
+        Map<String, int[]> byValue = elementsByAttributeValue.get(attribute);
+        return byValue == null ? NONE : byValue.getOrDefault(value, NONE);
+    }
+
+    private void buildAttributeIndex() {
+        if (elementsByAttribute != null) {
+            return;
+        }
+        synchronized (this) {
+            if (elementsByAttribute != null) {
+                return;
+            }
+            Map<String, Map<String, IntList>> byValue = new HashMap<>();
+            Map<String, IntList> byName = new HashMap<>();
+            for (int i = 0; i < elements.length; i++) {
+                for (UnityParser.ElementContentContext content : elements[i].elementContent()) {
+                    UnityParser.AttributesObjectContext attributes = content.attributesObject();
+                    if (attributes == null) {
+                        continue;
+                    }
+                    for (UnityParser.AttributePairContext pair : attributes.attributePair()) {
+                        String name = UnityStrings.unquote(pair.STRING().getText());
+                        String value = attributeValue(pair.attributeValue());
+                        IntList withName = byName.computeIfAbsent(name, k -> new IntList());
+                        // An element lists each attribute name once even if it repeats
+                        if (withName.size == 0 || withName.last() != i) {
+                            withName.add(i);
+                        }
+                        IntList withValue = byValue.computeIfAbsent(name, k -> new HashMap<>())
+                                .computeIfAbsent(value, k -> new IntList());
+                        if (withValue.size == 0 || withValue.last() != i) {
+                            withValue.add(i);
+                        }
+                    }
+                }
+            }
+
+            Map<String, Map<String, int[]>> valueIndex = new HashMap<>();
+            for (Map.Entry<String, Map<String, IntList>> entry : byValue.entrySet()) {
+                Map<String, int[]> values = new HashMap<>();
+                for (Map.Entry<String, IntList> value : entry.getValue().entrySet()) {
+                    values.put(value.getKey(), value.getValue().toArray());
+                }
+                valueIndex.put(entry.getKey(), values);
+            }
+            Map<String, int[]> nameIndex = new HashMap<>();
+            for (Map.Entry<String, IntList> entry : byName.entrySet()) {
+                nameIndex.put(entry.getKey(), entry.getValue().toArray());
+            }
+            elementsByAttributeValue = valueIndex;
+            elementsByAttribute = nameIndex;
+        }
+    }
+
+    /**
+     * Returns the value of an attribute as compared by queries.
+     */
+    private static String attributeValue(UnityParser.AttributeValueContext value) {
+        if (value == null) {
+            return null;
+        }
+        TerminalNode string = value.STRING();
+        return string != null ? UnityStrings.unquote(string.getText()) : value.getText();
+    }
+
+    /**
+     * Collects the element table and the name index in one walk.
+     */
+    private static final class Builder extends UnityBaseListener {
+        private UnityParser.UnityElementContext[] elements = new UnityParser.UnityElementContext[64];
+        private String[] names = new String[64];
+        private int[] parents = new int[64];
+        private int[] subtreeEnds = new int[64];
+        private int count = 0;
+        private final IntList open = new IntList();
+        private final Map<String, IntList> elementsByName = new HashMap<>();
+        // Names are shared between elements instead of decoded per element
+        private final Map<String, String> quotedNames = new HashMap<>();
+
+        @Override
+        public void enterUnityElement(UnityParser.UnityElementContext ctx) {
+            if (count == elements.length) {
+                int capacity = count * 2;
+                elements = Arrays.copyOf(elements, capacity);
+                names = Arrays.copyOf(names, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+            }
+            elements[count] = ctx;
+            parents[count] = open.size == 0 ? -1 : open.last();
+            open.add(count);
+            count++;
+        }
+
+        @Override
+        public void exitElementName(UnityParser.ElementNameContext ctx) {
+            String name = quotedNames.computeIfAbsent(ctx.STRING().getText(), UnityStrings::unquote);
+            int element = open.last();
+            names[element] = name;
+            elementsByName.computeIfAbsent(name, k -> new IntList()).add(element);
+        }
+
+        @Override
+        public void exitUnityElement(UnityParser.UnityElementContext ctx) {
+            subtreeEnds[open.removeLast()] = count;
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    static final class IntList {
+        private int[] values = new int[8];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
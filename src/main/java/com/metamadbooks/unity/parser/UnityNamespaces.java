@@ -0,0 +1,469 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Namespace processing for Unity documents: a table of interned {@link UnityQName}s, the
+ * in-scope prefix bindings of a document, and a {@link UnityRule} that reports names
+ * whose prefix is not declared.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityNamespaces namespaces = new UnityNamespaces();
+ * Unity.ParseResult result = Unity.parse(input, UnityRuleSet.defaults().with(namespaces));
+ *
+ * UnityQName item = namespaces.qname("urn:shop", "item");
+ * UnityNamespaces.Scope scope = namespaces.newScope();
+ * scope.startElement();
+ * scope.declare("xmlns:s", "urn:shop");
+ * if (scope.element("s:item") == item) {
+ *     ...
+ * }
+ * }</pre>
+ * Namespaces are declared as in XML, by {@code xmlns} and {@code xmlns:prefix}
+ * attributes, which apply to the element that holds them, whatever their position among
+ * its attributes, and to the elements within it. An unprefixed element name is in the
+ * default namespace; an unprefixed attribute name is in no namespace. The {@code xml}
+ * and {@code xmlns} prefixes are bound from the start and cannot be declared otherwise.
+ * <p>
+ * Unity documents are not namespace-aware by default: {@code ["ns:element"]} is valid
+ * under {@link UnityRuleSet#defaults()}. Added to a rule set, a {@code UnityNamespaces}
+ * resolves every element and attribute name as the document is parsed, and reports:
+ * <ul>
+ *   <li>names whose prefix is not declared</li>
+ *   <li>names that are not of the form {@code prefix:local} or {@code local}</li>
+ *   <li>declarations that undeclare a prefix or misuse a reserved one</li>
+ * </ul>
+ * Names are checked once the element's attributes have been read, as the element's own
+ * declarations apply to them, so errors about them carry the element's path. A
+ * {@link Handler} given to the constructor receives the names that resolve, at the same
+ * point:
+ * <pre>{@code
+ * UnityNamespaces namespaces = new UnityNamespaces(new UnityNamespaces.Handler() {
+ *     public void element(UnityQName name, UnityRuleContext context) {
+ *         ...
+ *     }
+ * });
+ * }</pre>
+ * <p>
+ * Names are resolved through a cache per {@link Scope}, keyed by the name as written, so
+ * each occurrence of a name costs a hash lookup and allocates nothing; only the first
+ * occurrence of a name is split into prefix and local name. The table is thread-safe
+ * and can be shared, as a rule, by all documents: names from it are the same objects
+ * wherever they were resolved, and are compared with {@code ==}.
+ */
+public final class UnityNamespaces implements UnityRule {
+
+    /**
+     * The namespace bound to the {@code xml} prefix.
+     */
+    public static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    /**
+     * The namespace of {@code xmlns} and {@code xmlns:prefix} attributes.
+     */
+    public static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    // Namespace URI, then local name
+    private final Map<String, Map<String, UnityQName>> names = new ConcurrentHashMap<>();
+    // Null when only errors are wanted
+    private final Handler handler;
+
+    /**
+     * Receives the resolved names of each element of the documents a
+     * {@link UnityNamespaces} rule checks. Names that do not resolve are reported as errors
+     * instead. The context is that of the rule, at the point the names are checked, and
+     * its path is the element's. A handler shared by documents parsed at the same time is
+     * called from all their threads. All methods do nothing by default.
+     */
+    public interface Handler {
+
+        /**
+         * Called with an element's name, before the names of its attributes.
+         *
+         * @param name    the resolved element name
+         * @param context the rule context
+         */
+        default void element(UnityQName name, UnityRuleContext context) {
+        }
+
+        /**
+         * Called with the name of each attribute of the element, in document order,
+         * except namespace declarations.
+         *
+         * @param name    the resolved attribute name
+         * @param context the rule context
+         */
+        default void attribute(UnityQName name, UnityRuleContext context) {
+        }
+    }
+
+    /**
+     * Creates a table, and a rule that only reports errors.
+     */
+    public UnityNamespaces() {
+        this(null);
+    }
+
+    /**
+     * Creates a table, and a rule that passes the resolved names of each element to a
+     * handler.
+     *
+     * @param handler receives the resolved names, or null for none
+     */
+    public UnityNamespaces(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Returns the interned name for a namespace URI and local name.
+     *
+     * @param namespaceUri the namespace URI, or the empty string for no namespace
+     * @param localName    the local name
+     * @return the name, the same object for every call with equal arguments
+     */
+    public UnityQName qname(String namespaceUri, String localName) {
+        Map<String, UnityQName> locals = names.get(namespaceUri);
+        if (locals == null) {
+            locals = names.computeIfAbsent(namespaceUri, uri -> new ConcurrentHashMap<>());
+        }
+        UnityQName name = locals.get(localName);
+        if (name == null) {
+            name = locals.computeIfAbsent(localName, local -> new UnityQName(namespaceUri, local));
+        }
+        return name;
+    }
+
+    /**
+     * Returns new, empty bindings for resolving the names of one document.
+     */
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * Returns true if the name has at most one colon, with characters on both sides.
+     */
+    private static boolean isQualified(String name) {
+        int colon = name.indexOf(':');
+        return colon < 0 || colon > 0 && colon < name.length() - 1 && name.indexOf(':', colon + 1) < 0;
+    }
+
+    /**
+     * Returns the prefix an attribute declares, "" for the default namespace, or null if
+     * the attribute is not a namespace declaration.
+     */
+    private static String declaredPrefix(String attributeName) {
+        if (attributeName.equals("xmlns")) {
+            return "";
+        }
+        if (attributeName.startsWith("xmlns:") && isQualified(attributeName)) {
+            return attributeName.substring(6);
+        }
+        return null;
+    }
+
+    /**
+     * A name as written, with its prefix and local name and what it last resolved to.
+     */
+    private static final class Resolution {
+        // Null for an unprefixed name
+        final String prefix;
+        final String localName;
+        UnityQName qname;
+        int generation = -1;
+
+        Resolution(String prefix, String localName) {
+            this.prefix = prefix;
+            this.localName = localName;
+        }
+    }
+
+    /**
+     * The namespace bindings in scope at a point of one document, kept as a stack that
+     * follows its elements.
+     * <p>
+     * Call {@link #startElement()} for each element, then {@link #declare} for each of
+     * its attributes, before resolving its names with {@link #element} and
+     * {@link #attribute}, and {@link #endElement()} when it closes. A scope is used by
+     * one thread at a time.
+     */
+    public final class Scope {
+        private final Map<String, String> bindings = new HashMap<>();
+        // Undo log: prefix and previous URI (null if unbound) per declaration
+        private String[] undo = new String[16];
+        private int undoLength = 0;
+        // Undo log length at the start of each open element
+        private int[] marks = new int[16];
+        private int depth = 0;
+        // Changes whenever a binding does, making cached resolutions stale
+        private int generation = 0;
+        private final Map<String, Resolution> elementNames = new HashMap<>();
+        private final Map<String, Resolution> attributeNames = new HashMap<>();
+
+        private Scope() {
+            bindings.put("xml", XML_NAMESPACE);
+            bindings.put("xmlns", XMLNS_NAMESPACE);
+        }
+
+        /**
+         * Opens an element's scope.
+         */
+        public void startElement() {
+            if (depth == marks.length) {
+                marks = Arrays.copyOf(marks, depth * 2);
+            }
+            marks[depth++] = undoLength;
+        }
+
+        /**
+         * Closes the innermost element's scope, removing its declarations.
+         *
+         * @throws IllegalStateException if no element is open
+         */
+        public void endElement() {
+            if (depth == 0) {
+                throw new IllegalStateException("No open element");
+            }
+            int mark = marks[--depth];
+            if (undoLength > mark) {
+                while (undoLength > mark) {
+                    String previous = undo[--undoLength];
+                    String prefix = undo[--undoLength];
+                    if (previous == null) {
+                        bindings.remove(prefix);
+                    } else {
+                        bindings.put(prefix, previous);
+                    }
+                }
+                generation++;
+            }
+        }
+
+        /**
+         * Applies an attribute of the innermost element, if it declares a namespace.
+         *
+         * @param attributeName the attribute name
+         * @param value         the attribute value
+         * @return true if the attribute is a namespace declaration
+         * @throws IllegalArgumentException if the declaration undeclares a prefix or
+         *         misuses a reserved prefix
+         * @throws IllegalStateException if no element is open
+         */
+        public boolean declare(String attributeName, String value) {
+            String prefix = declaredPrefix(attributeName);
+            if (prefix == null) {
+                return false;
+            }
+            String problem = bind(prefix, value);
+            if (problem != null) {
+                throw new IllegalArgumentException(problem);
+            }
+            return true;
+        }
+
+        /**
+         * Binds a prefix in the innermost element, and returns why the binding is not
+         * allowed, or null once it is made.
+         */
+        String bind(String prefix, String uri) {
+            if (depth == 0) {
+                throw new IllegalStateException("No open element");
+            }
+            if (prefix.equals("xmlns")) {
+                return "The 'xmlns' prefix cannot be declared";
+            }
+            if (prefix.equals("xml") != uri.equals(XML_NAMESPACE)) {
+                return prefix.equals("xml")
+                        ? "The 'xml' prefix can only be bound to '" + XML_NAMESPACE + "'"
+                        : "Only the 'xml' prefix can be bound to '" + XML_NAMESPACE + "'";
+            }
+            if (uri.equals(XMLNS_NAMESPACE)) {
+                return "No prefix can be bound to '" + XMLNS_NAMESPACE + "'";
+            }
+            if (uri.isEmpty() && !prefix.isEmpty()) {
+                return "Namespace prefix '" + prefix + "' cannot be undeclared";
+            }
+            String previous = uri.isEmpty() ? bindings.remove(prefix) : bindings.put(prefix, uri);
+            if (undoLength + 2 > undo.length) {
+                undo = Arrays.copyOf(undo, undo.length * 2);
+            }
+            undo[undoLength++] = prefix;
+            undo[undoLength++] = previous;
+            generation++;
+            return null;
+        }
+
+        /**
+         * Returns the namespace URI bound to a prefix, "" for the default namespace when
+         * there is none, or null if the prefix is not bound.
+         *
+         * @param prefix the prefix, or "" for the default namespace
+         */
+        public String getNamespaceUri(String prefix) {
+            String uri = bindings.get(prefix);
+            return uri == null && prefix.isEmpty() ? "" : uri;
+        }
+
+        /**
+         * Resolves an element name; unprefixed names are in the default namespace.
+         *
+         * @param name the name as written
+         * @return the interned name, or null if its prefix is not bound or it is not a
+         *         qualified name
+         */
+        public UnityQName element(String name) {
+            return resolve(elementNames, name, true);
+        }
+
+        /**
+         * Resolves an attribute name; unprefixed names are in no namespace, except
+         * {@code xmlns}, which is in {@link #XMLNS_NAMESPACE}.
+         *
+         * @param name the name as written
+         * @return the interned name, or null if its prefix is not bound or it is not a
+         *         qualified name
+         */
+        public UnityQName attribute(String name) {
+            return resolve(attributeNames, name, false);
+        }
+
+        private UnityQName resolve(Map<String, Resolution> cache, String name, boolean element) {
+            Resolution resolution = cache.get(name);
+            if (resolution == null) {
+                if (!isQualified(name)) {
+                    return null;
+                }
+                int colon = name.indexOf(':');
+                resolution = colon < 0
+                        ? new Resolution(null, name)
+                        : new Resolution(name.substring(0, colon), name.substring(colon + 1));
+                cache.put(name, resolution);
+            }
+            if (resolution.generation != generation) {
+                String uri;
+                if (resolution.prefix != null) {
+                    uri = bindings.get(resolution.prefix);
+                } else if (element) {
+                    uri = bindings.getOrDefault("", "");
+                } else {
+                    uri = name.equals("xmlns") ? XMLNS_NAMESPACE : "";
+                }
+                resolution.qname = uri == null ? null : qname(uri, resolution.localName);
+                resolution.generation = generation;
+            }
+            return resolution.qname;
+        }
+    }
+
+    // =========================================================================
+    // Validation
+    // =========================================================================
+
+    /**
+     * Per-document state: the bindings, and the current element's names, which are
+     * resolved once its attributes have been read, with the positions to report them at.
+     */
+    private static final class State {
+        final Scope scope;
+        String elementName;
+        Object elementPosition;
+        String[] attributeNames = new String[8];
+        Object[] attributePositions = new Object[8];
+        int attributeCount = 0;
+
+        State(Scope scope) {
+            this.scope = scope;
+        }
+    }
+
+    private State state(UnityRuleContext context) {
+        State state = (State) context.getState();
+        if (state == null) {
+            state = new State(newScope());
+            context.setState(state);
+        }
+        return state;
+    }
+
+    /**
+     * Checks the names of the current element, if they have not been checked.
+     */
+    private void resolvePending(State state, UnityRuleContext context) {
+        if (state.elementName != null) {
+            UnityQName name = state.scope.element(state.elementName);
+            if (name == null) {
+                context.report(state.elementPosition, problem("element", state.elementName));
+            } else if (handler != null) {
+                handler.element(name, context);
+            }
+            state.elementName = null;
+            state.elementPosition = null;
+        }
+        for (int i = 0; i < state.attributeCount; i++) {
+            UnityQName name = state.scope.attribute(state.attributeNames[i]);
+            if (name == null) {
+                context.report(state.attributePositions[i], problem("attribute", state.attributeNames[i]));
+            } else if (handler != null) {
+                handler.attribute(name, context);
+            }
+            state.attributeNames[i] = null;
+            state.attributePositions[i] = null;
+        }
+        state.attributeCount = 0;
+    }
+
+    private static String problem(String kind, String name) {
+        if (!isQualified(name)) {
+            return "Invalid " + kind + " name '" + name + "': must be a qualified name";
+        }
+        String prefix = name.substring(0, name.indexOf(':'));
+        return "Undeclared namespace prefix '" + prefix + "' in " + kind + " name '" + name + "'";
+    }
+
+    @Override
+    public void enterElement(String name, UnityRuleContext context) {
+        State state = state(context);
+        // The enclosing element's declarations are all known once a child starts
+        resolvePending(state, context);
+        state.scope.startElement();
+        state.elementName = name;
+        state.elementPosition = context.getPosition();
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+        State state = state(context);
+        String prefix = declaredPrefix(name);
+        if (prefix != null) {
+            String uri = type == UnityValueType.STRING ? UnityStrings.unquote(rawValue) : rawValue.toString();
+            String problem = state.scope.bind(prefix, uri);
+            if (problem != null) {
+                context.report(problem);
+            }
+            return;
+        }
+        if (state.attributeCount == state.attributeNames.length) {
+            int capacity = state.attributeCount * 2;
+            state.attributeNames = Arrays.copyOf(state.attributeNames, capacity);
+            state.attributePositions = Arrays.copyOf(state.attributePositions, capacity);
+        }
+        state.attributeNames[state.attributeCount] = name;
+        state.attributePositions[state.attributeCount++] = context.getPosition();
+    }
+
+    @Override
+    public void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+        resolvePending(state(context), context);
+    }
+
+    @Override
+    public void exitElement(UnityRuleContext context) {
+        State state = state(context);
+        resolvePending(state, context);
+        state.scope.endElement();
+    }
+}
@@ -0,0 +1,311 @@
+package com.metamadbooks.unity.parser;
+
+import java.math.BigDecimal;
+
+/**
+ * A JSON number from a Unity document, parsed into primitive form.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityNumber number = event.getNumber();
+ * if (number.getType() == UnityNumberType.LONG) {
+ *     total += number.longValue();
+ * } else {
+ *     sum += number.doubleValue();
+ * }
+ * }</pre>
+ * Numbers are parsed straight from the characters of the document without creating a
+ * String, and classified by {@link UnityNumberType}. Integers that fit in a {@code long}
+ * are held as one; other numbers of up to 18 significant digits keep their digits and
+ * decimal exponent as primitives, so {@link #bigDecimalValue()} is exact for every type
+ * but is only created when asked for. Only {@link UnityNumberType#BIG_DECIMAL} numbers
+ * keep their text.
+ * <p>
+ * {@link #doubleValue()} is correctly rounded, as by {@link Double#parseDouble(String)};
+ * short numbers, which telemetry values usually are, are converted without it.
+ */
+public final class UnityNumber extends Number {
+
+    private static final long serialVersionUID = 1L;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int MAX_DIGITS = 18;
+    // Exponents beyond this make any non-zero number overflow or underflow a double
+    private static final int MAX_EXPONENT = 1_000_000;
+    // Scale marking a DOUBLE created from a double rather than from digits
+    private static final int FROM_DOUBLE = Integer.MIN_VALUE;
+
+    private final UnityNumberType type;
+    // The value of a LONG, else the significant digits, with the sign
+    private final long unscaled;
+    // Decimal places of the unscaled digits; negative for trailing zeros
+    private final int scale;
+    private final double doubleValue;
+    // Only kept for BIG_DECIMAL
+    private final String text;
+    private transient BigDecimal decimal;
+
+    private UnityNumber(UnityNumberType type, long unscaled, int scale, double doubleValue, String text) {
+        this.type = type;
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.doubleValue = doubleValue;
+        this.text = text;
+    }
+
+    /**
+     * Returns the number for a long value.
+     *
+     * @param value the value
+     * @return the number, of type LONG
+     */
+    public static UnityNumber valueOf(long value) {
+        return new UnityNumber(UnityNumberType.LONG, value, 0, value, null);
+    }
+
+    /**
+     * Returns the number for a finite double value, whose decimal form is that of
+     * {@link Double#toString(double)}.
+     *
+     * @param value the value
+     * @return the number, of type DOUBLE
+     * @throws IllegalArgumentException if the value is infinite or NaN
+     */
+    public static UnityNumber valueOf(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a JSON number: " + value);
+        }
+        return new UnityNumber(UnityNumberType.DOUBLE, 0, FROM_DOUBLE, value, null);
+    }
+
+    /**
+     * Parses a JSON number.
+     *
+     * @param text the number as written
+     * @return the number
+     * @throws NumberFormatException if the text is not a JSON number
+     */
+    public static UnityNumber parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a JSON number from part of a character sequence.
+     *
+     * @param text  the characters
+     * @param start index of the first character of the number
+     * @param end   index after its last character
+     * @return the number
+     * @throws NumberFormatException if the range is not a JSON number
+     */
+    public static UnityNumber parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        // Integer part, accumulated negatively so that Long.MIN_VALUE fits
+        int integerStart = i;
+        long exact = 0;
+        boolean exactOverflow = false;
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        for (; i < end && isDigit(text.charAt(i)); i++) {
+            int d = text.charAt(i) - '0';
+            if (exact < (Long.MIN_VALUE + d) / 10) {
+                exactOverflow = true;
+            } else {
+                exact = exact * 10 - d;
+            }
+            if (significand == 0 && d == 0) {
+                continue;
+            }
+            if (digits < MAX_DIGITS) {
+                significand = significand * 10 + d;
+                digits++;
+            } else {
+                exponent++;
+                digits = MAX_DIGITS + 1;
+            }
+        }
+        int integerDigits = i - integerStart;
+        if (integerDigits == 0 || (integerDigits > 1 && text.charAt(integerStart) == '0')) {
+            throw invalid(text, start, end);
+        }
+
+        boolean decimal = false;
+        if (i < end && text.charAt(i) == '.') {
+            decimal = true;
+            int fractionStart = ++i;
+            for (; i < end && isDigit(text.charAt(i)); i++) {
+                int d = text.charAt(i) - '0';
+                if (digits > MAX_DIGITS) {
+                    continue;
+                }
+                if (significand == 0 && d == 0) {
+                    exponent--;
+                } else if (digits < MAX_DIGITS) {
+                    significand = significand * 10 + d;
+                    digits++;
+                    exponent--;
+                } else {
+                    digits = MAX_DIGITS + 1;
+                }
+            }
+            if (i == fractionStart) {
+                throw invalid(text, start, end);
+            }
+        }
+
+        boolean exponentTooLarge = false;
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            decimal = true;
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int written = 0;
+            for (; i < end && isDigit(text.charAt(i)); i++) {
+                if (written < MAX_EXPONENT) {
+                    written = written * 10 + (text.charAt(i) - '0');
+                } else {
+                    exponentTooLarge = true;
+                }
+            }
+            if (i == exponentStart) {
+                throw invalid(text, start, end);
+            }
+            exponentTooLarge |= written >= MAX_EXPONENT;
+            exponent += negativeExponent ? -written : written;
+        }
+        if (i != end) {
+            throw invalid(text, start, end);
+        }
+
+        if (!decimal) {
+            if (!exactOverflow && (negative || exact != Long.MIN_VALUE)) {
+                long value = negative ? exact : -exact;
+                return new UnityNumber(UnityNumberType.LONG, value, 0, negative && value == 0 ? -0.0 : value, null);
+            }
+            return big(text, start, end);
+        }
+        if (digits > MAX_DIGITS || exponentTooLarge) {
+            return big(text, start, end);
+        }
+
+        double value;
+        if (significand < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so the one rounding is the correct one
+            value = exponent >= 0 ? significand * POWERS_OF_TEN[exponent] : significand / POWERS_OF_TEN[-exponent];
+        } else {
+            value = Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (Double.isInfinite(value) || (value == 0 && significand != 0)) {
+            return big(text, start, end);
+        }
+        return new UnityNumber(UnityNumberType.DOUBLE, negative ? -significand : significand, -exponent,
+                value, null);
+    }
+
+    private static UnityNumber big(CharSequence text, int start, int end) {
+        String number = text.subSequence(start, end).toString();
+        return new UnityNumber(UnityNumberType.BIG_DECIMAL, 0, 0, Double.parseDouble(number), number);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException invalid(CharSequence text, int start, int end) {
+        return new NumberFormatException("Not a JSON number: '" + text.subSequence(start, end) + "'");
+    }
+
+    /**
+     * Returns how the number is held.
+     */
+    public UnityNumberType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the value as an int, narrowed as by {@link #longValue()}.
+     */
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    /**
+     * Returns the value as a long: exactly for LONG numbers, otherwise with the fraction
+     * discarded and, for a value out of range, as by {@link BigDecimal#longValue()}.
+     */
+    @Override
+    public long longValue() {
+        switch (type) {
+            case LONG:
+                return unscaled;
+            case DOUBLE:
+                if (Math.abs(doubleValue) < 0x1p62) {
+                    return (long) doubleValue;
+                }
+                return bigDecimalValue().longValue();
+            default:
+                return bigDecimalValue().longValue();
+        }
+    }
+
+    @Override
+    public float floatValue() {
+        return type == UnityNumberType.LONG ? (float) unscaled : bigDecimalValue().floatValue();
+    }
+
+    /**
+     * Returns the value as the nearest double.
+     */
+    @Override
+    public double doubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * Returns the exact value, with the scale it was written with, creating it on the
+     * first call.
+     */
+    public BigDecimal bigDecimalValue() {
+        BigDecimal value = decimal;
+        if (value == null) {
+            if (type == UnityNumberType.LONG) {
+                value = BigDecimal.valueOf(unscaled);
+            } else if (text != null) {
+                value = new BigDecimal(text);
+            } else if (scale == FROM_DOUBLE) {
+                value = new BigDecimal(Double.toString(doubleValue));
+            } else {
+                value = BigDecimal.valueOf(unscaled, scale);
+            }
+            decimal = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number as {@link BigDecimal#toString()} would.
+     */
+    @Override
+    public String toString() {
+        return type == UnityNumberType.LONG ? Long.toString(unscaled) : bigDecimalValue().toString();
+    }
+}
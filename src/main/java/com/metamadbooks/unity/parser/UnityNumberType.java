@@ -0,0 +1,23 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * How a JSON number in a Unity document is held by {@link UnityNumber}.
+ */
+public enum UnityNumberType {
+    /**
+     * An integer without fraction or exponent that fits in a {@code long}.
+     */
+    LONG,
+
+    /**
+     * A number with a fraction or exponent of at most 18 significant digits whose
+     * magnitude is within the range of a {@code double}.
+     */
+    DOUBLE,
+
+    /**
+     * A number with more precision or range than the above, exact only as a
+     * {@link java.math.BigDecimal}.
+     */
+    BIG_DECIMAL
+}
@@ -0,0 +1,714 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store of parsed Unity documents held outside the Java heap.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (UnityOffHeapStore store = UnityOffHeapStore.direct()) {
+ *     int id = store.add(text);
+ *     ...
+ *     UnityOffHeapStore.Cursor cursor = store.cursor();
+ *     cursor.moveTo(id);
+ *     if (cursor.attribute("status")) {
+ *         String status = cursor.getValue();
+ *     }
+ * }
+ * }</pre>
+ * Documents go from {@link UnityEventReader} straight into their stored form without a
+ * parse tree: a table of fixed-size node records (elements, attributes and values in
+ * document order, each element knowing where its subtree ends) followed by the UTF-8
+ * bytes of its strings and numbers. Documents are packed into large direct or
+ * file-backed mapped buffers, and element and attribute names are interned once for the
+ * store. The heap holds only the name table and a few buffers per store, so it stays
+ * the same size however many documents are added.
+ * <p>
+ * Documents are read through {@link Cursor}s, flyweights that can be moved to any node
+ * of any document without allocating. Adding is serialized; cursors can be used
+ * concurrently with adding and with each other, one cursor per thread.
+ */
+public final class UnityOffHeapStore implements AutoCloseable {
+
+    /**
+     * Default size of the buffers documents are packed into.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    // Document: u32 nodeCount, u32 valuesLength, node*, values
+    private static final int DOCUMENT_HEADER_SIZE = 8;
+    // Node: u8 kind, u8 valueType, u16 unused, u32 nameId, u32 subtreeEnd, u32 value
+    private static final int NODE_SIZE = 16;
+    private static final int KIND = 0;
+    private static final int VALUE_TYPE = 1;
+    private static final int NAME = 4;
+    private static final int END = 8;
+    private static final int VALUE = 12;
+
+    private static final byte ELEMENT = 1;
+    private static final byte ATTRIBUTE = 2;
+    private static final byte PRIMITIVE = 3;
+
+    private static final UnityValueType[] VALUE_TYPES = UnityValueType.values();
+
+    private final int chunkSize;
+    private final FileChannel channel;
+
+    // Written under the store's lock and published by the volatile write of size
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount = 0;
+    private int chunkPosition = 0;
+    private long mappedLength = 0;
+    // u64 per document: chunk index << 32 | offset
+    private ByteBuffer directory = allocate(4096);
+    private String[] names = new String[64];
+    private final Map<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private volatile int size = 0;
+    private volatile boolean closed = false;
+
+    private final Builder builder = new Builder();
+
+    private UnityOffHeapStore(int chunkSize, FileChannel channel) {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("Chunk size must be at least 1024 bytes: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a store in direct buffers of the default chunk size.
+     *
+     * @return the store
+     */
+    public static UnityOffHeapStore direct() {
+        return direct(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a store in direct buffers.
+     *
+     * @param chunkSize size of each buffer; larger documents get a buffer of their own
+     * @return the store
+     */
+    public static UnityOffHeapStore direct(int chunkSize) {
+        return new UnityOffHeapStore(chunkSize, null);
+    }
+
+    /**
+     * Creates a store in buffers mapped from a file, for corpora larger than memory. The
+     * file is replaced and only holds the store while it is open; it cannot be reopened.
+     *
+     * @param file the backing file
+     * @return the store
+     * @throws IOException if the file cannot be created
+     */
+    public static UnityOffHeapStore mapped(Path file) throws IOException {
+        return mapped(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a store in buffers mapped from a file.
+     *
+     * @param file      the backing file
+     * @param chunkSize size of each mapping; larger documents get a mapping of their own
+     * @return the store
+     * @throws IOException if the file cannot be created
+     */
+    public static UnityOffHeapStore mapped(Path file, int chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new UnityOffHeapStore(chunkSize, channel);
+    }
+
+    // =========================================================================
+    // Adding
+    // =========================================================================
+
+    /**
+     * Parses, validates and stores a document.
+     *
+     * @param document the Unity document as a string
+     * @return the document's id, assigned consecutively from 0
+     * @throws IllegalArgumentException if the document has errors
+     */
+    public int add(String document) {
+        return add(new UnityEventReader(document));
+    }
+
+    /**
+     * Parses, validates and stores a document read incrementally from a character
+     * stream, which is not closed.
+     *
+     * @param document the Unity document
+     * @return the document's id
+     * @throws IllegalArgumentException if the document has errors
+     * @throws UncheckedIOException     if reading fails
+     */
+    public int add(Reader document) {
+        return add(new UnityEventReader(document));
+    }
+
+    private synchronized int add(UnityEventReader reader) {
+        checkOpen();
+        builder.reset();
+        reader.accept(builder);
+        if (builder.error != null) {
+            throw new IllegalArgumentException("Invalid Unity document: " + builder.error);
+        }
+
+        int nodesLength = builder.nodeCount * NODE_SIZE;
+        int valuesLength = builder.values.position();
+        long length = (long) DOCUMENT_HEADER_SIZE + nodesLength + valuesLength;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Document too large for the store: " + length + " bytes");
+        }
+        ByteBuffer chunk = reserve((int) length);
+        int offset = chunkPosition;
+        chunk.putInt(offset, builder.nodeCount);
+        chunk.putInt(offset + 4, valuesLength);
+        chunk.put(offset + DOCUMENT_HEADER_SIZE, builder.nodes, 0, nodesLength);
+        chunk.put(offset + DOCUMENT_HEADER_SIZE + nodesLength, builder.values, 0, valuesLength);
+        chunkPosition += (int) length;
+
+        int id = size;
+        if ((id + 1) * 8L > directory.capacity()) {
+            directory = grow(directory, id * 8, (id + 1) * 8);
+        }
+        directory.putLong(id * 8, (long) (chunkCount - 1) << 32 | offset);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Returns a chunk with room for a document at chunkPosition.
+     */
+    private ByteBuffer reserve(int length) {
+        if (chunkCount > 0 && chunks[chunkCount - 1].capacity() - chunkPosition >= length) {
+            return chunks[chunkCount - 1];
+        }
+        int capacity = Math.max(chunkSize, length);
+        ByteBuffer chunk;
+        if (channel == null) {
+            chunk = allocate(capacity);
+        } else {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, mappedLength, capacity)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mappedLength += capacity;
+        }
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = chunk;
+        chunkPosition = 0;
+        return chunk;
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = nameIds.size();
+            if (id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+            }
+            names[id] = name;
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    // =========================================================================
+    // Store
+    // =========================================================================
+
+    /**
+     * Returns the number of documents stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory or file mapping the store holds.
+     */
+    public synchronized long getOffHeapBytes() {
+        long bytes = directory.capacity();
+        for (int i = 0; i < chunkCount; i++) {
+            bytes += chunks[i].capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a new cursor, not yet positioned on a document.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Pushes a stored document to a handler, as {@link UnityEventReader#accept} would.
+     *
+     * @param document the document id
+     * @param handler  the handler to call
+     */
+    public void accept(int document, UnityEventHandler handler) {
+        Cursor cursor = new Cursor();
+        cursor.moveTo(document);
+        int[] ends = new int[16];
+        int depth = 0;
+        for (int node = 0; node < cursor.nodeCount; node++) {
+            while (depth > 0 && ends[depth - 1] == node) {
+                handler.endElement();
+                depth--;
+            }
+            cursor.node = node;
+            switch (cursor.kind()) {
+                case ELEMENT:
+                    handler.startElement(cursor.getName());
+                    if (depth == ends.length) {
+                        ends = Arrays.copyOf(ends, depth * 2);
+                    }
+                    ends[depth++] = cursor.end();
+                    break;
+                case ATTRIBUTE:
+                    handler.attribute(cursor.getName(), cursor.getValueType(), cursor.getValue());
+                    break;
+                default:
+                    handler.value(cursor.getValueType(), cursor.getValue());
+            }
+        }
+        for (; depth > 0; depth--) {
+            handler.endElement();
+        }
+    }
+
+    /**
+     * Releases the store. Direct memory is returned once the buffers are unreachable,
+     * and the backing file of a mapped store is closed.
+     *
+     * @throws IOException if closing the file fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(chunks, null);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int used, int needed) {
+        ByteBuffer grown = allocate((int) Math.min(Integer.MAX_VALUE, Math.max(needed, buffer.capacity() * 2L)));
+        grown.put(0, buffer, 0, used);
+        return grown;
+    }
+
+    // =========================================================================
+    // Builder
+    // =========================================================================
+
+    /**
+     * Lays out one document in reusable scratch buffers.
+     */
+    private final class Builder implements UnityEventHandler {
+        ByteBuffer nodes = allocate(64 * NODE_SIZE);
+        ByteBuffer values = allocate(4096);
+        int nodeCount;
+        int[] open = new int[16];
+        int depth;
+        ValidationError error;
+
+        void reset() {
+            values.clear();
+            nodeCount = 0;
+            depth = 0;
+            error = null;
+        }
+
+        @Override
+        public void startElement(String name) {
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = nodeCount;
+            node(ELEMENT, null, nameId(name), -1);
+        }
+
+        @Override
+        public void endElement() {
+            nodes.putInt(open[--depth] * NODE_SIZE + END, nodeCount);
+        }
+
+        @Override
+        public void attribute(String name, UnityValueType type, String value) {
+            node(ATTRIBUTE, type, nameId(name), storeValue(type, value));
+        }
+
+        @Override
+        public void value(UnityValueType type, String value) {
+            node(PRIMITIVE, type, -1, storeValue(type, value));
+        }
+
+        @Override
+        public void error(ValidationError error) {
+            if (this.error == null) {
+                this.error = error;
+            }
+        }
+
+        private void node(byte kind, UnityValueType type, int name, int value) {
+            int at = nodeCount * NODE_SIZE;
+            if (at + NODE_SIZE > nodes.capacity()) {
+                nodes = grow(nodes, at, at + NODE_SIZE);
+            }
+            nodes.put(at + KIND, kind);
+            nodes.put(at + VALUE_TYPE, type == null ? 0 : (byte) (type.ordinal() + 1));
+            nodes.putShort(at + 2, (short) 0);
+            nodes.putInt(at + NAME, name);
+            nodes.putInt(at + END, nodeCount + 1);
+            nodes.putInt(at + VALUE, value);
+            nodeCount++;
+        }
+
+        /**
+         * Returns the node's value field: the offset of the text for strings and numbers,
+         * 0 or 1 for booleans, -1 for null.
+         */
+        private int storeValue(UnityValueType type, String value) {
+            switch (type) {
+                case BOOLEAN:
+                    return "true".equals(value) ? 1 : 0;
+                case NULL:
+                    return -1;
+                default:
+                    int offset = values.position();
+                    ensure(4 + value.length() * 3);
+                    values.position(offset + 4);
+                    for (int i = 0; i < value.length(); i++) {
+                        char c = value.charAt(i);
+                        if (c < 0x80) {
+                            values.put((byte) c);
+                        } else if (c < 0x800) {
+                            values.put((byte) (0xC0 | c >> 6));
+                            values.put((byte) (0x80 | c & 0x3F));
+                        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                            int cp = Character.toCodePoint(c, value.charAt(++i));
+                            values.put((byte) (0xF0 | cp >> 18));
+                            values.put((byte) (0x80 | cp >> 12 & 0x3F));
+                            values.put((byte) (0x80 | cp >> 6 & 0x3F));
+                            values.put((byte) (0x80 | cp & 0x3F));
+                        } else {
+                            values.put((byte) (0xE0 | c >> 12));
+                            values.put((byte) (0x80 | c >> 6 & 0x3F));
+                            values.put((byte) (0x80 | c & 0x3F));
+                        }
+                    }
+                    values.putInt(offset, values.position() - offset - 4);
+                    return offset;
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (values.remaining() < bytes) {
+                int used = values.position();
+                values = grow(values, used, used + bytes);
+                values.position(used);
+            }
+        }
+    }
+
+    // =========================================================================
+    // Cursor
+    // =========================================================================
+
+    /**
+     * A movable view of one node of a stored document: an element, an attribute or a
+     * content value. A cursor allocates nothing while navigating; only the String
+     * accessors create objects. A cursor is not thread-safe.
+     */
+    public final class Cursor {
+        private ByteBuffer chunk;
+        private int document = -1;
+        private int nodes;
+        private int valuesStart;
+        private int nodeCount;
+        private int node;
+        // Enclosing elements of the current node
+        private int[] parents = new int[16];
+        private int depth;
+        private byte[] bytes = new byte[64];
+        private final AsciiSequence ascii = new AsciiSequence();
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the root element of a document.
+         *
+         * @param document the document id
+         * @return this cursor
+         * @throws IndexOutOfBoundsException if there is no such document
+         */
+        public Cursor moveTo(int document) {
+            checkOpen();
+            if (document < 0 || document >= size) {
+                throw new IndexOutOfBoundsException("No document " + document + " in a store of " + size);
+            }
+            long location = directory.getLong(document * 8);
+            this.chunk = chunks[(int) (location >>> 32)];
+            int offset = (int) location;
+            this.document = document;
+            this.nodeCount = chunk.getInt(offset);
+            this.nodes = offset + DOCUMENT_HEADER_SIZE;
+            this.valuesStart = nodes + nodeCount * NODE_SIZE;
+            this.node = 0;
+            this.depth = 0;
+            return this;
+        }
+
+        /**
+         * Returns the id of the current document, or -1 before {@link #moveTo}.
+         */
+        public int getDocument() {
+            return document;
+        }
+
+        /**
+         * Returns START_ELEMENT, ATTRIBUTE or VALUE for the current node.
+         */
+        public UnityEventType getType() {
+            switch (kind()) {
+                case ELEMENT:
+                    return UnityEventType.START_ELEMENT;
+                case ATTRIBUTE:
+                    return UnityEventType.ATTRIBUTE;
+                default:
+                    return UnityEventType.VALUE;
+            }
+        }
+
+        /**
+         * Returns the number of elements enclosing the current node: 0 at the root.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the element or attribute name, or null for a value. Names are shared
+         * by the store and cost no allocation.
+         */
+        public String getName() {
+            int id = chunk.getInt(at() + NAME);
+            return id < 0 ? null : names[id];
+        }
+
+        /**
+         * Returns the type of an attribute or content value, or null for an element.
+         */
+        public UnityValueType getValueType() {
+            int type = chunk.get(at() + VALUE_TYPE);
+            return type == 0 ? null : VALUE_TYPES[type - 1];
+        }
+
+        /**
+         * Returns the value as in {@link UnityEvent#getValue()}, or null for an element.
+         */
+        public String getValue() {
+            UnityValueType type = getValueType();
+            if (type == null || type == UnityValueType.NULL) {
+                return null;
+            }
+            if (type == UnityValueType.BOOLEAN) {
+                return getBooleanValue() ? "true" : "false";
+            }
+            int offset = valuesStart + chunk.getInt(at() + VALUE);
+            int length = chunk.getInt(offset);
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            chunk.get(offset + 4, bytes, 0, length);
+            return new String(bytes, 0, length,
+                    type == UnityValueType.NUMBER ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns a boolean value.
+         *
+         * @throws IllegalStateException if the value is not a boolean
+         */
+        public boolean getBooleanValue() {
+            if (getValueType() != UnityValueType.BOOLEAN) {
+                throw new IllegalStateException("Not a boolean: " + getValueType());
+            }
+            return chunk.getInt(at() + VALUE) != 0;
+        }
+
+        /**
+         * Returns a number value in typed form, parsed from the stored digits.
+         *
+         * @throws IllegalStateException if the value is not a number
+         */
+        public UnityNumber getNumber() {
+            if (getValueType() != UnityValueType.NUMBER) {
+                throw new IllegalStateException("Not a number: " + getValueType());
+            }
+            int offset = valuesStart + chunk.getInt(at() + VALUE);
+            ascii.offset = offset + 4;
+            ascii.length = chunk.getInt(offset);
+            return UnityNumber.parse(ascii);
+        }
+
+        /**
+         * Moves to the first attribute, child element or value of the current element.
+         *
+         * @return false, without moving, if the current node has none
+         */
+        public boolean firstChild() {
+            if (kind() != ELEMENT || end() == node + 1) {
+                return false;
+            }
+            if (depth == parents.length) {
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            parents[depth++] = node;
+            node++;
+            return true;
+        }
+
+        /**
+         * Moves to the next attribute, element or value of the enclosing element.
+         *
+         * @return false, without moving, if the current node is the last one
+         */
+        public boolean nextSibling() {
+            if (depth == 0) {
+                return false;
+            }
+            int next = end();
+            if (next >= endOf(parents[depth - 1])) {
+                return false;
+            }
+            node = next;
+            return true;
+        }
+
+        /**
+         * Moves to the enclosing element.
+         *
+         * @return false, without moving, at the root element
+         */
+        public boolean parent() {
+            if (depth == 0) {
+                return false;
+            }
+            node = parents[--depth];
+            return true;
+        }
+
+        /**
+         * Moves from an element to one of its attributes.
+         *
+         * @param name the attribute name
+         * @return false, without moving, if the current node is not an element with that
+         *         attribute
+         */
+        public boolean attribute(String name) {
+            Integer id = nameIds.get(name);
+            if (id == null || kind() != ELEMENT) {
+                return false;
+            }
+            int end = end();
+            for (int i = node + 1; i < end && chunk.get(nodes + i * NODE_SIZE + KIND) == ATTRIBUTE; i++) {
+                if (chunk.getInt(nodes + i * NODE_SIZE + NAME) == id) {
+                    firstChild();
+                    node = i;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int at() {
+            if (document < 0) {
+                throw new IllegalStateException("Cursor is not on a document");
+            }
+            return nodes + node * NODE_SIZE;
+        }
+
+        private byte kind() {
+            return chunk.get(at() + KIND);
+        }
+
+        private int end() {
+            return endOf(node);
+        }
+
+        private int endOf(int index) {
+            return chunk.getInt(nodes + index * NODE_SIZE + END);
+        }
+
+        /**
+         * The cursor's current ASCII bytes as characters, for number parsing.
+         */
+        private final class AsciiSequence implements CharSequence {
+            int offset;
+            int length;
+
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return (char) chunk.get(offset + index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                StringBuilder sb = new StringBuilder(end - start);
+                for (int i = start; i < end; i++) {
+                    sb.append(charAt(i));
+                }
+                return sb.toString();
+            }
+
+            @Override
+            public String toString() {
+                return subSequence(0, length).toString();
+            }
+        }
+    }
+}
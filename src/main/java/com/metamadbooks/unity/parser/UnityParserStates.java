@@ -0,0 +1,56 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.Transition;
+
+/**
+ * The ATN states the generated {@link UnityParser} is in when it invokes each sub-rule,
+ * for parsers that build the same trees without it.
+ * <p>
+ * A context's {@link org.antlr.v4.runtime.RuleContext#invokingState} is the state holding
+ * the rule transition that entered it. The states are looked up in the parser's ATN when
+ * the class is loaded, so they follow the grammar when it is regenerated; a grammar that
+ * no longer has one of these calls fails to load the class.
+ */
+final class UnityParserStates {
+
+    static final int UNITY_ELEMENT = invoking(UnityParser.RULE_unity, UnityParser.RULE_unityElement, 0);
+    static final int ELEMENT_NAME = invoking(UnityParser.RULE_unityElement, UnityParser.RULE_elementName, 0);
+    static final int ELEMENT_CONTENT = invoking(UnityParser.RULE_unityElement, UnityParser.RULE_elementContent, 0);
+    static final int ATTRIBUTES_OBJECT =
+            invoking(UnityParser.RULE_elementContent, UnityParser.RULE_attributesObject, 0);
+    static final int NESTED_ELEMENT = invoking(UnityParser.RULE_elementContent, UnityParser.RULE_unityElement, 0);
+    static final int PRIMITIVE_VALUE = invoking(UnityParser.RULE_elementContent, UnityParser.RULE_primitiveValue, 0);
+    static final int FIRST_ATTRIBUTE_PAIR =
+            invoking(UnityParser.RULE_attributesObject, UnityParser.RULE_attributePair, 0);
+    static final int NEXT_ATTRIBUTE_PAIR =
+            invoking(UnityParser.RULE_attributesObject, UnityParser.RULE_attributePair, 1);
+    static final int ATTRIBUTE_VALUE = invoking(UnityParser.RULE_attributePair, UnityParser.RULE_attributeValue, 0);
+
+    private UnityParserStates() {
+    }
+
+    /**
+     * Returns the state of a call from one rule to another; calls are numbered in the
+     * order of their states, which is their order in the grammar.
+     */
+    private static int invoking(int caller, int callee, int occurrence) {
+        ATN atn = UnityParser._ATN;
+        int found = 0;
+        for (ATNState state : atn.states) {
+            if (state == null || state.ruleIndex != caller) {
+                continue;
+            }
+            for (Transition transition : state.getTransitions()) {
+                if (transition instanceof RuleTransition call && call.target.ruleIndex == callee
+                        && found++ == occurrence) {
+                    return state.stateNumber;
+                }
+            }
+        }
+        throw new IllegalStateException("Rule " + UnityParser.ruleNames[caller] + " does not call "
+                + UnityParser.ruleNames[callee] + " " + (occurrence + 1) + " time(s)");
+    }
+}
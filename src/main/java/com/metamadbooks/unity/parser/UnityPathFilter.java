@@ -0,0 +1,689 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the parts of a Unity document selected by path expressions in one forward
+ * pass, without building tokens or a parse tree.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityPathFilter filter = new UnityPathFilter("/catalog//item[@stock=true]", "/catalog/@version");
+ * List<ValidationError> errors = filter.filter(reader, match -> {
+ *     System.out.println(match.getPath() + ": " + match.getText());
+ * });
+ * }</pre>
+ * Paths use the {@link UnityQuery} language without positional predicates, and may end
+ * in {@code /@name} to select an attribute value instead of an element. An element match
+ * is reported with the element's exact source text, which can be passed to
+ * {@link Unity#parse(String)}; matches nested inside it are not reported separately.
+ * <p>
+ * The filter tracks the element path as {@link UnityValidationListener} does and keeps,
+ * for each open element, the set of path steps still able to match below it. As soon as
+ * that set is empty the rest of the element is skipped by a scan that only balances
+ * brackets and steps over strings. Memory is bounded by the nesting depth plus the
+ * largest match. Element and attribute names are not validated; skipped content is only
+ * checked for balanced brackets and terminated strings. Scanning stops at the first
+ * syntax error.
+ * <p>
+ * A filter is immutable and can be shared by threads.
+ */
+public final class UnityPathFilter {
+
+    private static final Pattern ATTRIBUTE_SELECTOR = Pattern.compile("^(.*)/@([^/\\[\\]@='\"*()\\s]+)\\s*$");
+
+    private final String[] expressions;
+    private final UnityQuery.Step[][] steps;
+    // Attribute selected by each path, or null for an element path
+    private final String[] selectedAttributes;
+
+    /**
+     * Creates a filter for path expressions.
+     *
+     * @param paths the path expressions
+     * @throws IllegalArgumentException if an expression is not valid
+     */
+    public UnityPathFilter(String... paths) {
+        this(Arrays.asList(paths));
+    }
+
+    /**
+     * Creates a filter for path expressions.
+     *
+     * @param paths the path expressions
+     * @throws IllegalArgumentException if an expression is not valid
+     */
+    public UnityPathFilter(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No paths given");
+        }
+        expressions = paths.toArray(new String[0]);
+        steps = new UnityQuery.Step[expressions.length][];
+        selectedAttributes = new String[expressions.length];
+        for (int p = 0; p < expressions.length; p++) {
+            String elementPath = expressions[p];
+            Matcher matcher = ATTRIBUTE_SELECTOR.matcher(elementPath);
+            if (matcher.matches()) {
+                elementPath = matcher.group(1);
+                selectedAttributes[p] = matcher.group(2);
+            }
+            steps[p] = UnityQuery.compile(elementPath).steps();
+            for (UnityQuery.Step step : steps[p]) {
+                for (UnityQuery.Predicate predicate : step.predicates) {
+                    if (predicate.isPositional()) {
+                        throw new IllegalArgumentException("Positional predicates are not supported when filtering: "
+                                + expressions[p]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans a document and passes each match to a consumer, in document order.
+     *
+     * @param input   the Unity document
+     * @param matches receives the matches
+     * @return the syntax error that stopped the scan, or an empty list
+     * @throws IOException if reading fails
+     */
+    public List<ValidationError> filter(Reader input, Consumer<Match> matches) throws IOException {
+        List<ValidationError> errors = new ArrayList<>();
+        try {
+            new Scan(new Input(input), matches).document();
+        } catch (SyntaxError e) {
+            errors.add(e.error);
+        }
+        return errors;
+    }
+
+    /**
+     * Scans a document and passes each match to a consumer, in document order.
+     *
+     * @param input   the Unity document as a string
+     * @param matches receives the matches
+     * @return the syntax error that stopped the scan, or an empty list
+     */
+    public List<ValidationError> filter(String input, Consumer<Match> matches) {
+        try {
+            return filter(new StringReader(input), matches);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the matches in a document.
+     *
+     * @param input the Unity document as a string
+     * @return the matches in document order
+     * @throws IllegalArgumentException if the scan stopped at a syntax error
+     */
+    public List<Match> select(String input) {
+        List<Match> matches = new ArrayList<>();
+        List<ValidationError> errors = filter(input, matches::add);
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid Unity document: " + errors.get(0));
+        }
+        return matches;
+    }
+
+    /**
+     * A selected element or attribute value.
+     */
+    public static final class Match {
+        private final String expression;
+        private final int pathIndex;
+        private final String path;
+        private final String attribute;
+        private final String text;
+        private final String value;
+        private final int line;
+        private final int column;
+
+        Match(String expression, int pathIndex, String path, String attribute, String text, String value,
+              int line, int column) {
+            this.expression = expression;
+            this.pathIndex = pathIndex;
+            this.path = path;
+            this.attribute = attribute;
+            this.text = text;
+            this.value = value;
+            this.line = line;
+            this.column = column;
+        }
+
+        /**
+         * Returns the path expression that matched.
+         */
+        public String getExpression() {
+            return expression;
+        }
+
+        /**
+         * Returns the position of the matching expression among the filter's paths.
+         */
+        public int getPathIndex() {
+            return pathIndex;
+        }
+
+        /**
+         * Returns the path of the matched element, e.g. "/catalog/item".
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the selected attribute's name, or null for an element match.
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns the source text of the element or of the attribute value.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns the decoded attribute value for a string, the source text otherwise.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the line of the element's opening bracket (1-based).
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the column of the element's opening bracket (0-based).
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return attribute == null ? path + " " + text : path + "/@" + attribute + "=" + text;
+        }
+    }
+
+    // =========================================================================
+    // Scan
+    // =========================================================================
+
+    /**
+     * State of one scan: the open elements that are parsed rather than skipped, with the
+     * path steps that can still match below each of them. A step state is encoded as
+     * {@code path << 16 | step}. Several ancestors can bring an element to the same state,
+     * through a descendant step, so states and matches are added once each; a set of
+     * states is then never larger than the number of steps of all paths.
+     */
+    private final class Scan {
+        private final Input in;
+        private final Consumer<Match> matches;
+        private final List<String> names = new ArrayList<>();
+        private final List<int[]> states = new ArrayList<>();
+        // Source text of the element being started, from its bracket to the decision point
+        private final StringBuilder head = new StringBuilder();
+        private final StringBuilder token = new StringBuilder();
+        // Attribute name -> {source text, compared value}
+        private final Map<String, String[]> attributes = new HashMap<>();
+        private boolean valuePending = false;
+
+        Scan(Input in, Consumer<Match> matches) {
+            this.in = in;
+            this.matches = matches;
+        }
+
+        void document() throws IOException {
+            int[] initial = new int[expressions.length];
+            for (int p = 0; p < initial.length; p++) {
+                initial[p] = p << 16;
+            }
+
+            in.skipWhitespace(null);
+            int line = in.line;
+            int column = in.column();
+            if (in.read() != '[') {
+                throw error("expected '['");
+            }
+            element(initial, line, column);
+
+            while (!states.isEmpty()) {
+                if (valuePending) {
+                    valuePending = false;
+                } else {
+                    in.skipWhitespace(null);
+                    int c = in.read();
+                    if (c == ']') {
+                        names.remove(names.size() - 1);
+                        states.remove(states.size() - 1);
+                        continue;
+                    }
+                    if (c != ',') {
+                        throw error("expected ',' or ']'");
+                    }
+                    in.skipWhitespace(null);
+                }
+
+                int c = in.peek();
+                if (c == '[') {
+                    line = in.line;
+                    column = in.column();
+                    in.read();
+                    element(states.get(states.size() - 1), line, column);
+                } else if (c == '{') {
+                    in.read();
+                    in.skipContainer(null);
+                } else {
+                    value(null);
+                }
+            }
+
+            in.skipWhitespace(null);
+            if (in.peek() != -1) {
+                throw error("extraneous input after the root element");
+            }
+        }
+
+        /**
+         * Handles an element whose opening bracket was just read: decides from its name,
+         * and attributes if a predicate needs them, whether it matches, can contain
+         * matches, or can be skipped.
+         */
+        private void element(int[] parentStates, int line, int column) throws IOException {
+            head.setLength(0);
+            head.append('[');
+            in.skipWhitespace(head);
+            int nameStart = head.length();
+            if (in.peek() != '"') {
+                throw error("expected an element name");
+            }
+            in.readString(head);
+            String name = UnityStrings.unquote(head.substring(nameStart));
+
+            UnityIndex.IntList next = new UnityIndex.IntList();
+            UnityIndex.IntList elementMatches = new UnityIndex.IntList();
+            UnityIndex.IntList attributeMatches = new UnityIndex.IntList();
+            UnityIndex.IntList needPredicates = new UnityIndex.IntList();
+            for (int state : parentStates) {
+                int p = state >>> 16;
+                UnityQuery.Step step = steps[p][state & 0xFFFF];
+                if (step.descendant) {
+                    // The step can still match further down
+                    addOnce(next, state);
+                }
+                if (step.name == null || step.name.equals(name)) {
+                    if (step.predicates.length > 0) {
+                        needPredicates.add(state);
+                    } else {
+                        advance(state, next, elementMatches, attributeMatches);
+                    }
+                }
+            }
+
+            if (needPredicates.size() > 0 || attributeMatches.size() > 0) {
+                readAttributes();
+                for (int i = 0; i < needPredicates.size(); i++) {
+                    int state = needPredicates.get(i);
+                    if (predicatesHold(steps[state >>> 16][state & 0xFFFF])) {
+                        advance(state, next, elementMatches, attributeMatches);
+                    }
+                }
+            }
+
+            String path = null;
+            if (attributeMatches.size() > 0 || elementMatches.size() > 0) {
+                path = pathTo(name);
+            }
+            for (int i = 0; i < attributeMatches.size(); i++) {
+                int p = attributeMatches.get(i);
+                String[] attribute = attributes.get(selectedAttributes[p]);
+                if (attribute != null) {
+                    matches.accept(new Match(expressions[p], p, path, selectedAttributes[p],
+                            attribute[0], attribute[1], line, column));
+                }
+            }
+
+            if (elementMatches.size() > 0) {
+                StringBuilder text = new StringBuilder(head);
+                in.skipContainer(text);
+                String source = text.toString();
+                for (int i = 0; i < elementMatches.size(); i++) {
+                    int p = elementMatches.get(i);
+                    matches.accept(new Match(expressions[p], p, path, null, source, source, line, column));
+                }
+                valuePending = false;
+            } else if (next.size() == 0) {
+                in.skipContainer(null);
+                valuePending = false;
+            } else {
+                names.add(name);
+                states.add(next.toArray());
+            }
+        }
+
+        /**
+         * Moves a state past a step its element matched.
+         */
+        private void advance(int state, UnityIndex.IntList next, UnityIndex.IntList elementMatches,
+                             UnityIndex.IntList attributeMatches) {
+            int p = state >>> 16;
+            int step = (state & 0xFFFF) + 1;
+            if (step < steps[p].length) {
+                addOnce(next, p << 16 | step);
+            } else if (selectedAttributes[p] != null) {
+                addOnce(attributeMatches, p);
+            } else {
+                addOnce(elementMatches, p);
+            }
+        }
+
+        private static void addOnce(UnityIndex.IntList list, int value) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == value) {
+                    return;
+                }
+            }
+            list.add(value);
+        }
+
+        private boolean predicatesHold(UnityQuery.Step step) {
+            for (UnityQuery.Predicate predicate : step.predicates) {
+                String[] attribute = attributes.get(predicate.attribute);
+                if (attribute == null || (predicate.value != null && !predicate.value.equals(attribute[1]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads the attributes object if it is the element's first content item. Leaves
+         * {@link #valuePending} set if a comma was read but no attributes object follows.
+         */
+        private void readAttributes() throws IOException {
+            attributes.clear();
+            valuePending = false;
+            in.skipWhitespace(head);
+            if (in.peek() != ',') {
+                return;
+            }
+            in.read();
+            head.append(',');
+            in.skipWhitespace(head);
+            if (in.peek() != '{') {
+                valuePending = true;
+                return;
+            }
+            in.read();
+            head.append('{');
+            in.skipWhitespace(head);
+            if (in.peek() == '}') {
+                in.read();
+                head.append('}');
+                return;
+            }
+            while (true) {
+                if (in.peek() != '"') {
+                    throw error("expected an attribute name");
+                }
+                token.setLength(0);
+                in.readString(token);
+                head.append(token);
+                String name = UnityStrings.unquote(token.toString());
+                in.skipWhitespace(head);
+                if (in.read() != ':') {
+                    throw error("expected ':'");
+                }
+                head.append(':');
+                in.skipWhitespace(head);
+                token.setLength(0);
+                String value = value(token);
+                head.append(token);
+                attributes.put(name, new String[]{token.toString(), value});
+                in.skipWhitespace(head);
+                int c = in.read();
+                if (c == '}') {
+                    head.append('}');
+                    return;
+                }
+                if (c != ',') {
+                    throw error("expected ',' or '}'");
+                }
+                head.append(',');
+                in.skipWhitespace(head);
+            }
+        }
+
+        /**
+         * Reads a primitive value, returning its decoded string or its source text.
+         */
+        private String value(StringBuilder capture) throws IOException {
+            int c = in.peek();
+            if (c == '"') {
+                int start = capture == null ? 0 : capture.length();
+                in.readString(capture);
+                return capture == null ? null : UnityStrings.unquote(capture.substring(start));
+            }
+            if (c == '-' || (c >= '0' && c <= '9') || c == 't' || c == 'f' || c == 'n') {
+                StringBuilder literal = capture == null ? new StringBuilder() : capture;
+                int start = literal.length();
+                in.readLiteral(literal);
+                String text = literal.substring(start);
+                if (c >= 'a' && !text.equals("true") && !text.equals("false") && !text.equals("null")) {
+                    throw error("unexpected '" + text + "'");
+                }
+                return text;
+            }
+            throw error(c < 0 ? "unexpected end of input" : "unexpected '" + (char) c + "'");
+        }
+
+        private String pathTo(String name) {
+            StringBuilder sb = new StringBuilder();
+            for (String open : names) {
+                sb.append('/').append(open);
+            }
+            return name == null ? sb.toString() : sb.append('/').append(name).toString();
+        }
+
+        private SyntaxError error(String message) {
+            String path = names.isEmpty() ? "/" : pathTo(null);
+            return new SyntaxError(new ValidationError(in.line, in.column(), "Syntax error: " + message, path));
+        }
+    }
+
+    /**
+     * Stops a scan at the first syntax error.
+     */
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // Never serialized: the exception does not leave the filter
+        final transient ValidationError error;
+
+        SyntaxError(ValidationError error) {
+            super(error.toString(), null, false, false);
+            this.error = error;
+        }
+    }
+
+    // =========================================================================
+    // Input
+    // =========================================================================
+
+    /**
+     * Buffered character input that tracks line and column.
+     */
+    private static final class Input {
+        private final Reader reader;
+        private final char[] buffer = new char[65536];
+        private int position = 0;
+        private int limit = 0;
+        // Offset of buffer[0] in the input, and of the first character of the current line
+        private long base = 0;
+        private long lineStart = 0;
+        int line = 1;
+
+        Input(Reader reader) {
+            this.reader = reader;
+        }
+
+        int column() {
+            return (int) (base + position - lineStart);
+        }
+
+        int peek() throws IOException {
+            return fill() ? buffer[position] : -1;
+        }
+
+        int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            char c = buffer[position++];
+            if (c == '\n') {
+                line++;
+                lineStart = base + position;
+            }
+            return c;
+        }
+
+        void skipWhitespace(StringBuilder capture) throws IOException {
+            while (true) {
+                int c = peek();
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                read();
+                if (capture != null) {
+                    capture.append((char) c);
+                }
+            }
+        }
+
+        /**
+         * Reads a string token, quotes included, appending it to the capture if given.
+         */
+        void readString(StringBuilder capture) throws IOException {
+            read();
+            if (capture != null) {
+                capture.append('"');
+            }
+            boolean escaped = false;
+            while (true) {
+                int c = read();
+                if (c < 0x20) {
+                    throw new SyntaxError(new ValidationError(line, column(),
+                            c < 0 ? "Syntax error: unterminated string" : "Syntax error: control character in string"));
+                }
+                if (capture != null) {
+                    capture.append((char) c);
+                }
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads a number or literal up to the next delimiter.
+         */
+        void readLiteral(StringBuilder capture) throws IOException {
+            while (true) {
+                int c = peek();
+                if (c < 0 || c == ',' || c == ']' || c == '}' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    return;
+                }
+                capture.append((char) read());
+            }
+        }
+
+        /**
+         * Skips to the end of the array or object whose opening bracket has been read,
+         * stepping over strings, and appends the skipped text to the capture if given.
+         */
+        void skipContainer(StringBuilder capture) throws IOException {
+            int depth = 1;
+            boolean inString = false;
+            boolean escaped = false;
+            while (fill()) {
+                int start = position;
+                for (int i = start; i < limit; i++) {
+                    char c = buffer[i];
+                    if (inString) {
+                        if (escaped) {
+                            escaped = false;
+                        } else if (c == '\\') {
+                            escaped = true;
+                        } else if (c == '"') {
+                            inString = false;
+                        }
+                    } else if (c == '"') {
+                        inString = true;
+                    } else if (c == '[' || c == '{') {
+                        depth++;
+                    } else if (c == ']' || c == '}') {
+                        if (--depth == 0) {
+                            position = i + 1;
+                            if (capture != null) {
+                                capture.append(buffer, start, position - start);
+                            }
+                            return;
+                        }
+                    } else if (c == '\n') {
+                        line++;
+                        lineStart = base + i + 1;
+                    }
+                }
+                if (capture != null) {
+                    capture.append(buffer, start, limit - start);
+                }
+                position = limit;
+            }
+            throw new SyntaxError(new ValidationError(line, column(), "Syntax error: unexpected end of input"));
+        }
+
+        private boolean fill() throws IOException {
+            if (position < limit) {
+                return true;
+            }
+            base += limit;
+            position = 0;
+            limit = 0;
+            int n;
+            do {
+                n = reader.read(buffer, 0, buffer.length);
+            } while (n == 0);
+            if (n < 0) {
+                return false;
+            }
+            limit = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * {@link Flow.Publisher}s of Unity parse events and results, for reactive consumers.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+ * Flow.Publisher<UnityEvent> events = UnityPublishers.events(() -> Files.newBufferedReader(path), executor);
+ * events.subscribe(subscriber);
+ * }</pre>
+ * Publishers are cold: each subscriber gets its own pass over a freshly opened input,
+ * which is only read as fast as the subscriber requests items. Reading and parsing
+ * happen on the given executor, never on the thread calling
+ * {@link Flow.Subscription#request(long)}. The input is closed when the stream completes,
+ * fails or is cancelled.
+ */
+public final class UnityPublishers {
+
+    private UnityPublishers() {
+    }
+
+    /**
+     * Publishes the events of a document held in memory.
+     *
+     * @param input    the Unity document as a string
+     * @param executor the executor to parse on
+     * @return a publisher of the document's events
+     * @see UnityEventReader
+     */
+    public static Flow.Publisher<UnityEvent> events(String input, Executor executor) {
+        Objects.requireNonNull(input, "input");
+        return new PullPublisher<>(() -> source(new UnityEventReader(input)), executor);
+    }
+
+    /**
+     * Publishes the events of a document read from a character stream.
+     *
+     * @param input    opens the document for each subscriber
+     * @param executor the executor to read and parse on
+     * @return a publisher of the document's events
+     * @see UnityEventReader
+     */
+    public static Flow.Publisher<UnityEvent> events(Callable<? extends Reader> input, Executor executor) {
+        Objects.requireNonNull(input, "input");
+        return new PullPublisher<>(() -> source(new UnityEventReader(input.call())), executor);
+    }
+
+    /**
+     * Publishes one {@link UnityDocument}, with its parse result, per document of a
+     * multi-document input.
+     *
+     * @param input    opens the UTF-8 input for each subscriber
+     * @param framing  how documents are delimited
+     * @param executor the executor to read and parse on
+     * @return a publisher of parsed documents
+     * @see UnityDocumentStream
+     */
+    public static Flow.Publisher<UnityDocument> documents(Callable<? extends InputStream> input,
+                                                          UnityDocumentStream.Framing framing,
+                                                          Executor executor) {
+        Objects.requireNonNull(input, "input");
+        Objects.requireNonNull(framing, "framing");
+        return new PullPublisher<>(() -> {
+            UnityDocumentStream stream = new UnityDocumentStream(input.call(), framing);
+            return new PullPublisher.Source<>() {
+                @Override
+                public UnityDocument next() throws Exception {
+                    return stream.next();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    stream.close();
+                }
+            };
+        }, executor);
+    }
+
+    private static PullPublisher.Source<UnityEvent> source(UnityEventReader reader) {
+        return new PullPublisher.Source<>() {
+            @Override
+            public UnityEvent next() {
+                return reader.next();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
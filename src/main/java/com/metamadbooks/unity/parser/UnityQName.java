@@ -0,0 +1,43 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * An element or attribute name resolved to its namespace: a namespace URI and a local
+ * name.
+ * <p>
+ * Names are interned by a {@link UnityNamespaces} table, which gives one instance per
+ * (namespace URI, local name) pair, so names from the same table are compared with
+ * {@code ==}. Equality is identity: names from different tables are never equal.
+ */
+public final class UnityQName {
+
+    private final String namespaceUri;
+    private final String localName;
+
+    UnityQName(String namespaceUri, String localName) {
+        this.namespaceUri = namespaceUri;
+        this.localName = localName;
+    }
+
+    /**
+     * Returns the namespace URI, or the empty string for a name in no namespace.
+     */
+    public String getNamespaceUri() {
+        return namespaceUri;
+    }
+
+    /**
+     * Returns the local name, without any prefix.
+     */
+    public String getLocalName() {
+        return localName;
+    }
+
+    /**
+     * Returns the name in the form {@code {namespaceUri}localName}, or the local name
+     * alone for a name in no namespace.
+     */
+    @Override
+    public String toString() {
+        return namespaceUri.isEmpty() ? localName : "{" + namespaceUri + "}" + localName;
+    }
+}
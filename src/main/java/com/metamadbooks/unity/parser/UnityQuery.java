@@ -0,0 +1,422 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled path expression selecting elements of a parsed Unity document.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityQuery query = UnityQuery.compile("/catalog/section//item[@id]");
+ * for (UnityParser.UnityElementContext item : query.select(result)) {
+ *     ...
+ * }
+ * }</pre>
+ * The expression language is a subset of XPath that selects elements only:
+ * <ul>
+ *   <li>{@code /name} selects child elements, {@code //name} descendant elements;
+ *       {@code *} matches any name. Expressions are absolute.</li>
+ *   <li>{@code [@attr]} keeps elements that have an attribute</li>
+ *   <li>{@code [@attr='value']} keeps elements whose attribute has a value; string
+ *       values compare decoded, other values by their literal text, as in
+ *       {@code [@price=3.5]}</li>
+ *   <li>{@code [n]} and {@code [last()]} keep the n-th or last of the elements that
+ *       share a parent, counted after the predicates before them</li>
+ * </ul>
+ * Queries run against the document's {@link UnityIndex}: each step starts from the
+ * elements with the step's name (or from the elements with a predicate's attribute,
+ * if that list is shorter) rather than from a walk of the tree. A compiled query is
+ * immutable and can be shared by threads.
+ */
+public final class UnityQuery {
+
+    private final String expression;
+    private final Step[] steps;
+
+    private UnityQuery(String expression, Step[] steps) {
+        this.expression = expression;
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles a path expression.
+     *
+     * @param expression the path expression
+     * @return the compiled query
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static UnityQuery compile(String expression) {
+        return new Compiler(expression).compile();
+    }
+
+    /**
+     * Selects the matching elements of a parsed document, building its index if needed.
+     *
+     * @param result the parse result
+     * @return the matching elements in document order
+     */
+    public List<UnityParser.UnityElementContext> select(Unity.ParseResult result) {
+        return select(result.getIndex());
+    }
+
+    /**
+     * Selects the matching elements of an indexed document.
+     *
+     * @param index the document's index
+     * @return the matching elements in document order
+     */
+    public List<UnityParser.UnityElementContext> select(UnityIndex index) {
+        return index.toList(evaluate(index));
+    }
+
+    /**
+     * Returns the element numbers of the matching elements, in document order.
+     */
+    int[] evaluate(UnityIndex index) {
+        // null stands for the document, the parent of the root element
+        int[] context = null;
+        for (Step step : steps) {
+            context = step.evaluate(index, context);
+            if (context.length == 0) {
+                break;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns the compiled location steps.
+     */
+    Step[] steps() {
+        return steps;
+    }
+
+    /**
+     * Returns the expression this query was compiled from.
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    // =========================================================================
+    // Steps and Predicates
+    // =========================================================================
+
+    /**
+     * One location step: an axis, a name test and predicates.
+     */
+    static final class Step {
+        final boolean descendant;
+        final String name;
+        final Predicate[] predicates;
+
+        Step(boolean descendant, String name, Predicate[] predicates) {
+            this.descendant = descendant;
+            this.name = name;
+            this.predicates = predicates;
+        }
+
+        int[] evaluate(UnityIndex index, int[] context) {
+            int[] candidates = name == null ? null : index.elementsWithName(name);
+
+            // Attribute filters before the first positional predicate do not depend on the
+            // axis, so they narrow the candidates before it is applied
+            int next = 0;
+            while (next < predicates.length && !predicates[next].isPositional()) {
+                int[] matching = predicates[next].attributeMatches(index);
+                candidates = candidates == null ? matching : intersect(candidates, matching);
+                next++;
+            }
+            if (candidates == null) {
+                candidates = index.allElements();
+            }
+
+            candidates = descendant ? withinSubtrees(index, candidates, context) : childrenOf(index, candidates, context);
+
+            for (; next < predicates.length && candidates.length > 0; next++) {
+                Predicate predicate = predicates[next];
+                if (!predicate.isPositional()) {
+                    candidates = intersect(candidates, predicate.attributeMatches(index));
+                } else {
+                    candidates = predicate.byPosition(index, candidates);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    /**
+     * A predicate: an attribute test when {@code attribute} is set, otherwise positional.
+     */
+    static final class Predicate {
+        final String attribute;
+        final String value;
+        // 1-based position, or 0 for last()
+        final int position;
+
+        Predicate(String attribute, String value, int position) {
+            this.attribute = attribute;
+            this.value = value;
+            this.position = position;
+        }
+
+        boolean isPositional() {
+            return attribute == null;
+        }
+
+        int[] attributeMatches(UnityIndex index) {
+            return value == null
+                    ? index.elementsWithAttribute(attribute)
+                    : index.elementsWithAttribute(attribute, value);
+        }
+
+        int[] byPosition(UnityIndex index, int[] candidates) {
+            Map<Integer, int[]> counts = new HashMap<>();
+            if (position == 0) {
+                for (int candidate : candidates) {
+                    counts.computeIfAbsent(index.getParent(candidate), k -> new int[2])[1]++;
+                }
+            }
+            UnityIndex.IntList kept = new UnityIndex.IntList();
+            for (int candidate : candidates) {
+                // [0] counts the group's elements so far, [1] holds the group size
+                int[] count = counts.computeIfAbsent(index.getParent(candidate), k -> new int[2]);
+                int seen = ++count[0];
+                if (position == 0 ? seen == count[1] : seen == position) {
+                    kept.add(candidate);
+                }
+            }
+            return kept.toArray();
+        }
+    }
+
+    /**
+     * Keeps the candidates whose parent is in the context.
+     */
+    private static int[] childrenOf(UnityIndex index, int[] candidates, int[] context) {
+        UnityIndex.IntList kept = new UnityIndex.IntList();
+        for (int candidate : candidates) {
+            int parent = index.getParent(candidate);
+            if (context == null ? parent == -1 : parent >= 0 && Arrays.binarySearch(context, parent) >= 0) {
+                kept.add(candidate);
+            }
+        }
+        return kept.toArray();
+    }
+
+    /**
+     * Keeps the candidates that are descendants of a context element, merging the sorted
+     * candidates with the context's subtree ranges.
+     */
+    private static int[] withinSubtrees(UnityIndex index, int[] candidates, int[] context) {
+        if (context == null) {
+            return candidates;
+        }
+        UnityIndex.IntList kept = new UnityIndex.IntList();
+        int c = 0;
+        int rangeEnd = -1;
+        for (int element : context) {
+            if (element < rangeEnd) {
+                // Nested in the previous context element's subtree
+                continue;
+            }
+            rangeEnd = index.getSubtreeEnd(element);
+            while (c < candidates.length && candidates[c] <= element) {
+                c++;
+            }
+            while (c < candidates.length && candidates[c] < rangeEnd) {
+                kept.add(candidates[c++]);
+            }
+        }
+        return kept.toArray();
+    }
+
+    /**
+     * Intersects two sorted arrays, searching the longer one for each element of the shorter.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        UnityIndex.IntList kept = new UnityIndex.IntList();
+        int from = 0;
+        for (int value : a) {
+            int found = Arrays.binarySearch(b, from, b.length, value);
+            if (found >= 0) {
+                kept.add(value);
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+            if (from == b.length) {
+                break;
+            }
+        }
+        return kept.toArray();
+    }
+
+    // =========================================================================
+    // Compiler
+    // =========================================================================
+
+    /**
+     * Recursive-descent compiler for the expression language.
+     */
+    private static final class Compiler {
+        private final String expression;
+        private int position = 0;
+
+        Compiler(String expression) {
+            this.expression = expression;
+        }
+
+        UnityQuery compile() {
+            List<Step> steps = new ArrayList<>();
+            skipSpaces();
+            if (!at('/')) {
+                throw error("expected '/'");
+            }
+            while (at('/')) {
+                position++;
+                boolean descendant = at('/');
+                if (descendant) {
+                    position++;
+                }
+                steps.add(step(descendant));
+                skipSpaces();
+            }
+            if (position < expression.length()) {
+                throw error("unexpected '" + expression.charAt(position) + "'");
+            }
+            return new UnityQuery(expression, steps.toArray(new Step[0]));
+        }
+
+        private Step step(boolean descendant) {
+            skipSpaces();
+            String name;
+            if (at('*')) {
+                position++;
+                name = null;
+            } else {
+                name = name();
+            }
+            List<Predicate> predicates = new ArrayList<>();
+            skipSpaces();
+            while (at('[')) {
+                position++;
+                predicates.add(predicate());
+                expect(']');
+                skipSpaces();
+            }
+            return new Step(descendant, name, predicates.toArray(new Predicate[0]));
+        }
+
+        private Predicate predicate() {
+            skipSpaces();
+            if (at('@')) {
+                position++;
+                String attribute = name();
+                skipSpaces();
+                if (!at('=')) {
+                    return new Predicate(attribute, null, 0);
+                }
+                position++;
+                skipSpaces();
+                return new Predicate(attribute, literal(), 0);
+            }
+            if (expression.startsWith("last()", position)) {
+                position += "last()".length();
+                skipSpaces();
+                return new Predicate(null, null, 0);
+            }
+            int start = position;
+            while (position < expression.length() && Character.isDigit(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected '@', a position or last()");
+            }
+            int index;
+            try {
+                index = Integer.parseInt(expression.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("position out of range");
+            }
+            if (index < 1) {
+                throw error("positions start at 1");
+            }
+            skipSpaces();
+            return new Predicate(null, null, index);
+        }
+
+        private String literal() {
+            if (at('\'') || at('"')) {
+                char quote = expression.charAt(position++);
+                int end = expression.indexOf(quote, position);
+                if (end < 0) {
+                    throw error("unterminated string");
+                }
+                String value = expression.substring(position, end);
+                position = end + 1;
+                skipSpaces();
+                return value;
+            }
+            // Numbers, booleans and null compare by their literal text
+            int start = position;
+            while (position < expression.length() && expression.charAt(position) != ']'
+                    && !Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a value");
+            }
+            String value = expression.substring(start, position);
+            skipSpaces();
+            return value;
+        }
+
+        private String name() {
+            int start = position;
+            while (position < expression.length() && isNameChar(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a name");
+            }
+            return expression.substring(start, position);
+        }
+
+        private static boolean isNameChar(char c) {
+            return "/[]@='\"*()".indexOf(c) < 0 && !Character.isWhitespace(c);
+        }
+
+        private boolean at(char c) {
+            return position < expression.length() && expression.charAt(position) == c;
+        }
+
+        private void expect(char c) {
+            if (!at(c)) {
+                throw error("expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private void skipSpaces() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid query '" + expression + "' at position "
+                    + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An immutable text held as a balanced tree of chunks, for documents that are edited in
+ * place by {@link IncrementalUnityParser}.
+ * <p>
+ * The tree is a treap of chunks of at most about a thousand chars, ordered by position
+ * and kept balanced by random priorities. Replacing a range rebuilds only the chunks
+ * that hold its ends and copies the path to them, so an edit costs the same however
+ * long the text, and a rope stays valid after it has been edited, for results made from
+ * it earlier. Each subtree counts its chars, newlines and surrogate pairs, so lines and
+ * code point columns are found by descending the tree rather than by scanning the text.
+ * The text is only built as a String when {@link #toString()} is called.
+ */
+final class UnityRope implements CharSequence {
+
+    private static final int CHUNK = 1024;
+
+    // Null for the empty text
+    private final Piece root;
+    // Built on first use
+    private String text;
+
+    private UnityRope(Piece root, String text) {
+        this.root = root;
+        this.text = text;
+    }
+
+    /**
+     * Returns a rope holding a text.
+     */
+    static UnityRope of(String text) {
+        return new UnityRope(build(text), text);
+    }
+
+    /**
+     * Returns a rope with a range of this one's text replaced, leaving this one as it is.
+     *
+     * @param offset   char offset of the first char replaced
+     * @param removed  number of chars removed
+     * @param inserted text inserted in their place
+     */
+    UnityRope replace(int offset, int removed, String inserted) {
+        int end = offset + removed;
+        // The chunks holding the ends of the range are rebuilt with the inserted text, so
+        // that chunks do not get smaller with every edit
+        int from = offset > 0 ? chunkBound(offset - 1, false) : 0;
+        int to = end < length() ? chunkBound(end, true) : length();
+        String middle = substring(from, offset) + inserted + substring(end, to);
+        Piece[] before = split(root, from);
+        Piece[] after = split(before[1], to - from);
+        return new UnityRope(merge(merge(before[0], build(middle)), after[1]), null);
+    }
+
+    @Override
+    public int length() {
+        return length(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (text != null) {
+            return text.charAt(index);
+        }
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of text of length " + length());
+        }
+        Piece piece = root;
+        while (true) {
+            int left = length(piece.left);
+            if (index < left) {
+                piece = piece.left;
+            } else if (index < left + piece.chunk.length()) {
+                return piece.chunk.charAt(index - left);
+            } else {
+                index -= left + piece.chunk.length();
+                piece = piece.right;
+            }
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * Returns the chars of [from, to) as a String.
+     */
+    String substring(int from, int to) {
+        if (from < 0 || to > length() || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of text of length "
+                    + length());
+        }
+        if (text != null) {
+            return text.substring(from, to);
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        append(root, from, to, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        String built = text;
+        if (built == null) {
+            built = substring(0, length());
+            text = built;
+        }
+        return built;
+    }
+
+    /**
+     * Returns the 0-based line of a char offset.
+     */
+    int lineOf(int offset) {
+        int line = 0;
+        Piece piece = root;
+        while (piece != null) {
+            int left = length(piece.left);
+            if (offset < left) {
+                piece = piece.left;
+                continue;
+            }
+            line += newlines(piece.left);
+            offset -= left;
+            if (offset <= piece.chunk.length()) {
+                for (int i = 0; i < offset; i++) {
+                    if (piece.chunk.charAt(i) == '\n') {
+                        line++;
+                    }
+                }
+                return line;
+            }
+            line += piece.chunkNewlines;
+            offset -= piece.chunk.length();
+            piece = piece.right;
+        }
+        return line;
+    }
+
+    /**
+     * Returns the char offset at which a 0-based line starts.
+     *
+     * @throws IndexOutOfBoundsException if the text has fewer lines
+     */
+    int lineStart(int line) {
+        if (line == 0) {
+            return 0;
+        }
+        int remaining = line;
+        int start = 0;
+        Piece piece = root;
+        while (piece != null) {
+            int left = newlines(piece.left);
+            if (remaining <= left) {
+                piece = piece.left;
+                continue;
+            }
+            remaining -= left;
+            start += length(piece.left);
+            if (remaining <= piece.chunkNewlines) {
+                int i = -1;
+                for (int k = 0; k < remaining; k++) {
+                    i = piece.chunk.indexOf('\n', i + 1);
+                }
+                return start + i + 1;
+            }
+            remaining -= piece.chunkNewlines;
+            start += piece.chunk.length();
+            piece = piece.right;
+        }
+        throw new IndexOutOfBoundsException("Line " + line + " out of text of " + (newlines(root) + 1) + " lines");
+    }
+
+    /**
+     * Returns the column of a char offset in code points, as {@link org.antlr.v4.runtime.Token}s
+     * count it.
+     */
+    int columnOf(int offset) {
+        int lineStart = lineStart(lineOf(offset));
+        int column = offset - lineStart;
+        if (root != null && root.pairs > 0) {
+            // A line starts after a newline, so no pair spans its start
+            column -= pairsBefore(offset) - pairsBefore(lineStart);
+        }
+        return column;
+    }
+
+    /**
+     * Returns the number of surrogate pairs whose low surrogate is before an offset.
+     */
+    private int pairsBefore(int offset) {
+        int pairs = 0;
+        // The char before the subtree being descended into, or 0 at the start
+        char previous = 0;
+        Piece piece = root;
+        while (piece != null) {
+            int left = length(piece.left);
+            if (offset < left) {
+                piece = piece.left;
+                continue;
+            }
+            if (piece.left != null) {
+                pairs += piece.left.pairs + joins(previous, piece.left.first);
+                previous = piece.left.last;
+            }
+            offset -= left;
+            String chunk = piece.chunk;
+            int count = Math.min(offset, chunk.length());
+            for (int i = 0; i < count; i++) {
+                pairs += joins(i == 0 ? previous : chunk.charAt(i - 1), chunk.charAt(i));
+            }
+            if (offset <= chunk.length()) {
+                return pairs;
+            }
+            previous = chunk.charAt(chunk.length() - 1);
+            offset -= chunk.length();
+            piece = piece.right;
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns the start, or the end, of the chunk holding the char at an index.
+     */
+    private int chunkBound(int index, boolean end) {
+        int start = 0;
+        Piece piece = root;
+        while (true) {
+            int left = length(piece.left);
+            if (index < left) {
+                piece = piece.left;
+            } else if (index < left + piece.chunk.length()) {
+                return start + left + (end ? piece.chunk.length() : 0);
+            } else {
+                start += left + piece.chunk.length();
+                index -= left + piece.chunk.length();
+                piece = piece.right;
+            }
+        }
+    }
+
+    // =========================================================================
+    // Tree
+    // =========================================================================
+
+    /**
+     * A chunk of the text and, for the subtree it roots, the counts of its chars,
+     * newlines and surrogate pairs and its first and last chars.
+     */
+    private static final class Piece {
+        final String chunk;
+        final int chunkNewlines;
+        final int chunkPairs;
+        final int priority;
+        final Piece left;
+        final Piece right;
+        final int length;
+        final int newlines;
+        final int pairs;
+        final char first;
+        final char last;
+
+        Piece(String chunk) {
+            this(chunk, countNewlines(chunk), countPairs(chunk), ThreadLocalRandom.current().nextInt(), null, null);
+        }
+
+        private Piece(String chunk, int chunkNewlines, int chunkPairs, int priority, Piece left, Piece right) {
+            this.chunk = chunk;
+            this.chunkNewlines = chunkNewlines;
+            this.chunkPairs = chunkPairs;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.length = length(left) + chunk.length() + length(right);
+            this.newlines = newlines(left) + chunkNewlines + newlines(right);
+            this.first = left != null ? left.first : chunk.charAt(0);
+            this.last = right != null ? right.last : chunk.charAt(chunk.length() - 1);
+            int pairs = chunkPairs;
+            if (left != null) {
+                pairs += left.pairs + joins(left.last, chunk.charAt(0));
+            }
+            if (right != null) {
+                pairs += right.pairs + joins(chunk.charAt(chunk.length() - 1), right.first);
+            }
+            this.pairs = pairs;
+        }
+
+        /**
+         * Returns a copy with other subtrees.
+         */
+        Piece with(Piece left, Piece right) {
+            return new Piece(chunk, chunkNewlines, chunkPairs, priority, left, right);
+        }
+    }
+
+    private static int length(Piece piece) {
+        return piece == null ? 0 : piece.length;
+    }
+
+    private static int newlines(Piece piece) {
+        return piece == null ? 0 : piece.newlines;
+    }
+
+    /**
+     * Builds a tree of the chunks of a text.
+     */
+    private static Piece build(String text) {
+        Piece built = null;
+        for (int i = 0; i < text.length(); i += CHUNK) {
+            built = merge(built, new Piece(text.substring(i, Math.min(i + CHUNK, text.length()))));
+        }
+        return built;
+    }
+
+    private static Piece merge(Piece a, Piece b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    /**
+     * Splits a tree at an offset that is the start or end of a chunk.
+     */
+    private static Piece[] split(Piece piece, int offset) {
+        if (piece == null) {
+            return new Piece[2];
+        }
+        int left = length(piece.left);
+        if (offset <= left) {
+            Piece[] parts = split(piece.left, offset);
+            parts[1] = piece.with(parts[1], piece.right);
+            return parts;
+        }
+        Piece[] parts = split(piece.right, offset - left - piece.chunk.length());
+        parts[0] = piece.with(piece.left, parts[0]);
+        return parts;
+    }
+
+    /**
+     * Appends the chars of [from, to) of a subtree, relative to its start.
+     */
+    private static void append(Piece piece, int from, int to, StringBuilder sb) {
+        if (piece == null || from >= to) {
+            return;
+        }
+        int chunkStart = length(piece.left);
+        int chunkEnd = chunkStart + piece.chunk.length();
+        if (from < chunkStart) {
+            append(piece.left, from, Math.min(to, chunkStart), sb);
+        }
+        if (from < chunkEnd && to > chunkStart) {
+            sb.append(piece.chunk, Math.max(from, chunkStart) - chunkStart, Math.min(to, chunkEnd) - chunkStart);
+        }
+        if (to > chunkEnd) {
+            append(piece.right, Math.max(from, chunkEnd) - chunkEnd, to - chunkEnd, sb);
+        }
+    }
+
+    private static int countNewlines(String chunk) {
+        int count = 0;
+        for (int i = chunk.indexOf('\n'); i >= 0; i = chunk.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int countPairs(String chunk) {
+        int count = 0;
+        for (int i = 1; i < chunk.length(); i++) {
+            count += joins(chunk.charAt(i - 1), chunk.charAt(i));
+        }
+        return count;
+    }
+
+    /**
+     * Returns 1 if two chars are a surrogate pair.
+     */
+    private static int joins(char high, char low) {
+        return Character.isHighSurrogate(high) && Character.isLowSurrogate(low) ? 1 : 0;
+    }
+}
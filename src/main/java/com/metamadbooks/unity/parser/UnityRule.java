@@ -0,0 +1,101 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * A validation rule run by {@link UnityValidationListener} and {@link UnityEventReader}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityRule maxText = new UnityRule() {
+ *     public void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+ *         if (type == UnityValueType.STRING && rawValue.length() > 1000) {
+ *             context.report("Text longer than 1000 characters");
+ *         }
+ *     }
+ * };
+ * Unity.ParseResult result = Unity.parse(input, UnityRuleSet.defaults().with(maxText));
+ * }</pre>
+ * All rules of a {@link UnityRuleSet} run in the same traversal, each callback being
+ * called for every rule in registration order, so adding a rule does not add a pass
+ * over the document. Callbacks arrive in document order:
+ * <ul>
+ *   <li>{@link #enterElement} once the element's name has been read</li>
+ *   <li>{@link #attribute} for each attribute pair</li>
+ *   <li>{@link #attributes} at the end of each attributes object</li>
+ *   <li>{@link #content} after each content item, attributes objects included, once
+ *       its own nested events have been delivered</li>
+ *   <li>{@link #exitElement} at the closing bracket</li>
+ * </ul>
+ * Callbacks describe the document as events, with names and values as they appear in
+ * it, not as parse tree nodes, so the same rules run on a parse tree and on a stream of
+ * {@link UnityEvent}s. Errors are reported through {@link UnityRuleContext#report(String)}
+ * at the item the callback is about.
+ * <p>
+ * Rules are shared by all documents validated with a rule set, possibly on several
+ * threads at once, so they should not keep per-document state in fields; a rule that
+ * needs such state keeps it with {@link UnityRuleContext#setState}. All methods do
+ * nothing by default.
+ */
+public interface UnityRule {
+
+    /**
+     * Returns the name used in timings; the simple class name by default.
+     */
+    default String getName() {
+        String name = getClass().getSimpleName();
+        return name.isEmpty() ? getClass().getName() : name;
+    }
+
+    /**
+     * Called when an element's name has been read. The context's path is still that of
+     * the enclosing element, so errors about the name are reported where the element
+     * occurs.
+     *
+     * @param name    the decoded element name
+     * @param context the traversal context, positioned at the name
+     */
+    default void enterElement(String name, UnityRuleContext context) {
+    }
+
+    /**
+     * Called for each attribute pair of the current element.
+     *
+     * @param name     the decoded attribute name
+     * @param type     the value's type
+     * @param rawValue the value as it appears in the document, e.g. {@code "a\"b"} or
+     *                 {@code 1e3}; valid only during the call
+     * @param context  the traversal context, positioned at the name
+     */
+    default void attribute(String name, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+    }
+
+    /**
+     * Called at the end of an attributes object, after its attribute pairs and before
+     * {@link #content} is called for it.
+     *
+     * @param index   the object's index within the element, 1 for the first item after the name
+     * @param context the traversal context, positioned at the opening brace
+     */
+    default void attributes(int index, UnityRuleContext context) {
+    }
+
+    /**
+     * Called after each content item of the current element.
+     *
+     * @param index    the item's index within the element, 1 for the first item after the name
+     * @param type     the type of a primitive value, or null for an attributes object or
+     *                 a nested element
+     * @param rawValue a primitive value as it appears in the document, or null; valid only
+     *                 during the call
+     * @param context  the traversal context, positioned at the item's first character
+     */
+    default void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+    }
+
+    /**
+     * Called when the current element is closed, while the context still describes it.
+     *
+     * @param context the traversal context, positioned at the closing bracket
+     */
+    default void exitElement(UnityRuleContext context) {
+    }
+}
@@ -0,0 +1,84 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Where a {@link UnityRule} callback occurs, and how the rule reports errors.
+ */
+public interface UnityRuleContext {
+
+    /**
+     * Returns the path of the current element, e.g. "/root/child", or "/" outside the
+     * root element.
+     */
+    String getPath();
+
+    /**
+     * Returns the name of the current element, or null outside the root element.
+     */
+    String getElementName();
+
+    /**
+     * Returns the number of open elements.
+     */
+    int getDepth();
+
+    /**
+     * Returns the index of the current content item within the current element, 0 while
+     * no content item has started.
+     */
+    int getContentIndex();
+
+    /**
+     * Returns the line of the item the callback is about: the element name, the attribute
+     * name, the content item's first character, or the element's closing bracket.
+     */
+    int getLine();
+
+    /**
+     * Returns the column, in code points, of the item the callback is about.
+     */
+    int getColumn();
+
+    /**
+     * Returns a handle on the position of the item the callback is about, for rules that
+     * report an error there from a later callback. Its line and column are only worked out
+     * if an error is reported at it.
+     */
+    Object getPosition();
+
+    /**
+     * Returns the calling rule's state for the current document, null until set.
+     */
+    Object getState();
+
+    /**
+     * Sets the calling rule's state for the current document, for rules that need more
+     * than the context to check an event, such as an automaton stack.
+     *
+     * @param state the state to keep until the end of the document
+     */
+    void setState(Object state);
+
+    /**
+     * Reports an error at the item the callback is about, with the current path.
+     *
+     * @param message a description of the error
+     */
+    void report(String message);
+
+    /**
+     * Reports an error at a position kept from an earlier callback, with the current path.
+     *
+     * @param line    the line of the error
+     * @param column  the column of the error, in code points
+     * @param message a description of the error
+     */
+    void report(int line, int column, String message);
+
+    /**
+     * Reports an error at a position kept from an earlier callback, with the current path.
+     *
+     * @param position a handle returned by {@link #getPosition()} for this document
+     * @param message  a description of the error
+     */
+    void report(Object position, String message);
+}
@@ -0,0 +1,319 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.Token;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Calls the rules of a {@link UnityRuleSet} for one document, tracking the element path,
+ * content indexes and positions they see through {@link UnityRuleContext}.
+ * <p>
+ * Shared by {@link UnityValidationListener} and {@link UnityEventReader}, so the rules
+ * see the same callbacks, in the same order, whether a document is parsed into a tree or
+ * read as events. The caller reports the document's structure as it reads it:
+ * {@link #openElement} at '[', {@link #enterElement} at the name, {@link #nextContent}
+ * at the start of each content item, {@link #attribute} and {@link #attributesObject}
+ * for attributes, {@link #value} for primitive content and {@link #exitElement} at ']'.
+ * Each is given the token it is about, whose line and column are only read if a rule
+ * asks for them or reports an error there.
+ */
+final class UnityRuleRunner implements UnityRuleContext {
+
+    private final UnityRuleSet ruleSet;
+    private final UnityRule[] rules;
+    private final Consumer<ValidationError> errors;
+    // Per rule, for this document; null when the rule set is untimed
+    private final long[] calls;
+    private final long[] nanos;
+    // Per rule state for this document, and the rule being called
+    private final Object[] states;
+    private int currentRule;
+    private boolean halted = false;
+
+    // Open elements, outermost first; the innermost has no name until its name is read
+    private String[] names = new String[16];
+    private int[] contentIndexes = new int[16];
+    private Token[] starts = new Token[16];
+    private int depth = 0;
+    private boolean unnamed = false;
+
+    // The item the current callback is about; null where no token is known
+    private Token at;
+
+    /**
+     * Creates a runner that passes the errors rules report to a consumer.
+     *
+     * @param ruleSet the rules to run
+     * @param errors  receives each error as it is reported
+     */
+    UnityRuleRunner(UnityRuleSet ruleSet, Consumer<ValidationError> errors) {
+        this.ruleSet = ruleSet;
+        this.rules = ruleSet.rules();
+        this.errors = errors;
+        this.calls = ruleSet.isTimed() ? new long[rules.length] : null;
+        this.nanos = ruleSet.isTimed() ? new long[rules.length] : null;
+        this.states = new Object[rules.length];
+    }
+
+    /**
+     * Starts inside elements whose other content is run separately.
+     *
+     * @param enclosingPath names of the enclosing elements, outermost first
+     * @param contentIndex  index of the next content item within the innermost of them
+     */
+    void enclose(List<String> enclosingPath, int contentIndex) {
+        for (String name : enclosingPath) {
+            openElement(null);
+            names[depth - 1] = name;
+            unnamed = false;
+        }
+        if (depth > 0) {
+            // nextContent() increments the index as the item starts
+            contentIndexes[depth - 1] = contentIndex - 1;
+        }
+    }
+
+    /**
+     * Stops calling rules, for when a syntax error makes the rest of the document
+     * unreliable; the path is still tracked.
+     */
+    void halt() {
+        halted = true;
+    }
+
+    /**
+     * Returns true if rules are no longer called.
+     */
+    boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * Opens an element at its '['.
+     */
+    void openElement(Token bracket) {
+        if (depth == names.length) {
+            int capacity = depth * 2;
+            names = Arrays.copyOf(names, capacity);
+            contentIndexes = Arrays.copyOf(contentIndexes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+        }
+        names[depth] = null;
+        contentIndexes[depth] = 0;
+        starts[depth] = bracket;
+        depth++;
+        unnamed = true;
+    }
+
+    /**
+     * Names the element just opened; rules see the name before it joins the path.
+     */
+    void enterElement(String name, Token token) {
+        if (!unnamed) {
+            // A walk that starts at the name, with no '[' before it
+            openElement(token);
+        }
+        if (!halted) {
+            at = token;
+            for (int i = 0; i < rules.length; i++) {
+                long start = begin(i);
+                rules[i].enterElement(name, this);
+                record(i, start);
+            }
+        }
+        names[depth - 1] = name;
+        unnamed = false;
+    }
+
+    /**
+     * Starts the next content item of the current element.
+     */
+    void nextContent() {
+        contentIndexes[depth - 1]++;
+    }
+
+    /**
+     * Reports an attribute pair of the current element.
+     */
+    void attribute(String name, UnityValueType type, CharSequence rawValue, Token token) {
+        if (halted) {
+            return;
+        }
+        at = token;
+        for (int i = 0; i < rules.length; i++) {
+            long start = begin(i);
+            rules[i].attribute(name, type, rawValue, this);
+            record(i, start);
+        }
+    }
+
+    /**
+     * Ends an attributes object, whose '{' is at the given position.
+     */
+    void attributesObject(Token brace) {
+        if (halted) {
+            return;
+        }
+        at = brace;
+        int index = contentIndexes[depth - 1];
+        for (int i = 0; i < rules.length; i++) {
+            long start = begin(i);
+            rules[i].attributes(index, this);
+            record(i, start);
+        }
+        content(index, null, null);
+    }
+
+    /**
+     * Reports a primitive content value of the current element.
+     */
+    void value(UnityValueType type, CharSequence rawValue, Token token) {
+        if (halted) {
+            return;
+        }
+        at = token;
+        content(contentIndexes[depth - 1], type, rawValue);
+    }
+
+    /**
+     * Closes the current element at its ']', then ends it as a content item of the
+     * enclosing element.
+     */
+    void exitElement(Token bracket) {
+        if (depth == 0) {
+            return;
+        }
+        if (!halted && !unnamed) {
+            at = bracket;
+            for (int i = 0; i < rules.length; i++) {
+                long start = begin(i);
+                rules[i].exitElement(this);
+                record(i, start);
+            }
+        }
+        depth--;
+        names[depth] = null;
+        Token start = starts[depth];
+        starts[depth] = null;
+        unnamed = false;
+        if (!halted && depth > 0) {
+            at = start;
+            content(contentIndexes[depth - 1], null, null);
+        }
+    }
+
+    /**
+     * Ends the document, adding this document's timings to the rule set.
+     */
+    void finish() {
+        if (calls != null) {
+            ruleSet.addTimings(calls, nanos);
+            Arrays.fill(calls, 0);
+            Arrays.fill(nanos, 0);
+        }
+    }
+
+    private void content(int index, UnityValueType type, CharSequence rawValue) {
+        for (int i = 0; i < rules.length; i++) {
+            long start = begin(i);
+            rules[i].content(index, type, rawValue, this);
+            record(i, start);
+        }
+    }
+
+    private long begin(int rule) {
+        currentRule = rule;
+        return calls == null ? 0 : System.nanoTime();
+    }
+
+    private void record(int rule, long start) {
+        if (calls != null) {
+            nanos[rule] += System.nanoTime() - start;
+            calls[rule]++;
+        }
+    }
+
+    /**
+     * Returns the number of named open elements.
+     */
+    private int namedDepth() {
+        return unnamed ? depth - 1 : depth;
+    }
+
+    // =========================================================================
+    // UnityRuleContext
+    // =========================================================================
+
+    @Override
+    public String getPath() {
+        int named = namedDepth();
+        if (named == 0) {
+            return "/";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < named; i++) {
+            sb.append('/').append(names[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getElementName() {
+        int named = namedDepth();
+        return named == 0 ? null : names[named - 1];
+    }
+
+    @Override
+    public int getDepth() {
+        return namedDepth();
+    }
+
+    @Override
+    public int getContentIndex() {
+        int named = namedDepth();
+        return named == 0 ? 0 : contentIndexes[named - 1];
+    }
+
+    @Override
+    public int getLine() {
+        return at == null ? 0 : at.getLine();
+    }
+
+    @Override
+    public int getColumn() {
+        return at == null ? 0 : at.getCharPositionInLine();
+    }
+
+    @Override
+    public Object getPosition() {
+        return at;
+    }
+
+    @Override
+    public Object getState() {
+        return states[currentRule];
+    }
+
+    @Override
+    public void setState(Object state) {
+        states[currentRule] = state;
+    }
+
+    @Override
+    public void report(String message) {
+        report(getLine(), getColumn(), message);
+    }
+
+    @Override
+    public void report(int line, int column, String message) {
+        errors.accept(new ValidationError(line, column, message, getPath()));
+    }
+
+    @Override
+    public void report(Object position, String message) {
+        Token token = (Token) position;
+        report(token == null ? 0 : token.getLine(), token == null ? 0 : token.getCharPositionInLine(), message);
+    }
+}
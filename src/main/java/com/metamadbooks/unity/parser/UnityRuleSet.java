@@ -0,0 +1,170 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An immutable list of {@link UnityRule}s validated together in one traversal.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityRuleSet rules = UnityRuleSet.defaults().with(new AllowedValuesRule()).timed();
+ * Unity.ParseResult result = Unity.parse(input, rules);
+ * for (UnityRuleSet.RuleTiming timing : rules.getTimings()) {
+ *     System.out.println(timing);
+ * }
+ * }</pre>
+ * {@link #defaults()} holds the checks {@link Unity#parse(String)} has always made:
+ * {@link XmlNameRule} and {@link AttributePositionRule}. A timed rule set measures the
+ * time spent in each rule, summed over all documents validated with it; timing costs two
+ * clock reads per callback, so rule sets are untimed unless asked.
+ */
+public final class UnityRuleSet {
+
+    private static final UnityRuleSet DEFAULTS = new UnityRuleSet(new UnityRule[]{
+            new XmlNameRule(), new AttributePositionRule()}, false);
+
+    private final UnityRule[] rules;
+    // Per rule, summed over documents; null when untimed
+    private final LongAdder[] calls;
+    private final LongAdder[] nanos;
+
+    private UnityRuleSet(UnityRule[] rules, boolean timed) {
+        this.rules = rules;
+        if (timed) {
+            calls = new LongAdder[rules.length];
+            nanos = new LongAdder[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                calls[i] = new LongAdder();
+                nanos[i] = new LongAdder();
+            }
+        } else {
+            calls = null;
+            nanos = null;
+        }
+    }
+
+    /**
+     * Returns the built-in rules.
+     */
+    public static UnityRuleSet defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a rule set of the given rules only, without the built-in ones.
+     *
+     * @param rules the rules, in the order they are called
+     * @return the rule set
+     */
+    public static UnityRuleSet of(UnityRule... rules) {
+        return new UnityRuleSet(rules.clone(), false);
+    }
+
+    /**
+     * Returns a rule set with more rules called after these.
+     *
+     * @param more the rules to add
+     * @return a new rule set, untimed unless this one is timed
+     */
+    public UnityRuleSet with(UnityRule... more) {
+        UnityRule[] combined = Arrays.copyOf(rules, rules.length + more.length);
+        System.arraycopy(more, 0, combined, rules.length, more.length);
+        return new UnityRuleSet(combined, isTimed());
+    }
+
+    /**
+     * Returns a rule set of the same rules that measures time per rule, starting from zero.
+     */
+    public UnityRuleSet timed() {
+        return new UnityRuleSet(rules, true);
+    }
+
+    /**
+     * Returns true if this rule set measures time per rule.
+     */
+    public boolean isTimed() {
+        return calls != null;
+    }
+
+    /**
+     * Returns the rules in the order they are called.
+     */
+    public List<UnityRule> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+
+    /**
+     * Returns the time spent in each rule so far, empty if the rule set is not timed.
+     */
+    public List<RuleTiming> getTimings() {
+        if (!isTimed()) {
+            return Collections.emptyList();
+        }
+        List<RuleTiming> timings = new ArrayList<>(rules.length);
+        for (int i = 0; i < rules.length; i++) {
+            timings.add(new RuleTiming(rules[i].getName(), calls[i].sum(), nanos[i].sum()));
+        }
+        return timings;
+    }
+
+    UnityRule[] rules() {
+        return rules;
+    }
+
+    /**
+     * Adds the counts of one document.
+     */
+    void addTimings(long[] documentCalls, long[] documentNanos) {
+        for (int i = 0; i < rules.length; i++) {
+            if (documentCalls[i] != 0) {
+                calls[i].add(documentCalls[i]);
+                nanos[i].add(documentNanos[i]);
+            }
+        }
+    }
+
+    /**
+     * Time spent in one rule.
+     */
+    public static final class RuleTiming {
+        private final String name;
+        private final long calls;
+        private final long nanos;
+
+        RuleTiming(String name, long calls, long nanos) {
+            this.name = name;
+            this.calls = calls;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the rule's name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of callbacks made to the rule.
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Returns the total time spent in the rule's callbacks, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + calls + " calls, " + (nanos / 1000) + " us";
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled structural schema for Unity documents, run as a {@link UnityRule}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnitySchema schema = UnitySchema.compile(schemaText);
+ * Unity.ParseResult result = Unity.parse(input, UnityRuleSet.defaults().with(schema));
+ * }</pre>
+ * A schema is itself a Unity document:
+ * <pre>{@code
+ * ["schema", {"root": "catalog"},
+ *   ["element", {"name": "catalog"},
+ *     ["attribute", {"name": "version", "type": "integer", "required": true}],
+ *     ["child", {"name": "title", "min": 0}],
+ *     ["choice", {"min": 1, "max": "unbounded"},
+ *       ["child", {"name": "book"}], ["child", {"name": "magazine"}]]],
+ *   ["element", {"name": "title", "text": true}],
+ *   ...
+ * ]
+ * }</pre>
+ * <ul>
+ *   <li>{@code element} declares an element by name. {@code "text": true} allows
+ *       primitive content values; {@code "children": "any"} allows any child elements
+ *       instead of a content model.</li>
+ *   <li>{@code attribute} declares an attribute with a {@code type} of string, number,
+ *       integer, boolean, null or any (the default); {@code "required": true} makes it
+ *       mandatory. Undeclared attributes are errors.</li>
+ *   <li>{@code child} and {@code choice} form the content model: a sequence of
+ *       particles, each with {@code min} and {@code max} occurrences (1 by default;
+ *       {@code "unbounded"} for no limit). When a name could match more than one
+ *       particle, the earliest one that can take it does.</li>
+ * </ul>
+ * Each content model compiles to a table indexed by particle and child name, giving the
+ * particle that takes each child, and each element's attributes to a lookup table, so
+ * validation does constant work per event. The occurrences of the current particle are
+ * counted beside it, so a large {@code min} or {@code max} costs no more than a small one.
+ * Elements that the content model rejects, or that are not declared, are reported and
+ * their content is not checked.
+ * <p>
+ * A compiled schema is immutable and can be shared by threads.
+ */
+public final class UnitySchema implements UnityRule {
+
+    /**
+     * Attribute value types.
+     */
+    private enum Type {
+        STRING, NUMBER, INTEGER, BOOLEAN, NULL, ANY;
+
+        boolean accepts(UnityValueType type, CharSequence rawValue) {
+            switch (this) {
+                case STRING:
+                    return type == UnityValueType.STRING;
+                case NUMBER:
+                    return type == UnityValueType.NUMBER;
+                case INTEGER:
+                    if (type != UnityValueType.NUMBER) {
+                        return false;
+                    }
+                    for (int i = 0; i < rawValue.length(); i++) {
+                        char c = rawValue.charAt(i);
+                        if (c == '.' || c == 'e' || c == 'E') {
+                            return false;
+                        }
+                    }
+                    return true;
+                case BOOLEAN:
+                    return type == UnityValueType.BOOLEAN;
+                case NULL:
+                    return type == UnityValueType.NULL;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    private final String rootName;
+    private final Map<String, ElementDeclaration> elements;
+
+    private UnitySchema(String rootName, Map<String, ElementDeclaration> elements) {
+        this.rootName = rootName;
+        this.elements = elements;
+    }
+
+    /**
+     * Compiles a schema document.
+     *
+     * @param schema the schema as a Unity document
+     * @return the compiled schema
+     * @throws IllegalArgumentException if the schema is not valid
+     */
+    public static UnitySchema compile(String schema) {
+        Unity.ParseResult result = Unity.parse(schema);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException("Invalid schema document: " + result.getErrors().get(0));
+        }
+        return new Compiler().compile(result.getParseTree().unityElement());
+    }
+
+    /**
+     * Parses a document and validates it with the built-in rules and this schema.
+     *
+     * @param input the Unity document as a string
+     * @return the parse result containing validation errors (if any)
+     */
+    public Unity.ParseResult validate(String input) {
+        return Unity.parse(input, UnityRuleSet.defaults().with(this));
+    }
+
+    // =========================================================================
+    // Validation
+    // =========================================================================
+
+    /**
+     * Per-document state: one frame per open element.
+     */
+    private static final class State {
+        ElementDeclaration[] declarations = new ElementDeclaration[16];
+        // Current particle of each open element's content model, and its occurrences so far
+        int[] particles = new int[16];
+        int[] counts = new int[16];
+        long[] seenRequired = new long[16];
+        // Position of each open element's name, for errors found when it closes
+        Object[] namePositions = new Object[16];
+        boolean[] attributesChecked = new boolean[16];
+        int depth = 0;
+
+        void push(ElementDeclaration declaration, Object namePosition) {
+            if (depth == declarations.length) {
+                int capacity = depth * 2;
+                declarations = Arrays.copyOf(declarations, capacity);
+                particles = Arrays.copyOf(particles, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                seenRequired = Arrays.copyOf(seenRequired, capacity);
+                namePositions = Arrays.copyOf(namePositions, capacity);
+                attributesChecked = Arrays.copyOf(attributesChecked, capacity);
+            }
+            declarations[depth] = declaration;
+            particles[depth] = 0;
+            counts[depth] = 0;
+            seenRequired[depth] = 0;
+            namePositions[depth] = namePosition;
+            attributesChecked[depth] = false;
+            depth++;
+        }
+    }
+
+    @Override
+    public void enterElement(String name, UnityRuleContext context) {
+        State state = (State) context.getState();
+        if (state == null) {
+            state = new State();
+            context.setState(state);
+        }
+
+        ElementDeclaration declaration = null;
+        if (state.depth == 0) {
+            if (!name.equals(rootName)) {
+                context.report("Root element must be '" + rootName + "' (found '" + name + "')");
+            } else {
+                declaration = elements.get(name);
+            }
+        } else {
+            int top = state.depth - 1;
+            ElementDeclaration parent = state.declarations[top];
+            if (parent != null) {
+                if (parent.anyChildren) {
+                    declaration = elements.get(name);
+                } else {
+                    int particle = state.particles[top];
+                    int next = parent.transition(particle, state.counts[top], name);
+                    if (next < 0) {
+                        context.report("Element '" + name + "' is not allowed here in '" + parent.name + "'");
+                    } else {
+                        state.counts[top] = next == particle ? state.counts[top] + 1 : 1;
+                        state.particles[top] = next;
+                        declaration = elements.get(name);
+                    }
+                }
+            }
+        }
+        state.push(declaration, context.getPosition());
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+        State state = (State) context.getState();
+        int top = state.depth - 1;
+        ElementDeclaration element = state.declarations[top];
+        if (element == null) {
+            return;
+        }
+        AttributeDeclaration attribute = element.attributes.get(name);
+        if (attribute == null) {
+            context.report("Attribute '" + name + "' is not declared for '" + element.name + "'");
+            return;
+        }
+        if (!attribute.type.accepts(type, rawValue)) {
+            context.report("Attribute '" + name + "' must be of type "
+                    + attribute.type.name().toLowerCase());
+        }
+        if (attribute.requiredBit >= 0) {
+            state.seenRequired[top] |= 1L << attribute.requiredBit;
+        }
+    }
+
+    @Override
+    public void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+        State state = (State) context.getState();
+        int top = state.depth - 1;
+        ElementDeclaration element = state.declarations[top];
+        if (element == null) {
+            return;
+        }
+        if (index == 1) {
+            // Attributes can only come first, so after the first item all are known
+            checkRequiredAttributes(state, context);
+        }
+        if (type != null && !element.text) {
+            context.report("Text is not allowed in '" + element.name + "'");
+        }
+    }
+
+    @Override
+    public void exitElement(UnityRuleContext context) {
+        State state = (State) context.getState();
+        int top = state.depth - 1;
+        ElementDeclaration element = state.declarations[top];
+        if (element != null) {
+            checkRequiredAttributes(state, context);
+            String missing = element.missing(state.particles[top], state.counts[top]);
+            if (missing != null) {
+                context.report(state.namePositions[top], "Element '" + element.name
+                        + "' is missing " + missing);
+            }
+        }
+        state.declarations[top] = null;
+        state.namePositions[top] = null;
+        state.depth--;
+    }
+
+    private static void checkRequiredAttributes(State state, UnityRuleContext context) {
+        int top = state.depth - 1;
+        if (state.attributesChecked[top]) {
+            return;
+        }
+        state.attributesChecked[top] = true;
+        ElementDeclaration element = state.declarations[top];
+        long missing = element.requiredMask & ~state.seenRequired[top];
+        while (missing != 0) {
+            int bit = Long.numberOfTrailingZeros(missing);
+            context.report(state.namePositions[top], "Element '" + element.name
+                    + "' is missing required attribute '" + element.requiredNames[bit] + "'");
+            missing &= missing - 1;
+        }
+    }
+
+    // =========================================================================
+    // Compiled Declarations
+    // =========================================================================
+
+    /**
+     * An element's attribute table and content model.
+     */
+    private static final class ElementDeclaration {
+        final String name;
+        final boolean text;
+        final boolean anyChildren;
+        final Map<String, AttributeDeclaration> attributes;
+        final long requiredMask;
+        final String[] requiredNames;
+        // Child name -> column of the reach table
+        final Map<String, Integer> childColumns;
+        // [particle][column] -> the earliest particle from this one that takes the child, past
+        // optional particles only, or -1; the last row is the end of the content model
+        final int[][] reach;
+        final int[] min;
+        final int[] max;
+        // Per particle, the earliest required particle from it, described for error messages,
+        // or null; the last entry is the end of the content model
+        final String[] requiredFrom;
+
+        ElementDeclaration(String name, boolean text, boolean anyChildren, Map<String, AttributeDeclaration> attributes,
+                           String[] requiredNames, Map<String, Integer> childColumns, int[][] reach, int[] min,
+                           int[] max, String[] requiredFrom) {
+            this.name = name;
+            this.text = text;
+            this.anyChildren = anyChildren;
+            this.attributes = attributes;
+            this.requiredNames = requiredNames;
+            this.requiredMask = requiredNames.length == 64 ? -1L : (1L << requiredNames.length) - 1;
+            this.childColumns = childColumns;
+            this.reach = reach;
+            this.min = min;
+            this.max = max;
+            this.requiredFrom = requiredFrom;
+        }
+
+        /**
+         * Returns the particle that takes a child, after the given particle has matched count
+         * times, or -1 if the child is not allowed. If that is the same particle, the child is
+         * one more occurrence of it; otherwise the first of the particle returned.
+         */
+        int transition(int particle, int count, String child) {
+            Integer column = childColumns.get(child);
+            if (column == null || particle == min.length) {
+                return -1;
+            }
+            if (reach[particle][column] == particle && count < max[particle]) {
+                return particle;
+            }
+            if (count < min[particle]) {
+                return -1;
+            }
+            return reach[particle + 1][column];
+        }
+
+        /**
+         * Returns what is still required after the given particle has matched count times,
+         * or null if the content is complete.
+         */
+        String missing(int particle, int count) {
+            if (anyChildren || particle == min.length) {
+                return null;
+            }
+            return count < min[particle] ? requiredFrom[particle] : requiredFrom[particle + 1];
+        }
+    }
+
+    /**
+     * A declared attribute.
+     */
+    private static final class AttributeDeclaration {
+        final Type type;
+        // Bit in the element's required mask, or -1 if optional
+        final int requiredBit;
+
+        AttributeDeclaration(Type type, int requiredBit) {
+            this.type = type;
+            this.requiredBit = requiredBit;
+        }
+    }
+
+    /**
+     * One item of a content model: a set of names occurring min to max times.
+     */
+    private static final class Particle {
+        final Set<String> names;
+        final int min;
+        final int max;
+
+        Particle(Set<String> names, int min, int max) {
+            this.names = names;
+            this.min = min;
+            this.max = max;
+        }
+
+        String describe() {
+            return names.size() == 1 ? "'" + names.iterator().next() + "'" : "one of " + names;
+        }
+    }
+
+    // =========================================================================
+    // Compiler
+    // =========================================================================
+
+    /**
+     * Reads a schema document into declarations.
+     */
+    private static final class Compiler {
+        private final Map<String, ElementDeclaration> elements = new HashMap<>();
+        private final Set<String> referenced = new LinkedHashSet<>();
+
+        UnitySchema compile(UnityParser.UnityElementContext schema) {
+            if (!nameOf(schema).equals("schema")) {
+                throw new IllegalArgumentException("Schema root element must be 'schema'");
+            }
+            String root = required(attributesOf(schema), "root", schema);
+            for (UnityParser.UnityElementContext declaration : childrenOf(schema)) {
+                if (!nameOf(declaration).equals("element")) {
+                    throw error(declaration, "expected 'element'");
+                }
+                ElementDeclaration element = element(declaration);
+                if (elements.put(element.name, element) != null) {
+                    throw error(declaration, "element '" + element.name + "' is declared twice");
+                }
+            }
+            referenced.add(root);
+            for (String name : referenced) {
+                if (!elements.containsKey(name)) {
+                    throw new IllegalArgumentException("Invalid schema: element '" + name + "' is not declared");
+                }
+            }
+            return new UnitySchema(root, Map.copyOf(elements));
+        }
+
+        private ElementDeclaration element(UnityParser.UnityElementContext declaration) {
+            Map<String, String> properties = attributesOf(declaration);
+            String name = required(properties, "name", declaration);
+            boolean text = Boolean.parseBoolean(properties.getOrDefault("text", "false"));
+            boolean anyChildren = "any".equals(properties.get("children"));
+
+            Map<String, AttributeDeclaration> attributes = new HashMap<>();
+            List<String> requiredNames = new ArrayList<>();
+            List<Particle> particles = new ArrayList<>();
+            for (UnityParser.UnityElementContext item : childrenOf(declaration)) {
+                Map<String, String> itemProperties = attributesOf(item);
+                switch (nameOf(item)) {
+                    case "attribute": {
+                        String attribute = required(itemProperties, "name", item);
+                        Type type = type(itemProperties.getOrDefault("type", "any"), item);
+                        int bit = -1;
+                        if (Boolean.parseBoolean(itemProperties.getOrDefault("required", "false"))) {
+                            if (requiredNames.size() == 64) {
+                                throw error(item, "more than 64 required attributes");
+                            }
+                            bit = requiredNames.size();
+                            requiredNames.add(attribute);
+                        }
+                        if (attributes.put(attribute, new AttributeDeclaration(type, bit)) != null) {
+                            throw error(item, "attribute '" + attribute + "' is declared twice");
+                        }
+                        break;
+                    }
+                    case "child": {
+                        Set<String> names = Set.of(required(itemProperties, "name", item));
+                        particles.add(particle(names, itemProperties, item));
+                        break;
+                    }
+                    case "choice": {
+                        Set<String> names = new LinkedHashSet<>();
+                        for (UnityParser.UnityElementContext option : childrenOf(item)) {
+                            if (!nameOf(option).equals("child")) {
+                                throw error(option, "expected 'child' in 'choice'");
+                            }
+                            names.add(required(attributesOf(option), "name", option));
+                        }
+                        if (names.isEmpty()) {
+                            throw error(item, "empty 'choice'");
+                        }
+                        particles.add(particle(names, itemProperties, item));
+                        break;
+                    }
+                    default:
+                        throw error(item, "unexpected '" + nameOf(item) + "'");
+                }
+            }
+            if (anyChildren && !particles.isEmpty()) {
+                throw error(declaration, "element '" + name + "' has a content model and allows any children");
+            }
+            for (Particle particle : particles) {
+                referenced.addAll(particle.names);
+            }
+            return contentModel(name, text, anyChildren, attributes, requiredNames.toArray(new String[0]), particles);
+        }
+
+        private Particle particle(Set<String> names, Map<String, String> properties,
+                                  UnityParser.UnityElementContext item) {
+            int min = count(properties.getOrDefault("min", "1"), item);
+            String maxText = properties.getOrDefault("max", "1");
+            int max = maxText.equals("unbounded") ? Integer.MAX_VALUE : count(maxText, item);
+            if (max < min || max == 0) {
+                throw error(item, "max must be at least 1 and at least min");
+            }
+            return new Particle(names, min, max);
+        }
+
+        /**
+         * Builds the content model of a particle sequence. A child is taken by the current
+         * particle while it is below its max, or else by the earliest later particle naming it,
+         * provided the current particle has reached its min and all in between are optional.
+         */
+        private static ElementDeclaration contentModel(String name, boolean text, boolean anyChildren,
+                                                       Map<String, AttributeDeclaration> attributes,
+                                                       String[] requiredNames, List<Particle> particles) {
+            int n = particles.size();
+            Map<String, Integer> columns = new HashMap<>();
+            for (Particle particle : particles) {
+                for (String child : particle.names) {
+                    columns.putIfAbsent(child, columns.size());
+                }
+            }
+
+            int[][] reach = new int[n + 1][columns.size()];
+            int[] min = new int[n];
+            int[] max = new int[n];
+            String[] requiredFrom = new String[n + 1];
+            Arrays.fill(reach[n], -1);
+            for (int i = n - 1; i >= 0; i--) {
+                Particle particle = particles.get(i);
+                min[i] = particle.min;
+                max[i] = particle.max;
+                requiredFrom[i] = particle.min > 0 ? "required child " + particle.describe() : requiredFrom[i + 1];
+                for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                    int c = column.getValue();
+                    reach[i][c] = particle.names.contains(column.getKey()) ? i
+                            : particle.min == 0 ? reach[i + 1][c] : -1;
+                }
+            }
+            return new ElementDeclaration(name, text, anyChildren, Map.copyOf(attributes), requiredNames,
+                    Map.copyOf(columns), reach, min, max, requiredFrom);
+        }
+
+        private static Type type(String name, UnityParser.UnityElementContext item) {
+            try {
+                return Type.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw error(item, "unknown type '" + name + "'");
+            }
+        }
+
+        private static int count(String text, UnityParser.UnityElementContext item) {
+            try {
+                int count = Integer.parseInt(text);
+                if (count >= 0) {
+                    return count;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw error(item, "invalid count '" + text + "'");
+        }
+
+        private static String required(Map<String, String> properties, String key,
+                                       UnityParser.UnityElementContext item) {
+            String value = properties.get(key);
+            if (value == null) {
+                throw error(item, "'" + nameOf(item) + "' needs a '" + key + "' attribute");
+            }
+            return value;
+        }
+
+        private static String nameOf(UnityParser.UnityElementContext element) {
+            return UnityStrings.unquote(element.elementName().getText());
+        }
+
+        private static Map<String, String> attributesOf(UnityParser.UnityElementContext element) {
+            Map<String, String> properties = new HashMap<>();
+            for (UnityParser.ElementContentContext content : element.elementContent()) {
+                if (content.attributesObject() != null) {
+                    for (UnityParser.AttributePairContext pair : content.attributesObject().attributePair()) {
+                        UnityParser.AttributeValueContext value = pair.attributeValue();
+                        properties.put(UnityStrings.unquote(pair.STRING().getText()),
+                                value.STRING() != null ? UnityStrings.unquote(value.getText()) : value.getText());
+                    }
+                }
+            }
+            return properties;
+        }
+
+        private static List<UnityParser.UnityElementContext> childrenOf(UnityParser.UnityElementContext element) {
+            List<UnityParser.UnityElementContext> children = new ArrayList<>();
+            for (UnityParser.ElementContentContext content : element.elementContent()) {
+                if (content.unityElement() != null) {
+                    children.add(content.unityElement());
+                }
+            }
+            return children;
+        }
+
+        private static IllegalArgumentException error(UnityParser.UnityElementContext item, String message) {
+            Token start = item.getStart();
+            return new IllegalArgumentException("Invalid schema at line " + start.getLine() + ":"
+                    + start.getCharPositionInLine() + ": " + message);
+        }
+    }
+}
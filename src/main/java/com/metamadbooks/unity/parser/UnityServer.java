@@ -0,0 +1,290 @@
+package com.metamadbooks.unity.parser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.antlr.v4.runtime.Token;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embeddable HTTP service that validates Unity documents, for clients outside the JVM.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * try (UnityServer server = UnityServer.start(new InetSocketAddress("localhost", 8080))) {
+ *     ...
+ * }
+ * }</pre>
+ * or from the command line, {@code java com.metamadbooks.unity.parser.UnityServer [port]}.
+ * <p>
+ * {@code POST /validate} takes a UTF-8 Unity document as the request body and answers
+ * {@code 200} with the result of {@link Unity#parse(ByteBuffer)}:
+ * <pre>
+ * {"valid":false,"errors":[{"line":1,"column":1,"path":"/1bad","message":"..."}]}
+ * </pre>
+ * with the errors as in {@link ValidationError#toJson()}. Bodies are read as a stream,
+ * fixed-length or chunked, and refused as soon as they exceed the size limit
+ * ({@code 413}), so that no request can exhaust the heap. Before a body is parsed, its
+ * tokens are counted with the lexer that parses it, and it is refused ({@code 400}) if
+ * they nest brackets and braces deeper than the depth limit, so that the recursive
+ * parser cannot exhaust a thread stack. Refusals answer {@code {"error":"..."}} with the
+ * reason; unexpected failures, a stack overflow included, answer {@code 500} with a
+ * generic message and are logged through {@link System.Logger}.
+ * <p>
+ * Every request runs on its own virtual thread. Parsing does not block, so at most one
+ * document is parsed per carrier thread at a time; parser sessions are pooled, one per
+ * carrier thread, and reused across requests instead of being bound to the short-lived
+ * virtual threads.
+ */
+public final class UnityServer implements AutoCloseable {
+
+    /**
+     * Default request body size limit, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 1 << 20;
+
+    /**
+     * Default limit on the nesting of brackets and braces.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 256;
+
+    static final String PATH = "/validate";
+
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private static final System.Logger LOG = System.getLogger(UnityServer.class.getName());
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long maxBytes;
+    private final int maxDepth;
+    private final BlockingQueue<UnitySession> sessions =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private UnityServer(HttpServer server, long maxBytes, int maxDepth) {
+        this.server = server;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * Starts a server with the default limits.
+     *
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server
+     * @throws IOException if the server cannot listen on the address
+     */
+    public static UnityServer start(InetSocketAddress address) throws IOException {
+        return start(address, DEFAULT_MAX_BYTES, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param address  the address to listen on; port 0 picks a free port
+     * @param maxBytes the largest request body accepted, in bytes
+     * @param maxDepth the deepest nesting of brackets and braces accepted
+     * @return the running server
+     * @throws IOException if the server cannot listen on the address
+     */
+    public static UnityServer start(InetSocketAddress address, long maxBytes, int maxDepth) throws IOException {
+        return start(address, maxBytes, maxDepth, false);
+    }
+
+    /**
+     * Starts a server, optionally with Nagle's algorithm turned off.
+     * <p>
+     * Responses are written as headers then body, and with Nagle's algorithm on the body
+     * can wait for the client's delayed ACK, adding 40 ms or more to every request. The
+     * JDK server only turns it off through the JVM-wide {@code sun.net.httpserver.nodelay}
+     * system property, which it reads when the first server of the JVM is created. With
+     * {@code noDelay}, the property is set to {@code true} unless it is already set; it
+     * then has no effect if another server was created before.
+     *
+     * @param address  the address to listen on; port 0 picks a free port
+     * @param maxBytes the largest request body accepted, in bytes
+     * @param maxDepth the deepest nesting of brackets and braces accepted
+     * @param noDelay  whether to set {@code sun.net.httpserver.nodelay}
+     * @return the running server
+     * @throws IOException if the server cannot listen on the address
+     */
+    public static UnityServer start(InetSocketAddress address, long maxBytes, int maxDepth, boolean noDelay)
+            throws IOException {
+        if (maxBytes < 1 || maxBytes > Integer.MAX_VALUE - 8 || maxDepth < 1) {
+            throw new IllegalArgumentException("Invalid limits: " + maxBytes + " bytes, depth " + maxDepth);
+        }
+        if (noDelay && System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        return new UnityServer(HttpServer.create(address, 0), maxBytes, maxDepth);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        UnityServer server = start(new InetSocketAddress(port), DEFAULT_MAX_BYTES, DEFAULT_MAX_DEPTH, true);
+        System.err.println("Validating Unity documents at http://localhost:" + server.getAddress().getPort() + PATH);
+    }
+
+    /**
+     * Returns the address the server listens on.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the server, without waiting for requests in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            handleRequest(exchange);
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, error("Only POST is supported"));
+                return;
+            }
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && parseLength(length) > maxBytes) {
+                respond(exchange, 413, error("Request body is larger than " + maxBytes + " bytes"));
+                return;
+            }
+            Body body = new Body();
+            if (!body.read(exchange.getRequestBody(), maxBytes)) {
+                respond(exchange, 413, error("Request body is larger than " + maxBytes + " bytes"));
+                return;
+            }
+            ByteBuffer input = ByteBuffer.wrap(body.bytes, 0, body.size);
+            if (nestedDeeperThan(input, maxDepth)) {
+                respond(exchange, 400, error("Document is nested deeper than " + maxDepth));
+                return;
+            }
+            respond(exchange, 200, result(validate(input)));
+        } catch (RuntimeException | StackOverflowError e) {
+            // The details stay in the log, not in the answer to the client
+            LOG.log(System.Logger.Level.ERROR, "Failed to validate a request from " + exchange.getRemoteAddress(), e);
+            respond(exchange, 500, error("Internal server error"));
+        }
+    }
+
+    private List<ValidationError> validate(ByteBuffer input) {
+        UnitySession session = sessions.poll();
+        if (session == null) {
+            session = new UnitySession();
+        }
+        try {
+            return session.parse(input).getErrors();
+        } finally {
+            sessions.offer(session);
+        }
+    }
+
+    /**
+     * Returns true if the tokens of a document, as the parser will see them, nest
+     * brackets and braces deeper than a limit. Tokens are counted rather than bytes so
+     * that strings, and what the lexer makes of malformed ones, count as they are parsed.
+     */
+    static boolean nestedDeeperThan(ByteBuffer input, int maxDepth) {
+        UnityByteLexer lexer = new UnityByteLexer(input);
+        int depth = 0;
+        for (int type = lexer.nextToken().getType(); type != Token.EOF; type = lexer.nextToken().getType()) {
+            if (type == UnityParser.T__0 || type == UnityParser.T__3) {
+                if (++depth > maxDepth) {
+                    return true;
+                }
+            } else if ((type == UnityParser.T__2 || type == UnityParser.T__4) && depth > 0) {
+                // Unmatched closers do not make room for deeper nesting
+                depth--;
+            }
+        }
+        return false;
+    }
+
+    private static long parseLength(String length) {
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String result(List<ValidationError> errors) {
+        StringBuilder sb = new StringBuilder("{\"valid\":").append(errors.isEmpty()).append(",\"errors\":[");
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('{');
+            errors.get(i).appendJsonFields(sb);
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + UnityStrings.quote(message) + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A request body read into memory.
+     */
+    static final class Body {
+        byte[] bytes = new byte[8192];
+        int size;
+
+        /**
+         * Reads the body, stopping early at the size limit.
+         *
+         * @return false if the body is larger than the limit
+         */
+        boolean read(InputStream in, long maxBytes) throws IOException {
+            while (true) {
+                if (size == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min((long) bytes.length * 2, maxBytes + 1));
+                }
+                int n = in.read(bytes, size, bytes.length - size);
+                if (n < 0) {
+                    return true;
+                }
+                size += n;
+                if (size > maxBytes) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A lexer, token stream and parser reused across many small documents.
+ * <p>
+ * Produces the same results as {@link Unity#parse(String)}, without allocating a new
+ * lexer, parser and their interpreters for every document. A session is not thread-safe;
+ * use one per thread.
+ */
+final class UnitySession {
+
+    private final UnityLexer lexer;
+    private final CommonTokenStream tokens;
+    private final UnityParser parser;
+
+    UnitySession() {
+        lexer = new UnityLexer(CharStreams.fromString(""));
+        tokens = new CommonTokenStream(lexer);
+        parser = new UnityParser(tokens);
+        lexer.removeErrorListeners();
+        parser.removeErrorListeners();
+    }
+
+    /**
+     * Parses and validates one document.
+     *
+     * @param input the Unity document as a string
+     * @return the parse result containing validation errors (if any)
+     */
+    Unity.ParseResult parse(String input) {
+        return parse(CharStreams.fromString(input));
+    }
+
+    /**
+     * Parses and validates one document.
+     *
+     * @param input the Unity document as a character stream
+     * @return the parse result containing validation errors (if any)
+     */
+    Unity.ParseResult parse(CharStream input) {
+        lexer.setInputStream(input);
+        try {
+            return parse(lexer, lexer::addErrorListener);
+        } finally {
+            lexer.removeErrorListeners();
+        }
+    }
+
+    /**
+     * Parses and validates one UTF-8 encoded document, lexed as by
+     * {@link Unity#parse(ByteBuffer)}. Only the parser is reused.
+     *
+     * @param input the Unity document as UTF-8 bytes, from the buffer's position to its limit
+     * @return the parse result containing validation errors (if any)
+     */
+    Unity.ParseResult parse(ByteBuffer input) {
+        UnityByteLexer byteLexer = new UnityByteLexer(input);
+        return parse(byteLexer, byteLexer::addErrorListener);
+    }
+
+    private Unity.ParseResult parse(TokenSource source, Consumer<ANTLRErrorListener> sourceListeners) {
+        List<ValidationError> errors = new ArrayList<>();
+
+        UnityValidationListener validationListener = new UnityValidationListener();
+        Unity.SyntaxErrorListener syntaxErrorListener = new Unity.SyntaxErrorListener(validationListener);
+        sourceListeners.accept(syntaxErrorListener);
+        parser.addErrorListener(syntaxErrorListener);
+        parser.addParseListener(validationListener);
+        try {
+            tokens.setTokenSource(source);
+            parser.setTokenStream(tokens);
+
+            UnityParser.UnityContext tree = parser.unity();
+            errors.addAll(syntaxErrorListener.getErrors());
+            if (syntaxErrorListener.getErrors().isEmpty()) {
+                errors.addAll(validationListener.getErrors());
+            }
+            return new Unity.ParseResult(tree, errors);
+        } finally {
+            parser.removeErrorListeners();
+            parser.removeParseListeners();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Helpers for JSON string tokens shared by the listeners and parsers.
+ */
+final class UnityStrings {
+
+    private UnityStrings() {
+    }
+
+    /**
+     * Removes surrounding quotes from a JSON string token and processes escape sequences.
+     * Accepts token text views such as {@link UnityToken#getTextSequence()}, copying only
+     * the characters between the quotes.
+     */
+    static String unquote(CharSequence quoted) {
+        if (quoted == null || quoted.length() < 2) {
+            return quoted == null ? null : quoted.toString();
+        }
+        // Remove surrounding quotes
+        String unquoted = quoted.subSequence(1, quoted.length() - 1).toString();
+        // Handle escape sequences
+        return unescape(unquoted);
+    }
+
+    /**
+     * Processes JSON escape sequences in a string.
+     */
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(i + 1);
+                switch (next) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(next);
+                        i += 2;
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        i += 2;
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        i += 2;
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        i += 2;
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        i += 2;
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        i += 2;
+                        break;
+                    case 'u':
+                        if (i + 5 < s.length()) {
+                            String hex = s.substring(i + 2, i + 6);
+                            try {
+                                int codePoint = Integer.parseInt(hex, 16);
+                                sb.append((char) codePoint);
+                                i += 6;
+                            } catch (NumberFormatException e) {
+                                sb.append(c);
+                                i++;
+                            }
+                        } else {
+                            sb.append(c);
+                            i++;
+                        }
+                        break;
+                    default:
+                        sb.append(c);
+                        i++;
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encodes a string as a JSON string token, escaping quotes, backslashes and control
+     * characters.
+     */
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        appendQuoted(sb, s);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a string as a JSON string token.
+     */
+    static void appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
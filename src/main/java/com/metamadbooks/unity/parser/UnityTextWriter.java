@@ -0,0 +1,106 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.Arrays;
+
+/**
+ * Writes the events it receives as compact Unity text.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityTextWriter writer = new UnityTextWriter();
+ * new UnityBinaryReader(binary).accept(writer);
+ * String text = writer.toString();
+ * }</pre>
+ * Strings are escaped as needed, numbers are written as received, and no whitespace is
+ * added. Attributes of an element are collected into one attributes object.
+ */
+public class UnityTextWriter implements UnityEventHandler {
+
+    private final StringBuilder output;
+
+    // Per open element: whether an attributes object is open
+    private boolean[] inAttributes = new boolean[16];
+    private int depth = 0;
+
+    /**
+     * Creates a writer with its own buffer.
+     */
+    public UnityTextWriter() {
+        this(new StringBuilder());
+    }
+
+    /**
+     * Creates a writer that appends to the given buffer.
+     *
+     * @param output the buffer to append to
+     */
+    public UnityTextWriter(StringBuilder output) {
+        this.output = output;
+    }
+
+    @Override
+    public void startElement(String name) {
+        if (depth > 0) {
+            closeAttributes();
+            output.append(',');
+        }
+        output.append('[');
+        UnityStrings.appendQuoted(output, name);
+        if (depth == inAttributes.length) {
+            inAttributes = Arrays.copyOf(inAttributes, depth * 2);
+        }
+        inAttributes[depth++] = false;
+    }
+
+    @Override
+    public void endElement() {
+        closeAttributes();
+        output.append(']');
+        depth--;
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, String value) {
+        if (inAttributes[depth - 1]) {
+            output.append(',');
+        } else {
+            output.append(",{");
+            inAttributes[depth - 1] = true;
+        }
+        UnityStrings.appendQuoted(output, name);
+        output.append(':');
+        appendValue(type, value);
+    }
+
+    @Override
+    public void value(UnityValueType type, String value) {
+        closeAttributes();
+        output.append(',');
+        appendValue(type, value);
+    }
+
+    /**
+     * Returns the text written so far.
+     */
+    @Override
+    public String toString() {
+        return output.toString();
+    }
+
+    private void closeAttributes() {
+        if (depth > 0 && inAttributes[depth - 1]) {
+            output.append('}');
+            inAttributes[depth - 1] = false;
+        }
+    }
+
+    private void appendValue(UnityValueType type, String value) {
+        if (type == UnityValueType.STRING) {
+            UnityStrings.appendQuoted(output, value);
+        } else if (type == UnityValueType.NULL) {
+            output.append("null");
+        } else {
+            output.append(value);
+        }
+    }
+}
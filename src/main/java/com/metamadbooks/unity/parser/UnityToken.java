@@ -0,0 +1,126 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.nio.CharBuffer;
+
+/**
+ * A lean token created by {@link UnityTokenFactory}: it holds only its type, its range
+ * in the input and its index, and reads everything else from the input when asked.
+ * <p>
+ * {@link #getTextSequence()} gives the token's text as a view of the input without
+ * copying it, and {@link #textOf(Token)} does the same for any token, so listeners can
+ * inspect token text, e.g. the digits of a number, without creating Strings.
+ * {@link #getText()} still returns a new String on each call. Line and column are worked
+ * out from the line starts the stream recorded while lexing.
+ * <p>
+ * Lean tokens are immutable. They are numbered as they are created, which is the order
+ * token streams fetch them in, so they do not need a writable index.
+ */
+public final class UnityToken implements Token {
+
+    private final UnityCharSequenceStream stream;
+    private final int type;
+    private final int start;
+    private final int stop;
+    private final int index;
+
+    UnityToken(UnityCharSequenceStream stream, int type, int start, int stop, int index) {
+        this.stream = stream;
+        this.type = type;
+        this.start = start;
+        this.stop = stop;
+        this.index = index;
+    }
+
+    /**
+     * Returns a token's text as a character sequence, a view of the input for
+     * {@link UnityToken}s and the token's text otherwise.
+     *
+     * @param token any token
+     * @return the token's text
+     */
+    public static CharSequence textOf(Token token) {
+        if (token instanceof UnityToken) {
+            return ((UnityToken) token).getTextSequence();
+        }
+        return token.getText();
+    }
+
+    /**
+     * Returns the token's text as a read-only view of the input.
+     */
+    public CharSequence getTextSequence() {
+        if (type == EOF) {
+            return "<EOF>";
+        }
+        return CharBuffer.wrap(stream.getData(), start, stop + 1);
+    }
+
+    @Override
+    public String getText() {
+        if (type == EOF) {
+            return "<EOF>";
+        }
+        return stream.getData().subSequence(start, stop + 1).toString();
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public int getLine() {
+        return stream.lineOf(start);
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return stream.columnOf(start);
+    }
+
+    @Override
+    public int getChannel() {
+        return DEFAULT_CHANNEL;
+    }
+
+    @Override
+    public int getTokenIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the char index of the token's first character in the input.
+     */
+    @Override
+    public int getStartIndex() {
+        return start;
+    }
+
+    /**
+     * Returns the char index of the token's last character in the input.
+     */
+    @Override
+    public int getStopIndex() {
+        return stop;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return stream.getTokenSource();
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return stream;
+    }
+
+    @Override
+    public String toString() {
+        return "[@" + index + "," + start + ":" + stop + "='" + getText() + "',<" + type + ">," + getLine() + ":"
+                + getCharPositionInLine() + "]";
+    }
+}
@@ -0,0 +1,59 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Token factory that creates {@link UnityToken}s for lexers reading a
+ * {@link UnityCharSequenceStream}.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * UnityLexer lexer = UnityTokenFactory.lexer(input);
+ * }</pre>
+ * A lean token is a type, a range and an index, where a {@link org.antlr.v4.runtime.CommonToken}
+ * also carries its line, column, channel, source pair and, once read, its text. Tokens
+ * with explicit text, such as those conjured by error recovery, and tokens of other
+ * streams are created as CommonTokens. The factory has no state of its own and is
+ * shared.
+ */
+final class UnityTokenFactory implements TokenFactory<Token> {
+
+    static final UnityTokenFactory INSTANCE = new UnityTokenFactory();
+
+    private UnityTokenFactory() {
+    }
+
+    /**
+     * Returns a lexer over a character sequence, read in place, that creates lean tokens.
+     *
+     * @param input the Unity document
+     * @return the lexer, with its default error listeners
+     */
+    static UnityLexer lexer(CharSequence input) {
+        UnityLexer lexer = new UnityLexer(new UnityCharSequenceStream(input));
+        lexer.setTokenFactory(INSTANCE);
+        return lexer;
+    }
+
+    @Override
+    public Token create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                        int start, int stop, int line, int charPositionInLine) {
+        if (text != null || channel != Token.DEFAULT_CHANNEL || !(source.b instanceof UnityCharSequenceStream)) {
+            return CommonTokenFactory.DEFAULT.create(source, type, text, channel, start, stop, line,
+                    charPositionInLine);
+        }
+        UnityCharSequenceStream stream = (UnityCharSequenceStream) source.b;
+        stream.recordLine(source.a, line, start - charPositionInLine);
+        return new UnityToken(stream, type, start, stop, stream.nextTokenIndex());
+    }
+
+    @Override
+    public Token create(int type, String text) {
+        return CommonTokenFactory.DEFAULT.create(type, text);
+    }
+}
@@ -50,7 +50,7 @@ public class UnityTreePrinter extends UnityBaseListener {
 
     @Override
     public void exitElementName(UnityParser.ElementNameContext ctx) {
-        String name = unquoteString(ctx.STRING().getText());
+        String name = UnityStrings.unquote(ctx.STRING().getText());
         currentElementName = name;
         elementPath.push(name);
 
@@ -132,7 +132,7 @@ public class UnityTreePrinter extends UnityBaseListener {
 
     @Override
     public void exitAttributePair(UnityParser.AttributePairContext ctx) {
-        String attrName = unquoteString(ctx.STRING().getText());
+        String attrName = UnityStrings.unquote(ctx.STRING().getText());
         String attrValue = formatAttributeValue(ctx.attributeValue());
 
         switch (format) {
@@ -185,7 +185,7 @@ public class UnityTreePrinter extends UnityBaseListener {
      */
     private String formatAttributeValue(UnityParser.AttributeValueContext ctx) {
         if (ctx.STRING() != null) {
-            return "\"" + unquoteString(ctx.STRING().getText()) + "\"";
+            return "\"" + UnityStrings.unquote(ctx.STRING().getText()) + "\"";
         } else if (ctx.NUMBER() != null) {
             return ctx.NUMBER().getText();
         } else {
@@ -199,7 +199,7 @@ public class UnityTreePrinter extends UnityBaseListener {
      */
     private String formatPrimitiveValue(UnityParser.PrimitiveValueContext ctx) {
         if (ctx.STRING() != null) {
-            return "\"" + unquoteString(ctx.STRING().getText()) + "\"";
+            return "\"" + UnityStrings.unquote(ctx.STRING().getText()) + "\"";
         } else if (ctx.NUMBER() != null) {
             return ctx.NUMBER().getText();
         } else {
@@ -222,80 +222,4 @@ public class UnityTreePrinter extends UnityBaseListener {
         }
         return sb.toString();
     }
-
-    /**
-     * Removes surrounding quotes from a JSON string token.
-     */
-    private String unquoteString(String quoted) {
-        if (quoted == null || quoted.length() < 2) {
-            return quoted;
-        }
-        String unquoted = quoted.substring(1, quoted.length() - 1);
-        return unescapeString(unquoted);
-    }
-
-    /**
-     * Processes JSON escape sequences in a string.
-     */
-    private String unescapeString(String s) {
-        StringBuilder sb = new StringBuilder();
-        int i = 0;
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (c == '\\' && i + 1 < s.length()) {
-                char next = s.charAt(i + 1);
-                switch (next) {
-                    case '"':
-                    case '\\':
-                    case '/':
-                        sb.append(next);
-                        i += 2;
-                        break;
-                    case 'b':
-                        sb.append('\b');
-                        i += 2;
-                        break;
-                    case 'f':
-                        sb.append('\f');
-                        i += 2;
-                        break;
-                    case 'n':
-                        sb.append('\n');
-                        i += 2;
-                        break;
-                    case 'r':
-                        sb.append('\r');
-                        i += 2;
-                        break;
-                    case 't':
-                        sb.append('\t');
-                        i += 2;
-                        break;
-                    case 'u':
-                        if (i + 5 < s.length()) {
-                            String hex = s.substring(i + 2, i + 6);
-                            try {
-                                int codePoint = Integer.parseInt(hex, 16);
-                                sb.append((char) codePoint);
-                                i += 6;
-                            } catch (NumberFormatException e) {
-                                sb.append(c);
-                                i++;
-                            }
-                        } else {
-                            sb.append(c);
-                            i++;
-                        }
-                        break;
-                    default:
-                        sb.append(c);
-                        i++;
-                }
-            } else {
-                sb.append(c);
-                i++;
-            }
-        }
-        return sb.toString();
-    }
 }
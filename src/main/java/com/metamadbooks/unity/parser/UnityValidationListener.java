@@ -2,15 +2,19 @@ package com.metamadbooks.unity.parser;
 
 import org.antlr.v4.runtime.Token;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 
 /**
  * ANTLR listener that performs semantic validation on Unity documents.
  * <p>
- * Validates:
+ * Runs the rules of a {@link UnityRuleSet}, all of them in the one traversal, tracking
+ * the element path and content index they see through {@link UnityRuleContext}. The
+ * listener can walk a finished tree or be attached to the parser with
+ * {@link UnityParser#addParseListener}, as {@link Unity#parse(String, UnityRuleSet)} does,
+ * to validate while parsing.
+ * <p>
+ * The default rules validate:
  * <ul>
  *   <li>Element name at index 0 is a valid XML Name</li>
  *   <li>Attributes object (if present) only at index 1</li>
@@ -21,8 +25,37 @@ import java.util.List;
 public class UnityValidationListener extends UnityBaseListener {
 
     private final List<ValidationError> errors = new ArrayList<>();
-    private final Deque<String> elementPath = new ArrayDeque<>();
-    private int contentIndex = 0;
+    private final UnityRuleRunner runner;
+    private final TokenText rawValue = new TokenText();
+
+    /**
+     * Creates a listener for walking a complete document with the default rules.
+     */
+    public UnityValidationListener() {
+        this(UnityRuleSet.defaults());
+    }
+
+    /**
+     * Creates a listener for walking a complete document.
+     *
+     * @param ruleSet the rules to run
+     */
+    public UnityValidationListener(UnityRuleSet ruleSet) {
+        this.runner = new UnityRuleRunner(ruleSet, errors::add);
+    }
+
+    /**
+     * Creates a listener with the default rules for walking one
+     * {@link UnityParser.ElementContentContext} of an element whose other content is
+     * validated separately.
+     *
+     * @param enclosingPath names of the enclosing elements, outermost first
+     * @param contentIndex  index of the content item within its element
+     */
+    UnityValidationListener(List<String> enclosingPath, int contentIndex) {
+        this();
+        runner.enclose(enclosingPath, contentIndex);
+    }
 
     /**
      * Returns the list of validation errors found during parsing.
@@ -42,168 +75,108 @@ public class UnityValidationListener extends UnityBaseListener {
         return errors.isEmpty();
     }
 
+    /**
+     * Stops calling rules, for when a syntax error makes the rest of the tree unreliable.
+     */
+    void halt() {
+        runner.halt();
+    }
+
     @Override
     public void enterUnityElement(UnityParser.UnityElementContext ctx) {
-        // Reset content index for this element
-        contentIndex = 0;
+        runner.openElement(ctx.getStart());
     }
 
     @Override
     public void exitUnityElement(UnityParser.UnityElementContext ctx) {
-        // Pop element from path when exiting
-        if (!elementPath.isEmpty()) {
-            elementPath.pop();
-        }
+        runner.exitElement(ctx.getStop());
     }
 
     @Override
     public void exitElementName(UnityParser.ElementNameContext ctx) {
-        Token token = ctx.STRING().getSymbol();
-        String rawName = token.getText();
-        String name = unquoteString(rawName);
-
-        // Validate XML Name
-        if (!XmlNameValidator.isValidName(name)) {
-            errors.add(new ValidationError(
-                    token.getLine(),
-                    token.getCharPositionInLine(),
-                    "Invalid element name '" + name + "': must be a valid XML Name",
-                    getCurrentPath()
-            ));
+        if (ctx.STRING() == null) {
+            // Only after a syntax error, which has halted the rules
+            runner.enterElement("", null);
+            return;
         }
-
-        // Push element name onto path
-        elementPath.push(name);
+        Token token = ctx.STRING().getSymbol();
+        runner.enterElement(UnityStrings.unquote(UnityToken.textOf(token)), token);
     }
 
     @Override
     public void enterElementContent(UnityParser.ElementContentContext ctx) {
         // Increment content index (starts at 1 for first content item after element name)
-        contentIndex++;
+        runner.nextContent();
     }
 
     @Override
     public void exitElementContent(UnityParser.ElementContentContext ctx) {
-        // Check if this content is an attributes object at wrong position
-        if (ctx.attributesObject() != null && contentIndex > 1) {
-            Token token = ctx.getStart();
-            errors.add(new ValidationError(
-                    token.getLine(),
-                    token.getCharPositionInLine(),
-                    "Attributes object must be at index 1 (found at index " + contentIndex + ")",
-                    getCurrentPath()
-            ));
+        if (runner.isHalted()) {
+            return;
+        }
+        // Nested elements are ended by exitUnityElement
+        if (ctx.attributesObject() != null) {
+            runner.attributesObject(ctx.getStart());
+        } else if (ctx.primitiveValue() != null) {
+            Token token = ctx.primitiveValue().getStart();
+            runner.value(UnityValueType.of(token.getType()), rawValue.of(token), token);
         }
     }
 
     @Override
     public void exitAttributePair(UnityParser.AttributePairContext ctx) {
-        Token token = ctx.STRING().getSymbol();
-        String rawName = token.getText();
-        String name = unquoteString(rawName);
-
-        // Validate attribute name is a valid XML Name
-        if (!XmlNameValidator.isValidName(name)) {
-            errors.add(new ValidationError(
-                    token.getLine(),
-                    token.getCharPositionInLine(),
-                    "Invalid attribute name '" + name + "': must be a valid XML Name",
-                    getCurrentPath()
-            ));
+        if (runner.isHalted()) {
+            return;
         }
+        Token token = ctx.STRING().getSymbol();
+        String name = UnityStrings.unquote(UnityToken.textOf(token));
+        Token value = ctx.attributeValue().getStart();
+        runner.attribute(name, UnityValueType.of(value.getType()), rawValue.of(value), token);
     }
 
-    /**
-     * Removes surrounding quotes from a JSON string token.
-     */
-    private String unquoteString(String quoted) {
-        if (quoted == null || quoted.length() < 2) {
-            return quoted;
-        }
-        // Remove surrounding quotes
-        String unquoted = quoted.substring(1, quoted.length() - 1);
-        // Handle escape sequences
-        return unescapeString(unquoted);
+    @Override
+    public void exitUnity(UnityParser.UnityContext ctx) {
+        runner.finish();
     }
 
     /**
-     * Processes JSON escape sequences in a string.
+     * The text of a value token, read from the token only if a rule asks for it.
      */
-    private String unescapeString(String s) {
-        StringBuilder sb = new StringBuilder();
-        int i = 0;
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (c == '\\' && i + 1 < s.length()) {
-                char next = s.charAt(i + 1);
-                switch (next) {
-                    case '"':
-                    case '\\':
-                    case '/':
-                        sb.append(next);
-                        i += 2;
-                        break;
-                    case 'b':
-                        sb.append('\b');
-                        i += 2;
-                        break;
-                    case 'f':
-                        sb.append('\f');
-                        i += 2;
-                        break;
-                    case 'n':
-                        sb.append('\n');
-                        i += 2;
-                        break;
-                    case 'r':
-                        sb.append('\r');
-                        i += 2;
-                        break;
-                    case 't':
-                        sb.append('\t');
-                        i += 2;
-                        break;
-                    case 'u':
-                        if (i + 5 < s.length()) {
-                            String hex = s.substring(i + 2, i + 6);
-                            try {
-                                int codePoint = Integer.parseInt(hex, 16);
-                                sb.append((char) codePoint);
-                                i += 6;
-                            } catch (NumberFormatException e) {
-                                sb.append(c);
-                                i++;
-                            }
-                        } else {
-                            sb.append(c);
-                            i++;
-                        }
-                        break;
-                    default:
-                        sb.append(c);
-                        i++;
-                }
-            } else {
-                sb.append(c);
-                i++;
+    private static final class TokenText implements CharSequence {
+        private Token token;
+        private CharSequence text;
+
+        TokenText of(Token token) {
+            this.token = token;
+            this.text = null;
+            return this;
+        }
+
+        private CharSequence text() {
+            if (text == null) {
+                text = UnityToken.textOf(token);
             }
+            return text;
         }
-        return sb.toString();
-    }
 
-    /**
-     * Returns the current element path as a string.
-     */
-    private String getCurrentPath() {
-        if (elementPath.isEmpty()) {
-            return "/";
+        @Override
+        public int length() {
+            return text().length();
         }
-        StringBuilder sb = new StringBuilder();
-        // Convert deque to array and iterate in reverse (bottom to top)
-        Object[] pathArray = elementPath.toArray();
-        for (int i = pathArray.length - 1; i >= 0; i--) {
-            sb.append("/").append(pathArray[i]);
+
+        @Override
+        public char charAt(int index) {
+            return text().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text().toString();
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,48 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Types of primitive values in Unity content and attributes.
+ */
+public enum UnityValueType {
+    /**
+     * A JSON string.
+     */
+    STRING,
+
+    /**
+     * A JSON number.
+     */
+    NUMBER,
+
+    /**
+     * The literal true or false.
+     */
+    BOOLEAN,
+
+    /**
+     * The literal null.
+     */
+    NULL;
+
+    /**
+     * Returns the value type of a primitive token, or null if the token is not a primitive.
+     *
+     * @param tokenType a {@link UnityLexer} token type
+     * @return the value type, or null
+     */
+    static UnityValueType of(int tokenType) {
+        switch (tokenType) {
+            case UnityParser.STRING:
+                return STRING;
+            case UnityParser.NUMBER:
+                return NUMBER;
+            case UnityParser.T__6:
+            case UnityParser.T__7:
+                return BOOLEAN;
+            case UnityParser.T__8:
+                return NULL;
+            default:
+                return null;
+        }
+    }
+}
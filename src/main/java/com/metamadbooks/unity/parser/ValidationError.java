@@ -52,6 +52,32 @@ public class ValidationError {
         return path;
     }
 
+    /**
+     * Returns the error as a JSON object with the fields {@code line}, {@code column},
+     * {@code path} (null if there is none) and {@code message}.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        appendJsonFields(sb);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Appends the members of {@link #toJson()}, without the enclosing braces.
+     */
+    void appendJsonFields(StringBuilder sb) {
+        sb.append("\"line\":").append(line);
+        sb.append(",\"column\":").append(column);
+        sb.append(",\"path\":");
+        if (path != null) {
+            UnityStrings.appendQuoted(sb, path);
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"message\":");
+        UnityStrings.appendQuoted(sb, message);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,23 @@
+package com.metamadbooks.unity.parser;
+
+/**
+ * Built-in rule: element and attribute names must be valid XML Names.
+ *
+ * @see XmlNameValidator
+ */
+public final class XmlNameRule implements UnityRule {
+
+    @Override
+    public void enterElement(String name, UnityRuleContext context) {
+        if (!XmlNameValidator.isValidName(name)) {
+            context.report("Invalid element name '" + name + "': must be a valid XML Name");
+        }
+    }
+
+    @Override
+    public void attribute(String name, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+        if (!XmlNameValidator.isValidName(name)) {
+            context.report("Invalid attribute name '" + name + "': must be a valid XML Name");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for deep-document mode: {@link DeepUnityParser} and {@link IterativeParseTreeWalker}.
+ */
+class DeepUnityParserTest {
+
+    private static final int DEEP = 1_000_000;
+
+    /**
+     * Builds ["a",["a",...["a","leaf"]...]] nested to the given depth.
+     */
+    private static String nested(int depth, String leafName, boolean closed) {
+        StringBuilder sb = new StringBuilder(depth * 7 + 16);
+        for (int i = 1; i < depth; i++) {
+            sb.append("[\"a\",");
+        }
+        sb.append("[\"").append(leafName).append("\",\"leaf\"]");
+        if (closed) {
+            sb.append("]".repeat(depth - 1));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lists the invoking state of every rule context, in tree order.
+     */
+    static List<Integer> invokingStates(ParseTree tree) {
+        List<Integer> states = new ArrayList<>();
+        collectInvokingStates(tree, states);
+        return states;
+    }
+
+    private static void collectInvokingStates(ParseTree tree, List<Integer> states) {
+        if (tree instanceof ParserRuleContext context) {
+            states.add(context.invokingState);
+            for (int i = 0; i < context.getChildCount(); i++) {
+                collectInvokingStates(context.getChild(i), states);
+            }
+        }
+    }
+
+    // =========================================================================
+    // Equivalence with the recursive parser
+    // =========================================================================
+
+    @Test
+    @DisplayName("Deep mode matches Unity.parse on ordinary documents")
+    void testMatchesRecursiveParser() {
+        List<String> documents = List.of(
+                "[\"x\"]",
+                "[\"x\", {}]",
+                "[\"root\", {\"id\": \"1\", \"n\": 42, \"b\": true}, \"text\", [\"child\", null], 3.5]",
+                "[\"123bad\", {\"4attr\": \"v\"}]",
+                "[\"x\", \"text\", {\"a\": \"b\"}]",
+                "[\n  \"root\",\n  [\"child\", [\"grandchild\", false]]\n]");
+
+        for (String document : documents) {
+            Unity.ParseResult expected = Unity.parse(document);
+            Unity.ParseResult actual = Unity.parseDeep(document);
+
+            assertEquals(expected.getErrors().toString(), actual.getErrors().toString(), document);
+            assertEquals(expected.getParseTree().toStringTree(), actual.getParseTree().toStringTree(), document);
+            assertEquals(invokingStates(expected.getParseTree()), invokingStates(actual.getParseTree()), document);
+            for (PrintFormat format : PrintFormat.values()) {
+                assertEquals(Unity.print(expected, format), Unity.print(actual, format), document);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Deep mode reports syntax errors like the generated parser")
+    void testSyntaxErrors() {
+        ValidationError expected = Unity.parse("[\"x\" \"y\"]").getErrors().get(0);
+        ValidationError actual = Unity.parseDeep("[\"x\" \"y\"]").getErrors().get(0);
+        assertEquals(expected.getLine(), actual.getLine());
+        assertEquals(expected.getColumn(), actual.getColumn());
+        assertTrue(actual.getMessage().startsWith("Syntax error"));
+        assertEquals(Unity.parse("{}").getErrors().get(0).toString(),
+                Unity.parseDeep("{}").getErrors().get(0).toString());
+        assertFalse(Unity.parseDeep("[]").isValid());
+        assertFalse(Unity.parseDeep("[\"x\"] [\"y\"]").isValid());
+        assertFalse(Unity.parseDeep("[\"x\", {\"a\": [\"b\"]}]").isValid());
+    }
+
+    // =========================================================================
+    // Depth 1,000,000
+    // =========================================================================
+
+    @Test
+    @DisplayName("Valid document nested 1,000,000 levels deep")
+    void testMillionLevelsValid() {
+        Unity.ParseResult result = Unity.parseDeep(nested(DEEP, "a", true));
+        assertTrue(result.isValid(), () -> result.getErrors().toString());
+    }
+
+    @Test
+    @DisplayName("Semantic error at depth 1,000,000 carries line, column and path")
+    void testMillionLevelsSemanticError() {
+        Unity.ParseResult result = Unity.parseDeep(nested(DEEP, "9bad", true));
+        assertEquals(1, result.getErrors().size());
+
+        ValidationError error = result.getErrors().get(0);
+        assertTrue(error.getMessage().contains("Invalid element name '9bad'"));
+        assertEquals(1, error.getLine());
+        assertEquals((DEEP - 1) * 5 + 1, error.getColumn());
+        assertEquals((DEEP - 1) * 2, error.getPath().length());
+    }
+
+    @Test
+    @DisplayName("Unclosed document nested 1,000,000 levels deep")
+    void testMillionLevelsUnclosed() {
+        Unity.ParseResult result = Unity.parseDeep(nested(DEEP, "a", false));
+        assertFalse(result.isValid());
+        assertEquals("Syntax error: mismatched input '<EOF>' expecting {',', ']'}",
+                result.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    @DisplayName("Iterative walker visits every element of a 1,000,000 level tree")
+    void testMillionLevelsWalk() {
+        Unity.ParseResult result = Unity.parseDeep(nested(DEEP, "a", true));
+
+        int[] counts = new int[3];
+        IterativeParseTreeWalker.DEFAULT.walk(new UnityBaseListener() {
+            private int depth = 0;
+
+            @Override
+            public void enterUnityElement(UnityParser.UnityElementContext ctx) {
+                counts[0]++;
+                counts[1] = Math.max(counts[1], ++depth);
+            }
+
+            @Override
+            public void exitUnityElement(UnityParser.UnityElementContext ctx) {
+                depth--;
+            }
+
+            @Override
+            public void exitPrimitiveValue(UnityParser.PrimitiveValueContext ctx) {
+                counts[2]++;
+            }
+        }, result.getParseTree());
+
+        assertEquals(DEEP, counts[0]);
+        assertEquals(DEEP, counts[1]);
+        assertEquals(1, counts[2]);
+    }
+
+    @Test
+    @DisplayName("Tree printer works beyond the recursive walker's depth limit")
+    void testPrintDeepTree() {
+        int depth = 5_000;
+        Unity.ParseResult result = Unity.parseDeep(nested(depth, "z", true));
+        String output = Unity.print(result, PrintFormat.TREE);
+
+        String[] lines = output.split("\n");
+        assertEquals(depth + 1, lines.length);
+        assertEquals("Element(a)", lines[0]);
+        assertEquals("  ".repeat(depth - 1) + "Element(z)", lines[depth - 1]);
+        assertEquals("  ".repeat(depth) + "Content(\"leaf\")", lines[depth]);
+    }
+}
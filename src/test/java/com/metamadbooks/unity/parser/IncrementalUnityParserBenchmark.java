@@ -0,0 +1,82 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the latency of an edit with {@link IncrementalUnityParser} as documents grow,
+ * against a full {@link Unity#parse(String)} of the same document.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * MAVEN_OPTS=-Xmx2g mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.metamadbooks.unity.parser.IncrementalUnityParserBenchmark \
+ *     -Dexec.args="140000 1400000 15000000"
+ * </pre>
+ * The arguments are the document sizes in chars (default those above). Each edit inserts
+ * a content item into a random element, or removes it again, so that half the edits
+ * change the number of items of an element and all of them move the text after them.
+ */
+public class IncrementalUnityParserBenchmark {
+
+    private static final int WARMUP = 2_000;
+    private static final int EDITS = 10_000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{140_000, 1_400_000, 15_000_000};
+        for (int size : sizes) {
+            List<Integer> offsets = new ArrayList<>();
+            String document = document(size, offsets);
+
+            long start = System.nanoTime();
+            Unity.parse(document);
+            long full = System.nanoTime() - start;
+
+            IncrementalUnityParser parser = new IncrementalUnityParser(document);
+            Random random = new Random(1);
+            edit(parser, offsets, random, WARMUP);
+            start = System.nanoTime();
+            edit(parser, offsets, random, EDITS);
+            long perEdit = (System.nanoTime() - start) / EDITS;
+            System.out.printf("%,12d chars: %8.3f ms per edit   full parse %9.1f ms%n",
+                    document.length(), perEdit / 1e6, full / 1e6);
+        }
+    }
+
+    /**
+     * Inserts and removes an item after the attributes of random elements; each pair of edits
+     * leaves the text as it was, so the offsets stay valid.
+     */
+    private static void edit(IncrementalUnityParser parser, List<Integer> offsets, Random random, int count) {
+        for (int i = 0; i < count; i += 2) {
+            int offset = offsets.get(random.nextInt(offsets.size()));
+            check(parser.edit(offset, 0, ", 1"));
+            check(parser.edit(offset, 3, ""));
+        }
+    }
+
+    private static void check(Unity.ParseResult result) {
+        if (!result.isValid()) {
+            throw new IllegalStateException("Edited document is invalid: " + result.getErrors().get(0));
+        }
+    }
+
+    /**
+     * Builds a valid document of roughly the given size, recording the offset just after
+     * the attributes of each product.
+     */
+    private static String document(int size, List<Integer> offsets) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("[\"catalog\"");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append(",\n  [\"product\", {\"id\": ").append(i).append("}");
+            offsets.add(sb.length());
+            sb.append(", [\"name\", \"Product ").append(i).append("\"], [\"price\", 9.99]]");
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link IncrementalUnityParser}.
+ */
+class IncrementalUnityParserTest {
+
+    private static final String DOCUMENT = "[\"order\", {\"id\": 17, \"rush\": true},\n"
+            + "  [\"item\", {\"sku\": \"A-1\"}, 2, [\"1bad\"]],\n"
+            + "  [\"note\", \"café 😀\", [\"x\", {\"a\": 1}, {\"b\": 2}]],\n"
+            + "  \"text\", 3.5,\n"
+            + "  [\"item\", {\"2sku\": \"B-2\"}, [\"part\", [\"sub\", null]]]]";
+
+    /**
+     * Applies an edit and checks the result against a full parse of the edited text.
+     */
+    private static Unity.ParseResult edit(IncrementalUnityParser parser, int offset, int removed, String inserted) {
+        String expected = parser.getText().substring(0, offset) + inserted
+                + parser.getText().substring(offset + removed);
+        Unity.ParseResult result = parser.edit(offset, removed, inserted);
+        assertEquals(expected, parser.getText());
+        assertSameErrors(Unity.parse(expected).getErrors(), result.getErrors(), expected);
+        return result;
+    }
+
+    private static void assertSameErrors(List<ValidationError> expected, List<ValidationError> actual, String text) {
+        assertEquals(expected.stream().map(ValidationError::toJson).toList(),
+                actual.stream().map(ValidationError::toJson).toList(), text);
+    }
+
+    // =========================================================================
+    // Reparsing
+    // =========================================================================
+
+    @Test
+    @DisplayName("Edits within an element reparse only that element's content")
+    void testLocalEdit() {
+        IncrementalUnityParser parser = new IncrementalUnityParser(DOCUMENT);
+        assertSameErrors(Unity.parse(DOCUMENT).getErrors(), parser.getResult().getErrors(), DOCUMENT);
+        assertEquals(3, parser.getResult().getErrors().size());
+
+        // A value of the second item, between its child elements
+        int at = DOCUMENT.indexOf("[\"sub\"") + 7;
+        Unity.ParseResult result = edit(parser, at, 5, "\"replaced\"");
+        assertTrue(parser.getReparsedLength() < 20, "reparsed " + parser.getReparsedLength());
+        assertEquals(3, result.getErrors().size());
+
+        // An element added before the others moves their errors down and along
+        result = edit(parser, DOCUMENT.indexOf("[\"item\""), 0, "[\"new\",\n {\"3x\": 0}], ");
+        assertTrue(parser.getReparsedLength() < 60, "reparsed " + parser.getReparsedLength());
+        assertEquals(4, result.getErrors().size());
+        assertEquals(3, result.getErrors().get(0).getLine());
+        assertEquals(3, result.getErrors().get(1).getLine());
+        assertEquals(42, result.getErrors().get(1).getColumn());
+        assertEquals(6, result.getErrors().get(3).getLine());
+    }
+
+    @Test
+    @DisplayName("Renaming an element revalidates the paths within it")
+    void testRename() {
+        IncrementalUnityParser parser = new IncrementalUnityParser(DOCUMENT);
+        int at = DOCUMENT.indexOf("\"item\", {\"2sku\"") + 1;
+        Unity.ParseResult result = edit(parser, at, 4, "entry");
+        assertEquals("/order/entry", result.getErrors().get(2).getPath());
+        edit(parser, 2, 5, "root");
+        assertEquals(parser.getText().length(), parser.getReparsedLength());
+    }
+
+    @Test
+    @DisplayName("Changes in the number of content items revalidate attribute positions")
+    void testContentIndexes() {
+        IncrementalUnityParser parser = new IncrementalUnityParser(
+                "[\"a\", [\"b\"], {\"x\": 1}, [\"c\"], {\"y\": 2}]");
+        assertEquals("Attributes object must be at index 1 (found at index 2)",
+                parser.getResult().getErrors().get(0).getMessage());
+        edit(parser, 11, 0, ", 1, 2");
+        edit(parser, 11, 6, "");
+        edit(parser, 19, 0, ", \"v\"");
+    }
+
+    @Test
+    @DisplayName("Syntax errors are reported as a full parse reports them, until fixed")
+    void testSyntaxErrors() {
+        IncrementalUnityParser parser = new IncrementalUnityParser(DOCUMENT);
+        int at = DOCUMENT.indexOf("2, [\"1bad\"]");
+        Unity.ParseResult result = edit(parser, at, 1, "");
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).getMessage().startsWith("Syntax error"));
+        result = edit(parser, at, 0, "2");
+        assertEquals(3, result.getErrors().size());
+        edit(parser, at, 0, "\"");
+        edit(parser, at, 1, "");
+        edit(parser, at, 0, "[");
+        edit(parser, at + 1, 0, "\"n\"]");
+    }
+
+    @Test
+    @DisplayName("Random edits give the results of a full parse")
+    void testRandomEdits() {
+        String[] snippets = {"[", "]", ",", "\"", "{", "}", ":", " ", "\n", "1", "\"a\"", "\"1a\"", "[\"b\"]",
+                ", [\"c\", 2]", ", {\"k\": true}", "😀", "é", "\\", "x", ", \"s\""};
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            IncrementalUnityParser parser = new IncrementalUnityParser(DOCUMENT);
+            String wellFormed = DOCUMENT;
+            for (int i = 0; i < 100; i++) {
+                String text = parser.getText();
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(4, text.length() - offset) + 1) : 0;
+                // Keep surrogate pairs whole
+                if (offset > 0 && offset < text.length() && Character.isLowSurrogate(text.charAt(offset))) {
+                    offset--;
+                }
+                if (offset + removed < text.length() && Character.isLowSurrogate(text.charAt(offset + removed))) {
+                    removed++;
+                }
+                String inserted = removed > 0 && random.nextBoolean() ? "" : snippets[random.nextInt(snippets.length)];
+                edit(parser, offset, removed, inserted);
+                // Mostly go back to a well-formed document after a syntax error, so that most
+                // edits are of well-formed documents
+                if (parser.getResult().getErrors().stream().noneMatch(e -> e.getPath() == null)) {
+                    wellFormed = parser.getText();
+                } else if (random.nextInt(4) > 0) {
+                    edit(parser, 0, parser.getText().length(), wellFormed);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A small edit to a large document reparses a small part of it")
+    void testLargeDocument() {
+        StringBuilder input = new StringBuilder("[\"catalog\"");
+        for (int i = 0; i < 20_000; i++) {
+            input.append(",\n  [\"product\", {\"id\": ").append(i).append("}, [\"name\", \"Product ").append(i)
+                    .append("\"], [\"price\", 9.99]]");
+        }
+        String document = input.append("]").toString();
+        IncrementalUnityParser parser = new IncrementalUnityParser(document);
+        assertTrue(parser.getResult().isValid());
+
+        int at = document.indexOf("\"Product 12345\"") + 1;
+        Unity.ParseResult result = parser.edit(at, 7, "1tem");
+        assertTrue(result.isValid());
+        assertTrue(parser.getReparsedLength() < 30);
+        result = parser.edit(document.indexOf("[\"name\", \"Product 500\"]") + 2, 0, "1");
+        assertTrue(parser.getReparsedLength() < 60);
+        assertEquals(1, result.getErrors().size());
+        assertEquals(502, result.getErrors().get(0).getLine());
+        assertEquals("/catalog/product", result.getErrors().get(0).getPath());
+        assertEquals(Unity.parse(parser.getText()).getErrors().get(0).toJson(), result.getErrors().get(0).toJson());
+
+        // The parse tree is built when asked for
+        assertEquals(20_000, result.getParseTree().unityElement().elementContent().size());
+    }
+
+    @Test
+    @DisplayName("Edits outside the text are rejected")
+    void testBounds() {
+        IncrementalUnityParser parser = new IncrementalUnityParser("[\"a\"]");
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.edit(6, 0, "x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.edit(3, 3, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.edit(-1, 0, ""));
+        assertEquals("[\"a\"]", parser.getText());
+    }
+}
@@ -0,0 +1,201 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link LazyUnityDocument}.
+ */
+class LazyUnityDocumentTest {
+
+    private static final String DOCUMENT = "[\"order\", {\"id\": 17, \"rush\": true},\n"
+            + "  [\"item\", {\"sku\": \"A-1\"}, 2, [\"1bad\"]],\n"
+            + "  [\"note\", \"café 😀 ]\", [\"x\", {\"a\": 1}, {\"b\": 2}]],\n"
+            + "  \"text\", 3.5,\n"
+            + "  [\"it\\\"em\", {\"2sku\": \"B-2\"}, [\"part\", [\"sub\", null]]]]";
+
+    private static void assertSameErrors(List<ValidationError> expected, List<ValidationError> actual, String text) {
+        assertEquals(expected.stream().map(ValidationError::toJson).toList(),
+                actual.stream().map(ValidationError::toJson).toList(), text);
+    }
+
+    private static void assertSameErrors(String text) {
+        assertSameErrors(Unity.parse(text).getErrors(), LazyUnityDocument.parse(text).getErrors(), text);
+    }
+
+    // =========================================================================
+    // Navigation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Elements, names and ranges are found without parsing")
+    void testNavigation() {
+        LazyUnityDocument document = LazyUnityDocument.parse(DOCUMENT);
+        LazyUnityDocument.Element root = document.getRoot();
+        assertEquals("order", root.getName());
+        assertEquals(DOCUMENT, root.getText());
+
+        List<LazyUnityDocument.Element> children = root.getChildren();
+        assertEquals(3, children.size());
+        assertEquals("item", children.get(0).getName());
+        assertEquals("note", children.get(1).getName());
+        assertEquals("it\"em", children.get(2).getName());
+        assertEquals(2, children.get(0).getContentIndex());
+        assertEquals(3, children.get(1).getContentIndex());
+        assertEquals(6, children.get(2).getContentIndex());
+        assertEquals("[\"x\", {\"a\": 1}, {\"b\": 2}]", children.get(1).getChildren().get(0).getText());
+        assertSame(root, children.get(1).getParent());
+        assertEquals("sub", children.get(2).getChildren().get(0).getChildren().get(0).getName());
+        assertTrue(children.get(2).getChildren().get(0).getChildren().get(0).getChildren().isEmpty());
+
+        assertFalse(root.isMaterialized());
+        assertFalse(children.get(0).isMaterialized());
+    }
+
+    @Test
+    @DisplayName("Documents that are not one element have no root")
+    void testNoRoot() {
+        assertNull(LazyUnityDocument.parse("[\"a\"] [\"b\"]").getRoot());
+        assertNull(LazyUnityDocument.parse("[\"a\"").getRoot());
+        assertNull(LazyUnityDocument.parse("x [\"a\"]").getRoot());
+        assertNull(LazyUnityDocument.parse("[\"a\"] é").getRoot());
+        assertNull(LazyUnityDocument.parse("").getRoot());
+        assertEquals("a", LazyUnityDocument.parse("\n [\"a\"]\r\n").getRoot().getName());
+    }
+
+    // =========================================================================
+    // Parsing and validation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Elements are parsed when used, with their positions and paths in the document")
+    void testMaterialize() {
+        LazyUnityDocument document = LazyUnityDocument.parse(DOCUMENT);
+        List<ValidationError> expected = Unity.parse(DOCUMENT).getErrors();
+        assertEquals(4, expected.size());
+
+        LazyUnityDocument.Element item = document.getRoot().getChildren().get(0);
+        assertSameErrors(expected.subList(0, 1), item.getErrors(), DOCUMENT);
+        assertEquals("/order/item", item.getErrors().get(0).getPath());
+        assertTrue(item.isMaterialized());
+        assertFalse(document.getRoot().isMaterialized());
+
+        LazyUnityDocument.Element note = document.getRoot().getChildren().get(1);
+        assertSameErrors(expected.subList(1, 2), note.getErrors(), DOCUMENT);
+        UnityParser.UnityElementContext tree = note.getTree();
+        assertEquals(3, tree.getStart().getLine());
+        assertEquals(2, tree.getStart().getCharPositionInLine());
+        // Columns count code points, as a full parse does
+        assertEquals(23, tree.elementContent(1).getStart().getCharPositionInLine());
+
+        LazyUnityDocument.Element last = document.getRoot().getChildren().get(2);
+        assertSameErrors(expected.subList(2, 4), last.getErrors(), DOCUMENT);
+        assertSameErrors(expected, document.getErrors(), DOCUMENT);
+        assertFalse(document.isValid());
+    }
+
+    @Test
+    @DisplayName("Parsed elements can be released and parsed again")
+    void testRelease() {
+        LazyUnityDocument document = LazyUnityDocument.parse(DOCUMENT);
+        LazyUnityDocument.Element note = document.getRoot().getChildren().get(1);
+        UnityParser.UnityElementContext tree = note.getTree();
+        assertSame(tree, note.getTree());
+        note.release();
+        assertFalse(note.isMaterialized());
+        assertNotSame(tree, note.getTree());
+        assertEquals(tree.getText(), note.getTree().getText());
+
+        document.getErrors();
+        assertTrue(document.getRoot().isMaterialized());
+        document.release();
+        assertFalse(document.getRoot().isMaterialized());
+        assertFalse(note.isMaterialized());
+        assertEquals(4, document.getErrors().size());
+    }
+
+    @Test
+    @DisplayName("Releasing and validating on several threads does not deadlock")
+    void testConcurrentRelease() throws Exception {
+        LazyUnityDocument document = LazyUnityDocument.parse(DOCUMENT);
+        List<ValidationError> expected = Unity.parse(DOCUMENT).getErrors();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread validating = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                document.release();
+                assertSameErrors(expected, document.getErrors(), DOCUMENT);
+            }
+        });
+        Thread parsing = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                document.getRoot().release();
+                assertEquals("order", document.getRoot().getTree().elementName().getText().replace("\"", ""));
+            }
+        });
+        for (Thread thread : List.of(validating, parsing)) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+            thread.start();
+        }
+        for (Thread thread : List.of(validating, parsing)) {
+            thread.join(60_000);
+            assertFalse(thread.isAlive(), "deadlocked: " + thread.getState());
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    @DisplayName("Documents with syntax errors report the errors of a full parse")
+    void testSyntaxErrors() {
+        assertSameErrors(DOCUMENT.replace("2, [", "2 ["));
+        assertSameErrors(DOCUMENT.replace("3.5", "3.5.1"));
+        assertSameErrors(DOCUMENT.replace("true", "tru"));
+        assertSameErrors(DOCUMENT + "]");
+        assertSameErrors("[\"a\"] x");
+        assertSameErrors("[1, 2]");
+        assertSameErrors("");
+
+        LazyUnityDocument document = LazyUnityDocument.parse(DOCUMENT.replace("2, [", "2 ["));
+        List<ValidationError> errors = document.getRoot().getChildren().get(0).getErrors();
+        assertTrue(errors.get(0).getMessage().startsWith("Syntax error"));
+        assertEquals(2, errors.get(0).getLine());
+    }
+
+    @Test
+    @DisplayName("Valid documents and attribute positions validate as a full parse does")
+    void testValidation() {
+        assertSameErrors("[\"a\", [\"b\"], {\"x\": 1}, [\"c\", 1, {\"y\": 2}]]");
+        assertSameErrors("[\"xml\", {\"1\": 2}, [\"ok\", {\"a\": [1, {\"b\": \"]\"}]}]]");
+        assertSameErrors("[\"a\", {}, [\"b\", {}], [\"c\"], \"😀\", [\"😀\"]]");
+        assertTrue(LazyUnityDocument.parse("[\"a\", {\"x\": 1}, [\"b\", \"t\"]]").isValid());
+    }
+
+    @Test
+    @DisplayName("Using one element of a large document parses only that element")
+    void testLargeDocument() {
+        StringBuilder input = new StringBuilder("[\"catalog\"");
+        for (int i = 0; i < 20_000; i++) {
+            input.append(",\n  [\"product\", {\"id\": ").append(i).append("}, [\"name\", \"Product ").append(i)
+                    .append("\"], [\"price\", 9.99]]");
+        }
+        String document = input.append("]").toString().replace("[\"name\", \"Product 12345\"]",
+                "[\"1name\", \"Product 12345\"]");
+        LazyUnityDocument lazy = LazyUnityDocument.parse(document);
+        List<LazyUnityDocument.Element> products = lazy.getRoot().getChildren();
+        assertEquals(20_000, products.size());
+
+        LazyUnityDocument.Element product = products.get(12_345);
+        assertEquals(1, product.getErrors().size());
+        assertEquals(12_347, product.getErrors().get(0).getLine());
+        assertEquals("/catalog/product", product.getErrors().get(0).getPath());
+        assertEquals(3, product.getTree().elementContent().size());
+        assertFalse(products.get(12_344).isMaterialized());
+        assertFalse(lazy.getRoot().isMaterialized());
+
+        assertSameErrors(Unity.parse(document).getErrors(), lazy.getErrors(), "catalog");
+    }
+}
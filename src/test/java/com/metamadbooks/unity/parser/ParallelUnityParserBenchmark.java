@@ -0,0 +1,79 @@
+package com.metamadbooks.unity.parser;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the wall-clock time of {@link ParallelUnityParser} scales with the number of
+ * worker threads, against a sequential {@link Unity#parse(String)} of the same document.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.metamadbooks.unity.parser.ParallelUnityParserBenchmark -Dexec.args="32 8"
+ * </pre>
+ * The optional arguments are the document size in megabytes (default 32) and the largest
+ * pool to try (default the number of available processors); pools of 1, 2, 4, ... threads
+ * up to it are timed, and each line reports the best of several rounds.
+ */
+public class ParallelUnityParserBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String document = document(megabytes << 20);
+        System.out.printf("Document: %,d chars, %d available processors%n",
+                document.length(), Runtime.getRuntime().availableProcessors());
+
+        long sequential = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            check(Unity.parse(document));
+            sequential = Math.min(sequential, System.nanoTime() - start);
+        }
+        System.out.printf("Sequential:  %8.1f ms%n", sequential / 1e6);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelUnityParser parser = new ParallelUnityParser(pool, ParallelUnityParser.DEFAULT_THRESHOLD);
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    check(parser.parse(document));
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.printf("%2d threads:  %8.1f ms   speedup %5.2fx%n",
+                        threads, best / 1e6, (double) sequential / best);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void check(Unity.ParseResult result) {
+        if (!result.isValid()) {
+            throw new IllegalStateException("Benchmark document is invalid: " + result.getErrors().get(0));
+        }
+    }
+
+    /**
+     * Builds a valid document of roughly the given size whose root has many sections,
+     * the units the parallel parser splits on.
+     */
+    private static String document(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("[\"catalog\", {\"version\": 2}");
+        for (int s = 0; sb.length() < size; s++) {
+            sb.append(",\n  [\"section\", {\"id\": \"s").append(s).append("\"}");
+            for (int i = 0; i < 20; i++) {
+                sb.append(",\n    [\"item\", {\"n\": ").append(i).append(", \"price\": 1.5e2}, \"text \\u00e9\"")
+                  .append(", [\"note\", true, null]]");
+            }
+            sb.append("]");
+        }
+        sb.append("\n]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link ParallelUnityParser}: results must match a sequential parse exactly.
+ */
+class ParallelUnityParserTest {
+
+    private static ForkJoinPool pool;
+    private static ParallelUnityParser parser;
+
+    @BeforeAll
+    static void createPool() {
+        pool = new ForkJoinPool(4);
+        // Threshold 0 forces the parallel path even for small test documents
+        parser = new ParallelUnityParser(pool, 0);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Asserts that the parallel result is indistinguishable from the sequential one.
+     */
+    private static void assertSameAsSequential(String input) {
+        Unity.ParseResult expected = Unity.parse(input);
+        Unity.ParseResult actual = parser.parse(input);
+
+        assertEquals(expected.getErrors().toString(), actual.getErrors().toString());
+        assertEquals(expected.getParseTree().toStringTree(), actual.getParseTree().toStringTree());
+        assertEquals(DeepUnityParserTest.invokingStates(expected.getParseTree()),
+                DeepUnityParserTest.invokingStates(actual.getParseTree()));
+        for (PrintFormat format : PrintFormat.values()) {
+            assertEquals(Unity.print(expected, format), Unity.print(actual, format));
+        }
+    }
+
+    private static String catalog(int sections, boolean withErrors) {
+        StringBuilder sb = new StringBuilder("[\n  \"catalog\",\n  {\"version\": 2},\n");
+        for (int s = 0; s < sections; s++) {
+            sb.append("  [\"section\", {\"id\": \"s").append(s).append("\"},\r\n");
+            for (int i = 0; i < 5; i++) {
+                String name = withErrors && i == 3 && s % 7 == 0 ? "3item" : "item";
+                sb.append("    [\"").append(name).append("\", {\"n\": ").append(i)
+                        .append(", \"price\": 1.5e2}, \"text \\u00e9\", [\"note\", true, null]],\n");
+            }
+            sb.append("    \"tail\"],\n");
+            sb.append("  \"between ").append(s).append("\",\n");
+        }
+        sb.append("  [\"end\"]\n]\n");
+        return sb.toString();
+    }
+
+    // =========================================================================
+    // Equivalence
+    // =========================================================================
+
+    @Test
+    @DisplayName("Valid document with many root children")
+    void testValidDocument() {
+        String input = catalog(200, false);
+        assertTrue(parser.parse(input).isValid());
+        assertSameAsSequential(input);
+    }
+
+    @Test
+    @DisplayName("Semantic errors keep sequential order, positions and paths")
+    void testSemanticErrors() {
+        String input = catalog(100, true);
+        Unity.ParseResult result = parser.parse(input);
+        assertFalse(result.isValid());
+        assertEquals("/catalog/section", result.getErrors().get(0).getPath());
+        assertSameAsSequential(input);
+    }
+
+    @Test
+    @DisplayName("Root name and root attribute position errors")
+    void testRootLevelErrors() {
+        assertSameAsSequential("[\"1root\", \"text\", {\"a\": 1}, [\"x\", {\"2b\": 1}], {\"c\": 2}]");
+        assertSameAsSequential("[\"root\", [\"child\", \"a\", \"b\"], {\"a\": 1}]");
+    }
+
+    @Test
+    @DisplayName("Supplementary characters before an error keep columns in code points")
+    void testSupplementaryCharacters() {
+        assertSameAsSequential("[\"root\", \"\uD83D\uDE00\uD83D\uDE00\", [\"x\", \"\uD83D\uDE00\", [\"9bad\"]], [\"y\"]]");
+    }
+
+    @Test
+    @DisplayName("Syntax errors fall back to the sequential parser")
+    void testSyntaxErrorFallback() {
+        assertSameAsSequential("[\"root\", [\"a\" \"b\"], [\"c\"]]");
+        assertSameAsSequential("[\"root\", [\"a\"], [\"c\"]] trailing");
+        assertSameAsSequential("[\"root\", [\"a\"], {\"b\": [1]}]");
+        assertSameAsSequential("[\"root\", [\"a\", \"unterminated]]");
+        assertSameAsSequential("{\"not\": \"unity\"}");
+    }
+
+    @Test
+    @DisplayName("Documents without children and tiny documents")
+    void testDegenerateDocuments() {
+        assertSameAsSequential("[\"x\"]");
+        assertSameAsSequential("[\"x\", 1]");
+        assertTrue(new ParallelUnityParser().parse("[\"x\", [\"y\"]]").isValid());
+        assertTrue(Unity.parseParallel("[\"x\", [\"y\"]]").isValid());
+    }
+
+    // =========================================================================
+    // Validation Listener Content Index
+    // =========================================================================
+
+    @Test
+    @DisplayName("Attributes after a nested element are reported at the parent's index")
+    void testContentIndexRestoredAfterNestedElement() {
+        Unity.ParseResult result = Unity.parse("[\"x\", [\"y\"], {\"a\": \"b\"}]");
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).getMessage().contains("found at index 2"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the time to the first validated document of a fresh JVM running
+ * {@link UnityCli} on one small file, as in batch jobs that start one JVM per file.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * mvn -Pappcds package
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.metamadbooks.unity.parser.StartupBenchmark \
+ *     -Dexec.args="20 target/unity-antlr-1.0.0-SNAPSHOT.jar"
+ * </pre>
+ * The optional arguments are the number of runs per configuration (default 20) and the
+ * CLI jar built by the {@code appcds} profile; the configurations using its class data
+ * sharing archive, {@code unity-cli.jsa} next to the jar, are skipped without it. Each run
+ * is timed from process start to exit.
+ */
+public class StartupBenchmark {
+
+    private static final String DOCUMENT =
+            "[\"order\", {\"id\": 17, \"rush\": true}, [\"item\", {\"sku\": \"A-1\"}, 2], [\"note\", \"ok\"]]";
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        Path jar = args.length > 1 ? Path.of(args[1]) : null;
+        Path file = Files.createTempFile("startup", ".unity");
+        Files.writeString(file, DOCUMENT);
+        try {
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            String classpath = location(UnityCli.class) + File.pathSeparator + location(org.antlr.v4.runtime.Token.class);
+            String[] cli = {"validate", "-q", "-j", "1", file.toString()};
+
+            run("classpath", runs, command(List.of(java, "-cp", classpath, UnityCli.class.getName()), cli));
+            run("classpath, C1 only", runs, command(List.of(java, "-XX:TieredStopAtLevel=1", "-cp", classpath,
+                    UnityCli.class.getName()), cli));
+            Path archive = jar != null ? jar.resolveSibling("unity-cli.jsa") : null;
+            if (archive != null && Files.exists(archive)) {
+                run("jar", runs, command(List.of(java, "-jar", jar.toString()), cli));
+                run("jar, AppCDS", runs, command(List.of(java, "-XX:SharedArchiveFile=" + archive,
+                        "-jar", jar.toString()), cli));
+                run("jar, AppCDS, C1 only", runs, command(List.of(java, "-XX:SharedArchiveFile=" + archive,
+                        "-XX:TieredStopAtLevel=1", "-jar", jar.toString()), cli));
+            } else {
+                System.out.println("No AppCDS archive; build the jar with: mvn -Pappcds package");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void run(String name, int runs, List<String> command) throws Exception {
+        long[] nanos = new long[runs];
+        // One untimed run to fill the file system cache
+        start(command).waitFor();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = start(command);
+            int status = process.waitFor();
+            nanos[i] = System.nanoTime() - start;
+            if (status != 0) {
+                throw new IllegalStateException(name + ": exit status " + status);
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-22s min %6.1f ms   median %6.1f ms   max %6.1f ms%n",
+                name, nanos[0] / 1e6, nanos[runs / 2] / 1e6, nanos[runs - 1] / 1e6);
+    }
+
+    private static Process start(List<String> command) throws Exception {
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static List<String> command(List<String> jvm, String[] cli) {
+        List<String> command = new ArrayList<>(jvm);
+        command.addAll(Arrays.asList(cli));
+        return command;
+    }
+
+    private static String location(Class<?> type) throws Exception {
+        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the throughput of {@link StructuralIndex} with a full {@link UnityLexer} pass.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * MAVEN_OPTS=-Xmx4g mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.metamadbooks.unity.parser.StructuralIndexBenchmark -Dexec.args="512"
+ * </pre>
+ * The optional argument is the corpus size in megabytes (default 512), large enough that
+ * neither pass runs from cache. The corpus is held as a String, its UTF-8 bytes and the
+ * lexer's code points at once, so the heap needs about eight times the corpus size.
+ */
+public class StructuralIndexBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        String corpus = corpus(megabytes << 20);
+        byte[] utf8 = corpus.getBytes(StandardCharsets.UTF_8);
+        System.out.printf("Corpus: %,d bytes%n", utf8.length);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            StructuralIndex index = StructuralIndex.build(utf8);
+            long indexNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int tokens = lex(corpus);
+            long lexNanos = System.nanoTime() - start;
+
+            System.out.printf("Round %d: index %8.1f MB/s (%,d positions)   lexer %8.1f MB/s (%,d tokens)%n",
+                    round, throughput(utf8.length, indexNanos), index.size(),
+                    throughput(utf8.length, lexNanos), tokens);
+        }
+    }
+
+    private static int lex(String corpus) {
+        UnityLexer lexer = new UnityLexer(CharStreams.fromString(corpus));
+        int count = 0;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    /**
+     * Builds a document of roughly the given size with a typical mix of elements,
+     * attributes, text and numbers.
+     */
+    private static String corpus(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("[\"catalog\"");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append(",\n  [\"item\", {\"id\": \"").append(i)
+              .append("\", \"price\": ").append(i % 1000).append(".25")
+              .append(", \"stock\": ").append(i % 7 == 0)
+              .append("}, [\"title\", \"Item \\\"").append(i).append("\\\" description\"]")
+              .append(", [\"tags\", \"a\", \"b\", null]]");
+        }
+        sb.append("\n]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the SWAR {@link StructuralIndex}, checked against a character-at-a-time scan.
+ */
+class StructuralIndexTest {
+
+    /**
+     * Reference implementation: one character at a time.
+     */
+    private static List<Integer> referencePositions(String input) {
+        List<Integer> positions = new ArrayList<>();
+        boolean inString = false;
+        boolean inScalar = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            boolean operator = "[]{},:".indexOf(c) >= 0;
+            boolean whitespace = c == ' ' || c == '\t' || c == '\n' || c == '\r';
+            if (c == '"') {
+                positions.add(i);
+                inString = true;
+                inScalar = false;
+            } else if (operator) {
+                positions.add(i);
+                inScalar = false;
+            } else if (whitespace) {
+                inScalar = false;
+            } else if (!inScalar) {
+                positions.add(i);
+                inScalar = true;
+            }
+        }
+        return positions;
+    }
+
+    private static List<Integer> positions(StructuralIndex index) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            positions.add(index.offset(i));
+        }
+        return positions;
+    }
+
+    private static void randomValue(Random random, StringBuilder sb, int depth) {
+        int kind = depth > 6 ? random.nextInt(4) : random.nextInt(6);
+        switch (kind) {
+            case 0 -> {
+                sb.append('"');
+                int length = random.nextInt(20);
+                for (int i = 0; i < length; i++) {
+                    int r = random.nextInt(10);
+                    if (r == 0) {
+                        sb.append("\\\\");
+                    } else if (r == 1) {
+                        sb.append("\\\"");
+                    } else if (r == 2) {
+                        sb.append(",]}");
+                    } else {
+                        sb.append((char) ('a' + random.nextInt(26)));
+                    }
+                }
+                sb.append('"');
+            }
+            case 1 -> sb.append(random.nextInt(100000) - 50000).append(random.nextBoolean() ? ".5e3" : "");
+            case 2 -> sb.append(random.nextBoolean() ? "true" : "null");
+            case 3 -> sb.append("false");
+            case 4 -> {
+                sb.append("[\"e").append(random.nextInt(100)).append('"');
+                int children = random.nextInt(4);
+                for (int i = 0; i < children; i++) {
+                    sb.append(random.nextBoolean() ? ", " : ",\n  ");
+                    randomValue(random, sb, depth + 1);
+                }
+                sb.append(']');
+            }
+            default -> {
+                sb.append('{');
+                int pairs = random.nextInt(3);
+                for (int i = 0; i < pairs; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append("\"k").append(i).append("\":\t");
+                    randomValue(random, sb, depth + 1);
+                }
+                sb.append('}');
+            }
+        }
+    }
+
+    // =========================================================================
+    // Positions
+    // =========================================================================
+
+    @Test
+    @DisplayName("Positions match a character-at-a-time scan on random documents")
+    void testRandomDocuments() {
+        Random random = new Random(29);
+        for (int n = 0; n < 500; n++) {
+            StringBuilder sb = new StringBuilder();
+            randomValue(random, sb, 0);
+            String input = sb.toString();
+
+            StructuralIndex index = StructuralIndex.build(input);
+            assertEquals(referencePositions(input), positions(index), input);
+            assertTrue(index.isBalanced(), input);
+        }
+    }
+
+    @Test
+    @DisplayName("Escapes and strings spanning 64-byte block boundaries")
+    void testBlockBoundaries() {
+        for (int pad = 0; pad < 130; pad++) {
+            String prefix = "[\"x\", \"" + "a".repeat(pad);
+            for (String tail : List.of("\\\\\", 1]", "\\\"\", 1]", "\\\\\\\"x\", 1]", "\", 1, [\"y\"]]")) {
+                String input = prefix + tail;
+                StructuralIndex index = StructuralIndex.build(input);
+                assertEquals(referencePositions(input), positions(index), input);
+                assertTrue(index.isBalanced(), input);
+            }
+            String scalars = "[\"x\", " + " ".repeat(pad) + "12345678, true]";
+            assertEquals(referencePositions(scalars), positions(StructuralIndex.build(scalars)), scalars);
+        }
+    }
+
+    @Test
+    @DisplayName("UTF-8 bytes and non-ASCII Strings index the same structure")
+    void testNonAscii() {
+        String input = "[\"元素\", {\"ключ\": \"值 😀\"}, \"ü\"]";
+
+        StructuralIndex chars = StructuralIndex.build(input);
+        assertEquals(referencePositions(input), positions(chars));
+
+        StructuralIndex bytes = StructuralIndex.build(input.getBytes(StandardCharsets.UTF_8));
+        assertEquals(chars.size(), bytes.size());
+        for (int i = 0; i < chars.size(); i++) {
+            assertEquals(chars.charAt(i), bytes.charAt(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Byte range offsets are relative to the range")
+    void testByteRange() {
+        byte[] buffer = "xxxx[\"a\", 1]yyyy".getBytes(StandardCharsets.US_ASCII);
+        StructuralIndex index = StructuralIndex.build(buffer, 4, 8);
+
+        assertEquals(8, index.length());
+        assertEquals(List.of(0, 1, 4, 6, 7), positions(index));
+        assertEquals('[', index.charAt(0));
+        assertEquals(']', index.charAt(4));
+    }
+
+    // =========================================================================
+    // Balance and Skipping
+    // =========================================================================
+
+    @Test
+    @DisplayName("Unbalanced brackets and unterminated strings are detected")
+    void testBalance() {
+        assertTrue(StructuralIndex.build("[\"x\", {\"a\": 1}]").isBalanced());
+        assertFalse(StructuralIndex.build("[\"x\", {\"a\": 1]").isBalanced());
+        assertFalse(StructuralIndex.build("[\"x\"").isBalanced());
+        assertFalse(StructuralIndex.build("[\"x\"]]").isBalanced());
+        assertFalse(StructuralIndex.build("[\"x, 1]").isBalanced());
+        assertTrue(StructuralIndex.build("[\"x, 1]").hasUnterminatedString());
+        assertTrue(StructuralIndex.build("").isBalanced());
+    }
+
+    @Test
+    @DisplayName("Subtrees are skipped through matching brackets")
+    void testSkipValue() {
+        String input = "[\"root\", [\"a\", {\"k\": [1, 2]}], \"text\", 42]";
+        StructuralIndex index = StructuralIndex.build(input);
+
+        assertEquals(index.size() - 1, index.matchingClose(0));
+        // Children of the root: the '[' after the first comma, "text", 42
+        List<Character> children = new ArrayList<>();
+        int i = 2;
+        while (index.charAt(i) == ',') {
+            children.add(index.charAt(i + 1));
+            i = index.skipValue(i + 1);
+        }
+        assertEquals(List.of('[', '"', '4'), children);
+        assertEquals(']', index.charAt(i));
+
+        assertThrows(IllegalArgumentException.class, () -> index.matchingClose(1));
+        assertEquals(-1, StructuralIndex.build("[\"x\", [1}").matchingClose(3));
+    }
+}
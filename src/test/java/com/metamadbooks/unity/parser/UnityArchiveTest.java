@@ -0,0 +1,184 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityArchive}.
+ */
+class UnityArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private static String doc(int i) {
+        return "[\"order\", {\"id\": " + i + ", \"note\": \"n\\u00e9" + i + "\"}, [\"line\", " + (i * 1.5) + "]]";
+    }
+
+    // =========================================================================
+    // Append and Lookup
+    // =========================================================================
+
+    @Test
+    @DisplayName("Entries are found by ordinal and key in both formats")
+    void testAppendAndLookup() throws IOException {
+        try (UnityArchive archive = UnityArchive.open(dir.resolve("a.uar"))) {
+            for (int i = 0; i < 100; i++) {
+                UnityArchive.Format format = i % 2 == 0 ? UnityArchive.Format.TEXT : UnityArchive.Format.BINARY;
+                assertEquals(i, archive.append("k" + i, doc(i), format));
+            }
+            assertEquals(100, archive.size());
+
+            int ordinal = archive.ordinalOf("k41");
+            assertEquals(41, ordinal);
+            assertEquals(UnityArchive.Format.BINARY, archive.getFormat(ordinal));
+            assertEquals("order", archive.binary(ordinal).getElementName(archive.binary(ordinal).getRootOffset()));
+            assertEquals(Unity.print(Unity.parse(doc(41)), PrintFormat.LOG),
+                    Unity.print(archive.parse(ordinal), PrintFormat.LOG));
+
+            assertEquals(doc(40), archive.getText(40));
+            assertEquals(doc(40), StandardCharsets.UTF_8.decode(archive.slice(40)).toString());
+            assertTrue(archive.slice(40).isReadOnly());
+            assertEquals(-1, archive.ordinalOf("missing"));
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid documents are rejected")
+    void testInvalidDocument() throws IOException {
+        try (UnityArchive archive = UnityArchive.open(dir.resolve("a.uar"))) {
+            assertThrows(IllegalArgumentException.class, () -> archive.append("[\"1bad\"]"));
+            assertThrows(IllegalArgumentException.class,
+                    () -> archive.append("k", "[\"x\",", UnityArchive.Format.BINARY));
+            assertEquals(0, archive.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Reopening keeps entries, keys and deletions")
+    void testReopen() throws IOException {
+        Path file = dir.resolve("a.uar");
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            archive.append("a", doc(1), UnityArchive.Format.TEXT);
+            archive.append(doc(2));
+            archive.append("c", doc(3), UnityArchive.Format.BINARY);
+            archive.delete("a");
+        }
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            assertEquals(3, archive.size());
+            assertEquals(2, archive.liveSize());
+            assertTrue(archive.isDeleted(0));
+            assertNull(archive.getKey(1));
+            assertEquals(2, archive.ordinalOf("c"));
+            assertEquals(doc(2), archive.getText(1));
+            assertEquals(-1, archive.ordinalOf("a"));
+        }
+    }
+
+    // =========================================================================
+    // Deletion and Compaction
+    // =========================================================================
+
+    @Test
+    @DisplayName("Appending an existing key replaces the earlier entry")
+    void testReplaceKey() throws IOException {
+        try (UnityArchive archive = UnityArchive.open(dir.resolve("a.uar"))) {
+            archive.append("k", doc(1), UnityArchive.Format.TEXT);
+            archive.append("k", doc(2), UnityArchive.Format.TEXT);
+            assertEquals(1, archive.ordinalOf("k"));
+            assertTrue(archive.isDeleted(0));
+            assertThrows(IllegalArgumentException.class, () -> archive.slice(0));
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction drops deleted entries and renumbers the rest")
+    void testCompact() throws IOException {
+        Path file = dir.resolve("a.uar");
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            for (int i = 0; i < 50; i++) {
+                archive.append("k" + i, doc(i), i % 3 == 0 ? UnityArchive.Format.BINARY : UnityArchive.Format.TEXT);
+            }
+            for (int i = 0; i < 50; i += 2) {
+                assertTrue(archive.delete("k" + i));
+            }
+            assertFalse(archive.delete("k0"));
+            long before = Files.size(file);
+
+            archive.compact();
+            assertEquals(25, archive.size());
+            assertEquals(25, archive.liveSize());
+            assertTrue(Files.size(file) < before);
+            assertEquals(0, archive.ordinalOf("k1"));
+            assertEquals(doc(49), archive.getText(archive.ordinalOf("k49")));
+            assertEquals(UnityArchive.Format.BINARY, archive.getFormat(archive.ordinalOf("k3")));
+
+            archive.append("new", doc(99), UnityArchive.Format.TEXT);
+            assertEquals(25, archive.ordinalOf("new"));
+        }
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            assertEquals(26, archive.size());
+            assertEquals(doc(99), archive.getText(archive.ordinalOf("new")));
+        }
+    }
+
+    // =========================================================================
+    // Recovery
+    // =========================================================================
+
+    @Test
+    @DisplayName("A missing index is rebuilt from the data file")
+    void testRebuildIndex() throws IOException {
+        Path file = dir.resolve("a.uar");
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            archive.append("a", doc(1), UnityArchive.Format.BINARY);
+            archive.append("b", doc(2), UnityArchive.Format.TEXT);
+            archive.delete("a");
+        }
+        Files.delete(dir.resolve("a.uar.idx"));
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            assertEquals(2, archive.size());
+            assertTrue(archive.isDeleted(0));
+            assertEquals(doc(2), archive.getText(archive.ordinalOf("b")));
+        }
+    }
+
+    @Test
+    @DisplayName("A record without an index entry is discarded")
+    void testTruncatedAppend() throws IOException {
+        Path file = dir.resolve("a.uar");
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            archive.append("a", doc(1), UnityArchive.Format.TEXT);
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 1, 0, 99, 0, 0, 0, 'x'}), size);
+        }
+        try (UnityArchive archive = UnityArchive.open(file)) {
+            assertEquals(1, archive.size());
+            assertEquals(size, Files.size(file));
+            archive.append("b", doc(2), UnityArchive.Format.TEXT);
+            assertEquals(doc(2), archive.getText(1));
+        }
+    }
+
+    @Test
+    @DisplayName("Other files are not opened as archives")
+    void testNotAnArchive() throws IOException {
+        Path file = dir.resolve("other.txt");
+        Files.writeString(file, "hello world");
+        assertThrows(IOException.class, () -> UnityArchive.open(file));
+        assertFalse(Files.exists(dir.resolve("other.txt.idx")));
+    }
+}
@@ -0,0 +1,189 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compact binary format: {@link UnityBinaryWriter}, {@link UnityBinaryReader}
+ * and {@link UnityTextWriter}.
+ */
+class UnityBinaryTest {
+
+    private static final String SAMPLE =
+            "[\"catalog\", {\"version\": 2, \"lang\": \"en\"},\n"
+            + "  [\"item\", {\"id\": \"a1\", \"price\": 3.5, \"stock\": true}, \"First \\\"quoted\\\" item\"],\n"
+            + "  [\"item\", {\"id\": \"a2\", \"price\": 1e3, \"stock\": false}, null, -0, 12345678901234567890],\n"
+            + "  [\"note\", \"tab\\there\", \"unicode \\u00e9 \\ud83d\\ude00\", \"ünïcödé\"],\n"
+            + "  \"trailing text\", -42, 0.1, 1.0E10\n"
+            + "]";
+
+    /**
+     * Asserts that text → binary → text preserves what Unity.parse sees.
+     */
+    private static void assertRoundTrip(String text) {
+        byte[] binary = UnityBinaryWriter.encode(text);
+        String decoded = new UnityBinaryReader(binary).toText();
+
+        Unity.ParseResult expected = Unity.parse(text);
+        Unity.ParseResult actual = Unity.parse(decoded);
+        assertTrue(actual.isValid(), () -> decoded + " " + actual.getErrors());
+        assertEquals(Unity.print(expected, PrintFormat.LOG), Unity.print(actual, PrintFormat.LOG), text);
+        assertEquals(Unity.print(expected, PrintFormat.TREE), Unity.print(actual, PrintFormat.TREE), text);
+    }
+
+    private static void randomElement(Random random, StringBuilder sb, int depth) {
+        sb.append("[\"e").append(random.nextInt(20)).append('"');
+        if (random.nextInt(3) == 0) {
+            sb.append(", {\"a\": ").append(random.nextInt(1000)).append(", \"b\": \"v").append(random.nextInt(5)).append("\"}");
+        }
+        int children = random.nextInt(depth > 4 ? 2 : 5);
+        for (int i = 0; i < children; i++) {
+            sb.append(", ");
+            switch (random.nextInt(6)) {
+                case 0 -> randomElement(random, sb, depth + 1);
+                case 1 -> sb.append(random.nextLong());
+                case 2 -> sb.append(random.nextDouble() * 1000);
+                case 3 -> sb.append(random.nextBoolean());
+                case 4 -> sb.append("null");
+                default -> sb.append("\"text ").append(random.nextInt(100)).append("\\n\"");
+            }
+        }
+        sb.append(']');
+    }
+
+    // =========================================================================
+    // Round Trip
+    // =========================================================================
+
+    @Test
+    @DisplayName("Text to binary to text matches Unity.parse")
+    void testRoundTrip() {
+        assertRoundTrip(SAMPLE);
+        assertRoundTrip("[\"x\"]");
+        assertRoundTrip("[\"x\", [\"y\", [\"z\"]]]");
+        assertRoundTrip("[\"ns:x\", {\"xml:lang\": \"fr\"}]");
+
+        Random random = new Random(32);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            randomElement(random, sb, 0);
+            assertRoundTrip(sb.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Numbers keep their exact text")
+    void testNumberText() {
+        String text = "[\"n\", 0, -7, 9223372036854775807, 9223372036854775808, -0, 3.5, 1e3, 1.0E10, 2.50]";
+        String decoded = new UnityBinaryReader(UnityBinaryWriter.encode(text)).toText();
+        assertEquals("[\"n\",0,-7,9223372036854775807,9223372036854775808,-0,3.5,1e3,1.0E10,2.50]", decoded);
+    }
+
+    @Test
+    @DisplayName("Repeated names and strings are stored once")
+    void testDictionary() {
+        StringBuilder sb = new StringBuilder("[\"list\"");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(", [\"item\", {\"kind\": \"repeated-value\"}, \"repeated-value\", ").append(i).append(']');
+        }
+        String text = sb.append(']').toString();
+
+        byte[] binary = UnityBinaryWriter.encode(text);
+        assertTrue(binary.length < text.length() / 3, binary.length + " bytes for " + text.length() + " chars");
+    }
+
+    @Test
+    @DisplayName("Invalid documents are not encoded")
+    void testInvalidDocument() {
+        assertThrows(IllegalArgumentException.class, () -> UnityBinaryWriter.encode("[\"1bad\"]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityBinaryWriter.encode("[\"x\", "));
+        assertThrows(IllegalArgumentException.class, () -> new UnityBinaryReader("[\"x\"]".getBytes()));
+        assertFalse(UnityBinaryReader.isBinary("[\"x\"]".getBytes()));
+        assertTrue(UnityBinaryReader.isBinary(UnityBinaryWriter.encode("[\"x\"]")));
+    }
+
+    // =========================================================================
+    // Reading Modes
+    // =========================================================================
+
+    @Test
+    @DisplayName("Pull cursor reports typed values")
+    void testCursor() {
+        UnityBinaryReader reader = new UnityBinaryReader(
+                UnityBinaryWriter.encode("[\"r\", {\"n\": 42}, 2.5, \"s\", true, null]"));
+        UnityBinaryReader.Cursor cursor = reader.cursor();
+
+        assertEquals(UnityEventType.START_ELEMENT, cursor.next());
+        assertEquals("r", cursor.getName());
+        assertEquals(UnityEventType.ATTRIBUTE, cursor.next());
+        assertTrue(cursor.isLong());
+        assertEquals(42, cursor.getLongValue());
+        assertEquals(UnityEventType.VALUE, cursor.next());
+        assertEquals(2.5, cursor.getDoubleValue());
+        assertEquals(UnityEventType.VALUE, cursor.next());
+        assertEquals("s", cursor.getValue());
+        assertEquals(UnityEventType.VALUE, cursor.next());
+        assertEquals(UnityValueType.BOOLEAN, cursor.getValueType());
+        assertEquals(UnityEventType.VALUE, cursor.next());
+        assertNull(cursor.getValue());
+        assertEquals(UnityEventType.END_ELEMENT, cursor.next());
+        assertNull(cursor.next());
+    }
+
+    @Test
+    @DisplayName("Elements can be skipped and revisited by offset")
+    void testSkipAndRandomAccess() {
+        UnityBinaryReader reader = new UnityBinaryReader(UnityBinaryWriter.encode(SAMPLE));
+
+        List<Integer> itemOffsets = new ArrayList<>();
+        List<String> visited = new ArrayList<>();
+        UnityBinaryReader.Cursor cursor = reader.cursor();
+        for (UnityEventType type = cursor.next(); type != null; type = cursor.next()) {
+            if (type == UnityEventType.START_ELEMENT) {
+                visited.add(cursor.getName());
+                if (cursor.getName().equals("item")) {
+                    itemOffsets.add(cursor.getOffset());
+                    cursor.skipElement();
+                }
+            }
+        }
+        assertEquals(List.of("catalog", "item", "item", "note"), visited);
+
+        int second = itemOffsets.get(1);
+        assertEquals("item", reader.getElementName(second));
+        UnityTextWriter writer = new UnityTextWriter();
+        reader.accept(second, writer);
+        assertEquals("[\"item\",{\"id\":\"a2\",\"price\":1e3,\"stock\":false},null,-0,12345678901234567890]",
+                writer.toString());
+
+        // The first item ends where the second starts
+        assertEquals(second, reader.getElementEnd(itemOffsets.get(0)));
+        assertThrows(IllegalArgumentException.class, () -> reader.cursor(second + 1));
+    }
+
+    @Test
+    @DisplayName("Reader works on a slice of a larger buffer without copying")
+    void testByteBufferSlice() throws Exception {
+        UnityBinaryWriter writer = new UnityBinaryWriter();
+        new UnityEventReader(SAMPLE).accept(writer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{9, 9, 9});
+        writer.writeTo(out);
+        out.write(new byte[]{7, 7});
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        buffer.position(3).limit(buffer.capacity() - 2);
+        UnityBinaryReader reader = new UnityBinaryReader(buffer);
+
+        assertEquals(3, buffer.position());
+        assertEquals(new UnityBinaryReader(UnityBinaryWriter.encode(SAMPLE)).toText(), reader.toText());
+    }
+}
@@ -0,0 +1,120 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityByteLexer} and the byte overloads of {@link Unity#parse}.
+ */
+class UnityByteLexerTest {
+
+    private static final String[] DOCUMENTS = {
+            "[\"root\"]",
+            "[\"root\", {\"id\": -12.5e+3, \"ok\": true, \"none\": null}, \"text\", 0, [\"child\", false]]",
+            "[\"r\",\n  \"café 😀\",\n  [\"日本\", \"\\u00e9\\n\\\"\"],\n\t1E5, -0.25]",
+            "[\"1bad\", [\"ok\", {\"2x\": 1}, \"t\", {\"a\": 2}]]",
+            "[\"a\", \"😀\", {\"x\": 1}]",
+    };
+
+    private static List<String> tokens(org.antlr.v4.runtime.TokenSource source) {
+        List<String> tokens = new ArrayList<>();
+        for (Token token = source.nextToken(); ; token = source.nextToken()) {
+            tokens.add(token.getType() + " " + token.getText() + " " + token.getLine() + ":"
+                    + token.getCharPositionInLine());
+            if (token.getType() == Token.EOF) {
+                return tokens;
+            }
+        }
+    }
+
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // =========================================================================
+    // Equivalence with UnityLexer
+    // =========================================================================
+
+    @Test
+    @DisplayName("Tokens match UnityLexer's, with lines and columns in code points")
+    void testTokens() {
+        for (String document : DOCUMENTS) {
+            assertEquals(tokens(new UnityLexer(CharStreams.fromString(document))),
+                    tokens(new UnityByteLexer(utf8(document))), document);
+        }
+    }
+
+    @Test
+    @DisplayName("Parse results match parsing the decoded String")
+    void testParse() {
+        for (String document : DOCUMENTS) {
+            Unity.ParseResult expected = Unity.parse(document);
+            Unity.ParseResult actual = Unity.parse(document.getBytes(StandardCharsets.UTF_8));
+            assertEquals(expected.getErrors().toString(), actual.getErrors().toString(), document);
+            assertEquals(expected.getParseTree().toStringTree(), actual.getParseTree().toStringTree());
+            assertEquals(Unity.print(expected, PrintFormat.LOG), Unity.print(actual, PrintFormat.LOG));
+        }
+    }
+
+    @Test
+    @DisplayName("Buffers are read from position to limit without moving them")
+    void testBufferRange() {
+        byte[] bytes = "xx[\"a\", 1]yy".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        buffer.position(2).limit(bytes.length - 2);
+        Unity.ParseResult result = Unity.parse(buffer);
+        assertTrue(result.isValid(), () -> result.getErrors().toString());
+        assertEquals(2, buffer.position());
+        Token number = result.getParseTree().unityElement().elementContent(0).getStart();
+        assertEquals(1, result.getNumber(number).longValue());
+        assertEquals(6, number.getStartIndex());
+    }
+
+    // =========================================================================
+    // Errors
+    // =========================================================================
+
+    @Test
+    @DisplayName("Lexical errors are syntax errors at the right position")
+    void testLexicalErrors() {
+        for (String document : new String[]{"[\"a\", tru]", "[\"a\", 01x]", "[\"a\", \"bad\\q\"]",
+                "[\"a\",\n  \"tab\there\"]", "[\"a\", \"open]", "[\"a\", 1.]", "[\"a\", @]"}) {
+            Unity.ParseResult expected = Unity.parse(document);
+            Unity.ParseResult actual = Unity.parse(document.getBytes(StandardCharsets.UTF_8));
+            assertFalse(actual.isValid(), document);
+            ValidationError first = actual.getErrors().get(0);
+            assertTrue(first.getMessage().startsWith("Syntax error: "), document);
+            assertEquals(expected.getErrors().get(0).getLine(), first.getLine(), document);
+            assertEquals(expected.getErrors().get(0).getColumn(), first.getColumn(), document);
+        }
+    }
+
+    @Test
+    @DisplayName("Ill-formed UTF-8 is a syntax error")
+    void testInvalidUtf8() {
+        byte[][] inputs = {
+                {'[', '"', 'a', (byte) 0xC3, '"', ']'},
+                {'[', '"', (byte) 0xC0, (byte) 0x80, '"', ']'},
+                {'[', '"', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '"', ']'},
+                {'[', '"', (byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80, '"', ']'},
+                {'[', '"', 'a', '"', ',', '\n', '"', (byte) 0xE2, (byte) 0x82, '"', ']'},
+        };
+        for (byte[] input : inputs) {
+            Unity.ParseResult result = Unity.parse(input);
+            assertFalse(result.isValid());
+            assertTrue(result.getErrors().get(0).getMessage().startsWith("Syntax error: token recognition error"));
+        }
+        ValidationError error = Unity.parse(inputs[4]).getErrors().get(0);
+        assertEquals(2, error.getLine());
+        assertEquals(0, error.getColumn());
+    }
+}
@@ -0,0 +1,240 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the content-hash keyed {@link UnityCache}.
+ */
+class UnityCacheTest {
+
+    private static String document(int i) {
+        return "[\"doc\", {\"id\": " + i + "}, \"text " + i + "\"]";
+    }
+
+    // =========================================================================
+    // Hits and Misses
+    // =========================================================================
+
+    @Test
+    @DisplayName("Repeated validation of the same text is a hit")
+    void testValidateHit() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+
+        assertTrue(cache.isValid("[\"x\"]"));
+        assertTrue(cache.isValid("[\"x\"]"));
+        assertFalse(cache.isValid("[\"1x\"]"));
+
+        UnityCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getEntryCount());
+    }
+
+    @Test
+    @DisplayName("Cached errors match an uncached parse")
+    void testCachedErrorsMatch() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+        String input = "[\"123elem\", {\"456attr\": \"value\"}]";
+
+        String expected = Unity.parse(input).getErrors().toString();
+        assertEquals(expected, cache.validate(input).toString());
+        assertEquals(expected, cache.validate(input).toString());
+        assertThrows(UnsupportedOperationException.class, () -> cache.validate(input).clear());
+    }
+
+    @Test
+    @DisplayName("Full results are shared between callers")
+    void testParseResultShared() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+
+        Unity.ParseResult first = cache.parse("[\"x\", \"hello\"]");
+        Unity.ParseResult second = cache.parse("[\"x\", \"hello\"]");
+        assertSame(first, second);
+        assertEquals(Unity.print(Unity.parse("[\"x\", \"hello\"]")), Unity.print(second));
+    }
+
+    @Test
+    @DisplayName("A cached full result answers a verdict query")
+    void testResultAnswersVerdict() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+
+        cache.parse("[\"x\"]");
+        assertTrue(cache.isValid("[\"x\"]"));
+        assertEquals(1, cache.getStats().getHitCount());
+    }
+
+    @Test
+    @DisplayName("Texts that differ by one character get different entries")
+    void testDistinctKeys() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+
+        assertTrue(cache.isValid("[\"ab\"]"));
+        assertFalse(cache.isValid("[\"1b\"]"));
+        assertTrue(cache.isValid("[\"ba\"]"));
+        assertEquals(0, cache.getStats().getHitCount());
+    }
+
+    // =========================================================================
+    // Eviction
+    // =========================================================================
+
+    @Test
+    @DisplayName("Entry count is bounded")
+    void testEntryBound() {
+        UnityCache cache = new UnityCache(10, 1 << 20, 1);
+
+        for (int i = 0; i < 100; i++) {
+            // Newcomers are admitted once requested more often than the eviction candidate
+            for (int n = 0; n < 3; n++) {
+                cache.isValid(document(i));
+            }
+        }
+
+        UnityCache.Stats stats = cache.getStats();
+        assertEquals(10, stats.getEntryCount());
+        assertTrue(stats.getEvictionCount() > 0);
+    }
+
+    @Test
+    @DisplayName("A small cache holds as many documents as its bound")
+    void testSmallCacheCapacity() {
+        UnityCache cache = new UnityCache(64, 1 << 20);
+
+        for (int i = 0; i < 64; i++) {
+            cache.isValid(document(i));
+        }
+        for (int i = 0; i < 64; i++) {
+            cache.isValid(document(i));
+        }
+
+        UnityCache.Stats stats = cache.getStats();
+        assertEquals(64, stats.getHitCount());
+        assertEquals(64, stats.getEntryCount());
+        assertEquals(0, stats.getEvictionCount() + stats.getRejectionCount());
+    }
+
+    @Test
+    @DisplayName("Estimated bytes are bounded")
+    void testByteBound() {
+        long maxBytes = 64 * 1024;
+        UnityCache cache = new UnityCache(1000, maxBytes, 1);
+
+        for (int i = 0; i < 200; i++) {
+            // Newcomers are admitted once requested more often than the eviction candidate
+            for (int n = 0; n < 3; n++) {
+                cache.parse(document(i));
+            }
+        }
+
+        UnityCache.Stats stats = cache.getStats();
+        assertTrue(stats.getEstimatedBytes() <= maxBytes, stats::toString);
+        assertTrue(stats.getEntryCount() < 200);
+        assertTrue(stats.getEvictionCount() > 0);
+    }
+
+    @Test
+    @DisplayName("The byte budget is shared by the stripes")
+    void testDocumentLargerThanStripeShare() {
+        // 16 stripes; each document's estimate is well over a sixteenth of the budget
+        long maxBytes = 1 << 20;
+        UnityCache cache = new UnityCache(1024, maxBytes);
+        String first = "[\"doc\", \"" + "x".repeat(16_000) + "\"]";
+        String second = "[\"doc\", \"" + "y".repeat(16_000) + "\"]";
+
+        for (int i = 0; i < 5; i++) {
+            cache.parse(first);
+        }
+        UnityCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getEntryCount(), stats::toString);
+        assertEquals(4, stats.getHitCount());
+        assertEquals(0, stats.getRejectionCount());
+
+        // The two do not fit together, so the newcomer evicts the older one from its stripe
+        cache.parse(second);
+        cache.parse(second);
+        stats = cache.getStats();
+        assertEquals(1, stats.getEntryCount(), stats::toString);
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(5, stats.getHitCount());
+        assertTrue(stats.getEstimatedBytes() <= maxBytes, stats::toString);
+
+        // Nothing is cached that would not fit the whole budget
+        cache.parse("[\"doc\", \"" + "z".repeat(40_000) + "\"]");
+        assertEquals(1, cache.getStats().getRejectionCount());
+    }
+
+    @Test
+    @DisplayName("Frequently used entries survive a scan of one-off documents")
+    void testFrequencyAdmission() {
+        UnityCache cache = new UnityCache(4, 1 << 20, 1);
+        String hot = "[\"hot\"]";
+
+        for (int i = 0; i < 10; i++) {
+            cache.isValid(hot);
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.isValid(document(i));
+            if (i % 50 == 0) {
+                cache.isValid(hot);
+            }
+        }
+
+        long hitsBefore = cache.getStats().getHitCount();
+        cache.isValid(hot);
+        assertEquals(hitsBefore + 1, cache.getStats().getHitCount());
+        assertTrue(cache.getStats().getRejectionCount() > 0);
+    }
+
+    @Test
+    @DisplayName("Clear removes entries but keeps counters")
+    void testClear() {
+        UnityCache cache = new UnityCache(100, 1 << 20);
+        cache.isValid("[\"x\"]");
+        cache.clear();
+
+        assertEquals(0, cache.getStats().getEntryCount());
+        assertEquals(0, cache.getStats().getEstimatedBytes());
+        assertEquals(1, cache.getStats().getMissCount());
+    }
+
+    // =========================================================================
+    // Concurrency
+    // =========================================================================
+
+    @Test
+    @DisplayName("Concurrent callers see consistent verdicts and counters")
+    void testConcurrentAccess() throws Exception {
+        UnityCache cache = new UnityCache(64, 1 << 20);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        int n = i % 32;
+                        assertTrue(cache.isValid(document(n)));
+                        assertFalse(cache.isValid("[\"" + n + "bad\"]"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        UnityCache.Stats stats = cache.getStats();
+        assertEquals(8 * 500 * 2, stats.getHitCount() + stats.getMissCount());
+        assertTrue(stats.getHitRate() > 0.5);
+    }
+}
@@ -0,0 +1,145 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityCanonicalizer}.
+ */
+class UnityCanonicalizerTest {
+
+    private static String number(String text) {
+        StringBuilder sb = new StringBuilder();
+        UnityCanonicalizer.appendNumber(sb, text);
+        return sb.toString();
+    }
+
+    private static Map<String, byte[]> subtrees(String input) {
+        Map<String, byte[]> subtrees = new LinkedHashMap<>();
+        UnityCanonicalizer canonicalizer = new UnityCanonicalizer(null, subtrees::put);
+        new UnityEventReader(input).accept(canonicalizer);
+        canonicalizer.getDigest();
+        return subtrees;
+    }
+
+    // =========================================================================
+    // Canonical form
+    // =========================================================================
+
+    @Test
+    @DisplayName("Whitespace, attribute order and escapes are normalized")
+    void testCanonicalForm() {
+        assertEquals("[\"order\",{\"a\":null,\"id\":17,\"z\":true},[\"item\",\"é\\n\\\"\\u0001\"],false]",
+                UnityCanonicalizer.canonicalize(
+                        "[ \"order\" , {\"z\": true, \"id\": 17, \"a\": null},\n"
+                                + "  [\"item\", \"\\u00e9\\u000a\\\"\\u0001\"], false ]"));
+        assertEquals("[\"root\"]", UnityCanonicalizer.canonicalize("[\"root\", {}]"));
+        assertEquals("[\"r\",\"/ 😀 \\ud800\"]",
+                UnityCanonicalizer.canonicalize("[\"r\", \"\\/ \\ud83d\\ude00 \\uD800\"]"));
+    }
+
+    @Test
+    @DisplayName("Numbers with the same decimal value are written the same way")
+    void testNumbers() {
+        assertEquals("1.5", number("1.50"));
+        assertEquals("1.5", number("15E-1"));
+        assertEquals("1000", number("1E3"));
+        assertEquals("1000", number("1000.000"));
+        assertEquals("0", number("-0"));
+        assertEquals("0", number("0.0e10"));
+        assertEquals("-17", number("-17"));
+        assertEquals("0.0000001", number("1e-7"));
+        assertEquals("-2e-8", number("-0.00000002"));
+        assertEquals("100000000000000000000", number("1e20"));
+        assertEquals("1.5e21", number("15e20"));
+        assertEquals("1.2345678901234567890123e22", number("12345678901234567890123"));
+        assertEquals("1e99999999999", number("1e99999999999"));
+    }
+
+    @Test
+    @DisplayName("Canonical text is stable and parses back to itself")
+    void testIdempotent() {
+        String canonical = UnityCanonicalizer.canonicalize(
+                "[\"a\", {\"y\": 2.50, \"x\": \"\\t\"}, [\"b\", 1e-9, -0.0], \"c\"]");
+        assertTrue(Unity.parse(canonical).isValid());
+        assertEquals(canonical, UnityCanonicalizer.canonicalize(canonical));
+    }
+
+    @Test
+    @DisplayName("Invalid documents are rejected")
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> UnityCanonicalizer.canonicalize("[\"1a\"]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityCanonicalizer.digest("[\"a\", tru]"));
+        assertThrows(IllegalStateException.class, () -> new UnityCanonicalizer().getDigest());
+    }
+
+    // =========================================================================
+    // Digests
+    // =========================================================================
+
+    @Test
+    @DisplayName("Equivalent documents have the same digest, others do not")
+    void testDigest() throws Exception {
+        byte[] digest = UnityCanonicalizer.digest("[\"a\", {\"x\": 1, \"y\": \"é\"}, [\"b\", 1.0]]");
+        assertArrayEquals(digest, UnityCanonicalizer.digest("[\"a\",{\"y\":\"\\u00e9\",\"x\":1e0},[\"b\",1]]"));
+        assertFalse(MessageDigest.isEqual(digest, UnityCanonicalizer.digest("[\"a\", {\"x\": 1, \"y\": \"é\"}, [\"b\", 2]]")));
+        assertFalse(MessageDigest.isEqual(digest, UnityCanonicalizer.digest("[\"a\", {\"x\": 1, \"y\": \"é\"}, \"b\", 1]")));
+
+        // A leaf element's digest is the SHA-256 of its canonical text
+        String leaf = "[\"b\",{\"k\":\"v\"},1,\"t\"]";
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(leaf.getBytes(StandardCharsets.UTF_8)),
+                UnityCanonicalizer.digest(leaf));
+    }
+
+    @Test
+    @DisplayName("Subtree digests are reported by path and do not depend on position")
+    void testSubtrees() {
+        Map<String, byte[]> subtrees = subtrees(
+                "[\"order\", [\"item\", 1], [\"note\", \"x\"], [\"item\", 2, [\"part\", \"p\"]], [\"item\", 1]]");
+        assertEquals(List.of("/order/item[1]", "/order/note[1]", "/order/item[2]/part[1]",
+                "/order/item[2]", "/order/item[3]", "/order"), List.copyOf(subtrees.keySet()));
+        assertArrayEquals(subtrees.get("/order/item[1]"), subtrees.get("/order/item[3]"));
+        assertArrayEquals(UnityCanonicalizer.digest("[\"part\", \"p\"]"), subtrees.get("/order/item[2]/part[1]"));
+        assertArrayEquals(UnityCanonicalizer.digest(
+                "[\"order\", [\"item\", 1], [\"note\", \"x\"], [\"item\", 2, [\"part\", \"p\"]], [\"item\", 1]]"),
+                subtrees.get("/order"));
+
+        // Only the changed subtree and its ancestors change
+        Map<String, byte[]> changed = subtrees(
+                "[\"order\", [\"item\", 1], [\"note\", \"y\"], [\"item\", 2, [\"part\", \"p\"]], [\"item\", 1]]");
+        for (String path : subtrees.keySet()) {
+            boolean same = MessageDigest.isEqual(subtrees.get(path), changed.get(path));
+            assertEquals(!path.equals("/order/note[1]") && !path.equals("/order"), same, path);
+        }
+    }
+
+    @Test
+    @DisplayName("Streamed canonical text matches canonicalize, however long")
+    void testStreaming() {
+        StringBuilder input = new StringBuilder("[\"big\", {\"b\": 2, \"a\": 1}");
+        for (int i = 0; i < 5000; i++) {
+            input.append(", \"value ").append(i).append("\", ").append(i).append(".0");
+            if (i % 100 == 0) {
+                input.append(", [\"child\", ").append(i).append("]");
+            }
+        }
+        String document = input.append("]").toString();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UnityCanonicalizer canonicalizer = new UnityCanonicalizer(out, null);
+        new UnityEventReader(new StringReader(document)).accept(canonicalizer);
+        String canonical = out.toString(StandardCharsets.UTF_8);
+        assertEquals(UnityCanonicalizer.canonicalize(document), canonical);
+        assertTrue(canonical.startsWith("[\"big\",{\"a\":1,\"b\":2},\"value 0\",0,[\"child\",0]"));
+        assertArrayEquals(UnityCanonicalizer.digest(canonical), canonicalizer.getDigest());
+    }
+}
@@ -0,0 +1,165 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityCli}.
+ */
+class UnityCliTest {
+
+    private static final String VALID = "[\"order\", {\"id\": 17}, [\"item\", \"A-1\"], 2.5]";
+    private static final String INVALID = "[\"order\", [\"1item\"],\n [\"ok\", {\"2x\": 1}]]";
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private int run(String... args) {
+        return UnityCli.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String out() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private String err() {
+        return err.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Path write(Path file, String content) throws Exception {
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+
+    // =========================================================================
+    // Validate
+    // =========================================================================
+
+    @Test
+    @DisplayName("Directories are searched recursively and errors reported per file")
+    void testValidateDirectory(@TempDir Path dir) throws Exception {
+        write(dir.resolve("a.unity"), VALID);
+        Path bad = write(dir.resolve("sub/b.unity"), INVALID);
+        write(dir.resolve("sub/skipped.txt"), INVALID);
+
+        assertEquals(1, run("validate", "-j", "3", dir.toString()));
+        String[] lines = out().split("\n");
+        assertEquals(2, lines.length, out());
+        assertTrue(lines[0].startsWith(bad + ":1:11: "), lines[0]);
+        assertTrue(lines[1].startsWith(bad + ":2:9: "), lines[1]);
+        assertTrue(err().startsWith("2 files (1 valid, 1 with errors)"), err());
+        assertTrue(err().contains("files/s") && err().contains("MB/s") && err().contains("p99"));
+    }
+
+    @Test
+    @DisplayName("JSON reports carry the fields of ValidationError")
+    void testJsonReport(@TempDir Path dir) throws Exception {
+        Path bad = write(dir.resolve("b.unity"), INVALID);
+        assertEquals(1, run("validate", "--errors", "json", "--mmap-threshold", "0", bad.toString()));
+
+        Unity.ParseResult expected = Unity.parse(INVALID);
+        String[] lines = out().split("\n");
+        assertEquals(expected.getErrors().size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(UnityCli.toJson(bad, expected.getErrors().get(i)), lines[i]);
+        }
+        assertTrue(lines[0].startsWith("{\"file\":\"" + bad.toString().replace("\\", "\\\\")
+                + "\",\"line\":1,\"column\":11,\"path\":"), lines[0]);
+        assertTrue(err().startsWith("{\"files\":1,\"valid\":0,\"invalid\":1,"), err());
+    }
+
+    @Test
+    @DisplayName("Globs select files below the directory before the first wildcard")
+    void testGlob(@TempDir Path dir) throws Exception {
+        write(dir.resolve("x/one.unity"), VALID);
+        write(dir.resolve("x/y/two.unity"), VALID);
+        write(dir.resolve("x/y/three.other"), INVALID);
+
+        assertEquals(0, run("validate", "-q", dir + "/x/**.unity"));
+        assertEquals("", err());
+        assertEquals(0, run("validate", dir + "/x/*/*.unity", dir + "/x/y"));
+        assertTrue(err().startsWith("1 files (1 valid, 0 with errors)"), err());
+    }
+
+    @Test
+    @DisplayName("Unreadable inputs and bad arguments are reported")
+    void testFailures(@TempDir Path dir) throws Exception {
+        assertEquals(2, run("validate", dir.resolve("missing.unity").toString()));
+        assertEquals(2, run("check", dir.toString()));
+        assertEquals(2, run("validate", "-j", "0", dir.toString()));
+        assertEquals(2, run("print", "--to", "binary", dir.toString()));
+        assertTrue(err().contains(UnityCli.USAGE));
+        assertEquals(0, run("validate", "-q", dir.toString()));
+        assertEquals(0, run("validate", "-q", "--warm-up", dir.toString()));
+    }
+
+    @Test
+    @DisplayName("A file that fails to process is reported and the run goes on")
+    void testWorkerFailure(@TempDir Path dir) throws Exception {
+        // Deep enough to overflow the recursive parser's stack
+        Path deep = write(dir.resolve("a.unity"), "[\"a\", ".repeat(200_000) + "1" + "]".repeat(200_000));
+        write(dir.resolve("b.unity"), VALID);
+
+        assertEquals(1, run("validate", "-j", "2", dir.toString()));
+        assertTrue(out().startsWith(deep + ":0:0: Failed to process file: java.lang.StackOverflowError"), out());
+        assertTrue(err().startsWith("2 files (1 valid, 1 with errors)"), err());
+    }
+
+    // =========================================================================
+    // Print and convert
+    // =========================================================================
+
+    @Test
+    @DisplayName("Printed trees come out in input order, errors go to standard error")
+    void testPrint(@TempDir Path dir) throws Exception {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            String document = "[\"doc\", {\"n\": " + i + "}]";
+            Path file = write(dir.resolve(String.format("d%02d.unity", i)), document);
+            expected.append("==> ").append(file).append(" <==\n")
+                    .append(Unity.print(Unity.parse(document), PrintFormat.LISP));
+        }
+        Path bad = write(dir.resolve("z.unity"), INVALID);
+
+        assertEquals(1, run("print", "--format", "lisp", "-j", "4", "-q", dir.toString()));
+        assertEquals(expected.toString(), out());
+        assertTrue(err().startsWith(bad + ":1:11: "), err());
+    }
+
+    @Test
+    @DisplayName("Converting to binary and back gives the compact text")
+    void testConvert(@TempDir Path dir) throws Exception {
+        write(dir.resolve("in/a/order.unity"), VALID);
+        Path bad = write(dir.resolve("in/bad.unity"), INVALID);
+        Path binaries = dir.resolve("bin");
+        Path texts = dir.resolve("text");
+
+        assertEquals(1, run("convert", "-q", "-o", binaries.toString(), dir.resolve("in").toString()));
+        Path binary = binaries.resolve("a/order" + UnityCli.BINARY_EXTENSION);
+        assertArrayEquals(UnityBinaryWriter.encode(VALID), Files.readAllBytes(binary));
+        assertFalse(Files.exists(binaries.resolve("bad" + UnityCli.BINARY_EXTENSION)));
+        // Every validation error of the single pass is reported
+        String[] lines = out().split("\n");
+        assertEquals(2, lines.length, out());
+        assertTrue(lines[0].startsWith(bad + ":1:11: "), lines[0]);
+        assertTrue(lines[1].startsWith(bad + ":2:9: "), lines[1]);
+
+        assertEquals(0, run("convert", "-q", "--include", "*.unityb", "-o", texts.toString(), binaries.toString()));
+        UnityTextWriter compact = new UnityTextWriter();
+        new UnityEventReader(VALID).accept(compact);
+        assertEquals(compact.toString(), Files.readString(texts.resolve("a/order.unity")));
+
+        // Converting in place must not overwrite the input
+        assertEquals(1, run("convert", "-q", "--to", "text", texts.resolve("a/order.unity").toString()));
+    }
+}
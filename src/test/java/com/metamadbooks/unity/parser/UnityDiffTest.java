@@ -0,0 +1,191 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityDiff}.
+ */
+class UnityDiffTest {
+
+    /**
+     * Diffs two documents, checks that the edits and their script both patch the first
+     * into the second, and returns the edits.
+     */
+    private static List<UnityDiff.Edit> roundTrip(String from, String to) {
+        List<UnityDiff.Edit> edits = UnityDiff.diff(from, to);
+        String expected = UnityCanonicalizer.canonicalize(to);
+        assertEquals(expected, UnityDiff.apply(from, edits));
+        String script = UnityDiff.toScript(edits);
+        assertTrue(Unity.parse(script).isValid(), script);
+        assertEquals(expected, UnityDiff.apply(from, UnityDiff.parseScript(script)));
+        return edits;
+    }
+
+    private static long count(List<UnityDiff.Edit> edits, UnityDiff.EditType type) {
+        return edits.stream().filter(edit -> edit.getType() == type).count();
+    }
+
+    private static String list(List<Integer> items) {
+        StringBuilder sb = new StringBuilder("[\"list\"");
+        for (int item : items) {
+            sb.append(", [\"item\", {\"n\": ").append(item).append("}, \"text ").append(item).append("\"]");
+        }
+        return sb.append("]").toString();
+    }
+
+    // =========================================================================
+    // Edits
+    // =========================================================================
+
+    @Test
+    @DisplayName("Equivalent documents have no differences")
+    void testIdentical() {
+        assertTrue(UnityDiff.diff("[\"a\", {\"x\": 1, \"y\": 2}, \"t\"]",
+                "[\"a\",{\"y\":2.0,\"x\":1},\"t\"]").isEmpty());
+        assertEquals("[\"patch\"]", UnityDiff.toScript(List.of()));
+    }
+
+    @Test
+    @DisplayName("Attribute changes become set and unset edits")
+    void testAttributes() {
+        List<UnityDiff.Edit> edits = roundTrip(
+                "[\"order\", {\"id\": 17, \"rush\": true, \"status\": \"open\"}, [\"item\", {\"sku\": \"A\"}]]",
+                "[\"order\", {\"id\": 17, \"status\": \"closed\", \"to\": null}, [\"item\", {\"sku\": \"A\"}]]");
+        assertEquals("[\"unset\",{\"name\":\"rush\",\"path\":\"/0\"}]", edits.get(0).toString());
+        assertEquals("[\"set\",{\"name\":\"status\",\"path\":\"/0\"},\"closed\"]", edits.get(1).toString());
+        assertEquals("[\"set\",{\"name\":\"to\",\"path\":\"/0\"},null]", edits.get(2).toString());
+        assertEquals(3, edits.size());
+    }
+
+    @Test
+    @DisplayName("Changed values and nested changes are found in place")
+    void testNested() {
+        List<UnityDiff.Edit> edits = roundTrip(
+                "[\"doc\", [\"a\", \"one\"], [\"b\", [\"c\", {\"k\": 1}, \"two\", 3]], [\"d\"]]",
+                "[\"doc\", [\"a\", \"one\"], [\"b\", [\"c\", {\"k\": 2}, \"two\", 4]], [\"d\"]]");
+        assertEquals(2, edits.size());
+        assertEquals(UnityDiff.EditType.SET, edits.get(0).getType());
+        assertEquals("/0/1/0", edits.get(0).getPath());
+        assertEquals("2", edits.get(0).getValue());
+        assertEquals(UnityDiff.EditType.REPLACE, edits.get(1).getType());
+        assertEquals("/0/1/0", edits.get(1).getPath());
+        assertEquals(1, edits.get(1).getIndex());
+        assertEquals("4", edits.get(1).getValue());
+    }
+
+    @Test
+    @DisplayName("Added and removed content becomes insert and remove edits")
+    void testInsertRemove() {
+        List<UnityDiff.Edit> edits = roundTrip(
+                "[\"list\", \"a\", [\"x\", 1], \"b\", \"c\", [\"y\"]]",
+                "[\"list\", \"a\", \"b\", [\"z\", [\"w\", true]], \"c\", [\"y\"], 5]");
+        assertEquals(1, count(edits, UnityDiff.EditType.REMOVE));
+        assertEquals(2, count(edits, UnityDiff.EditType.INSERT));
+        assertEquals(3, edits.size());
+        roundTrip("[\"e\"]", "[\"e\", {\"a\": 1}, [\"f\"], \"g\"]");
+        roundTrip("[\"e\", {\"a\": 1}, [\"f\"], \"g\"]", "[\"e\"]");
+    }
+
+    @Test
+    @DisplayName("Reordered children are moved, not rewritten")
+    void testMoves() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(i);
+        }
+        List<Integer> reordered = new ArrayList<>(items);
+        reordered.add(3, reordered.remove(15));
+        reordered.add(reordered.remove(0));
+        List<UnityDiff.Edit> edits = roundTrip(list(items), list(reordered));
+        assertEquals(2, edits.size());
+        assertEquals(2, count(edits, UnityDiff.EditType.MOVE));
+
+        List<Integer> reversed = new ArrayList<>(items);
+        Collections.reverse(reversed);
+        assertEquals(19, count(roundTrip(list(items), list(reversed)), UnityDiff.EditType.MOVE));
+    }
+
+    @Test
+    @DisplayName("Random edits of a document are patched exactly")
+    void testRandom() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> from = new ArrayList<>();
+            for (int i = random.nextInt(12); i > 0; i--) {
+                from.add(random.nextInt(8));
+            }
+            List<Integer> to = new ArrayList<>(from);
+            for (int i = random.nextInt(5); i > 0; i--) {
+                int op = random.nextInt(3);
+                if (op == 0 || to.isEmpty()) {
+                    to.add(random.nextInt(to.size() + 1), random.nextInt(8));
+                } else if (op == 1) {
+                    to.remove(random.nextInt(to.size()));
+                } else {
+                    to.add(random.nextInt(to.size()), to.remove(random.nextInt(to.size())));
+                }
+            }
+            roundTrip(list(from), list(to));
+            roundTrip("[\"doc\", " + list(from) + ", \"t\"]", "[\"doc\", " + list(to) + "]");
+        }
+    }
+
+    @Test
+    @DisplayName("A small change to a large document gives a small script")
+    void testLarge() {
+        StringBuilder from = new StringBuilder("[\"catalog\"");
+        StringBuilder to = new StringBuilder("[\"catalog\"");
+        for (int i = 0; i < 2000; i++) {
+            String product = "[\"product\", {\"id\": " + i + "}, [\"name\", \"Product " + i + "\"], [\"price\", 9.99]]";
+            from.append(", ").append(product);
+            if (i == 1234) {
+                to.append(", ").append(product.replace("9.99", "8.99"));
+            } else if (i != 500) {
+                to.append(", ").append(product);
+            }
+        }
+        List<UnityDiff.Edit> edits = roundTrip(from.append("]").toString(), to.append("]").toString());
+        assertEquals(2, edits.size());
+        assertEquals("[\"remove\",{\"index\":500,\"path\":\"/0\"}]", edits.get(0).toString());
+        assertEquals("[\"replace\",{\"index\":0,\"path\":\"/0/1233/1\"},8.99]", edits.get(1).toString());
+    }
+
+    @Test
+    @DisplayName("A renamed root replaces the whole document")
+    void testRoot() {
+        List<UnityDiff.Edit> edits = roundTrip("[\"a\", 1, 2]", "[\"b\", 1, 2]");
+        assertEquals(1, edits.size());
+        assertEquals("", edits.get(0).getPath());
+        assertEquals("[\"b\",1,2]", edits.get(0).getValue());
+    }
+
+    // =========================================================================
+    // Errors
+    // =========================================================================
+
+    @Test
+    @DisplayName("Invalid documents, scripts and edits are rejected")
+    void testErrors() {
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.diff("[\"a\"]", "[\"a\""));
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.parseScript("[\"edits\"]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.parseScript("[\"patch\", [\"swap\"]]"));
+        assertThrows(IllegalArgumentException.class,
+                () -> UnityDiff.parseScript("[\"patch\", [\"remove\", {\"index\": 0, \"path\": \"0\"}]]"));
+        assertThrows(IllegalArgumentException.class,
+                () -> UnityDiff.parseScript("[\"patch\", [\"set\", {\"name\": \"x\", \"path\": \"/0\"}]]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.apply("[\"a\", 1]",
+                UnityDiff.parseScript("[\"patch\", [\"remove\", {\"index\": 1, \"path\": \"/0\"}]]")));
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.apply("[\"a\", 1]",
+                UnityDiff.parseScript("[\"patch\", [\"unset\", {\"name\": \"x\", \"path\": \"/0\"}]]")));
+        assertThrows(IllegalArgumentException.class, () -> UnityDiff.apply("[\"a\", 1]",
+                UnityDiff.parseScript("[\"patch\", [\"replace\", {\"index\": 0, \"path\": \"\"}, 1]]")));
+    }
+}
@@ -0,0 +1,240 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for multi-document parsing with {@link UnityDocumentStream}.
+ */
+class UnityDocumentStreamTest {
+
+    private static InputStream utf8(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<UnityDocument> readAll(UnityDocumentStream stream) throws IOException {
+        try (stream) {
+            List<UnityDocument> documents = new ArrayList<>();
+            for (UnityDocument document : stream) {
+                documents.add(document);
+            }
+            return documents;
+        }
+    }
+
+    private static String lines(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            String name = i % 10 == 3 ? "9bad" : "item";
+            sb.append("[\"").append(name).append("\", {\"id\": ").append(i).append("}, \"text ").append(i).append("\"]\n");
+        }
+        return sb.toString();
+    }
+
+    // =========================================================================
+    // Framing
+    // =========================================================================
+
+    @Test
+    @DisplayName("Line framing yields one result per non-blank line with byte offsets")
+    void testLines() throws IOException {
+        String input = "[\"a\"]\n\n[\"1b\"]\r\n  [\"ü\", \"é\"]\n";
+        List<UnityDocument> documents = readAll(new UnityDocumentStream(utf8(input), UnityDocumentStream.Framing.LINES));
+
+        assertEquals(3, documents.size());
+        assertEquals(List.of(0L, 1L, 2L), documents.stream().map(UnityDocument::getIndex).collect(Collectors.toList()));
+        assertEquals(List.of(0L, 7L, 17L), documents.stream().map(UnityDocument::getByteOffset).collect(Collectors.toList()));
+        assertTrue(documents.get(0).isValid());
+        assertFalse(documents.get(1).isValid());
+        assertEquals("[\"1b\"]", documents.get(1).getText());
+        assertEquals("[\"ü\", \"é\"]", documents.get(2).getText());
+        assertTrue(documents.get(2).isValid());
+    }
+
+    @Test
+    @DisplayName("Concatenated framing splits at the outermost closing bracket")
+    void testConcatenated() throws IOException {
+        String input = "[\"a\", \"]\\\"[\"][\"b\",\n  [\"c\"]]  [\"d\", {\"k\": \"}\"}]";
+        List<UnityDocument> documents = readAll(new UnityDocumentStream(utf8(input), UnityDocumentStream.Framing.CONCATENATED));
+
+        assertEquals(3, documents.size());
+        assertEquals("[\"a\", \"]\\\"[\"]", documents.get(0).getText());
+        assertEquals("[\"b\",\n  [\"c\"]]", documents.get(1).getText());
+        assertEquals(input.indexOf("[\"d\""), documents.get(2).getByteOffset());
+        assertTrue(documents.stream().allMatch(UnityDocument::isValid));
+    }
+
+    @Test
+    @DisplayName("Stray tokens and unterminated documents are reported, not dropped")
+    void testMalformedConcatenated() throws IOException {
+        List<UnityDocument> documents = readAll(new UnityDocumentStream(
+                utf8("oops [\"a\"] [\"b\", "), UnityDocumentStream.Framing.CONCATENATED));
+
+        assertEquals(3, documents.size());
+        assertFalse(documents.get(0).isValid());
+        assertTrue(documents.get(1).isValid());
+        assertFalse(documents.get(2).isValid());
+    }
+
+    // =========================================================================
+    // Results
+    // =========================================================================
+
+    @Test
+    @DisplayName("Results match Unity.parse for every document")
+    void testMatchesUnityParse() throws IOException {
+        String input = lines(50);
+        String[] texts = input.split("\n");
+        List<UnityDocument> documents = readAll(new UnityDocumentStream(utf8(input), UnityDocumentStream.Framing.LINES));
+
+        assertEquals(texts.length, documents.size());
+        for (int i = 0; i < texts.length; i++) {
+            Unity.ParseResult expected = Unity.parse(texts[i]);
+            Unity.ParseResult actual = documents.get(i).getResult();
+            assertEquals(expected.getErrors().toString(), actual.getErrors().toString());
+            assertEquals(Unity.print(expected), Unity.print(actual));
+        }
+    }
+
+    @Test
+    @DisplayName("Pipelined stream returns documents in input order")
+    void testPipelinedOrder() throws IOException {
+        String input = lines(2000);
+        List<UnityDocument> sequential = readAll(new UnityDocumentStream(utf8(input), UnityDocumentStream.Framing.LINES));
+        List<UnityDocument> pipelined = readAll(new UnityDocumentStream(utf8(input), UnityDocumentStream.Framing.LINES, 4, 16));
+
+        assertEquals(sequential.size(), pipelined.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(i, pipelined.get(i).getIndex());
+            assertEquals(sequential.get(i).getByteOffset(), pipelined.get(i).getByteOffset());
+            assertEquals(sequential.get(i).getResult().getErrors().toString(),
+                    pipelined.get(i).getResult().getErrors().toString());
+        }
+        assertEquals(200, pipelined.stream().filter(d -> !d.isValid()).count());
+    }
+
+    @Test
+    @DisplayName("Pipelined reading stops while the consumer is behind")
+    void testBackpressure() throws Exception {
+        byte[] bytes = lines(1000).getBytes(StandardCharsets.UTF_8);
+        InputStream slowlyRead = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                // Hand out small chunks so the read position tracks documents closely
+                return super.read(b, off, Math.min(len, 64));
+            }
+        };
+        CountingStream counting = new CountingStream(slowlyRead);
+
+        try (UnityDocumentStream stream = new UnityDocumentStream(counting, UnityDocumentStream.Framing.LINES, 2, 8)) {
+            assertNotNull(stream.next());
+            Thread.sleep(200);
+            // Capacity 8 plus one document in the reader's hands, each under 64 bytes
+            assertTrue(counting.count < 20 * 64, "read " + counting.count + " bytes");
+        }
+    }
+
+    @Test
+    @DisplayName("Closing while the reader holds a document stops it quietly")
+    void testCloseWhileReading() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        Thread[] readerThread = new Thread[1];
+        InputStream blocked = new InputStream() {
+            private final byte[] line = "[\"late\"]\n".getBytes(StandardCharsets.UTF_8);
+            private boolean done = false;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (done) {
+                    return -1;
+                }
+                readerThread[0] = Thread.currentThread();
+                reading.countDown();
+                // Hand out the document only after close(), whatever the interrupts
+                while (closed.getCount() > 0) {
+                    try {
+                        closed.await();
+                    } catch (InterruptedException e) {
+                        // Keep waiting
+                    }
+                }
+                done = true;
+                System.arraycopy(line, 0, b, off, line.length);
+                return line.length;
+            }
+        };
+
+        List<Throwable> uncaught = new ArrayList<>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> uncaught.add(e));
+        try {
+            UnityDocumentStream stream = new UnityDocumentStream(blocked, UnityDocumentStream.Framing.LINES, 2, 8);
+            reading.await();
+            stream.close();
+            closed.countDown();
+            readerThread[0].join(5000);
+            assertFalse(readerThread[0].isAlive());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+        assertEquals(List.of(), uncaught);
+    }
+
+    @Test
+    @DisplayName("Files are read through open(Path)")
+    void testOpenPath(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("feed.ndjson");
+        Files.writeString(file, lines(25));
+
+        try (UnityDocumentStream stream = UnityDocumentStream.open(file, UnityDocumentStream.Framing.LINES)) {
+            assertEquals(25, stream.stream().count());
+        }
+    }
+
+    private static final class CountingStream extends InputStream {
+        private final InputStream delegate;
+        private volatile long count = 0;
+
+        CountingStream(InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
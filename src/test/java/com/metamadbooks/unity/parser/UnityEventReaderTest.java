@@ -0,0 +1,163 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the streaming {@link UnityEventReader}.
+ */
+class UnityEventReaderTest {
+
+    private static List<UnityEvent> events(UnityEventReader reader) {
+        List<UnityEvent> events = new ArrayList<>();
+        for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static List<ValidationError> errors(List<UnityEvent> events) {
+        return events.stream()
+                .filter(e -> e.getType() == UnityEventType.ERROR)
+                .map(UnityEvent::getError)
+                .collect(Collectors.toList());
+    }
+
+    // =========================================================================
+    // Events
+    // =========================================================================
+
+    @Test
+    @DisplayName("Events follow document order")
+    void testEventSequence() {
+        List<UnityEvent> events = events(new UnityEventReader(
+                "[\"root\", {\"id\": \"r\\\"1\", \"n\": 2}, \"text\", [\"child\", null, true], 3.5]"));
+
+        assertEquals("[START_ELEMENT(root), ATTRIBUTE(id=\"r\\\"1\"), ATTRIBUTE(n=2), VALUE(\"text\"), "
+                        + "START_ELEMENT(child), VALUE(null), VALUE(true), END_ELEMENT, VALUE(3.5), END_ELEMENT]",
+                events.toString());
+
+        UnityEvent id = events.get(1);
+        assertEquals("r\"1", id.getValue());
+        assertEquals(UnityValueType.STRING, id.getValueType());
+        assertEquals(UnityValueType.NUMBER, events.get(2).getValueType());
+        assertNull(events.get(5).getValue());
+        assertEquals(UnityValueType.BOOLEAN, events.get(6).getValueType());
+        assertEquals(2, events.get(4).getDepth());
+        assertEquals(1, events.get(8).getDepth());
+    }
+
+    @Test
+    @DisplayName("Events carry line and column")
+    void testPositions() {
+        List<UnityEvent> events = events(new UnityEventReader("[\n  \"x\",\n  [\"y\"]\n]"));
+
+        assertEquals(1, events.get(0).getLine());
+        assertEquals(0, events.get(0).getColumn());
+        assertEquals(3, events.get(1).getLine());
+        assertEquals(2, events.get(1).getColumn());
+        assertEquals(4, events.get(3).getLine());
+    }
+
+    @Test
+    @DisplayName("A Reader is consumed incrementally")
+    void testReaderInput() throws Exception {
+        Reader reader = new StringReader("[\"list\"" + ", [\"item\", \"value\"]".repeat(10_000) + "]") {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, 100));
+            }
+        };
+
+        int items = 0;
+        try (UnityEventReader events = new UnityEventReader(reader)) {
+            for (UnityEvent event = events.next(); event != null; event = events.next()) {
+                if (event.getType() == UnityEventType.START_ELEMENT && event.getName().equals("item")) {
+                    items++;
+                }
+            }
+            assertTrue(events.isValid());
+        }
+        assertEquals(10_000, items);
+    }
+
+    @Test
+    @DisplayName("Deeply nested documents do not use the call stack")
+    void testDeepNesting() {
+        int depth = 100_000;
+        String input = "[\"a\",".repeat(depth - 1) + "[\"a\"]" + "]".repeat(depth - 1);
+
+        int maxDepth = 0;
+        UnityEventReader reader = new UnityEventReader(input);
+        for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+            maxDepth = Math.max(maxDepth, event.getDepth());
+        }
+        assertTrue(reader.isValid());
+        assertEquals(depth, maxDepth);
+    }
+
+    // =========================================================================
+    // Errors
+    // =========================================================================
+
+    @Test
+    @DisplayName("Validation errors match Unity.parse")
+    void testValidationErrorsMatch() {
+        List<String> documents = List.of(
+                "[\"123elem\"]",
+                "[\"x\", [\"1y\", {\"2z\": 1}]]",
+                "[\"x\", {\"a\": 1, \"-b\": 2, \"c\": 3}]",
+                "[\"x\", \"text\", {\"a\": \"b\"}]",
+                "[\"x\", {}, {}]",
+                "[\"root\", [\"child\", \"t\"], {\"9\": 1}]");
+
+        for (String document : documents) {
+            List<ValidationError> actual = errors(events(new UnityEventReader(document)));
+            assertEquals(Unity.parse(document).getErrors().toString(), actual.toString(), document);
+        }
+    }
+
+    @Test
+    @DisplayName("The first syntax error ends the stream")
+    void testSyntaxError() {
+        List<UnityEvent> events = events(new UnityEventReader("[\"x\", [\"y\" \"z\"]]"));
+
+        UnityEvent last = events.get(events.size() - 1);
+        assertEquals(UnityEventType.ERROR, last.getType());
+        assertEquals("Syntax error: mismatched input '\"z\"' expecting {',', ']'}", last.getError().getMessage());
+        assertEquals(1, last.getLine());
+        assertEquals(11, last.getColumn());
+        assertEquals(1, errors(events).size());
+
+        assertEquals(1, errors(events(new UnityEventReader("[\"x\"] [\"y\"]"))).size());
+        assertEquals(1, errors(events(new UnityEventReader("[\"x\", @]"))).size());
+        assertFalse(errors(events(new UnityEventReader(""))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Lexical error columns count code points, as Unity.parse does")
+    void testLexerErrorColumns() {
+        for (String input : List.of("[\"a\", \"😀😀\", @]", "[\"a\", \"😀\",\n \"😀\", \"😀\" @]",
+                "[\"a\", \"" + "😀".repeat(300) + "\", @]", "😀 @")) {
+            ValidationError expected = Unity.parse(input).getErrors().get(0);
+            for (ValidationError actual : List.of(
+                    errors(events(new UnityEventReader(input))).get(0),
+                    Unity.parse(input.getBytes(StandardCharsets.UTF_8)).getErrors().get(0))) {
+                assertEquals(expected.getLine(), actual.getLine(), input);
+                assertEquals(expected.getColumn(), actual.getColumn(), input);
+            }
+        }
+        ValidationError error = errors(events(new UnityEventReader("[\"a\", \"😀😀\", @]"))).get(0);
+        assertEquals(1, error.getLine());
+        assertEquals(12, error.getColumn());
+    }
+}
@@ -0,0 +1,141 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityFormatter}.
+ */
+class UnityFormatterTest {
+
+    private static final String DOCUMENT = "[ \"order\" ,{\"id\":17, \"rush\" : true },\n"
+            + "\t[\"item\",{\"sku\":\"A-1 [x]\"},2,[\"part\" , \"\\\"q\\\" \\u00e9\\/\"]] ,\r\n"
+            + "  \"text é 😀\",  1.50E+3,-0.0 ,null,[\"empty\"]]";
+
+    private static final String MINIFIED = "[\"order\",{\"id\":17,\"rush\":true},"
+            + "[\"item\",{\"sku\":\"A-1 [x]\"},2,[\"part\",\"\\\"q\\\" \\u00e9\\/\"]],"
+            + "\"text é 😀\",1.50E+3,-0.0,null,[\"empty\"]]";
+
+    private static final String INDENTED = "[\"order\", {\"id\": 17, \"rush\": true},\n"
+            + "  [\"item\", {\"sku\": \"A-1 [x]\"}, 2,\n"
+            + "    [\"part\", \"\\\"q\\\" \\u00e9\\/\"]], \"text é 😀\", 1.50E+3, -0.0, null,\n"
+            + "  [\"empty\"]]\n";
+
+    /**
+     * Formats bytes read a few at a time, so that tokens are split across reads.
+     */
+    private static String formatInPieces(UnityFormatter formatter, String text, int piece) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        InputStream in = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() {
+                return position < bytes.length ? bytes[position++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position == bytes.length) {
+                    return -1;
+                }
+                int n = Math.min(Math.min(length, piece), bytes.length - position);
+                System.arraycopy(bytes, position, buffer, offset, n);
+                position += n;
+                return n;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.format(in, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // =========================================================================
+    // Formatting
+    // =========================================================================
+
+    @Test
+    @DisplayName("Minified output has no whitespace outside strings")
+    void testMinified() {
+        assertEquals(MINIFIED, UnityFormatter.minified().format(DOCUMENT));
+        assertEquals(MINIFIED, UnityFormatter.minified().format(INDENTED));
+        assertEquals(MINIFIED, UnityFormatter.minified().format(MINIFIED));
+    }
+
+    @Test
+    @DisplayName("Indented output puts child elements on their own lines")
+    void testIndented() {
+        assertEquals(INDENTED, UnityFormatter.indented(2).format(DOCUMENT));
+        assertEquals(INDENTED, UnityFormatter.indented(2).format(MINIFIED));
+        assertEquals("[\"a\",\n[\"b\",\n[\"c\"]]]\n", UnityFormatter.indented(0).format("[\"a\",[\"b\",[\"c\"]]]"));
+        // Brackets within attributes stay on the line
+        assertEquals("[\"a\", {\"b\": [1, [2]]},\n  [\"c\"]]\n",
+                UnityFormatter.indented(2).format("[\"a\",{\"b\":[1,[2]]},[\"c\"]]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityFormatter.indented(-1));
+    }
+
+    @Test
+    @DisplayName("Reformatted documents parse to the same content")
+    void testSameContent() {
+        String canonical = UnityCanonicalizer.canonicalize(DOCUMENT);
+        assertEquals(canonical, UnityCanonicalizer.canonicalize(UnityFormatter.minified().format(DOCUMENT)));
+        assertEquals(canonical, UnityCanonicalizer.canonicalize(UnityFormatter.indented(4).format(DOCUMENT)));
+        assertEquals(Unity.parse(DOCUMENT).getErrors().size(),
+                Unity.parse(UnityFormatter.indented(4).format(DOCUMENT)).getErrors().size());
+    }
+
+    @Test
+    @DisplayName("Several documents are written one per line")
+    void testSeveralDocuments() {
+        assertEquals("[\"a\",1]\n[\"b\"]\n\"s\"", UnityFormatter.minified().format(" [\"a\", 1] [\"b\"]\n\"s\" "));
+        assertEquals("[\"a\", 1]\n[\"b\"]\n", UnityFormatter.indented(2).format("[\"a\",1][\"b\"]"));
+        assertEquals("", UnityFormatter.indented(2).format(" \n"));
+    }
+
+    @Test
+    @DisplayName("Tokens split across reads are copied whole")
+    void testSplitReads() throws IOException {
+        for (int piece = 1; piece < 8; piece++) {
+            assertEquals(MINIFIED, formatInPieces(UnityFormatter.minified(), DOCUMENT, piece));
+            assertEquals(INDENTED, formatInPieces(UnityFormatter.indented(2), DOCUMENT, piece));
+        }
+
+        // Larger than the buffers, with a string longer than both
+        StringBuilder input = new StringBuilder("[\"catalog\", \"");
+        input.append("x\\\"".repeat(50_000)).append("\"");
+        for (int i = 0; i < 5_000; i++) {
+            input.append(",\n  [\"product\" , {\"id\" : ").append(i).append("}, [\"name\", \"Product ")
+                    .append(i).append("\"]]");
+        }
+        String large = input.append("]").toString();
+        String minified = UnityFormatter.minified().format(large);
+        assertEquals(minified, formatInPieces(UnityFormatter.minified(), large, 4093));
+        assertEquals(minified, UnityFormatter.minified().format(UnityFormatter.indented(3).format(large)));
+        assertEquals(UnityCanonicalizer.canonicalize(large), UnityCanonicalizer.canonicalize(minified));
+    }
+
+    // =========================================================================
+    // Errors
+    // =========================================================================
+
+    @Test
+    @DisplayName("Unbalanced brackets and unterminated strings are rejected")
+    void testErrors() {
+        UnityFormatter formatter = UnityFormatter.minified();
+        assertEquals("Unbalanced ']' at byte offset 5",
+                assertThrows(IllegalArgumentException.class, () -> formatter.format("[\"a\"]]")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> formatter.format("[\"a\", {\"b\": 1]]"));
+        assertThrows(IllegalArgumentException.class, () -> formatter.format("[\"a\", [1}]"));
+        assertThrows(IllegalArgumentException.class, () -> formatter.format("[\"a\""));
+        assertThrows(IllegalArgumentException.class, () -> formatter.format("[\"a\\\"]"));
+        // Stray tokens are copied, not checked
+        assertEquals("[\"a\",tru,1.2.3]", formatter.format("[\"a\", tru, 1.2.3]"));
+    }
+}
@@ -0,0 +1,203 @@
+package com.metamadbooks.unity.parser;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load-test client for {@link UnityServer} that reports request latency percentiles at a
+ * given concurrency.
+ * <p>
+ * Not a unit test; run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.metamadbooks.unity.parser.UnityLoadBenchmark \
+ *     -Dexec.args="[-c concurrency] [-n requests] [--url http://host:port/validate] [file]"
+ * </pre>
+ * Without {@code --url}, a server is started in the same JVM on a free local port, so
+ * nothing outside the process is involved. Every request posts the file, or a small
+ * built-in document. Each of the {@code concurrency} clients, on its own virtual thread,
+ * sends its requests one after the other, after a warm-up of as many requests again.
+ */
+public final class UnityLoadBenchmark {
+
+    private static final String DOCUMENT =
+            "[\"order\", {\"id\": 17, \"rush\": true}, [\"item\", {\"sku\": \"A-1\"}, 2], [\"note\", \"ok\"]]";
+
+    private UnityLoadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = 16;
+        int requests = 10_000;
+        URI uri = null;
+        byte[] body = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-c":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "-n":
+                    requests = Integer.parseInt(args[++i]);
+                    break;
+                case "--url":
+                    uri = URI.create(args[++i]);
+                    break;
+                default:
+                    body = Files.readAllBytes(Path.of(args[i]));
+            }
+        }
+
+        UnityServer server = null;
+        if (uri == null) {
+            server = UnityServer.start(new InetSocketAddress("localhost", 0), Integer.MAX_VALUE - 8,
+                    UnityServer.DEFAULT_MAX_DEPTH, true);
+            uri = URI.create("http://localhost:" + server.getAddress().getPort() + UnityServer.PATH);
+        }
+        try {
+            run(uri, body, concurrency, requests);
+            Result result = run(uri, body, concurrency, requests);
+            System.out.println(result);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Sends requests to a validation server and measures their latency.
+     *
+     * @param uri         the server's validation URI
+     * @param body        the request body
+     * @param concurrency the number of clients sending requests at the same time
+     * @param requests    the total number of requests
+     * @return the latencies and failures
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static Result run(URI uri, byte[] body, int concurrency, int requests) throws InterruptedException {
+        if (concurrency < 1 || requests < 1) {
+            throw new IllegalArgumentException("Concurrency and requests must be positive");
+        }
+        long[] nanos = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicLong invalid = new AtomicLong();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/unity")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        long start;
+        long elapsed;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder().executor(clients).build()) {
+            Future<?>[] futures = new Future<?>[concurrency];
+            start = System.nanoTime();
+            for (int c = 0; c < concurrency; c++) {
+                futures[c] = clients.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                failures.incrementAndGet();
+                            } else if (response.body().startsWith("{\"valid\":false")) {
+                                invalid.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                        nanos[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        return new Result(nanos, elapsed, concurrency, failures.get(), invalid.get());
+    }
+
+    /**
+     * Latencies and failures of a load test.
+     */
+    public static final class Result {
+        private final long[] sorted;
+        private final long elapsedNanos;
+        private final int concurrency;
+        private final int failures;
+        private final long invalid;
+
+        Result(long[] nanos, long elapsedNanos, int concurrency, int failures, long invalid) {
+            this.sorted = nanos.clone();
+            Arrays.sort(sorted);
+            this.elapsedNanos = elapsedNanos;
+            this.concurrency = concurrency;
+            this.failures = failures;
+            this.invalid = invalid;
+        }
+
+        public int getRequests() {
+            return sorted.length;
+        }
+
+        /**
+         * Returns the number of requests that failed or did not answer 200.
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns the number of answers reporting an invalid document.
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public double getRequestsPerSecond() {
+            return sorted.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Returns the latency at a percentile, in nanoseconds, by the nearest-rank method.
+         *
+         * @param percent the percentile, from 0 to 100
+         */
+        public long getLatency(double percent) {
+            int rank = (int) Math.ceil(percent / 100 * sorted.length);
+            return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d requests, concurrency %d, %d failed: %.0f requests/s,"
+                            + " latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                    sorted.length, concurrency, failures, getRequestsPerSecond(),
+                    getLatency(50) / 1e6, getLatency(90) / 1e6, getLatency(99) / 1e6,
+                    getLatency(99.9) / 1e6, getLatency(100) / 1e6);
+        }
+    }
+}
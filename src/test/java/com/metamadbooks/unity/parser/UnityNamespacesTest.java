@@ -0,0 +1,182 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityNamespaces} and {@link UnityQName}.
+ */
+class UnityNamespacesTest {
+
+    private static List<ValidationError> validate(UnityNamespaces namespaces, String input) {
+        return Unity.parse(input, UnityRuleSet.defaults().with(namespaces)).getErrors();
+    }
+
+    private static List<String> messages(String input) {
+        return validate(new UnityNamespaces(), input).stream().map(ValidationError::getMessage).toList();
+    }
+
+    // =========================================================================
+    // Names
+    // =========================================================================
+
+    @Test
+    @DisplayName("Names are interned per table")
+    void testInterning() {
+        UnityNamespaces namespaces = new UnityNamespaces();
+        UnityQName item = namespaces.qname("urn:shop", "item");
+        assertSame(item, namespaces.qname("urn:shop", new String("item")));
+        assertNotSame(item, namespaces.qname("urn:other", "item"));
+        assertNotSame(item, namespaces.qname("", "item"));
+        assertNotEquals(item, new UnityNamespaces().qname("urn:shop", "item"));
+        assertEquals("urn:shop", item.getNamespaceUri());
+        assertEquals("item", item.getLocalName());
+        assertEquals("{urn:shop}item", item.toString());
+        assertEquals("item", namespaces.qname("", "item").toString());
+    }
+
+    @Test
+    @DisplayName("Prefixes resolve through the bindings in scope")
+    void testScope() {
+        UnityNamespaces namespaces = new UnityNamespaces();
+        UnityNamespaces.Scope scope = namespaces.newScope();
+        scope.startElement();
+        assertTrue(scope.declare("xmlns", "urn:default"));
+        assertTrue(scope.declare("xmlns:s", "urn:shop"));
+        assertFalse(scope.declare("id", "17"));
+        assertSame(namespaces.qname("urn:default", "order"), scope.element("order"));
+        assertSame(namespaces.qname("urn:shop", "item"), scope.element("s:item"));
+        assertSame(namespaces.qname("", "id"), scope.attribute("id"));
+        assertSame(namespaces.qname("urn:shop", "id"), scope.attribute("s:id"));
+        assertSame(namespaces.qname(UnityNamespaces.XML_NAMESPACE, "lang"), scope.attribute("xml:lang"));
+        assertSame(namespaces.qname(UnityNamespaces.XMLNS_NAMESPACE, "s"), scope.attribute("xmlns:s"));
+        assertSame(namespaces.qname(UnityNamespaces.XMLNS_NAMESPACE, "xmlns"), scope.attribute("xmlns"));
+        assertNull(scope.element("t:item"));
+        assertNull(scope.element("a:b:c"));
+        assertNull(scope.attribute(":a"));
+
+        // An inner element rebinds and undeclares, until it ends
+        scope.startElement();
+        scope.declare("xmlns:s", "urn:store");
+        scope.declare("xmlns", "");
+        assertSame(namespaces.qname("urn:store", "item"), scope.element("s:item"));
+        assertSame(namespaces.qname("", "order"), scope.element("order"));
+        assertEquals("", scope.getNamespaceUri(""));
+        scope.endElement();
+        assertSame(namespaces.qname("urn:shop", "item"), scope.element("s:item"));
+        assertSame(namespaces.qname("urn:default", "order"), scope.element("order"));
+        scope.endElement();
+        assertNull(scope.element("s:item"));
+        assertNull(scope.getNamespaceUri("s"));
+
+        assertThrows(IllegalStateException.class, scope::endElement);
+        assertThrows(IllegalStateException.class, () -> scope.declare("xmlns:s", "urn:shop"));
+        scope.startElement();
+        assertThrows(IllegalArgumentException.class, () -> scope.declare("xmlns:s", ""));
+        assertThrows(IllegalArgumentException.class, () -> scope.declare("xmlns:xml", "urn:x"));
+        assertThrows(IllegalArgumentException.class, () -> scope.declare("xmlns:xmlns", "urn:x"));
+        assertThrows(IllegalArgumentException.class, () -> scope.declare("xmlns", UnityNamespaces.XMLNS_NAMESPACE));
+        assertTrue(scope.declare("xmlns:xml", UnityNamespaces.XML_NAMESPACE));
+    }
+
+    // =========================================================================
+    // Validation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Prefixed names are valid by default and checked when namespaces are added")
+    void testOptIn() {
+        assertTrue(Unity.isValid("[\"ns:element\"]"));
+        assertEquals(List.of("Undeclared namespace prefix 'ns' in element name 'ns:element'"),
+                messages("[\"ns:element\"]"));
+        assertEquals(List.of(), messages("[\"ns:element\", {\"xmlns:ns\": \"http://example.com\"}]"));
+    }
+
+    @Test
+    @DisplayName("Declarations apply to their element and the elements within it")
+    void testDeclarations() {
+        assertEquals(List.of(), messages("[\"a:root\", {\"a:id\": 1, \"xmlns:a\": \"urn:a\"},"
+                + " [\"a:child\", {\"xmlns\": \"urn:d\"}, [\"plain\"]], [\"xml:x\", {\"xml:lang\": \"en\"}]]"));
+
+        List<ValidationError> errors = validate(new UnityNamespaces(), "[\"root\",\n"
+                + "  [\"p:inner\", {\"xmlns:p\": \"urn:p\"}, [\"p:deep\", {\"q:id\": 1}]],\n"
+                + "  [\"p:outer\"]]");
+        assertEquals(2, errors.size());
+        assertEquals("Undeclared namespace prefix 'q' in attribute name 'q:id'", errors.get(0).getMessage());
+        assertEquals("/root/p:inner/p:deep", errors.get(0).getPath());
+        assertEquals("Undeclared namespace prefix 'p' in element name 'p:outer'", errors.get(1).getMessage());
+        assertEquals("/root/p:outer", errors.get(1).getPath());
+        assertEquals(3, errors.get(1).getLine());
+        assertEquals(3, errors.get(1).getColumn());
+    }
+
+    @Test
+    @DisplayName("Resolved names are passed to a handler with the element's path")
+    void testHandler() {
+        List<String> seen = new ArrayList<>();
+        UnityNamespaces namespaces = new UnityNamespaces(new UnityNamespaces.Handler() {
+            @Override
+            public void element(UnityQName name, UnityRuleContext context) {
+                seen.add(context.getPath() + " " + name);
+            }
+
+            @Override
+            public void attribute(UnityQName name, UnityRuleContext context) {
+                seen.add(context.getPath() + " @" + name);
+            }
+        });
+        List<ValidationError> errors = validate(namespaces, "[\"s:order\", {\"id\": 1, \"xmlns:s\": \"urn:s\"},\n"
+                + "  [\"s:item\", {\"s:sku\": \"a\", \"t:qty\": 2}, \"text\"], [\"t:item\"]]");
+
+        assertEquals(List.of("/s:order {urn:s}order", "/s:order @id", "/s:order/s:item {urn:s}item",
+                "/s:order/s:item @{urn:s}sku"), seen);
+        assertEquals(2, errors.size());
+        assertEquals("Undeclared namespace prefix 't' in attribute name 't:qty'", errors.get(0).getMessage());
+        assertEquals(2, errors.get(0).getLine());
+        assertEquals(28, errors.get(0).getColumn());
+        assertEquals("/s:order/t:item", errors.get(1).getPath());
+        assertEquals(2, errors.get(1).getLine());
+        assertEquals(51, errors.get(1).getColumn());
+    }
+
+    @Test
+    @DisplayName("Invalid names and declarations are reported")
+    void testInvalid() {
+        assertEquals(List.of("Invalid element name 'a:b:c': must be a qualified name"),
+                messages("[\"a:b:c\", {\"xmlns:a\": \"urn:a\"}]"));
+        assertEquals(List.of("Namespace prefix 'a' cannot be undeclared",
+                        "Undeclared namespace prefix 'a' in element name 'a:x'"),
+                messages("[\"r\", {\"xmlns:a\": \"\"}, [\"a:x\"]]"));
+        assertEquals(List.of("The 'xmlns' prefix cannot be declared"),
+                messages("[\"r\", {\"xmlns:xmlns\": \"urn:x\"}]"));
+        assertEquals(List.of("The 'xml' prefix can only be bound to '" + UnityNamespaces.XML_NAMESPACE + "'"),
+                messages("[\"r\", {\"xmlns:xml\": \"urn:x\"}]"));
+        assertEquals(List.of("Only the 'xml' prefix can be bound to '" + UnityNamespaces.XML_NAMESPACE + "'"),
+                messages("[\"r\", {\"xmlns:x\": \"" + UnityNamespaces.XML_NAMESPACE + "\"}]"));
+        // Syntax errors stop the rule with the others
+        assertTrue(messages("[\"p:a\", [\"q:b\"").get(0).startsWith("Syntax error"));
+    }
+
+    @Test
+    @DisplayName("A shared table resolves names of all documents to the same objects")
+    void testShared() {
+        UnityNamespaces namespaces = new UnityNamespaces();
+        UnityRuleSet rules = UnityRuleSet.defaults().with(namespaces);
+        String document = "[\"s:order\", {\"xmlns:s\": \"urn:shop\"}, [\"s:item\"], [\"s:item\"]]";
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Unity.parse(document, rules).isValid());
+        }
+        assertTrue(Unity.parse("[\"t:order\", {\"xmlns:t\": \"urn:shop\"}, [\"t:item\"]]", rules).isValid());
+        assertFalse(Unity.parse("[\"s:order\"]", rules).isValid());
+
+        UnityNamespaces.Scope scope = namespaces.newScope();
+        scope.startElement();
+        scope.declare("xmlns:t", "urn:shop");
+        assertSame(namespaces.qname("urn:shop", "item"), scope.element("t:item"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityNumber} and typed number access on the event and document APIs.
+ */
+class UnityNumberTest {
+
+    // =========================================================================
+    // Classification
+    // =========================================================================
+
+    @Test
+    @DisplayName("Integers that fit in a long are LONG")
+    void testLong() {
+        UnityNumber number = UnityNumber.parse("-9223372036854775808");
+        assertEquals(UnityNumberType.LONG, number.getType());
+        assertEquals(Long.MIN_VALUE, number.longValue());
+        assertEquals(Long.MAX_VALUE, UnityNumber.parse("9223372036854775807").longValue());
+        assertEquals(0, UnityNumber.parse("0").longValue());
+        assertEquals(42, UnityNumber.parse("42").intValue());
+    }
+
+    @Test
+    @DisplayName("Fractions and exponents are DOUBLE")
+    void testDouble() {
+        UnityNumber number = UnityNumber.parse("23.75");
+        assertEquals(UnityNumberType.DOUBLE, number.getType());
+        assertEquals(23.75, number.doubleValue());
+        assertEquals(23, number.longValue());
+        assertEquals(UnityNumberType.DOUBLE, UnityNumber.parse("1e3").getType());
+        assertEquals(1000.0, UnityNumber.parse("1e3").doubleValue());
+        assertEquals(-0.0, UnityNumber.parse("-0.0").doubleValue());
+    }
+
+    @Test
+    @DisplayName("Numbers beyond long and double precision or range are BIG_DECIMAL")
+    void testBigDecimal() {
+        assertEquals(UnityNumberType.BIG_DECIMAL, UnityNumber.parse("9223372036854775808").getType());
+        assertEquals(UnityNumberType.BIG_DECIMAL, UnityNumber.parse("0.1234567890123456789").getType());
+        assertEquals(UnityNumberType.BIG_DECIMAL, UnityNumber.parse("1e400").getType());
+        assertEquals(UnityNumberType.BIG_DECIMAL, UnityNumber.parse("1e-400").getType());
+        assertEquals(new BigDecimal("1e400"), UnityNumber.parse("1e400").bigDecimalValue());
+        assertEquals(Double.POSITIVE_INFINITY, UnityNumber.parse("1e400").doubleValue());
+    }
+
+    @Test
+    @DisplayName("BigDecimal values are exact and keep the written scale")
+    void testBigDecimalValues() {
+        for (String text : new String[]{"1.50", "0.05", "-12.3400", "1e3", "2.5E-7", "123456789012345678e5", "0"}) {
+            assertEquals(new BigDecimal(text), UnityNumber.parse(text).bigDecimalValue(), text);
+        }
+        UnityNumber number = UnityNumber.parse("3.25");
+        assertSame(number.bigDecimalValue(), number.bigDecimalValue());
+    }
+
+    @Test
+    @DisplayName("Double conversion matches Double.parseDouble")
+    void testDoubleRounding() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            String text;
+            switch (i % 4) {
+                case 0:
+                    text = Double.toString(random.nextDouble() * 1000);
+                    break;
+                case 1:
+                    text = Double.toString(Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+                    break;
+                case 2:
+                    text = (random.nextInt(2000000) - 1000000) + "." + random.nextInt(1000);
+                    break;
+                default:
+                    text = random.nextInt(100000) + "e" + (random.nextInt(60) - 30);
+            }
+            assertEquals(Double.parseDouble(text), UnityNumber.parse(text).doubleValue(), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Malformed numbers are rejected")
+    void testMalformed() {
+        for (String text : new String[]{"", "-", "01", "1.", ".5", "1e", "1e+", "+1", "1x", "NaN"}) {
+            assertThrows(NumberFormatException.class, () -> UnityNumber.parse(text), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Numbers are parsed from part of a character sequence")
+    void testRange() {
+        StringBuilder text = new StringBuilder("[\"t\", 17.5]");
+        assertEquals(17.5, UnityNumber.parse(text, 6, 10).doubleValue());
+    }
+
+    // =========================================================================
+    // Event and Document APIs
+    // =========================================================================
+
+    @Test
+    @DisplayName("Events expose typed number values")
+    void testEvents() {
+        UnityEventReader reader = new UnityEventReader("[\"m\", {\"n\": 3}, 2.5, \"x\"]");
+        assertEquals(UnityEventType.START_ELEMENT, reader.next().getType());
+        UnityEvent attribute = reader.next();
+        assertEquals(3, attribute.getNumber().longValue());
+        assertSame(attribute.getNumber(), attribute.getNumber());
+        assertEquals(2.5, reader.next().getNumber().doubleValue());
+        assertNull(reader.next().getNumber());
+    }
+
+    @Test
+    @DisplayName("Parse results expose typed number values of tokens")
+    void testParseResult() {
+        Unity.ParseResult result = Unity.parse("[\"😀\", 12, 0.5, 99999999999999999999]");
+        UnityParser.UnityElementContext root = result.getParseTree().unityElement();
+        UnityNumber first = result.getNumber(root.elementContent(0).primitiveValue().NUMBER().getSymbol());
+        UnityNumber second = result.getNumber(root.elementContent(1).primitiveValue().NUMBER().getSymbol());
+        UnityNumber third = result.getNumber(root.elementContent(2).primitiveValue().NUMBER().getSymbol());
+        assertEquals(12, first.longValue());
+        assertEquals(0.5, second.doubleValue());
+        assertEquals(new BigDecimal("99999999999999999999"), third.bigDecimalValue());
+
+        Unity.ParseResult ascii = Unity.parse("[\"a\", -7]");
+        assertEquals(-7, ascii.getNumber(ascii.getParseTree().unityElement().elementContent(0).getStart()).longValue());
+        assertThrows(IllegalArgumentException.class,
+                () -> ascii.getNumber(ascii.getParseTree().unityElement().elementName().getStart()));
+    }
+
+    @Test
+    @DisplayName("Binary cursors expose typed number values")
+    void testBinary() {
+        byte[] binary = UnityBinaryWriter.encode("[\"m\", 5, 1.25, 1.250]");
+        UnityBinaryReader.Cursor cursor = new UnityBinaryReader(binary).cursor();
+        cursor.next();
+        cursor.next();
+        assertEquals(UnityNumberType.LONG, cursor.getNumber().getType());
+        cursor.next();
+        assertEquals(new BigDecimal("1.25"), cursor.getNumber().bigDecimalValue());
+        cursor.next();
+        assertEquals(new BigDecimal("1.250"), cursor.getNumber().bigDecimalValue());
+    }
+}
@@ -0,0 +1,167 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityOffHeapStore}.
+ */
+class UnityOffHeapStoreTest {
+
+    private static final String ORDER =
+            "[\"order\", {\"id\": 17, \"status\": \"open\", \"rush\": true},"
+                    + " [\"item\", {\"sku\": \"A-1\"}, 2],"
+                    + " [\"item\", {\"sku\": \"B-2\"}, 1.5, null],"
+                    + " [\"note\", \"caf\\u00e9 \\ud83d\\ude00\"]]";
+
+    // =========================================================================
+    // Navigation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Cursor navigates elements, attributes and values")
+    void testNavigation() throws Exception {
+        try (UnityOffHeapStore store = UnityOffHeapStore.direct()) {
+            int id = store.add(ORDER);
+            UnityOffHeapStore.Cursor cursor = store.cursor().moveTo(id);
+
+            assertEquals(UnityEventType.START_ELEMENT, cursor.getType());
+            assertEquals("order", cursor.getName());
+            assertFalse(cursor.nextSibling());
+
+            assertTrue(cursor.firstChild());
+            assertEquals(UnityEventType.ATTRIBUTE, cursor.getType());
+            assertEquals("id", cursor.getName());
+            assertEquals(17, cursor.getNumber().longValue());
+
+            List<String> children = new ArrayList<>();
+            while (cursor.nextSibling()) {
+                children.add(cursor.getName());
+            }
+            assertEquals(List.of("status", "rush", "item", "item", "note"), children);
+            assertEquals("café 😀", cursor.firstChild() ? cursor.getValue() : null);
+            assertEquals(2, cursor.getDepth());
+
+            assertTrue(cursor.parent());
+            assertTrue(cursor.parent());
+            assertFalse(cursor.parent());
+            assertEquals("order", cursor.getName());
+        }
+    }
+
+    @Test
+    @DisplayName("Attributes are found by name and values keep their types")
+    void testAttributesAndValues() throws Exception {
+        try (UnityOffHeapStore store = UnityOffHeapStore.direct()) {
+            UnityOffHeapStore.Cursor cursor = store.cursor().moveTo(store.add(ORDER));
+            assertTrue(cursor.attribute("rush"));
+            assertTrue(cursor.getBooleanValue());
+            assertTrue(cursor.parent());
+            assertFalse(cursor.attribute("missing"));
+            assertFalse(cursor.attribute("sku"));
+
+            // Second item: attribute, number, null
+            cursor.firstChild();
+            while (!(cursor.getType() == UnityEventType.START_ELEMENT && cursor.attribute("sku")
+                    && "B-2".equals(cursor.getValue()))) {
+                if (cursor.getType() == UnityEventType.ATTRIBUTE && cursor.getDepth() == 2) {
+                    cursor.parent();
+                }
+                assertTrue(cursor.nextSibling());
+            }
+            assertTrue(cursor.nextSibling());
+            assertEquals(UnityValueType.NUMBER, cursor.getValueType());
+            assertEquals(1.5, cursor.getNumber().doubleValue());
+            assertTrue(cursor.nextSibling());
+            assertEquals(UnityValueType.NULL, cursor.getValueType());
+            assertNull(cursor.getValue());
+            assertFalse(cursor.nextSibling());
+        }
+    }
+
+    @Test
+    @DisplayName("Stored documents replay as the original events")
+    void testAccept() throws Exception {
+        try (UnityOffHeapStore store = UnityOffHeapStore.direct()) {
+            int id = store.add(new StringReader(ORDER));
+            UnityTextWriter fromStore = new UnityTextWriter();
+            store.accept(id, fromStore);
+            UnityTextWriter fromReader = new UnityTextWriter();
+            new UnityEventReader(ORDER).accept(fromReader);
+            assertEquals(fromReader.toString(), fromStore.toString());
+        }
+    }
+
+    // =========================================================================
+    // Storage
+    // =========================================================================
+
+    @Test
+    @DisplayName("Many documents span chunks and keep the heap free of them")
+    void testManyDocuments() throws Exception {
+        try (UnityOffHeapStore store = UnityOffHeapStore.direct(4096)) {
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(i, store.add("[\"m\", {\"seq\": " + i + "}, \"value " + i + "\"]"));
+            }
+            // Larger than a chunk
+            StringBuilder large = new StringBuilder("[\"big\"");
+            for (int i = 0; i < 1000; i++) {
+                large.append(", ").append(i);
+            }
+            int big = store.add(large.append("]").toString());
+
+            assertEquals(2001, store.size());
+            assertTrue(store.getOffHeapBytes() > 2000 * 40);
+            UnityOffHeapStore.Cursor cursor = store.cursor();
+            for (int i = 0; i < 2000; i += 97) {
+                cursor.moveTo(i);
+                assertTrue(cursor.attribute("seq"));
+                assertEquals(i, cursor.getNumber().intValue());
+                assertTrue(cursor.nextSibling());
+                assertEquals("value " + i, cursor.getValue());
+            }
+            cursor.moveTo(big);
+            int count = 0;
+            for (boolean more = cursor.firstChild(); more; more = cursor.nextSibling()) {
+                count++;
+            }
+            assertEquals(1000, count);
+        }
+    }
+
+    @Test
+    @DisplayName("Mapped stores keep documents in the backing file")
+    void testMapped(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("store.bin");
+        try (UnityOffHeapStore store = UnityOffHeapStore.mapped(file, 4096)) {
+            for (int i = 0; i < 500; i++) {
+                store.add(ORDER);
+            }
+            assertTrue(Files.size(file) >= 4096);
+            UnityOffHeapStore.Cursor cursor = store.cursor().moveTo(499);
+            assertTrue(cursor.attribute("status"));
+            assertEquals("open", cursor.getValue());
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid documents are rejected and not stored")
+    void testInvalid() throws Exception {
+        try (UnityOffHeapStore store = UnityOffHeapStore.direct()) {
+            assertThrows(IllegalArgumentException.class, () -> store.add("[\"a\", {\"1x\": 1}]"));
+            assertThrows(IllegalArgumentException.class, () -> store.add("[\"a\""));
+            assertEquals(0, store.size());
+            assertThrows(IndexOutOfBoundsException.class, () -> store.cursor().moveTo(0));
+            assertEquals(0, store.add("[\"a\"]"));
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.metamadbooks.unity.parser;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -211,6 +213,17 @@ class UnityParserTest {
                 .anyMatch(e -> e.getMessage().contains("Attributes object must be at index 1")));
     }
 
+    @Test
+    @DisplayName("Invalid: Attributes after a child element are checked at the parent's index")
+    void testAttributesAfterChildElement() {
+        Unity.ParseResult result = Unity.parse("[\"a\", [\"b\"], {\"x\": 1}]");
+        assertEquals(1, result.getErrors().size());
+        ValidationError error = result.getErrors().get(0);
+        assertEquals("Attributes object must be at index 1 (found at index 2)", error.getMessage());
+        assertEquals("/a", error.getPath());
+        assertEquals(13, error.getColumn());
+    }
+
     @Test
     @DisplayName("Invalid: Element name with space")
     void testElementNameWithSpace() {
@@ -324,4 +337,24 @@ class UnityParserTest {
         assertFalse(result.isValid());
         assertTrue(result.getErrors().size() >= 2);
     }
+
+    // =========================================================================
+    // Warm-up
+    // =========================================================================
+
+    @Test
+    @DisplayName("Warming up leaves results unchanged")
+    void testWarmUp() {
+        String[] documents = {"[\"root\", {\"id\": 1}, \"text\"]", "[\"1bad\"]", "[\"a\", tru]"};
+        String[] before = new String[documents.length];
+        for (int i = 0; i < documents.length; i++) {
+            before[i] = Unity.parse(documents[i]).getErrors().toString();
+        }
+        Unity.warmUp();
+        Unity.warmUp(List.of(documents));
+        for (int i = 0; i < documents.length; i++) {
+            assertEquals(before[i], Unity.parse(documents[i]).getErrors().toString());
+        }
+        assertTrue(Unity.isValid(documents[0]));
+    }
 }
@@ -0,0 +1,161 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityPathFilter}.
+ */
+class UnityPathFilterTest {
+
+    private static final String CATALOG =
+            "[\"catalog\", {\"version\": 2},\n"
+            + "  [\"section\", {\"name\": \"tools\"},\n"
+            + "    [\"item\", {\"id\": \"t1\", \"stock\": true}, \"Hammer [large]\"],\n"
+            + "    [\"item\", {\"id\": \"t2\", \"stock\": false}, \"Saw \\\"]\\\"\"],\n"
+            + "    [\"item\", \"No id\", [\"item\", {\"id\": \"inner\"}]]\n"
+            + "  ],\n"
+            + "  [\"section\", {\"name\": \"garden\"},\n"
+            + "    [\"group\", [\"item\", {\"id\": \"g1\", \"stock\": true}]]\n"
+            + "  ]\n"
+            + "]";
+
+    private static List<String> texts(List<UnityPathFilter.Match> matches) {
+        List<String> texts = new ArrayList<>();
+        for (UnityPathFilter.Match match : matches) {
+            texts.add(match.getAttribute() == null ? match.getText() : match.getValue());
+        }
+        return texts;
+    }
+
+    // =========================================================================
+    // Matching
+    // =========================================================================
+
+    @Test
+    @DisplayName("Element matches carry their exact source text")
+    void testElementMatches() {
+        List<UnityPathFilter.Match> matches = new UnityPathFilter("/catalog/section/item").select(CATALOG);
+        assertEquals(List.of(
+                "[\"item\", {\"id\": \"t1\", \"stock\": true}, \"Hammer [large]\"]",
+                "[\"item\", {\"id\": \"t2\", \"stock\": false}, \"Saw \\\"]\\\"\"]",
+                "[\"item\", \"No id\", [\"item\", {\"id\": \"inner\"}]]"), texts(matches));
+        assertEquals("/catalog/section/item", matches.get(0).getPath());
+        assertEquals(3, matches.get(0).getLine());
+        assertEquals(4, matches.get(0).getColumn());
+        for (UnityPathFilter.Match match : matches) {
+            assertTrue(Unity.isValid(match.getText()), match.getText());
+        }
+    }
+
+    @Test
+    @DisplayName("Matches agree with UnityQuery")
+    void testAgreesWithQuery() {
+        Unity.ParseResult result = Unity.parse(CATALOG);
+        for (String path : List.of("/catalog/section/item[@stock=true]", "//group/item", "/catalog/*[@name='garden']",
+                "//section//item[@id='g1']", "/catalog/section[@name]/item[@stock=false]")) {
+            List<String> expected = new ArrayList<>();
+            for (UnityParser.UnityElementContext element : UnityQuery.compile(path).select(result)) {
+                expected.add(Unity.print(Unity.parse(CATALOG.substring(element.getStart().getStartIndex(),
+                        element.getStop().getStopIndex() + 1)), PrintFormat.TREE));
+            }
+            List<String> actual = new ArrayList<>();
+            for (String text : texts(new UnityPathFilter(path).select(CATALOG))) {
+                actual.add(Unity.print(Unity.parse(text), PrintFormat.TREE));
+            }
+            assertEquals(expected, actual, path);
+        }
+    }
+
+    @Test
+    @DisplayName("Nested matches are reported as part of the outer match")
+    void testNestedMatches() {
+        assertEquals(4, new UnityPathFilter("//item").select(CATALOG).size());
+        assertEquals(List.of("[\"item\", {\"id\": \"inner\"}]"), texts(new UnityPathFilter("//item/item").select(CATALOG)));
+    }
+
+    @Test
+    @DisplayName("Elements below several matching ancestors are reported once")
+    void testNestedSameNamedAncestors() {
+        String document = "[\"b\", [\"b\", [\"a\"], [\"b\", {\"k\": 1}, [\"a\", {\"k\": 2}]]]]";
+        assertEquals(List.of("/b/b/a", "/b/b/b/a"),
+                new UnityPathFilter("//b//a").select(document).stream().map(UnityPathFilter.Match::getPath).toList());
+        assertEquals(UnityQuery.compile("//b//a").select(Unity.parse(document)).size(),
+                new UnityPathFilter("//b//a").select(document).size());
+        assertEquals(List.of("1", "2"), texts(new UnityPathFilter("//*//*/@k").select(document)));
+    }
+
+    @Test
+    @DisplayName("Attribute selectors report values")
+    void testAttributeSelectors() {
+        UnityPathFilter filter = new UnityPathFilter("/catalog/@version", "//item[@stock=true]/@id", "//section/@missing");
+        List<UnityPathFilter.Match> matches = filter.select(CATALOG);
+        assertEquals(List.of("2", "t1", "g1"), texts(matches));
+        assertEquals(0, matches.get(0).getPathIndex());
+        assertEquals("version", matches.get(0).getAttribute());
+        assertEquals("\"t1\"", matches.get(1).getText());
+        assertEquals("/catalog/section/item/@id=\"t1\"", matches.get(1).toString());
+    }
+
+    @Test
+    @DisplayName("Several paths are matched in one pass in document order")
+    void testSeveralPaths() {
+        UnityPathFilter filter = new UnityPathFilter("//group", "/catalog/section/@name");
+        List<UnityPathFilter.Match> matches = filter.select(CATALOG);
+        assertEquals(List.of("tools", "garden", "[\"group\", [\"item\", {\"id\": \"g1\", \"stock\": true}]]"),
+                texts(matches));
+        assertEquals(0, matches.get(2).getPathIndex());
+    }
+
+    // =========================================================================
+    // Input Handling
+    // =========================================================================
+
+    @Test
+    @DisplayName("Large documents stream through a small buffer")
+    void testLargeDocument() throws Exception {
+        StringBuilder sb = new StringBuilder("[\"log\"");
+        for (int i = 0; i < 20000; i++) {
+            sb.append(",\n [\"entry\", {\"n\": ").append(i).append("}, \"text with ] and [ inside\", [\"detail\", ")
+                    .append(i % 1000 == 0 ? "[\"flag\"]" : "null").append("]]");
+        }
+        String text = sb.append(']').toString();
+
+        List<UnityPathFilter.Match> matches = new ArrayList<>();
+        List<ValidationError> errors = new UnityPathFilter("/log/entry/detail/flag")
+                .filter(new StringReader(text), matches::add);
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertEquals(20, matches.size());
+        assertEquals(1002, matches.get(1).getLine());
+    }
+
+    @Test
+    @DisplayName("Syntax errors stop the scan with a position")
+    void testSyntaxErrors() {
+        UnityPathFilter filter = new UnityPathFilter("/a/b");
+        List<ValidationError> errors = filter.filter("[\"a\", [\"c\", \"unterminated]]", m -> { });
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage().startsWith("Syntax error"));
+
+        errors = filter.filter("[\"a\", nope]", m -> { });
+        assertEquals(1, errors.get(0).getLine());
+        assertEquals("/a", errors.get(0).getPath());
+
+        assertFalse(filter.filter("[\"a\"] extra", m -> { }).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> filter.select("[\"a\", [\"b\""));
+    }
+
+    @Test
+    @DisplayName("Unsupported paths are rejected")
+    void testInvalidPaths() {
+        assertThrows(IllegalArgumentException.class, () -> new UnityPathFilter("/a/b[2]"));
+        assertThrows(IllegalArgumentException.class, () -> new UnityPathFilter("a"));
+        assertThrows(IllegalArgumentException.class, () -> new UnityPathFilter(List.of()));
+    }
+}
@@ -0,0 +1,247 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link Flow.Publisher}s in {@link UnityPublishers}.
+ */
+class UnityPublishersTest {
+
+    /**
+     * Subscriber that records items and requests a fixed number at a time.
+     */
+    private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+        final List<T> items = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Throwable error;
+        volatile boolean completed;
+        volatile Flow.Subscription subscription;
+        private final long batch;
+
+        RecordingSubscriber(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (batch > 0 && items.size() % batch == 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(terminated.await(10, TimeUnit.SECONDS), "publisher did not terminate");
+        }
+    }
+
+    private static String lines(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("[\"").append(i % 5 == 0 ? "1bad" : "ok").append("\", ").append(i).append("]\n");
+        }
+        return sb.toString();
+    }
+
+    // =========================================================================
+    // Events
+    // =========================================================================
+
+    @Test
+    @DisplayName("Event publisher delivers all events then completes")
+    void testEvents() throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            RecordingSubscriber<UnityEvent> subscriber = new RecordingSubscriber<>(2);
+            UnityPublishers.events("[\"x\", {\"a\": 1}, [\"y\"], \"t\"]", executor).subscribe(subscriber);
+            subscriber.await();
+
+            assertTrue(subscriber.completed);
+            assertEquals("[START_ELEMENT(x), ATTRIBUTE(a=1), START_ELEMENT(y), END_ELEMENT, VALUE(\"t\"), END_ELEMENT]",
+                    subscriber.items.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Nothing is produced beyond the requested demand")
+    void testBackpressure() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger charsRead = new AtomicInteger();
+        String document = "[\"list\"" + ", \"item\"".repeat(100_000) + "]";
+        try {
+            RecordingSubscriber<UnityEvent> subscriber = new RecordingSubscriber<>(0);
+            UnityPublishers.events(() -> new StringReader(document) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                    int n = super.read(buffer, offset, Math.min(length, 256));
+                    charsRead.addAndGet(Math.max(n, 0));
+                    return n;
+                }
+            }, executor).subscribe(subscriber);
+
+            subscriber.subscription.request(5);
+            Thread.sleep(200);
+            assertEquals(5, subscriber.items.size());
+            assertTrue(charsRead.get() < 10_000, "read " + charsRead.get() + " chars");
+
+            subscriber.subscription.request(Long.MAX_VALUE);
+            subscriber.await();
+            assertTrue(subscriber.completed);
+            assertEquals(100_002, subscriber.items.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Cancelling closes the input")
+    void testCancel() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean closed = new AtomicBoolean();
+        try {
+            RecordingSubscriber<UnityEvent> subscriber = new RecordingSubscriber<>(0);
+            UnityPublishers.events(() -> new StringReader("[\"x\", 1, 2, 3]") {
+                @Override
+                public void close() {
+                    closed.set(true);
+                    super.close();
+                }
+            }, executor).subscribe(subscriber);
+
+            subscriber.subscription.request(1);
+            while (subscriber.items.isEmpty()) {
+                Thread.sleep(1);
+            }
+            subscriber.subscription.cancel();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(closed.get());
+            assertEquals(1, subscriber.items.size());
+            assertFalse(subscriber.completed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("A non-positive request signals an error")
+    void testBadRequest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecordingSubscriber<UnityEvent> subscriber = new RecordingSubscriber<>(0);
+            UnityPublishers.events("[\"x\"]", executor).subscribe(subscriber);
+            subscriber.subscription.request(0);
+            subscriber.await();
+            assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Input failures are signalled through onError")
+    void testOpenFailure() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecordingSubscriber<UnityEvent> subscriber = new RecordingSubscriber<>(1);
+            UnityPublishers.events(() -> {
+                throw new java.io.FileNotFoundException("missing.unity");
+            }, executor).subscribe(subscriber);
+            subscriber.await();
+            assertInstanceOf(java.io.FileNotFoundException.class, subscriber.error);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // =========================================================================
+    // Documents
+    // =========================================================================
+
+    @Test
+    @DisplayName("Document publisher delivers one result per document in order")
+    void testDocuments() throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            byte[] input = lines(500).getBytes(StandardCharsets.UTF_8);
+            RecordingSubscriber<UnityDocument> subscriber = new RecordingSubscriber<>(16);
+            UnityPublishers.documents(() -> new ByteArrayInputStream(input),
+                    UnityDocumentStream.Framing.LINES, executor).subscribe(subscriber);
+            subscriber.await();
+
+            assertTrue(subscriber.completed);
+            assertEquals(500, subscriber.items.size());
+            for (int i = 0; i < 500; i++) {
+                UnityDocument document = subscriber.items.get(i);
+                assertEquals(i, document.getIndex());
+                assertEquals(i % 5 != 0, document.isValid());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Each subscriber gets its own pass over the input")
+    void testColdPublisher() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger opened = new AtomicInteger();
+        try {
+            Flow.Publisher<UnityDocument> publisher = UnityPublishers.documents(() -> {
+                opened.incrementAndGet();
+                return new ByteArrayInputStream(lines(10).getBytes(StandardCharsets.UTF_8));
+            }, UnityDocumentStream.Framing.LINES, executor);
+
+            RecordingSubscriber<UnityDocument> first = new RecordingSubscriber<>(Long.MAX_VALUE);
+            RecordingSubscriber<UnityDocument> second = new RecordingSubscriber<>(3);
+            publisher.subscribe(first);
+            publisher.subscribe(second);
+            first.await();
+            second.await();
+
+            assertEquals(2, opened.get());
+            assertEquals(10, first.items.size());
+            assertEquals(10, second.items.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityQuery} and {@link UnityIndex}.
+ */
+class UnityQueryTest {
+
+    private static final String CATALOG =
+            "[\"catalog\",\n"
+            + "  [\"section\", {\"name\": \"tools\"},\n"
+            + "    [\"item\", {\"id\": \"t1\", \"price\": 3.5}, \"Hammer\"],\n"
+            + "    [\"item\", \"No id\"],\n"
+            + "    [\"item\", {\"id\": \"t3\", \"stock\": true}, [\"item\", {\"id\": \"t3a\"}]]\n"
+            + "  ],\n"
+            + "  [\"section\", {\"name\": \"garden\"},\n"
+            + "    [\"group\", [\"item\", {\"id\": \"g1\", \"price\": 3.5}]]\n"
+            + "  ],\n"
+            + "  [\"item\", {\"id\": \"loose\"}]\n"
+            + "]";
+
+    private static final Unity.ParseResult RESULT = Unity.parse(CATALOG);
+
+    /**
+     * Returns the id attribute, or the element name, of each selected element.
+     */
+    private static List<String> ids(String path) {
+        List<String> ids = new ArrayList<>();
+        for (UnityParser.UnityElementContext element : Unity.select(RESULT, path)) {
+            String id = UnityStrings.unquote(element.elementName().getText());
+            for (UnityParser.ElementContentContext content : element.elementContent()) {
+                if (content.attributesObject() != null) {
+                    for (UnityParser.AttributePairContext pair : content.attributesObject().attributePair()) {
+                        if (pair.STRING().getText().equals("\"id\"") || pair.STRING().getText().equals("\"name\"")) {
+                            id = UnityStrings.unquote(pair.attributeValue().getText());
+                        }
+                    }
+                }
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    // =========================================================================
+    // Axes and Name Tests
+    // =========================================================================
+
+    @Test
+    @DisplayName("Child and descendant steps")
+    void testAxes() {
+        assertTrue(RESULT.isValid());
+        assertEquals(List.of("catalog"), ids("/catalog"));
+        assertEquals(List.of(), ids("/section"));
+        assertEquals(List.of("tools", "garden"), ids("/catalog/section"));
+        assertEquals(List.of("t1", "item", "t3"), ids("/catalog/section/item"));
+        assertEquals(List.of("t1", "item", "t3", "t3a", "g1"), ids("/catalog/section//item"));
+        assertEquals(List.of("t1", "item", "t3", "t3a", "g1", "loose"), ids("//item"));
+        assertEquals(List.of("t3a"), ids("//item/item"));
+        assertEquals(List.of("t1", "item", "t3", "group"), ids("/catalog/section/*"));
+    }
+
+    @Test
+    @DisplayName("Descendant step from nested context elements selects each element once")
+    void testNestedContext() {
+        assertEquals(List.of("t3a"), ids("//item//item"));
+        assertEquals(List.of("t1", "item", "t3", "t3a", "g1", "loose"), ids("//*//item"));
+    }
+
+    // =========================================================================
+    // Predicates
+    // =========================================================================
+
+    @Test
+    @DisplayName("Attribute presence and value predicates")
+    void testAttributePredicates() {
+        assertEquals(List.of("t1", "t3", "t3a", "g1"), ids("/catalog/section//item[@id]"));
+        assertEquals(List.of("t3"), ids("//item[@stock=true]"));
+        assertEquals(List.of("t1", "g1"), ids("//item[@price=3.5]"));
+        assertEquals(List.of("garden"), ids("//section[@name='garden']"));
+        assertEquals(List.of("g1"), ids("//section[@name=\"garden\"]//item[@price = 3.5]"));
+        assertEquals(List.of(), ids("//item[@missing]"));
+        assertEquals(List.of("t3"), ids("//*[@id][@stock]"));
+    }
+
+    @Test
+    @DisplayName("Positional predicates count siblings after earlier predicates")
+    void testPositionalPredicates() {
+        assertEquals(List.of("item"), ids("/catalog/section/item[2]"));
+        assertEquals(List.of("t1", "t3a", "g1", "loose"), ids("//item[1]"));
+        assertEquals(List.of("t3", "t3a", "g1", "loose"), ids("//item[last()]"));
+        assertEquals(List.of("t3"), ids("/catalog/section/item[@id][2]"));
+        assertEquals(List.of(), ids("/catalog/section/item[2][@id]"));
+        assertEquals(List.of("garden"), ids("/catalog/section[2]"));
+    }
+
+    @Test
+    @DisplayName("Invalid expressions are rejected with their position")
+    void testInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> UnityQuery.compile("catalog"));
+        assertThrows(IllegalArgumentException.class, () -> UnityQuery.compile("/catalog["));
+        assertThrows(IllegalArgumentException.class, () -> UnityQuery.compile("/catalog[0]"));
+        assertThrows(IllegalArgumentException.class, () -> UnityQuery.compile("/catalog[@id='x]"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> UnityQuery.compile("/a/"));
+        assertTrue(e.getMessage().contains("position 3"), e.getMessage());
+    }
+
+    // =========================================================================
+    // Index
+    // =========================================================================
+
+    @Test
+    @DisplayName("Index is built once and exposes elements by name and attribute")
+    void testIndex() {
+        Unity.ParseResult result = Unity.parse(CATALOG);
+        UnityIndex index = result.getIndex();
+        assertSame(index, result.getIndex());
+
+        assertEquals(10, index.size());
+        assertEquals("catalog", index.getName(0));
+        assertEquals(-1, index.getParent(0));
+        assertEquals(10, index.getSubtreeEnd(0));
+        assertEquals(6, index.getElements("item").size());
+        assertEquals(2, index.getElementsWithAttribute("price", "3.5").size());
+        assertTrue(index.getElements("missing").isEmpty());
+
+        UnityQuery query = UnityQuery.compile("//group/item");
+        assertSame(index.getElementsWithAttribute("id", "g1").get(0), query.select(result).get(0));
+        assertEquals("//group/item", query.toString());
+    }
+
+    @Test
+    @DisplayName("Namespaced names are matched literally")
+    void testNamespacedNames() {
+        Unity.ParseResult result = Unity.parse("[\"ns:root\", {\"xmlns:ns\": \"urn:x\"}, [\"ns:child\", {\"xml:lang\": \"en\"}]]");
+        assertEquals(1, Unity.select(result, "/ns:root/ns:child[@xml:lang='en']").size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityRope}.
+ */
+class UnityRopeTest {
+
+    private static final String[] SNIPPETS = {"a", "\n", "😀", "é", "\uD83D", "\uDE00", "[\"x\", 1]", "\r\n",
+            "line\nline\n", "😀😀😀"};
+
+    /**
+     * Checks a rope's text, lines and columns against those worked out from a String.
+     */
+    private static void assertSameText(String expected, UnityRope rope, Random random) {
+        assertEquals(expected.length(), rope.length());
+        for (int i = 0; i < 200; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int line = 0;
+            int lineStart = 0;
+            for (int j = expected.indexOf('\n'); j >= 0 && j < offset; j = expected.indexOf('\n', j + 1)) {
+                line++;
+                lineStart = j + 1;
+            }
+            assertEquals(line, rope.lineOf(offset), "line of " + offset);
+            assertEquals(lineStart, rope.lineStart(line), "start of line " + line);
+            assertEquals(expected.codePointCount(lineStart, offset), rope.columnOf(offset), "column of " + offset);
+            if (offset < expected.length()) {
+                assertEquals(expected.charAt(offset), rope.charAt(offset));
+            }
+            int end = offset + random.nextInt(expected.length() - offset + 1);
+            assertEquals(expected.substring(offset, end), rope.substring(offset, end));
+        }
+        assertEquals(expected, rope.toString());
+    }
+
+    @Test
+    @DisplayName("Random replacements match those of a String, across chunks")
+    void testRandomReplacements() {
+        Random random = new Random(11);
+        StringBuilder initial = new StringBuilder();
+        while (initial.length() < 5000) {
+            initial.append(SNIPPETS[random.nextInt(SNIPPETS.length)]);
+        }
+        String expected = initial.toString();
+        UnityRope rope = UnityRope.of(expected);
+        assertSameText(expected, rope, random);
+        for (int i = 0; i < 300; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(Math.min(3000, expected.length() - offset) + 1);
+            StringBuilder inserted = new StringBuilder();
+            for (int n = random.nextInt(i % 10 == 0 ? 400 : 4); n > 0; n--) {
+                inserted.append(SNIPPETS[random.nextInt(SNIPPETS.length)]);
+            }
+            rope = rope.replace(offset, removed, inserted.toString());
+            expected = expected.substring(0, offset) + inserted + expected.substring(offset + removed);
+            assertSameText(expected, rope, random);
+        }
+    }
+
+    @Test
+    @DisplayName("Replacing leaves the earlier rope as it was")
+    void testImmutable() {
+        String text = "[\"a\",\n 1]".repeat(500);
+        UnityRope rope = UnityRope.of(text);
+        UnityRope edited = rope.replace(2000, 10, "😀\n");
+        assertEquals(text, rope.toString());
+        assertEquals(text.length() - 7, edited.length());
+        assertEquals(text.substring(0, 2000) + "😀\n" + text.substring(2010), edited.toString());
+        assertEquals("", UnityRope.of("").replace(0, 0, "").toString());
+        assertEquals(0, UnityRope.of("").lineOf(0));
+    }
+
+    @Test
+    @DisplayName("Lines beyond the text are rejected")
+    void testBounds() {
+        UnityRope rope = UnityRope.of("a\nb");
+        assertEquals(2, rope.lineStart(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.lineStart(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.replace(0, 0, "").substring(2, 4));
+    }
+}
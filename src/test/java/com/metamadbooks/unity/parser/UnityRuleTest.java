@@ -0,0 +1,210 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the validation rule SPI: {@link UnityRule}, {@link UnityRuleSet} and the
+ * built-in rules.
+ */
+class UnityRuleTest {
+
+    /**
+     * Reports attributes that appear twice in one attributes object.
+     */
+    private static final class DuplicateAttributeRule implements UnityRule {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void attribute(String name, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+            Set<String> seen = (Set<String>) context.getState();
+            if (seen == null) {
+                seen = new HashSet<>();
+                context.setState(seen);
+            }
+            if (!seen.add(name)) {
+                context.report("Duplicate attribute '" + name + "'");
+            }
+        }
+
+        @Override
+        public void attributes(int index, UnityRuleContext context) {
+            context.setState(null);
+        }
+    }
+
+    /**
+     * Limits the length of text content.
+     */
+    private static final class TextLengthRule implements UnityRule {
+        @Override
+        public void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+            if (type == UnityValueType.STRING && UnityStrings.unquote(rawValue).length() > 5) {
+                context.report("Text longer than 5 characters at index " + index);
+            }
+        }
+    }
+
+    // =========================================================================
+    // Built-in Rules
+    // =========================================================================
+
+    @Test
+    @DisplayName("Default rule set reproduces the built-in validation")
+    void testDefaults() {
+        String input = "[\"1bad\", [\"ok\", {\"2x\": 1}, \"t\", {\"a\": 2}]]";
+        Unity.ParseResult result = Unity.parse(input, UnityRuleSet.defaults());
+        assertEquals(Unity.parse(input).getErrors().toString(), result.getErrors().toString());
+        assertEquals(3, result.getErrors().size());
+        assertEquals("/", result.getErrors().get(0).getPath());
+        assertEquals("/1bad/ok", result.getErrors().get(1).getPath());
+        assertTrue(result.getErrors().get(2).getMessage().contains("index 3"));
+
+        // The walk and the parse-time listener agree
+        UnityValidationListener listener = new UnityValidationListener();
+        IterativeParseTreeWalker.DEFAULT.walk(listener, result.getParseTree());
+        assertEquals(result.getErrors().toString(), listener.getErrors().toString());
+    }
+
+    @Test
+    @DisplayName("Rules can be chosen individually")
+    void testRuleSelection() {
+        String input = "[\"1bad\", \"t\", {\"a\": 2}]";
+        assertEquals(1, Unity.parse(input, UnityRuleSet.of(new XmlNameRule())).getErrors().size());
+        assertEquals(1, Unity.parse(input, UnityRuleSet.of(new AttributePositionRule())).getErrors().size());
+        assertTrue(Unity.parse(input, UnityRuleSet.of()).isValid());
+    }
+
+    // =========================================================================
+    // Custom Rules
+    // =========================================================================
+
+    @Test
+    @DisplayName("Custom rules run with the built-in ones in one pass")
+    void testCustomRules() {
+        UnityRuleSet rules = UnityRuleSet.defaults().with(new DuplicateAttributeRule(), new TextLengthRule());
+        Unity.ParseResult result = Unity.parse(
+                "[\"doc\", {\"id\": 1, \"id\": 2}, \"short\", [\"p\", \"far too long\"], {\"x\": 1}]", rules);
+
+        List<String> messages = new ArrayList<>();
+        for (ValidationError error : result.getErrors()) {
+            messages.add(error.getPath() + " " + error.getMessage());
+        }
+        assertEquals(List.of(
+                "/doc Duplicate attribute 'id'",
+                "/doc/p Text longer than 5 characters at index 1",
+                "/doc Attributes object must be at index 1 (found at index 4)"), messages);
+        assertEquals(4, rules.getRules().size());
+    }
+
+    @Test
+    @DisplayName("Context reports path, depth and content index")
+    void testContext() {
+        List<String> events = new ArrayList<>();
+        UnityRule recorder = new UnityRule() {
+            @Override
+            public void enterElement(String name, UnityRuleContext context) {
+                events.add("enter " + name + " " + context.getPath() + " " + context.getDepth());
+            }
+
+            @Override
+            public void content(int index, UnityValueType type, CharSequence rawValue, UnityRuleContext context) {
+                events.add("content " + index + " in " + context.getElementName() + " " + type + " " + rawValue
+                        + " at " + context.getLine() + ":" + context.getColumn());
+            }
+
+            @Override
+            public void exitElement(UnityRuleContext context) {
+                events.add("exit " + context.getPath());
+            }
+        };
+        Unity.parse("[\"a\", 1, [\"b\"]]", UnityRuleSet.of(recorder));
+        List<String> expected = List.of("enter a / 0", "content 1 in a NUMBER 1 at 1:6", "enter b /a 1",
+                "exit /a/b", "content 2 in a null null at 1:9", "exit /a");
+        assertEquals(expected, events);
+
+        // The event reader makes the same callbacks
+        events.clear();
+        UnityEventReader reader = new UnityEventReader("[\"a\", 1, [\"b\"]]", UnityRuleSet.of(recorder));
+        while (reader.next() != null) {
+            // Rules run as the events are read
+        }
+        assertEquals(expected, events);
+    }
+
+    @Test
+    @DisplayName("Rules are not called past a syntax error")
+    void testSyntaxError() {
+        List<String> names = new ArrayList<>();
+        UnityRule recorder = new UnityRule() {
+            @Override
+            public void enterElement(String name, UnityRuleContext context) {
+                names.add(name);
+            }
+        };
+        Unity.ParseResult result = Unity.parse("[\"a\", [\"b\"] [\"c\"]]", UnityRuleSet.of(recorder));
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).getMessage().startsWith("Syntax error"));
+        assertFalse(names.contains("c"));
+    }
+
+    @Test
+    @DisplayName("Rules run on every parsing path with the same results")
+    void testParsingPaths() {
+        UnityRuleSet rules = UnityRuleSet.defaults().with(new DuplicateAttributeRule(), new TextLengthRule());
+        StringBuilder input = new StringBuilder("[\"doc\", {\"id\": 1, \"id\": 2}");
+        for (int i = 0; i < 50; i++) {
+            input.append(", [\"p\", {\"n\": ").append(i).append(", \"n\": 0}, \"far too long\"], \"ok\"");
+        }
+        String document = input.append(", {\"x\": 1}]").toString();
+        String expected = Unity.parse(document, rules).getErrors().toString();
+        assertEquals(102, Unity.parse(document, rules).getErrors().size());
+
+        assertEquals(expected, Unity.parseDeep(document, rules).getErrors().toString());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Threshold 0 forces the parallel path
+            assertEquals(expected, new ParallelUnityParser(pool, 0, rules).parse(document).getErrors().toString());
+        } finally {
+            pool.shutdown();
+        }
+
+        List<ValidationError> streamed = new ArrayList<>();
+        UnityEventReader reader = new UnityEventReader(document, rules);
+        for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+            if (event.getError() != null) {
+                streamed.add(event.getError());
+            }
+        }
+        assertEquals(expected, streamed.toString());
+    }
+
+    // =========================================================================
+    // Timing
+    // =========================================================================
+
+    @Test
+    @DisplayName("Timed rule sets count calls per rule across documents")
+    void testTimings() {
+        UnityRuleSet rules = UnityRuleSet.defaults().with(new TextLengthRule()).timed();
+        assertTrue(rules.isTimed());
+        assertTrue(UnityRuleSet.defaults().getTimings().isEmpty());
+
+        Unity.parse("[\"a\", \"x\", \"y\"]", rules);
+        Unity.parse("[\"a\", \"x\"]", rules);
+
+        List<UnityRuleSet.RuleTiming> timings = rules.getTimings();
+        assertEquals(List.of("XmlNameRule", "AttributePositionRule", "TextLengthRule"),
+                timings.stream().map(UnityRuleSet.RuleTiming::getName).toList());
+        // Two elements entered and exited, three content items
+        assertEquals(7, timings.get(2).getCalls());
+        assertTrue(timings.get(2).getNanos() >= 0);
+    }
+}
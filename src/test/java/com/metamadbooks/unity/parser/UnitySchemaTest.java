@@ -0,0 +1,224 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnitySchema}.
+ */
+class UnitySchemaTest {
+
+    private static final String CATALOG_SCHEMA = """
+            ["schema", {"root": "catalog"},
+              ["element", {"name": "catalog"},
+                ["attribute", {"name": "version", "type": "integer", "required": true}],
+                ["attribute", {"name": "owner", "type": "string"}],
+                ["child", {"name": "title", "min": 0}],
+                ["choice", {"min": 1, "max": "unbounded"},
+                  ["child", {"name": "book"}],
+                  ["child", {"name": "magazine"}]]],
+              ["element", {"name": "title", "text": true}],
+              ["element", {"name": "book"},
+                ["attribute", {"name": "isbn", "required": true}],
+                ["attribute", {"name": "inPrint", "type": "boolean"}],
+                ["child", {"name": "title"}],
+                ["child", {"name": "author", "max": 3}]],
+              ["element", {"name": "author", "text": true}],
+              ["element", {"name": "magazine", "children": "any"}]
+            ]
+            """;
+
+    private static final UnitySchema SCHEMA = UnitySchema.compile(CATALOG_SCHEMA);
+
+    private static List<String> messages(Unity.ParseResult result) {
+        List<String> messages = new ArrayList<>();
+        for (ValidationError error : result.getErrors()) {
+            messages.add(error.getPath() + " " + error.getMessage());
+        }
+        return messages;
+    }
+
+    // =========================================================================
+    // Valid Documents
+    // =========================================================================
+
+    @Test
+    @DisplayName("Valid document passes")
+    void testValid() {
+        String input = """
+                ["catalog", {"version": 2, "owner": "library"},
+                  ["title", "Holdings"],
+                  ["book", {"isbn": "1", "inPrint": true}, ["title", "A"], ["author", "X"], ["author", "Y"]],
+                  ["magazine", ["issue", 4], ["anything", {"at": "all"}]],
+                  ["book", {"isbn": "2"}, ["title", "B"], ["author", "Z"]]
+                ]
+                """;
+        Unity.ParseResult result = SCHEMA.validate(input);
+        assertTrue(result.isValid(), () -> result.getErrors().toString());
+    }
+
+    @Test
+    @DisplayName("Optional particles may be omitted")
+    void testOptional() {
+        assertTrue(SCHEMA.validate("[\"catalog\", {\"version\": 1}, [\"magazine\"]]").isValid());
+    }
+
+    // =========================================================================
+    // Content Models
+    // =========================================================================
+
+    @Test
+    @DisplayName("Wrong root element is reported")
+    void testRoot() {
+        assertEquals(List.of("/ Root element must be 'catalog' (found 'book')"),
+                messages(SCHEMA.validate("[\"book\", {\"isbn\": \"1\"}]")));
+    }
+
+    @Test
+    @DisplayName("Child out of order is reported")
+    void testOrder() {
+        Unity.ParseResult result = SCHEMA.validate(
+                "[\"catalog\", {\"version\": 1}, [\"magazine\"], [\"title\", \"late\"]]");
+        assertEquals(List.of("/catalog Element 'title' is not allowed here in 'catalog'"), messages(result));
+        assertEquals(1, result.getErrors().get(0).getLine());
+    }
+
+    @Test
+    @DisplayName("Missing required child is reported at the element")
+    void testMissingChild() {
+        assertEquals(List.of("/catalog Element 'catalog' is missing required child one of [book, magazine]"),
+                messages(SCHEMA.validate("[\"catalog\", {\"version\": 1}, [\"title\", \"t\"]]")));
+        assertEquals(List.of("/catalog/book Element 'book' is missing required child 'author'"),
+                messages(SCHEMA.validate(
+                        "[\"catalog\", {\"version\": 1}, [\"book\", {\"isbn\": \"1\"}, [\"title\", \"t\"]]]")));
+
+        ValidationError error = SCHEMA.validate("[\"catalog\", {\"version\": 1},\n"
+                + " [\"book\", {\"isbn\": \"1\"}, [\"title\", \"t\"]]]").getErrors().get(0);
+        assertEquals(2, error.getLine());
+        assertEquals(2, error.getColumn());
+    }
+
+    @Test
+    @DisplayName("Occurrences beyond max are reported")
+    void testMaxOccurs() {
+        String input = "[\"catalog\", {\"version\": 1}, [\"book\", {\"isbn\": \"1\"}, [\"title\", \"t\"],"
+                + " [\"author\", \"a\"], [\"author\", \"b\"], [\"author\", \"c\"], [\"author\", \"d\"]]]";
+        assertEquals(List.of("/catalog/book Element 'author' is not allowed here in 'book'"),
+                messages(SCHEMA.validate(input)));
+    }
+
+    @Test
+    @DisplayName("Occurrences are counted against large bounds without a state per count")
+    void testLargeBounds() {
+        UnitySchema schema = UnitySchema.compile("""
+                ["schema", {"root": "a"},
+                  ["element", {"name": "a"},
+                    ["child", {"name": "b", "min": 2, "max": 2147483646}],
+                    ["child", {"name": "c", "min": 0, "max": 1000000}],
+                    ["child", {"name": "d", "min": 100000, "max": "unbounded"}]],
+                  ["element", {"name": "b"}],
+                  ["element", {"name": "c"}],
+                  ["element", {"name": "d"}]]
+                """);
+
+        assertEquals(List.of("/a Element 'a' is missing required child 'b'"),
+                messages(schema.validate("[\"a\", [\"b\"]]")));
+        assertEquals(List.of("/a Element 'a' is missing required child 'd'"),
+                messages(schema.validate("[\"a\", [\"b\"], [\"b\"], [\"b\"], [\"c\"], [\"c\"], [\"d\"]]")));
+        assertEquals(List.of("/a Element 'b' is not allowed here in 'a'",
+                        "/a Element 'a' is missing required child 'd'"),
+                messages(schema.validate("[\"a\", [\"b\"], [\"b\"], [\"c\"], [\"b\"]]")));
+        String valid = "[\"a\", [\"b\"], [\"b\"]" + ", [\"d\"]".repeat(100_000) + "]";
+        assertTrue(schema.validate(valid).isValid());
+    }
+
+    @Test
+    @DisplayName("Undeclared elements and disallowed text are reported")
+    void testUndeclared() {
+        assertEquals(List.of("/catalog Element 'poster' is not allowed here in 'catalog'",
+                        "/catalog Text is not allowed in 'catalog'"),
+                messages(SCHEMA.validate("[\"catalog\", {\"version\": 1}, [\"magazine\"], [\"poster\"], \"x\"]")));
+    }
+
+    // =========================================================================
+    // Attributes
+    // =========================================================================
+
+    @Test
+    @DisplayName("Attribute declarations, types and required attributes are checked")
+    void testAttributes() {
+        String input = "[\"catalog\", {\"version\": 1.5, \"color\": \"red\"},"
+                + " [\"book\", {\"inPrint\": \"yes\"}, [\"title\", \"t\"], [\"author\", \"a\"]]]";
+        assertEquals(List.of(
+                "/catalog Attribute 'version' must be of type integer",
+                "/catalog Attribute 'color' is not declared for 'catalog'",
+                "/catalog/book Attribute 'inPrint' must be of type boolean",
+                "/catalog/book Element 'book' is missing required attribute 'isbn'"),
+                messages(SCHEMA.validate(input)));
+    }
+
+    @Test
+    @DisplayName("Required attributes are checked for elements without content")
+    void testRequiredWithoutContent() {
+        assertEquals(List.of("/catalog Element 'catalog' is missing required attribute 'version'",
+                        "/catalog Element 'catalog' is missing required child one of [book, magazine]"),
+                messages(SCHEMA.validate("[\"catalog\"]")));
+    }
+
+    @Test
+    @DisplayName("Schema errors follow the built-in rules' errors in document order")
+    void testWithDefaults() {
+        Unity.ParseResult result = SCHEMA.validate("[\"catalog\", {\"version\": 1, \"1x\": 2}, [\"magazine\"]]");
+        assertEquals(List.of("/catalog Invalid attribute name '1x': must be a valid XML Name",
+                "/catalog Attribute '1x' is not declared for 'catalog'"), messages(result));
+    }
+
+    // =========================================================================
+    // Compilation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Invalid schemas are rejected")
+    void testInvalidSchemas() {
+        assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile("[\"schema\""));
+        assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile("[\"grammar\", {\"root\": \"a\"}]"));
+        assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile("[\"schema\", {\"root\": \"a\"}]"));
+        IllegalArgumentException undeclared = assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile(
+                "[\"schema\", {\"root\": \"a\"}, [\"element\", {\"name\": \"a\"}, [\"child\", {\"name\": \"b\"}]]]"));
+        assertTrue(undeclared.getMessage().contains("'b' is not declared"));
+        assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile(
+                "[\"schema\", {\"root\": \"a\"}, [\"element\", {\"name\": \"a\"},"
+                        + " [\"attribute\", {\"name\": \"x\", \"type\": \"date\"}]]]"));
+        assertThrows(IllegalArgumentException.class, () -> UnitySchema.compile(
+                "[\"schema\", {\"root\": \"a\"}, [\"element\", {\"name\": \"a\"},"
+                        + " [\"child\", {\"name\": \"a\", \"min\": 2, \"max\": 1}]]]"));
+    }
+
+    @Test
+    @DisplayName("A compiled schema can be shared by threads")
+    void testConcurrent() throws Exception {
+        String valid = "[\"catalog\", {\"version\": 1}, [\"magazine\"]]";
+        String invalid = "[\"catalog\", [\"title\", \"t\"]]";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String input = i % 2 == 0 ? valid : invalid;
+                futures.add(executor.submit(() -> SCHEMA.validate(input).getErrors().size()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i % 2 == 0 ? 0 : 2, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
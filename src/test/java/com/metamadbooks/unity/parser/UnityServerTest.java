@@ -0,0 +1,147 @@
+package com.metamadbooks.unity.parser;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link UnityServer} and {@link UnityLoadBenchmark}.
+ */
+class UnityServerTest {
+
+    private UnityServer server;
+    private URI uri;
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws Exception {
+        server = UnityServer.start(new InetSocketAddress("localhost", 0), 4096, 8, true);
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + UnityServer.PATH);
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+        http.close();
+    }
+
+    private HttpResponse<String> post(HttpRequest.BodyPublisher body) throws Exception {
+        return http.send(HttpRequest.newBuilder(uri).POST(body).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return post(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    // =========================================================================
+    // Validation
+    // =========================================================================
+
+    @Test
+    @DisplayName("Valid and invalid documents answer their errors as JSON")
+    void testValidate() throws Exception {
+        HttpResponse<String> valid = post("[\"order\", {\"id\": 17}, \"café\"]");
+        assertEquals(200, valid.statusCode());
+        assertEquals("{\"valid\":true,\"errors\":[]}", valid.body());
+        assertTrue(valid.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+
+        String document = "[\"order\", [\"1item\"],\n [\"ok\", {\"2x\": 1}]]";
+        HttpResponse<String> invalid = post(document);
+        assertEquals(200, invalid.statusCode());
+        assertEquals(UnityServer.result(Unity.parse(document).getErrors()), invalid.body());
+        assertTrue(invalid.body().startsWith("{\"valid\":false,\"errors\":[{\"line\":1,\"column\":11,"),
+                invalid.body());
+
+        assertTrue(post("[\"a\", tru]").body().contains("Syntax error"));
+    }
+
+    @Test
+    @DisplayName("Streamed bodies of unknown length are accepted")
+    void testChunked() throws Exception {
+        byte[] document = "[\"a\", [\"b\", \"text\"], 1.5]".getBytes(StandardCharsets.UTF_8);
+        HttpResponse<String> response = post(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(document)));
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"valid\":true,\"errors\":[]}", response.body());
+    }
+
+    // =========================================================================
+    // Limits
+    // =========================================================================
+
+    @Test
+    @DisplayName("Bodies over the size limit and nesting over the depth limit are refused")
+    void testLimits() throws Exception {
+        StringBuilder large = new StringBuilder("[\"big\"");
+        while (large.length() < 5000) {
+            large.append(", \"padding\"");
+        }
+        HttpResponse<String> tooLarge = post(large.append("]").toString());
+        assertEquals(413, tooLarge.statusCode());
+        assertTrue(tooLarge.body().startsWith("{\"error\":"));
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofInputStream(
+                () -> new ByteArrayInputStream(large.toString().getBytes(StandardCharsets.UTF_8)))).statusCode());
+
+        String deep = "[\"a\", ".repeat(9) + "1" + "]".repeat(9);
+        HttpResponse<String> tooDeep = post(deep);
+        assertEquals(400, tooDeep.statusCode());
+        assertTrue(tooDeep.body().contains("nested deeper than 8"));
+
+        // Brackets inside strings do not count
+        assertEquals(200, post("[\"a\", {\"x\": \"[[[[[[[[[[\\\"{{{{{{{{\"}, [\"b\"]]").statusCode());
+        assertEquals(200, post("[\"a\", ".repeat(8) + "1" + "]".repeat(8)).statusCode());
+
+        HttpResponse<String> get = http.send(HttpRequest.newBuilder(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+    }
+
+    @Test
+    @DisplayName("Nesting after a malformed string is counted as the lexer reads it")
+    void testDepthAfterMalformedString() throws Exception {
+        try (UnityServer defaults = UnityServer.start(new InetSocketAddress("localhost", 0))) {
+            URI defaultUri = URI.create("http://localhost:" + defaults.getAddress().getPort() + UnityServer.PATH);
+            String nested = "[\"a\", ".repeat(50_000);
+            for (String start : new String[]{"\"\n", "\"\\x"}) {
+                HttpResponse<String> response = http.send(HttpRequest.newBuilder(defaultUri)
+                        .POST(HttpRequest.BodyPublishers.ofString(start + nested)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(400, response.statusCode());
+                assertTrue(response.body().contains("nested deeper than 256"), response.body());
+            }
+        }
+        assertFalse(UnityServer.nestedDeeperThan(
+                ByteBuffer.wrap("]]] [[\"a\"]]".getBytes(StandardCharsets.UTF_8)), 2));
+        assertTrue(UnityServer.nestedDeeperThan(
+                ByteBuffer.wrap("]]] [[[\"a\"]]]".getBytes(StandardCharsets.UTF_8)), 2));
+    }
+
+    // =========================================================================
+    // Load test
+    // =========================================================================
+
+    @Test
+    @DisplayName("The load-test client reports every request")
+    void testLoadTest() throws Exception {
+        UnityLoadBenchmark.Result result = UnityLoadBenchmark.run(uri,
+                "[\"a\", {\"n\": 1}]".getBytes(StandardCharsets.UTF_8), 8, 400);
+        assertEquals(400, result.getRequests());
+        assertEquals(0, result.getFailures());
+        assertEquals(0, result.getInvalid());
+        assertTrue(result.getLatency(50) <= result.getLatency(99));
+        assertTrue(result.toString().contains("p99"));
+
+        assertEquals(20, UnityLoadBenchmark.run(uri, "[\"1a\"]".getBytes(StandardCharsets.UTF_8), 4, 20).getInvalid());
+    }
+}
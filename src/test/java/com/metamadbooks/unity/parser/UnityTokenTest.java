@@ -0,0 +1,150 @@
+package com.metamadbooks.unity.parser;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the lean tokens of {@link UnityTokenFactory}.
+ */
+class UnityTokenTest {
+
+    private static final String[] DOCUMENTS = {
+            "[\"root\"]",
+            "[\"root\", {\"id\": -12.5e+3, \"ok\": true, \"none\": null}, \"text\", 0, [\"child\", false]]",
+            "[\"r\",\n  \"😀 x\", [\"e\", \"\\u00e9\"],\n\n\t1E5, -0.25\r\n]",
+            "[\"1bad\", [\"ok\", {\"2x\": 1}, \"t\", {\"a\": 2}]]",
+            "[\"a\", \"b\" \"c\"]",
+            "[\"a\", tru]",
+            "[\"a\"",
+    };
+
+    private static List<String> tokens(TokenSource source) {
+        List<String> tokens = new ArrayList<>();
+        for (Token token = source.nextToken(); ; token = source.nextToken()) {
+            tokens.add(token.getType() + " " + token.getText() + " " + token.getLine() + ":"
+                    + token.getCharPositionInLine());
+            if (token.getType() == Token.EOF) {
+                return tokens;
+            }
+        }
+    }
+
+    // =========================================================================
+    // Tokens
+    // =========================================================================
+
+    @Test
+    @DisplayName("Lean tokens match CommonTokens, with columns in code points")
+    void testTokens() {
+        for (String document : DOCUMENTS) {
+            UnityLexer lexer = UnityTokenFactory.lexer(document);
+            lexer.removeErrorListeners();
+            UnityLexer reference = new UnityLexer(CharStreams.fromString(document));
+            reference.removeErrorListeners();
+            assertEquals(tokens(reference), tokens(lexer), document);
+        }
+    }
+
+    @Test
+    @DisplayName("Columns on a long line match across blocks and surrogate pairs")
+    void testLongLine() {
+        StringBuilder line = new StringBuilder("[\"r\"");
+        for (int i = 0; i < 2_000; i++) {
+            line.append(i % 3 == 0 ? ", \"😀é\"" : ", ").append(i);
+        }
+        String document = line.append("]").toString();
+        UnityLexer reference = new UnityLexer(CharStreams.fromString(document));
+        List<String> expected = tokens(reference);
+        assertEquals(expected, tokens(UnityTokenFactory.lexer(document)));
+        assertEquals(expected, tokens(new UnityByteLexer(ByteBuffer.wrap(document.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @Test
+    @DisplayName("Lean tokens are numbered in the order they are created")
+    void testTokenIndex() {
+        CommonTokenStream tokens = new CommonTokenStream(UnityTokenFactory.lexer("[\"a\", 1]"));
+        tokens.fill();
+        for (int i = 0; i < tokens.size(); i++) {
+            assertInstanceOf(UnityToken.class, tokens.get(i));
+            assertEquals(i, tokens.get(i).getTokenIndex());
+        }
+    }
+
+    @Test
+    @DisplayName("Token text is available as a view of the input")
+    void testTextSequence() {
+        StringBuilder input = new StringBuilder("[\"name\", 42]");
+        UnityLexer lexer = UnityTokenFactory.lexer(input);
+        lexer.nextToken();
+        Token name = lexer.nextToken();
+        assertInstanceOf(UnityToken.class, name);
+        CharSequence view = UnityToken.textOf(name);
+        assertEquals("\"name\"", view.toString());
+        assertEquals(1, name.getStartIndex());
+
+        // A view, not a copy
+        input.setCharAt(2, 'N');
+        assertEquals("\"Name\"", view.toString());
+        assertEquals("name", UnityStrings.unquote("\"name\""));
+        assertEquals("Name", UnityStrings.unquote(view));
+    }
+
+    @Test
+    @DisplayName("Error recovery still works with lean tokens")
+    void testRecovery() {
+        UnityLexer lexer = UnityTokenFactory.lexer("[\"a\", , 1]");
+        lexer.removeErrorListeners();
+        UnityParser parser = new UnityParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.unity();
+        assertTrue(parser.getNumberOfSyntaxErrors() > 0);
+    }
+
+    // =========================================================================
+    // Default Paths
+    // =========================================================================
+
+    @Test
+    @DisplayName("isValid agrees with parse")
+    void testIsValid() {
+        for (String document : DOCUMENTS) {
+            assertEquals(Unity.parse(document).isValid(), Unity.isValid(document), document);
+        }
+    }
+
+    @Test
+    @DisplayName("Event reader over a String or bytes gives the same events as over a Reader")
+    void testEventReader() {
+        for (String document : DOCUMENTS) {
+            List<String> fromString = new ArrayList<>();
+            UnityEventReader reader = new UnityEventReader(document);
+            for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+                fromString.add(event + " " + event.getLine() + ":" + event.getColumn());
+            }
+            List<String> fromReader = new ArrayList<>();
+            reader = new UnityEventReader(new StringReader(document));
+            for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+                fromReader.add(event + " " + event.getLine() + ":" + event.getColumn());
+            }
+            assertEquals(fromReader, fromString, document);
+            List<String> fromBytes = new ArrayList<>();
+            reader = new UnityEventReader(ByteBuffer.wrap(document.getBytes(StandardCharsets.UTF_8)));
+            for (UnityEvent event = reader.next(); event != null; event = reader.next()) {
+                fromBytes.add(event + " " + event.getLine() + ":" + event.getColumn());
+            }
+            assertEquals(fromReader, fromBytes, document);
+        }
+    }
+}